@@ -0,0 +1,42 @@
+package io.sigstkflt.bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ *
+ * Without arguments every benchmark runs once, and the mixed workload and concurrent puts again at
+ * 1, 2, 4 ... up to the number of cores. With arguments it behaves like the plain JMH main, for example
+ * {@code java -jar benchmarks.jar MemtableReadBenchmark.get -p distribution=ZIPFIAN -rf json}
+ * writes a result file to compare against a baseline.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        if (args.length > 0) {
+            new Runner(new CommandLineOptions(args)).run();
+            return;
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(MemtablePutBenchmark.class.getSimpleName())
+                .include(MemtableReadBenchmark.class.getSimpleName())
+                .build()).run();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(MemtableMixedBenchmark.class.getSimpleName())
+                    .include(MemtableConcurrentPutBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.sigstkflt.bench;
+
+/**
+ * Order in which a benchmark touches its key space
+ */
+public enum KeyDistribution {
+    /**
+     * Ascending key order, every put appends at the end of the skip list
+     */
+    SEQUENTIAL,
+    /**
+     * Every key equally likely
+     */
+    UNIFORM,
+    /**
+     * A few hot keys take most of the accesses, hot keys are scattered over the key space
+     */
+    ZIPFIAN
+}
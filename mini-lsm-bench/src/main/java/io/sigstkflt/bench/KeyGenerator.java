@@ -0,0 +1,103 @@
+package io.sigstkflt.bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Produces key indexes in [0, keyCount) following a {@link KeyDistribution} and encodes them as
+ * fixed size keys. Not thread safe, every benchmark thread owns one.
+ *
+ * The zipfian variant follows Gray et al., "Quickly Generating Billion-Record Synthetic Databases",
+ * as popularised by YCSB, with the ranks scrambled by a hash so that the hot keys are not all
+ * neighbours in the skip list.
+ */
+public final class KeyGenerator {
+    private static final double ZIPFIAN_CONSTANT = 0.99;
+
+    private final KeyDistribution distribution;
+    private final long keyCount;
+    private final SplittableRandom random;
+    private long sequence;
+
+    // Zipfian constants, only set for that distribution
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final double halfPowTheta;
+
+    public KeyGenerator(KeyDistribution distribution, long keyCount, long seed) {
+        this.distribution = distribution;
+        this.keyCount = keyCount;
+        this.random = new SplittableRandom(seed);
+        this.sequence = Math.floorMod(seed, keyCount);
+        if (distribution == KeyDistribution.ZIPFIAN) {
+            double zeta2 = zeta(2, ZIPFIAN_CONSTANT);
+            this.zetaN = zeta(keyCount, ZIPFIAN_CONSTANT);
+            this.alpha = 1.0 / (1.0 - ZIPFIAN_CONSTANT);
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - ZIPFIAN_CONSTANT)) / (1 - zeta2 / zetaN);
+            this.halfPowTheta = 1 + Math.pow(0.5, ZIPFIAN_CONSTANT);
+        } else {
+            this.zetaN = 0;
+            this.alpha = 0;
+            this.eta = 0;
+            this.halfPowTheta = 0;
+        }
+    }
+
+    public long nextIndex() {
+        return switch (distribution) {
+            case SEQUENTIAL -> {
+                long index = sequence;
+                sequence = sequence + 1 == keyCount ? 0 : sequence + 1;
+                yield index;
+            }
+            case UNIFORM -> random.nextLong(keyCount);
+            case ZIPFIAN -> scramble(nextRank());
+        };
+    }
+
+    /**
+     * Writes the key for the index into the buffer, big endian in the last eight bytes so that
+     * key order follows index order
+     */
+    public static void encode(long index, byte[] key) {
+        for (int i = key.length - 1, shift = 0; i >= 0; i--, shift += 8) {
+            key[i] = shift < Long.SIZE ? (byte) (index >>> shift) : (byte) 'k';
+        }
+    }
+
+    public static byte[] key(long index, int keySize) {
+        byte[] key = new byte[keySize];
+        encode(index, key);
+        return key;
+    }
+
+    private long nextRank() {
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < halfPowTheta) {
+            return 1;
+        }
+        return Math.min(keyCount - 1, (long) (keyCount * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private long scramble(long rank) {
+        // FNV-1a over the rank bytes
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return Math.floorMod(hash, keyCount);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,72 @@
+package io.sigstkflt.bench;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.mvcc.Sequencer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent puts into one shared memtable with a varying number of shards.
+ *
+ * The thread count comes from the runner, {@link BenchmarkMain} sweeps it from 1 to the number of
+ * cores, so the shard counts can be compared by how close they come to linear scaling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MemtableConcurrentPutBenchmark {
+
+    @Param({"16"})
+    int keySize;
+
+    @Param({"100"})
+    int valueSize;
+
+    @Param({"UNIFORM"})
+    KeyDistribution distribution;
+
+    @Param({"1000000"})
+    long keyCount;
+
+    @Param({"1", "8", "32"})
+    int shards;
+
+    private SkipListMemtable memtable;
+    private byte[] value;
+
+    @State(Scope.Thread)
+    public static class ThreadOps {
+        KeyGenerator generator;
+
+        @Setup(Level.Trial)
+        public void setUp(MemtableConcurrentPutBenchmark benchmark) {
+            generator = new KeyGenerator(benchmark.distribution, benchmark.keyCount, Thread.currentThread().threadId());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        memtable = new SkipListMemtable(0, null, new Sequencer(), shards);
+        value = new byte[valueSize];
+    }
+
+    @Benchmark
+    public void put(ThreadOps ops) {
+        memtable.put(KeyGenerator.key(ops.generator.nextIndex(), keySize), value);
+    }
+}
@@ -0,0 +1,86 @@
+package io.sigstkflt.bench;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent mix of gets and puts against one shared memtable.
+ *
+ * The thread count comes from the runner, {@link BenchmarkMain} sweeps it from 1 to the number of
+ * cores. Half of the key space is loaded up front so that reads hit and overwrites happen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MemtableMixedBenchmark {
+
+    @Param({"16"})
+    int keySize;
+
+    @Param({"100"})
+    int valueSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"200000"})
+    long keyCount;
+
+    @Param({"50", "90", "99"})
+    int readPercent;
+
+    private SkipListMemtable memtable;
+    private byte[] value;
+
+    @State(Scope.Thread)
+    public static class ThreadOps {
+        KeyGenerator generator;
+        SplittableRandom random;
+        byte[] key;
+
+        @Setup(Level.Trial)
+        public void setUp(MemtableMixedBenchmark benchmark) {
+            long seed = Thread.currentThread().threadId();
+            generator = new KeyGenerator(benchmark.distribution, benchmark.keyCount, seed);
+            random = new SplittableRandom(seed * 31);
+            key = new byte[benchmark.keySize];
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        memtable = new SkipListMemtable(0);
+        value = new byte[valueSize];
+        for (long i = 0; i < keyCount; i += 2) {
+            memtable.put(KeyGenerator.key(i, keySize), value);
+        }
+    }
+
+    @Benchmark
+    public byte[] mixed(ThreadOps ops) {
+        long index = ops.generator.nextIndex();
+        if (ops.random.nextInt(100) < readPercent) {
+            KeyGenerator.encode(index, ops.key);
+            return memtable.get(ops.key);
+        }
+        memtable.put(KeyGenerator.key(index, keySize), value);
+        return value;
+    }
+}
@@ -0,0 +1,79 @@
+package io.sigstkflt.bench;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.memtable.WriteBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded {@link SkipListMemtable#put} into a memtable that is replaced every iteration,
+ * so the measured size stays within one memtable's worth of entries. {@link #putBatch()} writes
+ * the same entries through a {@link WriteBatch} and reports per entry throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MemtablePutBenchmark {
+
+    @Param({"16", "64"})
+    int keySize;
+
+    @Param({"100", "1024"})
+    int valueSize;
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"1000000"})
+    long keyCount;
+
+    private static final int BATCH_SIZE = 100;
+
+    private SkipListMemtable memtable;
+    private KeyGenerator generator;
+    private byte[] value;
+    private final WriteBatch batch = new WriteBatch();
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        generator = new KeyGenerator(distribution, keyCount, 42);
+        value = new byte[valueSize];
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        memtable = new SkipListMemtable(0);
+    }
+
+    @Benchmark
+    public void put() {
+        // The memtable keeps the key, a fresh array per put is part of the cost being measured
+        memtable.put(KeyGenerator.key(generator.nextIndex(), keySize), value);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void putBatch() {
+        batch.clear();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.put(KeyGenerator.key(generator.nextIndex(), keySize), value);
+        }
+        memtable.write(batch);
+    }
+}
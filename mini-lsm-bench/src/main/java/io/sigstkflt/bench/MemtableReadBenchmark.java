@@ -0,0 +1,128 @@
+package io.sigstkflt.bench;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.SkipListMemtable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups and scans over a memtable filled once per trial.
+ *
+ * Lookups hit present keys only, a ranged scan starts at a key drawn from the distribution and
+ * reads {@code rangeLength} entries. Full scans run through the iterator and through the cursor,
+ * which reuses its views instead of handing out an entry object per key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MemtableReadBenchmark {
+
+    @Param({"16", "64"})
+    int keySize;
+
+    @Param({"100", "1024"})
+    int valueSize;
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"100000"})
+    long keyCount;
+
+    @Param({"100"})
+    int rangeLength;
+
+    private SkipListMemtable memtable;
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        KeyGenerator generator;
+        byte[] key;
+        ByteBuffer value;
+
+        @Setup(Level.Trial)
+        public void setUp(MemtableReadBenchmark benchmark) {
+            generator = new KeyGenerator(benchmark.distribution, benchmark.keyCount, Thread.currentThread().threadId());
+            key = new byte[benchmark.keySize];
+            value = ByteBuffer.allocate(benchmark.valueSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        memtable = new SkipListMemtable(0);
+        byte[] value = new byte[valueSize];
+        for (long i = 0; i < keyCount; i++) {
+            memtable.put(KeyGenerator.key(i, keySize), value);
+        }
+    }
+
+    @Benchmark
+    public byte[] get(ThreadKeys keys) {
+        KeyGenerator.encode(keys.generator.nextIndex(), keys.key);
+        return memtable.get(keys.key);
+    }
+
+    /**
+     * Copies into a reused buffer, compare with {@link #get} for the cost of the returned copy
+     */
+    @Benchmark
+    public int getIntoBuffer(ThreadKeys keys) {
+        KeyGenerator.encode(keys.generator.nextIndex(), keys.key);
+        keys.value.clear();
+        return memtable.get(keys.key, keys.value);
+    }
+
+    @Benchmark
+    public void rangedScan(ThreadKeys keys, Blackhole blackhole) {
+        long first = keys.generator.nextIndex();
+        long last = Math.min(keyCount - 1, first + rangeLength - 1);
+        MemtableIterator iterator = memtable.iterator(KeyGenerator.key(first, keySize), KeyGenerator.key(last, keySize));
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long fullScan() {
+        long bytes = 0;
+        MemtableIterator iterator = memtable.iterator();
+        while (iterator.hasNext()) {
+            KeyValuePair pair = iterator.next();
+            bytes += pair.data().length;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long fullScanCursor() {
+        long bytes = 0;
+        for (Cursor cursor = memtable.cursor(); cursor.isValid(); cursor.next()) {
+            bytes += cursor.value().length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,28 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.version.Version;
+
+import java.util.List;
+
+/**
+ * Decides which tables to compact next and where the results go.
+ *
+ * Only one compaction runs at a time, so a picker may keep state between calls. Flushes can add
+ * level 0 tables while a task runs, {@link #apply} must therefore work on the version current at
+ * install time rather than the one the task was picked from.
+ */
+public interface CompactionPicker {
+
+    /**
+     * @return the next task, or null if the version is in shape
+     */
+    CompactionTask pick(Version version);
+
+    /**
+     * Builds the version replacing the task's inputs with its outputs
+     *
+     * @param outputs new tables ordered by key
+     */
+    Version apply(Version version, CompactionTask task, List<SsTableReader> outputs);
+}
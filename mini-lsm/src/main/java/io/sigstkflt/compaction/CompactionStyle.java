@@ -0,0 +1,18 @@
+package io.sigstkflt.compaction;
+
+/**
+ * How tables below level 0 are organised
+ */
+public enum CompactionStyle {
+    /**
+     * Each level is one sorted run about ten times larger than the one above, a table is merged
+     * into the overlapping tables of the next level. Low read and space amplification, more
+     * rewriting.
+     */
+    LEVELED,
+    /**
+     * Level 0 is merged into a new sorted run on top of the others, runs are only merged with
+     * each other once there are too many. Less rewriting, reads consult more runs.
+     */
+    TIERED
+}
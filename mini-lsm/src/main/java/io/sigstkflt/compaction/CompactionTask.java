@@ -0,0 +1,48 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.sstable.SsTableReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tables chosen by a {@link CompactionPicker} to be merged into one sorted run.
+ *
+ * @param inputs tables to merge grouped by level, newest data first
+ * @param outputLevel level receiving the merged tables
+ * @param bottommost whether no older data exists below the output, tombstones are dropped then
+ */
+public record CompactionTask(List<Input> inputs, int outputLevel, boolean bottommost) {
+
+    /**
+     * @param level level the tables come from, tables of level 0 may overlap each other while the
+     *              tables of any other level form a sorted run
+     */
+    public record Input(int level, List<SsTableReader> tables) {
+    }
+
+    public List<SsTableReader> inputTables() {
+        List<SsTableReader> tables = new ArrayList<>();
+        for (Input input : inputs) {
+            tables.addAll(input.tables());
+        }
+        return tables;
+    }
+
+    Set<SsTableReader> inputSet() {
+        Set<SsTableReader> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(inputTables());
+        return set;
+    }
+
+    public long inputSize() {
+        long size = 0;
+        for (SsTableReader table : inputTables()) {
+            size += table.fileSize();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,228 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.iterator.ConcatCursor;
+import io.sigstkflt.iterator.GarbageCollectingCursor;
+import io.sigstkflt.iterator.MergingCursor;
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.sstable.BlockCache;
+import io.sigstkflt.sstable.BlockCodec;
+import io.sigstkflt.sstable.SsTableBuilder;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.util.RateLimiter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+
+/**
+ * Executes compaction tasks by merging the input tables into new tables of bounded size.
+ *
+ * A task is cut into disjoint key ranges along the first keys of its input tables and every range
+ * is merged by its own subcompaction on a bounded worker pool. When the queue is full the
+ * submitting thread runs the subcompaction itself, so a task never waits on a pool it is starving.
+ * All table writes go through a shared {@link RateLimiter} to keep foreground latency flat.
+ * Output tables are compressed with the codec chosen for the task's output level.
+ */
+public class Compactor implements AutoCloseable {
+    private final Path dir;
+    private final IntSupplier idAllocator;
+    private final int blockSize;
+    private final int bitsPerKey;
+    private final IntFunction<BlockCodec> compression;
+    private final long targetFileSize;
+    private final int maxSubcompactions;
+    private final RateLimiter rateLimiter;
+    private final BlockCache blockCache;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * @param idAllocator hands out the ids naming the output tables
+     * @param compression codec for the tables written to a level, by level
+     * @param targetFileSize size at which an output table is finished and the next one started
+     * @param threads number of worker threads running subcompactions
+     * @param maxSubcompactions upper bound of key ranges a single task is split into
+     * @param blockCache block cache the output tables are opened with, may be null
+     */
+    public Compactor(Path dir, IntSupplier idAllocator, int blockSize, int bitsPerKey,
+                     IntFunction<BlockCodec> compression, long targetFileSize, int threads, int maxSubcompactions,
+                     RateLimiter rateLimiter, BlockCache blockCache) {
+        this.dir = dir;
+        this.idAllocator = idAllocator;
+        this.blockSize = blockSize;
+        this.bitsPerKey = bitsPerKey;
+        this.compression = compression;
+        this.targetFileSize = targetFileSize;
+        this.maxSubcompactions = Math.max(1, maxSubcompactions);
+        this.rateLimiter = rateLimiter;
+        this.blockCache = blockCache;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.maxSubcompactions),
+                Thread.ofPlatform().daemon().name("lsm-compaction-", 0).factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Merges the task's inputs keeping only the newest version of each key, the inputs are left untouched
+     *
+     * @return the new tables ordered by key, empty if every entry was a dropped tombstone
+     */
+    public List<SsTableReader> compact(CompactionTask task) throws IOException {
+        return compact(task, new long[0]);
+    }
+
+    /**
+     * Like {@link #compact(CompactionTask)} but also keeps the versions the snapshots can see
+     *
+     * @param snapshots sequence numbers of the open snapshots in ascending order
+     */
+    public List<SsTableReader> compact(CompactionTask task, long[] snapshots) throws IOException {
+        List<byte[]> boundaries = splitPoints(task);
+        List<Future<List<SsTableReader>>> futures = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            byte[] begin = i == 0 ? null : boundaries.get(i - 1);
+            byte[] end = i == boundaries.size() ? null : boundaries.get(i);
+            futures.add(workers.submit(() -> subcompact(task, snapshots, begin, end)));
+        }
+
+        List<SsTableReader> outputs = new ArrayList<>();
+        Throwable failure = null;
+        for (Future<List<SsTableReader>> future : futures) {
+            try {
+                outputs.addAll(future.get());
+            } catch (ExecutionException e) {
+                failure = failure == null ? e.getCause() : failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            discard(outputs);
+            if (failure instanceof IOException io) {
+                throw io;
+            }
+            if (failure instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Compaction failed", failure);
+        }
+        return outputs;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Merges the entries in [beginKey, endKey), a null key leaves that end open
+     */
+    private List<SsTableReader> subcompact(CompactionTask task, long[] snapshots, byte[] beginKey, byte[] endKey)
+            throws IOException {
+        List<Cursor> sources = new ArrayList<>();
+        for (CompactionTask.Input input : task.inputs()) {
+            if (input.level() == 0) {
+                for (SsTableReader table : input.tables()) {
+                    sources.add(table.cursor(beginKey, null));
+                }
+            } else if (!input.tables().isEmpty()) {
+                sources.add(new ConcatCursor(input.tables(), beginKey, null));
+            }
+        }
+        Cursor merged = new GarbageCollectingCursor(MergingCursor.allVersions(sources), snapshots, task.bottommost());
+        BlockCodec codec = compression.apply(task.outputLevel());
+
+        List<SsTableReader> outputs = new ArrayList<>();
+        SsTableBuilder builder = null;
+        int id = 0;
+        try {
+            for (; merged.isValid(); merged.next()) {
+                if (endKey != null && merged.key().compareTo(endKey) >= 0) {
+                    break;
+                }
+                // A key's versions stay in one table, so a level never has two tables holding the same key
+                if (builder != null && builder.estimatedSize() >= targetFileSize && !builder.isLastKey(merged.key())) {
+                    outputs.add(finish(builder, id));
+                    builder = null;
+                }
+                if (builder == null) {
+                    id = idAllocator.getAsInt();
+                    builder = new SsTableBuilder(SsTableFormat.path(dir, id), blockSize, bitsPerKey, codec,
+                            rateLimiter);
+                }
+                builder.add(merged);
+            }
+            if (builder != null) {
+                outputs.add(finish(builder, id));
+                builder = null;
+            }
+            return outputs;
+        } catch (IOException | RuntimeException e) {
+            if (builder != null) {
+                builder.close();
+                Files.deleteIfExists(SsTableFormat.path(dir, id));
+            }
+            discard(outputs);
+            throw e;
+        }
+    }
+
+    private SsTableReader finish(SsTableBuilder builder, int id) throws IOException {
+        builder.finish();
+        return SsTableReader.open(SsTableFormat.path(dir, id), id, blockCache);
+    }
+
+    /**
+     * Picks up to maxSubcompactions - 1 keys evenly spread over the first keys of the input tables
+     * of the deepest level, those tables bound most of the data being rewritten
+     */
+    private List<byte[]> splitPoints(CompactionTask task) {
+        if (maxSubcompactions == 1) {
+            return List.of();
+        }
+        List<SsTableReader> candidates = task.inputs().getLast().tables();
+        if (candidates.size() < 2) {
+            candidates = task.inputTables();
+        }
+        List<byte[]> keys = new ArrayList<>(candidates.size());
+        for (SsTableReader table : candidates) {
+            keys.add(table.firstKey());
+        }
+        keys.sort(Arrays::compareUnsigned);
+
+        // The smallest key starts the first range anyway
+        List<byte[]> points = new ArrayList<>();
+        int ranges = Math.min(maxSubcompactions, keys.size());
+        for (int i = 1; i < ranges; i++) {
+            byte[] key = keys.get(i * keys.size() / ranges);
+            if (points.isEmpty() || Arrays.compareUnsigned(points.getLast(), key) < 0) {
+                points.add(key);
+            }
+        }
+        return points;
+    }
+
+    private static void discard(List<SsTableReader> tables) throws IOException {
+        for (SsTableReader table : tables) {
+            table.close();
+            Files.deleteIfExists(table.getPath());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.version.Version;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leveled compaction in the style of LevelDB.
+ *
+ * Level 0 is merged into level 1 once it holds enough tables. Every other level has a target size
+ * growing by a fixed multiplier per level, the level furthest above its target gives up one table
+ * which is merged with the tables it overlaps one level down. Tables are taken round robin by key
+ * so that rewrites are spread over the whole key space.
+ */
+public class LeveledCompactionPicker implements CompactionPicker {
+    private static final Comparator<SsTableReader> BY_FIRST_KEY =
+            (a, b) -> Arrays.compareUnsigned(a.firstKey(), b.firstKey());
+
+    private final int level0Trigger;
+    private final long baseLevelSize;
+    private final int sizeMultiplier;
+    // Last key compacted out of each level, the next pick starts after it
+    private final byte[][] cursors;
+
+    /**
+     * @param levelCount number of levels below level 0
+     * @param level0Trigger number of level 0 tables that triggers a compaction into level 1
+     * @param baseLevelSize target size of level 1 in bytes
+     * @param sizeMultiplier growth of the target size from one level to the next
+     */
+    public LeveledCompactionPicker(int levelCount, int level0Trigger, long baseLevelSize, int sizeMultiplier) {
+        this.level0Trigger = level0Trigger;
+        this.baseLevelSize = baseLevelSize;
+        this.sizeMultiplier = sizeMultiplier;
+        this.cursors = new byte[levelCount + 1][];
+    }
+
+    @Override
+    public CompactionTask pick(Version version) {
+        List<SsTableReader> l0 = version.l0Tables();
+        if (l0.size() >= level0Trigger && version.levelCount() > 1) {
+            byte[] smallest = null;
+            byte[] largest = null;
+            for (SsTableReader table : l0) {
+                if (smallest == null || Arrays.compareUnsigned(table.firstKey(), smallest) < 0) {
+                    smallest = table.firstKey();
+                }
+                if (largest == null || Arrays.compareUnsigned(table.lastKey(), largest) > 0) {
+                    largest = table.lastKey();
+                }
+            }
+            List<SsTableReader> overlapping = Version.overlapping(version.tables(1), smallest, largest);
+            return new CompactionTask(List.of(new CompactionTask.Input(0, l0), new CompactionTask.Input(1, overlapping)),
+                    1, isBottommost(version, 1));
+        }
+
+        // The last level has nowhere to go
+        int level = 0;
+        double bestScore = 1.0;
+        long target = baseLevelSize;
+        for (int i = 1; i < version.levelCount() - 1; i++) {
+            double score = (double) version.levelSize(i) / target;
+            if (score > bestScore) {
+                bestScore = score;
+                level = i;
+            }
+            target *= sizeMultiplier;
+        }
+        if (level == 0) {
+            return null;
+        }
+
+        SsTableReader table = nextTable(version.tables(level), cursors[level]);
+        cursors[level] = table.lastKey();
+        List<SsTableReader> overlapping = Version.overlapping(version.tables(level + 1), table.firstKey(), table.lastKey());
+        return new CompactionTask(
+                List.of(new CompactionTask.Input(level, List.of(table)), new CompactionTask.Input(level + 1, overlapping)),
+                level + 1, isBottommost(version, level + 1));
+    }
+
+    @Override
+    public Version apply(Version version, CompactionTask task, List<SsTableReader> outputs) {
+        Set<SsTableReader> removed = task.inputSet();
+        List<SsTableReader> l0 = new ArrayList<>(version.l0Tables());
+        l0.removeAll(removed);
+
+        List<List<SsTableReader>> levels = new ArrayList<>(version.levels().size());
+        for (int i = 1; i < version.levelCount(); i++) {
+            List<SsTableReader> level = new ArrayList<>(version.tables(i));
+            level.removeAll(removed);
+            if (i == task.outputLevel()) {
+                level.addAll(outputs);
+                level.sort(BY_FIRST_KEY);
+            }
+            levels.add(List.copyOf(level));
+        }
+        return new Version(List.copyOf(l0), List.copyOf(levels));
+    }
+
+    /**
+     * First table starting after the cursor, wrapping around to the start of the level
+     */
+    private static SsTableReader nextTable(List<SsTableReader> level, byte[] cursor) {
+        if (cursor != null) {
+            for (SsTableReader table : level) {
+                if (Arrays.compareUnsigned(table.firstKey(), cursor) > 0) {
+                    return table;
+                }
+            }
+        }
+        return level.getFirst();
+    }
+
+    private static boolean isBottommost(Version version, int outputLevel) {
+        for (int i = outputLevel + 1; i < version.levelCount(); i++) {
+            if (!version.tables(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
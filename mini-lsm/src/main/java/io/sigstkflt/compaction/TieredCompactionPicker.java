@@ -0,0 +1,81 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.version.Version;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Size tiered compaction, levels below level 0 are sorted runs ordered newest first.
+ *
+ * Once level 0 holds enough tables they are merged into a new run placed on top of the existing
+ * ones, so the data written by a flush is rewritten once per merge instead of once per level. When
+ * the number of runs exceeds the limit every run is merged into one, which also bounds the space
+ * taken by overwritten and deleted keys.
+ */
+public class TieredCompactionPicker implements CompactionPicker {
+    private final int maxRuns;
+    private final int level0Trigger;
+
+    /**
+     * @param maxRuns number of sorted runs tolerated before they are merged together
+     * @param level0Trigger number of level 0 tables that triggers a merge into a new run
+     */
+    public TieredCompactionPicker(int maxRuns, int level0Trigger) {
+        this.maxRuns = maxRuns;
+        this.level0Trigger = level0Trigger;
+    }
+
+    @Override
+    public CompactionTask pick(Version version) {
+        List<List<SsTableReader>> runs = version.levels();
+        if (runs.size() > maxRuns) {
+            List<CompactionTask.Input> inputs = new ArrayList<>(runs.size());
+            for (int i = 0; i < runs.size(); i++) {
+                inputs.add(new CompactionTask.Input(i + 1, runs.get(i)));
+            }
+            return new CompactionTask(List.copyOf(inputs), 1, true);
+        }
+        if (version.l0Tables().size() >= level0Trigger) {
+            return new CompactionTask(List.of(new CompactionTask.Input(0, version.l0Tables())), 1, runs.isEmpty());
+        }
+        return null;
+    }
+
+    /**
+     * Removes the merged runs and inserts the output as a new run where the newest of them was.
+     * Only flushes change the version while a task runs and they only touch level 0, so the run
+     * positions recorded in the task still hold.
+     */
+    @Override
+    public Version apply(Version version, CompactionTask task, List<SsTableReader> outputs) {
+        Set<SsTableReader> removed = task.inputSet();
+        List<SsTableReader> l0 = new ArrayList<>(version.l0Tables());
+        l0.removeAll(removed);
+
+        List<List<SsTableReader>> runs = new ArrayList<>();
+        for (int i = 1; i < version.levelCount(); i++) {
+            if (i == task.outputLevel() && !outputs.isEmpty()) {
+                runs.add(List.copyOf(outputs));
+            }
+            if (!isMergedRun(task, i)) {
+                runs.add(version.tables(i));
+            }
+        }
+        if (task.outputLevel() == version.levelCount() && !outputs.isEmpty()) {
+            runs.add(List.copyOf(outputs));
+        }
+        return new Version(List.copyOf(l0), List.copyOf(runs));
+    }
+
+    private static boolean isMergedRun(CompactionTask task, int level) {
+        for (CompactionTask.Input input : task.inputs()) {
+            if (input.level() == level) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
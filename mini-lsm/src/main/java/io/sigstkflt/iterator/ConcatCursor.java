@@ -0,0 +1,120 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.Slice;
+import io.sigstkflt.sstable.SsTableReader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over a sorted run of tables whose key ranges do not overlap, one table at a time.
+ *
+ * A level holds many tables but only one of them is open at any point, so a scan over a level
+ * costs a single heap entry in {@link MergingCursor} instead of one per table.
+ */
+public class ConcatCursor implements Cursor {
+    private final List<SsTableReader> tables;
+    private final byte[] beginKey;
+    private final byte[] endKey;
+    private int tableIndex;
+    private Cursor current;
+
+    /**
+     * @param tables tables ordered by key with disjoint ranges
+     * @param beginKey first key to visit, inclusive, or null to start at the first table
+     * @param endKey last key to visit, inclusive, or null to run to the last table
+     */
+    public ConcatCursor(List<SsTableReader> tables, byte[] beginKey, byte[] endKey) {
+        this.tables = tables;
+        this.beginKey = beginKey;
+        this.endKey = endKey;
+        position(beginKey);
+    }
+
+    @Override
+    public boolean isValid() {
+        return current != null;
+    }
+
+    @Override
+    public void next() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        current.next();
+        if (!current.isValid()) {
+            openNext(null);
+        }
+    }
+
+    @Override
+    public void seek(byte[] key) {
+        position(beginKey != null && Arrays.compareUnsigned(key, beginKey) < 0 ? beginKey : key);
+    }
+
+    @Override
+    public Slice key() {
+        return current.key();
+    }
+
+    @Override
+    public Slice value() {
+        return current.value();
+    }
+
+    @Override
+    public long sequence() {
+        return current.sequence();
+    }
+
+    @Override
+    public boolean isTombstone() {
+        return current.isTombstone();
+    }
+
+    private void position(byte[] key) {
+        tableIndex = firstTable(tables, key);
+        openNext(key);
+    }
+
+    /**
+     * Opens the tables from tableIndex on until one of them has an entry in range
+     */
+    private void openNext(byte[] key) {
+        current = null;
+        while (tableIndex < tables.size()) {
+            SsTableReader table = tables.get(tableIndex++);
+            if (endKey != null && Arrays.compareUnsigned(table.firstKey(), endKey) > 0) {
+                tableIndex = tables.size();
+                return;
+            }
+            Cursor cursor = table.cursor(key, endKey);
+            if (cursor.isValid()) {
+                current = cursor;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Binary searches for the first table whose last key is not below the key
+     */
+    private static int firstTable(List<SsTableReader> tables, byte[] key) {
+        if (key == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = tables.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(tables.get(mid).lastKey(), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
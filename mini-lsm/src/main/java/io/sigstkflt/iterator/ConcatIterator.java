@@ -0,0 +1,22 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.CursorIterator;
+import io.sigstkflt.sstable.SsTableReader;
+
+import java.util.List;
+
+/**
+ * Iterates the newest version of every key in a sorted run of tables whose key ranges do not
+ * overlap, see {@link ConcatCursor}.
+ */
+public class ConcatIterator extends CursorIterator {
+
+    /**
+     * @param tables tables ordered by key with disjoint ranges
+     * @param beginKey first key to return, inclusive, or null to start at the first table
+     * @param endKey last key to return, inclusive, or null to run to the last table
+     */
+    public ConcatIterator(List<SsTableReader> tables, byte[] beginKey, byte[] endKey) {
+        super(new MergingCursor(List.of(new ConcatCursor(tables, beginKey, endKey)), true));
+    }
+}
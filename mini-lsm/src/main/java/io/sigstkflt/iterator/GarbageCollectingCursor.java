@@ -0,0 +1,103 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.Slice;
+
+import java.util.Arrays;
+
+/**
+ * Drops the versions no reader can see from a cursor over every version, for flushes and
+ * compactions.
+ *
+ * Open snapshots cut the sequence numbers into stripes, the stripe of a version being the oldest
+ * snapshot that can see it, or none above the newest snapshot. A reader sees the newest version of
+ * a key in its own stripe or below, so only that version of each stripe is kept. Reads that hold
+ * no snapshot start at the visible sequence, which is past every flushed version, and see the
+ * newest version overall. A tombstone in the lowest stripe hides the key from every reader, it is
+ * dropped together with everything older once nothing lies below the output.
+ */
+public class GarbageCollectingCursor implements Cursor {
+    private final Cursor source;
+    private final long[] snapshots;
+    private final boolean dropTombstones;
+    private final Slice previousKey = new Slice();
+    private boolean hasPrevious;
+    private int previousStripe;
+
+    /**
+     * @param source cursor over every version, ordered by key and then newest first
+     * @param snapshots sequence numbers of the open snapshots in ascending order
+     * @param dropTombstones whether the output is the bottommost data for its keys
+     */
+    public GarbageCollectingCursor(Cursor source, long[] snapshots, boolean dropTombstones) {
+        this.source = source;
+        this.snapshots = snapshots;
+        this.dropTombstones = dropTombstones;
+        settle();
+    }
+
+    @Override
+    public boolean isValid() {
+        return source.isValid();
+    }
+
+    @Override
+    public void next() {
+        source.next();
+        settle();
+    }
+
+    @Override
+    public void seek(byte[] key) {
+        source.seek(key);
+        hasPrevious = false;
+        settle();
+    }
+
+    @Override
+    public Slice key() {
+        return source.key();
+    }
+
+    @Override
+    public Slice value() {
+        return source.value();
+    }
+
+    @Override
+    public long sequence() {
+        return source.sequence();
+    }
+
+    @Override
+    public boolean isTombstone() {
+        return source.isTombstone();
+    }
+
+    private void settle() {
+        while (source.isValid()) {
+            int stripe = stripe(source.sequence());
+            boolean sameKey = hasPrevious && source.key().compareTo(previousKey) == 0;
+            if (sameKey && stripe == previousStripe) {
+                // A newer version in the same stripe hides this one from every reader
+                source.next();
+                continue;
+            }
+            if (!sameKey) {
+                previousKey.copyFrom(source.key());
+                hasPrevious = true;
+            }
+            previousStripe = stripe;
+            if (dropTombstones && stripe == 0 && source.isTombstone()) {
+                source.next();
+                continue;
+            }
+            return;
+        }
+    }
+
+    private int stripe(long sequence) {
+        int index = Arrays.binarySearch(snapshots, sequence);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -0,0 +1,178 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * {@link MergingIterator} for cursors, each key is visited once with its newest version as of a
+ * sequence number.
+ *
+ * Sources sit in an array backed heap ordered by key, then sequence number descending, then
+ * source index, so the first version of a key at or below the read sequence that reaches the top
+ * is the one a read sees. The merged cursor stands on that source and exposes its views, nothing
+ * is copied. Moving on advances every source past the key, the key is kept in a reused slice while
+ * its own source moves, so a merge allocates nothing after construction.
+ */
+public class MergingCursor implements Cursor {
+    private final List<Source> sources;
+    private final PriorityQueue<Source> heap;
+    private final long sequence;
+    private final boolean keepTombstones;
+    private final boolean allVersions;
+    private final Slice skipped = new Slice();
+    private Source current;
+
+    /**
+     * Merges the newest version of every key
+     */
+    public MergingCursor(List<? extends Cursor> sources, boolean keepTombstones) {
+        this(sources, Long.MAX_VALUE, keepTombstones);
+    }
+
+    /**
+     * @param sources cursors ordered newest first, a source wins ties between equal sequence numbers
+     *                over the sources after it
+     * @param sequence versions written after this sequence number are not visited
+     * @param keepTombstones whether tombstones are visited, compaction into a level that still has
+     *                       data below it must keep them
+     */
+    public MergingCursor(List<? extends Cursor> sources, long sequence, boolean keepTombstones) {
+        this(sources, sequence, keepTombstones, false);
+    }
+
+    private MergingCursor(List<? extends Cursor> sources, long sequence, boolean keepTombstones,
+                          boolean allVersions) {
+        this.sequence = sequence;
+        this.keepTombstones = keepTombstones;
+        this.allVersions = allVersions;
+        this.sources = new ArrayList<>(sources.size());
+        this.heap = new PriorityQueue<>(Math.max(1, sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            this.sources.add(new Source(i, sources.get(i)));
+        }
+        rebuild();
+    }
+
+    /**
+     * Visits every version of every key in order, tombstones included, for flushes and compactions
+     * that decide for themselves which versions to keep
+     */
+    public static MergingCursor allVersions(List<? extends Cursor> sources) {
+        return new MergingCursor(sources, Long.MAX_VALUE, true, true);
+    }
+
+    @Override
+    public boolean isValid() {
+        return current != null;
+    }
+
+    @Override
+    public void next() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        if (allVersions) {
+            advance(heap.poll());
+        } else {
+            skipKey();
+        }
+        settle();
+    }
+
+    @Override
+    public void seek(byte[] key) {
+        for (Source source : sources) {
+            source.cursor.seek(key);
+        }
+        rebuild();
+    }
+
+    @Override
+    public Slice key() {
+        return current.cursor.key();
+    }
+
+    @Override
+    public Slice value() {
+        return current.cursor.value();
+    }
+
+    @Override
+    public long sequence() {
+        return current.cursor.sequence();
+    }
+
+    @Override
+    public boolean isTombstone() {
+        return current.cursor.isTombstone();
+    }
+
+    private void rebuild() {
+        heap.clear();
+        for (Source source : sources) {
+            if (source.cursor.isValid()) {
+                heap.add(source);
+            }
+        }
+        settle();
+    }
+
+    /**
+     * Skips versions newer than the read sequence and, unless they are kept, deleted keys
+     */
+    private void settle() {
+        while (!allVersions && !heap.isEmpty()) {
+            Source top = heap.peek();
+            if (top.cursor.sequence() > sequence) {
+                advance(heap.poll());
+            } else if (!keepTombstones && top.cursor.isTombstone()) {
+                skipKey();
+            } else {
+                break;
+            }
+        }
+        current = heap.peek();
+    }
+
+    /**
+     * Moves every source past the key at the top of the heap
+     */
+    private void skipKey() {
+        skipped.copyFrom(heap.peek().cursor.key());
+        while (!heap.isEmpty() && heap.peek().cursor.key().compareTo(skipped) == 0) {
+            advance(heap.poll());
+        }
+    }
+
+    private void advance(Source source) {
+        source.cursor.next();
+        if (source.cursor.isValid()) {
+            heap.add(source);
+        }
+    }
+
+    private static final class Source implements Comparable<Source> {
+        private final int priority;
+        private final Cursor cursor;
+
+        Source(int priority, Cursor cursor) {
+            this.priority = priority;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            int cmp = cursor.key().compareTo(o.cursor.key());
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Long.compare(o.cursor.sequence(), cursor.sequence());
+            return cmp != 0 ? cmp : Integer.compare(priority, o.priority);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge over sorted iterators, each key is returned once with its newest version.
+ *
+ * Sources are given newest first, when several sources hold the same key the one with the lowest
+ * index wins and the older versions are skipped. The sources sit in a binary heap ordered by their
+ * current key, so each step costs O(log k) for k sources.
+ */
+public class MergingIterator implements MemtableIterator {
+    private final PriorityQueue<Source> heap;
+    private final boolean keepTombstones;
+    private KeyValuePair next;
+
+    /**
+     * Merges the sources and drops deleted keys, as a user facing scan would
+     */
+    public MergingIterator(List<? extends MemtableIterator> sources) {
+        this(sources, false);
+    }
+
+    /**
+     * @param sources iterators ordered newest first
+     * @param keepTombstones whether tombstones are returned, compaction into a level that still has
+     *                       data below it must keep them
+     */
+    public MergingIterator(List<? extends MemtableIterator> sources, boolean keepTombstones) {
+        this.keepTombstones = keepTombstones;
+        this.heap = new PriorityQueue<>(Math.max(1, sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            MemtableIterator iterator = sources.get(i);
+            if (iterator.hasNext()) {
+                heap.add(new Source(i, iterator, iterator.next()));
+            }
+        }
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public KeyValuePair next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        KeyValuePair result = next;
+        advance();
+        return result;
+    }
+
+    private void advance() {
+        next = null;
+        while (next == null && !heap.isEmpty()) {
+            Source newest = heap.poll();
+            KeyValuePair candidate = newest.current;
+
+            // Older versions of the same key sit at the top of the heap now
+            while (!heap.isEmpty() && compareKeys(heap.peek().current, candidate) == 0) {
+                Source older = heap.poll();
+                if (older.moveNext()) {
+                    heap.add(older);
+                }
+            }
+            if (newest.moveNext()) {
+                heap.add(newest);
+            }
+
+            if (keepTombstones || !candidate.isTombstone()) {
+                next = candidate;
+            }
+        }
+    }
+
+    /**
+     * Compares user keys only, versions of a key from different sources count as the same key
+     */
+    private static int compareKeys(KeyValuePair a, KeyValuePair b) {
+        return Arrays.compareUnsigned(a.keyWrapper().getValue(), b.keyWrapper().getValue());
+    }
+
+    private static final class Source implements Comparable<Source> {
+        private final int priority;
+        private final MemtableIterator iterator;
+        private KeyValuePair current;
+
+        Source(int priority, MemtableIterator iterator, KeyValuePair current) {
+            this.priority = priority;
+            this.iterator = iterator;
+            this.current = current;
+        }
+
+        boolean moveNext() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            current = iterator.next();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            int cmp = compareKeys(current, o.current);
+            return cmp != 0 ? cmp : Integer.compare(priority, o.priority);
+        }
+    }
+}
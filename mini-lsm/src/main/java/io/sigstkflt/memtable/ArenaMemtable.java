@@ -0,0 +1,455 @@
+package io.sigstkflt.memtable;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memtable that keeps keys, values and the skiplist nodes indexing them in one off-heap slab.
+ *
+ * The slab is bump allocated and never reused, so {@link #retainedSize()} is the exact number of
+ * arena bytes handed out, values replaced by an overwrite included. Writers are serialized by a
+ * lock and publish fully written nodes behind a release fence, readers walk the skiplist without
+ * locking.
+ *
+ * Node layout (offsets in bytes, all nodes 8 byte aligned):
+ * <pre>
+ *  0  long  value reference (value offset &lt;&lt; 32 | value length), length -1 marks a tombstone
+ *  8  int   key length
+ * 12  int   height
+ * 16  int[] next offsets, one per level
+ *  .. key bytes
+ * </pre>
+ * Offset 0 is reserved so that it can be used as the null link.
+ */
+public class ArenaMemtable implements Memtable, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 64 * 1024 * 1024;
+
+    private static final int MAX_HEIGHT = 12;
+    private static final int BRANCHING = 4;
+
+    private static final long VALUE_REF = 0;
+    private static final long KEY_LENGTH = 8;
+    private static final long HEIGHT = 12;
+    private static final long NEXT = 16;
+
+    private final int id;
+    private final Arena arena;
+    private final MemorySegment slab;
+    private final int capacity;
+    private final int head;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final int[] preds = new int[MAX_HEIGHT];
+
+    private volatile int allocated;
+    private volatile int height = 1;
+    // Written under the write lock
+    private volatile long logicalSize;
+
+    public ArenaMemtable(int id) {
+        this(id, DEFAULT_CAPACITY);
+    }
+
+    public ArenaMemtable(int id, int capacity) {
+        this.id = id;
+        this.capacity = capacity;
+        this.arena = Arena.ofShared();
+        this.slab = arena.allocate(capacity, Long.BYTES);
+        this.allocated = Long.BYTES;
+        this.head = allocate(nodeSize(MAX_HEIGHT, 0), Long.BYTES);
+        slab.set(ValueLayout.JAVA_INT, head + HEIGHT, MAX_HEIGHT);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] value = lookup(key);
+        return value == KeyValuePair.TOMBSTONE ? null : value;
+    }
+
+    @Override
+    public int get(byte[] key, ByteBuffer dst) {
+        long ref = find(MemorySegment.ofArray(key));
+        int length = valueLength(ref);
+        if (ref == 0 || length == -1) {
+            return -1;
+        }
+        if (dst.remaining() >= length) {
+            MemorySegment.copy(slab, valueOffset(ref), MemorySegment.ofBuffer(dst), 0, length);
+            dst.position(dst.position() + length);
+        }
+        return length;
+    }
+
+    /**
+     * Copies the value to the start of dst, the off-heap counterpart of {@link #get(byte[], ByteBuffer)}
+     * @return length of the value, or -1 if the key is absent or deleted. Nothing is copied when
+     * dst is smaller than the value.
+     */
+    public long get(byte[] key, MemorySegment dst) {
+        long ref = find(MemorySegment.ofArray(key));
+        int length = valueLength(ref);
+        if (ref == 0 || length == -1) {
+            return -1;
+        }
+        if (dst.byteSize() >= length) {
+            MemorySegment.copy(slab, valueOffset(ref), dst, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * The view points into the arena and is only valid until {@link #close()}
+     */
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        long ref = find(MemorySegment.ofArray(key));
+        int length = valueLength(ref);
+        if (ref == 0 || length == -1) {
+            return null;
+        }
+        return slab.asSlice(valueOffset(ref), length).asByteBuffer().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] lookup(byte[] key) {
+        long ref = find(MemorySegment.ofArray(key));
+        return ref == 0 ? null : value(ref);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        put(MemorySegment.ofArray(key), value == KeyValuePair.TOMBSTONE ? null : MemorySegment.ofArray(value));
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        put(MemorySegment.ofBuffer(key), MemorySegment.ofBuffer(value));
+    }
+
+    /**
+     * Copies key and value straight into the arena
+     * @param value the value, or null to record a tombstone
+     */
+    public void put(MemorySegment key, MemorySegment value) {
+        long valueSize = value == null ? 0 : value.byteSize();
+        writeLock.lock();
+        try {
+            int node = findGreaterOrEqual(key, preds);
+            if (node != 0 && compare(node, key) == 0) {
+                ensureCapacity(valueSize);
+                long ref = writeValue(value);
+                long replaced = valueLength(slab.get(ValueLayout.JAVA_LONG, node + VALUE_REF));
+                VarHandle.releaseFence();
+                slab.set(ValueLayout.JAVA_LONG, node + VALUE_REF, ref);
+                logicalSize += valueSize - Math.max(replaced, 0);
+                return;
+            }
+
+            int nodeHeight = randomHeight();
+            int keyLength = (int) key.byteSize();
+            ensureCapacity(nodeSize(nodeHeight, keyLength) + Long.BYTES + valueSize);
+            long ref = writeValue(value);
+            node = allocate(nodeSize(nodeHeight, keyLength), Long.BYTES);
+            slab.set(ValueLayout.JAVA_LONG, node + VALUE_REF, ref);
+            slab.set(ValueLayout.JAVA_INT, node + KEY_LENGTH, keyLength);
+            slab.set(ValueLayout.JAVA_INT, node + HEIGHT, nodeHeight);
+            MemorySegment.copy(key, 0, slab, keyOffset(node), keyLength);
+            for (int level = 0; level < nodeHeight; level++) {
+                setNext(node, level, next(preds[level], level));
+            }
+
+            // Everything above must be visible before the node becomes reachable
+            VarHandle.releaseFence();
+            for (int level = 0; level < nodeHeight; level++) {
+                setNext(preds[level], level, node);
+            }
+            if (nodeHeight > height) {
+                height = nodeHeight;
+            }
+            logicalSize += keyLength + valueSize;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        put(key, KeyValuePair.TOMBSTONE);
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public long logicalSize() {
+        return logicalSize;
+    }
+
+    /**
+     * Exact number of slab bytes in use, including the reserved null slot and the head node
+     */
+    @Override
+    public long retainedSize() {
+        return allocated;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public MemtableIterator iterator() {
+        return new ArenaIterator(next(head, 0));
+    }
+
+    public Cursor cursor() {
+        return cursor(null, null);
+    }
+
+    /**
+     * Cursor over the keys between beginKey and endKey, both inclusive, a null key leaves that end
+     * open. Keys and values are copied out of the arena into the cursor's slices.
+     */
+    public Cursor cursor(byte[] beginKey, byte[] endKey) {
+        return new ArenaCursor(beginKey, endKey);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Walks down from the highest level and returns the first node whose key is greater than
+     * or equal to the given key, or 0. When {@code predecessors} is given, the last node visited
+     * on every level is recorded in it so that a writer can link a new node after them.
+     */
+    private int findGreaterOrEqual(MemorySegment key, int[] predecessors) {
+        int x = head;
+        int next = 0;
+        int level = predecessors == null ? height - 1 : MAX_HEIGHT - 1;
+        for (; level >= 0; level--) {
+            next = next(x, level);
+            while (next != 0 && compare(next, key) < 0) {
+                x = next;
+                next = next(x, level);
+            }
+            if (predecessors != null) {
+                predecessors[level] = x;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return value reference of the key, or 0 if it is absent
+     */
+    private long find(MemorySegment key) {
+        int node = findGreaterOrEqual(key, null);
+        if (node == 0 || compare(node, key) != 0) {
+            return 0;
+        }
+        return valueRef(node);
+    }
+
+    private int compare(int node, MemorySegment key) {
+        long start = keyOffset(node);
+        int keyLength = slab.get(ValueLayout.JAVA_INT, node + KEY_LENGTH);
+        long mismatch = MemorySegment.mismatch(slab, start, start + keyLength, key, 0, key.byteSize());
+        if (mismatch == -1) {
+            return 0;
+        }
+        if (mismatch == keyLength) {
+            return -1;
+        }
+        if (mismatch == key.byteSize()) {
+            return 1;
+        }
+        return Byte.compareUnsigned(slab.get(ValueLayout.JAVA_BYTE, start + mismatch),
+                key.get(ValueLayout.JAVA_BYTE, mismatch));
+    }
+
+    private int next(int node, int level) {
+        int next = slab.get(ValueLayout.JAVA_INT, node + NEXT + (long) level * Integer.BYTES);
+        VarHandle.acquireFence();
+        return next;
+    }
+
+    private void setNext(int node, int level, int next) {
+        slab.set(ValueLayout.JAVA_INT, node + NEXT + (long) level * Integer.BYTES, next);
+    }
+
+    private long valueRef(int node) {
+        long ref = slab.get(ValueLayout.JAVA_LONG, node + VALUE_REF);
+        VarHandle.acquireFence();
+        return ref;
+    }
+
+    private byte[] value(long ref) {
+        int length = valueLength(ref);
+        if (length == -1) {
+            return KeyValuePair.TOMBSTONE;
+        }
+        return slab.asSlice(valueOffset(ref), length).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    /**
+     * @param value the value, or null for a tombstone
+     */
+    private long writeValue(MemorySegment value) {
+        if (value == null) {
+            return 0xFFFFFFFFL;
+        }
+        int length = (int) value.byteSize();
+        int offset = allocate(length, 1);
+        MemorySegment.copy(value, 0, slab, offset, length);
+        return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    private int allocate(int size, int alignment) {
+        int offset = (allocated + alignment - 1) & -alignment;
+        if ((long) offset + size > capacity) {
+            throw new IllegalStateException("Memtable " + id + " arena is full");
+        }
+        allocated = offset + size;
+        return offset;
+    }
+
+    private void ensureCapacity(long bytes) {
+        if (allocated + bytes + Long.BYTES > capacity) {
+            throw new IllegalStateException("Memtable " + id + " arena is full");
+        }
+    }
+
+    private long keyOffset(int node) {
+        int nodeHeight = slab.get(ValueLayout.JAVA_INT, node + HEIGHT);
+        return node + NEXT + (long) nodeHeight * Integer.BYTES;
+    }
+
+    private static int nodeSize(int height, int keyLength) {
+        return (int) NEXT + height * Integer.BYTES + keyLength;
+    }
+
+    private static int valueOffset(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    private static int valueLength(long ref) {
+        return (int) ref;
+    }
+
+    private static int randomHeight() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int height = 1;
+        while (height < MAX_HEIGHT && random.nextInt(BRANCHING) == 0) {
+            height++;
+        }
+        return height;
+    }
+
+    private class ArenaIterator implements MemtableIterator {
+        private int node;
+
+        ArenaIterator(int node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return node != 0;
+        }
+
+        @Override
+        public KeyValuePair next() {
+            if (node == 0) {
+                throw new NoSuchElementException();
+            }
+            int keyLength = slab.get(ValueLayout.JAVA_INT, node + KEY_LENGTH);
+            byte[] key = slab.asSlice(keyOffset(node), keyLength).toArray(ValueLayout.JAVA_BYTE);
+            byte[] value = value(valueRef(node));
+            node = ArenaMemtable.this.next(node, 0);
+            return new KeyValuePair(new ByteArrayWrapper(key), value);
+        }
+    }
+
+    private class ArenaCursor implements Cursor {
+        private final byte[] beginKey;
+        private final MemorySegment endKey;
+        private final Slice key = new Slice();
+        private final Slice value = new Slice();
+        private int node;
+        private boolean tombstone;
+
+        ArenaCursor(byte[] beginKey, byte[] endKey) {
+            this.beginKey = beginKey;
+            this.endKey = endKey == null ? null : MemorySegment.ofArray(endKey);
+            position(beginKey == null ? ArenaMemtable.this.next(head, 0) : findGreaterOrEqual(MemorySegment.ofArray(beginKey), null));
+        }
+
+        @Override
+        public boolean isValid() {
+            return node != 0;
+        }
+
+        @Override
+        public void next() {
+            if (node == 0) {
+                throw new NoSuchElementException();
+            }
+            position(ArenaMemtable.this.next(node, 0));
+        }
+
+        @Override
+        public void seek(byte[] target) {
+            if (beginKey != null && Arrays.compareUnsigned(target, beginKey) < 0) {
+                target = beginKey;
+            }
+            position(findGreaterOrEqual(MemorySegment.ofArray(target), null));
+        }
+
+        @Override
+        public Slice key() {
+            return key;
+        }
+
+        @Override
+        public Slice value() {
+            return value;
+        }
+
+        /**
+         * The arena keeps a single version per key and records no sequence numbers
+         */
+        @Override
+        public long sequence() {
+            return 0;
+        }
+
+        @Override
+        public boolean isTombstone() {
+            return tombstone;
+        }
+
+        private void position(int next) {
+            node = next != 0 && (endKey == null || compare(next, endKey) <= 0) ? next : 0;
+            if (node == 0) {
+                return;
+            }
+            key.copyFrom(slab, keyOffset(node), slab.get(ValueLayout.JAVA_INT, node + KEY_LENGTH));
+            long ref = valueRef(node);
+            tombstone = valueLength(ref) == -1;
+            if (tombstone) {
+                value.clear();
+            } else {
+                value.copyFrom(slab, valueOffset(ref), valueLength(ref));
+            }
+        }
+    }
+}
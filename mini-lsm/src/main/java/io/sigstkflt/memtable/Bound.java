@@ -0,0 +1,95 @@
+package io.sigstkflt.memtable;
+
+import java.util.Arrays;
+
+/**
+ * One end of a key range: a key that is included or excluded, or no limit at all.
+ * Bounds keep the array they are given, the caller should not change it afterwards.
+ */
+public final class Bound {
+    private static final Bound UNBOUNDED = new Bound(null, false);
+
+    private final byte[] key;
+    private final boolean inclusive;
+
+    private Bound(byte[] key, boolean inclusive) {
+        this.key = key;
+        this.inclusive = inclusive;
+    }
+
+    public static Bound included(byte[] key) {
+        return new Bound(requireKey(key), true);
+    }
+
+    public static Bound excluded(byte[] key) {
+        return new Bound(requireKey(key), false);
+    }
+
+    public static Bound unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * @return the key, or null if the range is open at this end
+     */
+    public byte[] key() {
+        return key;
+    }
+
+    public boolean isInclusive() {
+        return inclusive;
+    }
+
+    public boolean isUnbounded() {
+        return key == null;
+    }
+
+    /**
+     * Of two lower bounds the one that lets fewer keys through
+     */
+    static Bound tighterLower(Bound a, Bound b) {
+        if (a.isUnbounded()) {
+            return b;
+        }
+        if (b.isUnbounded()) {
+            return a;
+        }
+        int cmp = Arrays.compareUnsigned(a.key, b.key);
+        if (cmp != 0) {
+            return cmp > 0 ? a : b;
+        }
+        return a.inclusive ? b : a;
+    }
+
+    /**
+     * Of two upper bounds the one that lets fewer keys through
+     */
+    static Bound tighterUpper(Bound a, Bound b) {
+        if (a.isUnbounded()) {
+            return b;
+        }
+        if (b.isUnbounded()) {
+            return a;
+        }
+        int cmp = Arrays.compareUnsigned(a.key, b.key);
+        if (cmp != 0) {
+            return cmp < 0 ? a : b;
+        }
+        return a.inclusive ? b : a;
+    }
+
+    private static byte[] requireKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Bound key must not be null, use unbounded()");
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        if (key == null) {
+            return "Unbounded";
+        }
+        return (inclusive ? "Included" : "Excluded") + Arrays.toString(key);
+    }
+}
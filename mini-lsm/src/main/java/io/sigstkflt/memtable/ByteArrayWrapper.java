@@ -1,36 +1,95 @@
 package io.sigstkflt.memtable;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.util.Arrays;
-import java.util.Objects;
 
 /**
  * This class is created to avoid passing custom comparator
  * If using byte[], we need to pass custom Comparator
+ *
+ * The first eight bytes of the key are cached as a big endian long, zero padded for shorter keys,
+ * so that an unsigned comparison of the prefixes orders most pairs of keys without touching
+ * their arrays. Only keys with equal prefixes fall back to the vectorized array comparison,
+ * which then skips the bytes the prefixes already matched. The hash code is cached as well.
  */
 public class ByteArrayWrapper implements Comparable<ByteArrayWrapper> {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private byte[] value;
+    private long prefix;
+    // 0 until computed, like String
+    private int hash;
+
     public ByteArrayWrapper(byte[] value) {
         this.value = value;
+        this.prefix = value == null ? 0 : prefix(value);
+    }
+
+    /**
+     * Points a reusable probe key at another key
+     */
+    void reset(byte[] value) {
+        this.value = value;
+        this.prefix = value == null ? 0 : prefix(value);
+        this.hash = 0;
     }
 
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
-        ByteArrayWrapper that = (ByteArrayWrapper) o;
-        return Objects.deepEquals(value, that.value);
+        return keyEquals((ByteArrayWrapper) o);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(value);
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(value);
+            hash = h;
+        }
+        return h;
     }
 
     @Override
     public int compareTo(ByteArrayWrapper o) {
-        return Arrays.compareUnsigned(this.value, o.value);
+        return compareKey(o);
     }
 
     public byte[] getValue() {
         return value;
     }
+
+    /**
+     * Unsigned comparison of the wrapped keys, see the class comment
+     */
+    final int compareKey(ByteArrayWrapper o) {
+        if (prefix != o.prefix) {
+            return Long.compareUnsigned(prefix, o.prefix);
+        }
+        byte[] other = o.value;
+        if (value.length >= Long.BYTES && other.length >= Long.BYTES) {
+            return Arrays.compareUnsigned(value, Long.BYTES, value.length, other, Long.BYTES, other.length);
+        }
+        return Arrays.compareUnsigned(value, other);
+    }
+
+    final boolean keyEquals(ByteArrayWrapper o) {
+        return prefix == o.prefix && Arrays.equals(value, o.value);
+    }
+
+    /**
+     * The first eight bytes of the key as a big endian long, missing bytes are zero
+     */
+    static long prefix(byte[] key) {
+        if (key.length >= Long.BYTES) {
+            return (long) LONG.get(key, 0);
+        }
+        long prefix = 0;
+        for (int i = 0; i < key.length; i++) {
+            prefix |= (key[i] & 0xFFL) << (56 - 8 * i);
+        }
+        return prefix;
+    }
 }
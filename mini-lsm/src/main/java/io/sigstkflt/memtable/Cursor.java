@@ -0,0 +1,45 @@
+package io.sigstkflt.memtable;
+
+/**
+ * Allocation free counterpart of {@link MemtableIterator} for flushes, compactions and long scans.
+ *
+ * A cursor stands on one entry at a time and exposes it through {@link Slice} views that it reuses
+ * for every entry, so walking millions of entries produces no garbage. The views are only valid
+ * until the cursor moves, a caller that keeps a key or value must copy it.
+ *
+ * Cursors over a single memtable or table visit every stored version, ordered by key and then
+ * newest first. {@link io.sigstkflt.iterator.MergingCursor} narrows them down to one version per
+ * key as of a sequence number.
+ */
+public interface Cursor {
+    /**
+     * @return whether the cursor stands on an entry, false once it ran past its range
+     */
+    boolean isValid();
+
+    /**
+     * Moves to the next entry
+     * @throws java.util.NoSuchElementException if the cursor is not valid
+     */
+    void next();
+
+    /**
+     * Moves to the first entry whose key is greater than or equal to the given key, a key before
+     * the start of the cursor's range positions it at the start
+     */
+    void seek(byte[] key);
+
+    Slice key();
+
+    /**
+     * Value of the current entry, empty for a tombstone
+     */
+    Slice value();
+
+    /**
+     * Sequence number of the write that stored the current entry, 0 where none was recorded
+     */
+    long sequence();
+
+    boolean isTombstone();
+}
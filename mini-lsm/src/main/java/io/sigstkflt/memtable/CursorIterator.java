@@ -0,0 +1,31 @@
+package io.sigstkflt.memtable;
+
+import java.util.NoSuchElementException;
+
+/**
+ * {@link MemtableIterator} over a {@link Cursor}, for callers that keep the entries they read.
+ * Every entry is copied into its own {@link KeyValuePair}.
+ */
+public class CursorIterator implements MemtableIterator {
+    private final Cursor cursor;
+
+    public CursorIterator(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor.isValid();
+    }
+
+    @Override
+    public KeyValuePair next() {
+        if (!cursor.isValid()) {
+            throw new NoSuchElementException();
+        }
+        KeyValuePair pair = new KeyValuePair(new ByteArrayWrapper(cursor.key().toArray()),
+                cursor.isTombstone() ? KeyValuePair.TOMBSTONE : cursor.value().toArray());
+        cursor.next();
+        return pair;
+    }
+}
@@ -1,13 +1,23 @@
 package io.sigstkflt.memtable;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * Iterates a range of the map in either direction. The iterator is weakly consistent like the
+ * map's own, it sees some of the entries put while it runs. {@link #seek(byte[])} moves it to
+ * another key of the range by searching the skiplist, rather than walking it from the start.
+ */
 public class DefaultMemtableIterator implements MemtableIterator {
 
     private ConcurrentSkipListMap<ByteArrayWrapper, byte[]> map;
+    private final Bound lower;
+    private final Bound upper;
+    private final boolean descending;
     Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator;
 
     /**
@@ -15,32 +25,57 @@ public class DefaultMemtableIterator implements MemtableIterator {
      * @param memtable
      */
     public DefaultMemtableIterator(ConcurrentSkipListMap<ByteArrayWrapper, byte[]> memtable) {
-        this.map = memtable;
-        this.iterator = memtable.entrySet().iterator();
+        this(memtable, Bound.unbounded(), Bound.unbounded(), false);
     }
 
     /**
      * Memtable to be used when querying a range of data from within the Memtable
-     * To start we implement key's being inclusive, we can add the Bounds later
+     * The beginKey is inclusive. The endKey is inclusive when a beginKey is given and exclusive
+     * otherwise, use {@link #DefaultMemtableIterator(ConcurrentSkipListMap, Bound, Bound, boolean)}
+     * to choose both ends.
      *
      * @param memtable
      * @param beginKey
      * @param endKey
      */
     public DefaultMemtableIterator(ConcurrentSkipListMap<ByteArrayWrapper, byte[]> memtable, ByteArrayWrapper beginKey, ByteArrayWrapper endKey) {
+        this(memtable,
+                beginKey == null ? Bound.unbounded() : Bound.included(beginKey.getValue()),
+                endKey == null ? Bound.unbounded()
+                        : beginKey == null ? Bound.excluded(endKey.getValue()) : Bound.included(endKey.getValue()),
+                false);
+    }
+
+    /**
+     * @param lower smallest key of the range
+     * @param upper largest key of the range
+     * @param descending whether to go from the upper bound down, for the newest or last N keys
+     */
+    public DefaultMemtableIterator(ConcurrentSkipListMap<ByteArrayWrapper, byte[]> memtable, Bound lower, Bound upper,
+                                   boolean descending) {
         this.map = memtable;
-        NavigableMap<ByteArrayWrapper, byte[]> iterableMap;
-
-        if(beginKey == null && endKey == null) {
-            iterableMap = memtable;
-        } else if(beginKey == null ) {
-            iterableMap = map.headMap(endKey);
-        } else if(endKey == null ) {
-            iterableMap = map.tailMap(beginKey);
+        this.lower = lower;
+        this.upper = upper;
+        this.descending = descending;
+        this.iterator = range(lower, upper).entrySet().iterator();
+    }
+
+    /**
+     * Positions the iterator at the first key of the range at or after key in iteration order, so
+     * at or below key when descending. The key may lie outside the range and may be behind the
+     * current position.
+     */
+    public void seek(byte[] key) {
+        Bound target = Bound.included(key);
+        if (descending) {
+            iterator = range(lower, Bound.tighterUpper(upper, target)).entrySet().iterator();
         } else {
-            iterableMap = map.subMap(beginKey, true, endKey, true);
+            iterator = range(Bound.tighterLower(lower, target), upper).entrySet().iterator();
         }
-        iterator = iterableMap.entrySet().iterator();
+    }
+
+    public boolean isDescending() {
+        return descending;
     }
 
     @Override
@@ -53,4 +88,25 @@ public class DefaultMemtableIterator implements MemtableIterator {
         Map.Entry<ByteArrayWrapper, byte[]> entry = iterator.next();
         return new KeyValuePair(entry.getKey(), entry.getValue());
     }
+
+    /**
+     * View of the map between the bounds in iteration order, the skiplist finds its first entry
+     */
+    private NavigableMap<ByteArrayWrapper, byte[]> range(Bound from, Bound to) {
+        NavigableMap<ByteArrayWrapper, byte[]> range;
+        if (from.isUnbounded() && to.isUnbounded()) {
+            range = map;
+        } else if (from.isUnbounded()) {
+            range = map.headMap(new ByteArrayWrapper(to.key()), to.isInclusive());
+        } else if (to.isUnbounded()) {
+            range = map.tailMap(new ByteArrayWrapper(from.key()), from.isInclusive());
+        } else if (Arrays.compareUnsigned(from.key(), to.key()) > 0) {
+            // The map rejects inverted ranges rather than treating them as empty
+            return Collections.emptyNavigableMap();
+        } else {
+            range = map.subMap(new ByteArrayWrapper(from.key()), from.isInclusive(),
+                    new ByteArrayWrapper(to.key()), to.isInclusive());
+        }
+        return descending ? range.descendingMap() : range;
+    }
 }
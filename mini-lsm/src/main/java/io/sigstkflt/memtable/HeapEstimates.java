@@ -0,0 +1,38 @@
+package io.sigstkflt.memtable;
+
+/**
+ * Shallow sizes of the objects a {@link SkipListMemtable} entry is made of, for a 64 bit JVM with
+ * compressed oops and class pointers, 12 byte object headers and 8 byte alignment. Larger headers
+ * make the real footprint somewhat bigger, the estimate is meant to be close rather than exact.
+ */
+final class HeapEstimates {
+    static final int ARRAY_HEADER = 16;
+    // Header, key array reference, cached prefix and hash, sequence number
+    static final int INTERNAL_KEY = 40;
+    // Header, key and value references
+    static final int KEY_VALUE_PAIR = 24;
+    // ConcurrentSkipListMap node: header, key, value and next references
+    static final int SKIP_LIST_NODE = 24;
+    // A quarter of the nodes get index levels, two on average, each a 24 byte object
+    static final int SKIP_LIST_INDEX_PER_ENTRY = 12;
+
+    private HeapEstimates() {
+    }
+
+    static long array(int length) {
+        return align(ARRAY_HEADER + length);
+    }
+
+    /**
+     * Bytes retained by one version stored in the map, the shared tombstone array is not counted
+     */
+    static long entry(int keyLength, byte[] value) {
+        long valueBytes = value == KeyValuePair.TOMBSTONE ? 0 : array(value.length);
+        return array(keyLength) + valueBytes + INTERNAL_KEY + KEY_VALUE_PAIR + SKIP_LIST_NODE
+                + SKIP_LIST_INDEX_PER_ENTRY;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
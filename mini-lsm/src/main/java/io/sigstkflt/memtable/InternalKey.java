@@ -0,0 +1,39 @@
+package io.sigstkflt.memtable;
+
+/**
+ * User key tagged with the sequence number of the write that stored it.
+ *
+ * Keys sort by user key and then by sequence number descending, so all versions of a key are
+ * adjacent and the newest comes first. {@link #getValue()} still returns the plain user key.
+ */
+public class InternalKey extends ByteArrayWrapper {
+    private final long sequence;
+
+    public InternalKey(byte[] key, long sequence) {
+        super(key);
+        this.sequence = sequence;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public int compareTo(ByteArrayWrapper o) {
+        int cmp = compareKey(o);
+        if (cmp != 0 || !(o instanceof InternalKey other)) {
+            return cmp;
+        }
+        return Long.compare(other.sequence(), sequence());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof InternalKey other && sequence() == other.sequence() && keyEquals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Long.hashCode(sequence());
+    }
+}
@@ -0,0 +1,118 @@
+package io.sigstkflt.memtable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link Spliterator} over a sorted source that splits at precomputed keys, so that the parts of a
+ * parallel stream scan disjoint key ranges of it.
+ *
+ * The split points come from the source's own structure, such as the index levels of a skiplist or
+ * the first keys of a table's blocks, and a split halves the points still inside the range. Each
+ * part opens an iterator over its range only when it is first advanced, so splitting costs no
+ * reads. A part covers its begin key and stops before its end key, every version of a key falls
+ * on the same side of a split.
+ */
+public final class KeyRangeSpliterator implements Spliterator<KeyValuePair> {
+
+    /**
+     * Opens an iterator over the keys between beginKey and endKey, both inclusive, a null key
+     * leaves that end open
+     */
+    @FunctionalInterface
+    public interface Source {
+        MemtableIterator iterator(byte[] beginKey, byte[] endKey);
+    }
+
+    private final Source source;
+    private final byte[][] points;
+    private final int characteristics;
+    // Inclusive, null for the start of the source
+    private byte[] begin;
+    // Exclusive, null for the end of the source
+    private final byte[] end;
+    // points[low, high) lie strictly between begin and end
+    private int low;
+    private final int high;
+    private long estimate;
+    private MemtableIterator iterator;
+    private boolean done;
+
+    /**
+     * @param points strictly increasing keys the source may be split at
+     * @param estimate approximate number of entries, or Long.MAX_VALUE if unknown
+     * @param characteristics added to ORDERED, DISTINCT and NONNULL
+     */
+    public KeyRangeSpliterator(Source source, List<byte[]> points, long estimate, int characteristics) {
+        this(source, points.toArray(new byte[0][]), null, null, 0, points.size(), estimate,
+                characteristics | ORDERED | DISTINCT | NONNULL);
+    }
+
+    private KeyRangeSpliterator(Source source, byte[][] points, byte[] begin, byte[] end, int low, int high,
+                                long estimate, int characteristics) {
+        this.source = source;
+        this.points = points;
+        this.begin = begin;
+        this.end = end;
+        this.low = low;
+        this.high = high;
+        this.estimate = estimate;
+        this.characteristics = characteristics;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super KeyValuePair> action) {
+        if (done) {
+            return false;
+        }
+        if (iterator == null) {
+            iterator = source.iterator(begin, end);
+        }
+        if (!iterator.hasNext()) {
+            done = true;
+            return false;
+        }
+        KeyValuePair pair = iterator.next();
+        // The source includes its end key, which belongs to the next part
+        if (end != null && Arrays.compareUnsigned(pair.keyWrapper().getValue(), end) >= 0) {
+            done = true;
+            return false;
+        }
+        action.accept(pair);
+        return true;
+    }
+
+    /**
+     * Hands out the lower half of the remaining split points, nothing once iteration started
+     */
+    @Override
+    public Spliterator<KeyValuePair> trySplit() {
+        if (iterator != null || low >= high) {
+            return null;
+        }
+        int mid = (low + high) >>> 1;
+        // Ranges between split points are assumed to hold about as many entries each
+        long prefixEstimate = estimate == Long.MAX_VALUE ? estimate
+                : (long) ((double) estimate * (mid - low + 1) / (high - low + 1));
+        KeyRangeSpliterator prefix = new KeyRangeSpliterator(source, points, begin, points[mid], low, mid,
+                prefixEstimate, characteristics);
+        begin = points[mid];
+        low = mid + 1;
+        if (estimate != Long.MAX_VALUE) {
+            estimate -= prefixEstimate;
+        }
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return done ? 0 : estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+}
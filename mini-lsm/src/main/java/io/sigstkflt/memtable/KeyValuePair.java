@@ -1,3 +1,12 @@
 package io.sigstkflt.memtable;
 
-public record KeyValuePair(ByteArrayWrapper keyWrapper, byte[] data){}
\ No newline at end of file
+public record KeyValuePair(ByteArrayWrapper keyWrapper, byte[] data){
+    /**
+     * Value recorded for a deleted key, recognised by identity so that empty values stay legal
+     */
+    public static final byte[] TOMBSTONE = new byte[0];
+
+    public boolean isTombstone() {
+        return data == TOMBSTONE;
+    }
+}
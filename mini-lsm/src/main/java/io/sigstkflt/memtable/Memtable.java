@@ -1,8 +1,67 @@
 package io.sigstkflt.memtable;
 
+import java.nio.ByteBuffer;
+
 public interface Memtable {
+    /**
+     * @return a copy of the value, or null if the key is absent or deleted
+     */
     byte[] get(byte[] key);
+
+    /**
+     * Copies the value into dst at its position and advances it, without allocating
+     * @return length of the value, or -1 if the key is absent or deleted. When dst has less room
+     * than the value nothing is copied and dst is left as it was, so the caller can retry with a
+     * larger buffer.
+     */
+    int get(byte[] key, ByteBuffer dst);
+
+    /**
+     * Read-only view of the stored value, nothing is copied. The view stays valid for as long as
+     * the memtable is open, a later put of the same key does not change it.
+     * @return null if the key is absent or deleted
+     */
+    ByteBuffer getView(byte[] key);
+
+    /**
+     * Like {@link #get(byte[])} but tells a deleted key apart from an absent one
+     * @return null if the key is absent, {@link KeyValuePair#TOMBSTONE} if it was deleted
+     */
+    byte[] lookup(byte[] key);
+
+    /**
+     * Stores a copy of key and value, the caller keeps ownership of both arrays
+     */
     void put(byte[] key, byte[] value);
+
+    /**
+     * Stores a copy of the remaining bytes of key and value, the buffer positions do not move
+     */
+    void put(ByteBuffer key, ByteBuffer value);
+
+    /**
+     * Records a tombstone for the key, which hides older values in other memtables and tables
+     */
+    void delete(byte[] key);
+
     int getId();
-    long approximateSize();
+
+    /**
+     * Bytes of the keys and values a read at the newest sequence sees, replaced versions are not
+     * counted and a tombstone counts its key
+     */
+    long logicalSize();
+
+    /**
+     * Estimated memory held by the memtable, including replaced versions and the structures
+     * indexing the entries
+     */
+    long retainedSize();
+
+    /**
+     * Size that flush and backpressure decisions go by, the retained size
+     */
+    default long approximateSize() {
+        return retainedSize();
+    }
 }
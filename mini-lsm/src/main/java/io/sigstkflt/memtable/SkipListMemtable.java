@@ -1,28 +1,266 @@
 package io.sigstkflt.memtable;
 
+import io.sigstkflt.mvcc.Sequencer;
+import io.sigstkflt.mvcc.Snapshot;
+import io.sigstkflt.wal.WriteAheadLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Multi-version memtable backed by a {@link ConcurrentSkipListMap}.
+ *
+ * Every write takes a sequence number from the {@link Sequencer} and adds a new version keyed by
+ * {@link InternalKey}, nothing is overwritten. Reads pick the newest version at or below the
+ * visible sequence, or below the sequence of a {@link Snapshot}, so they never take a lock and a
+ * scan never sees a write that was published after it started. Old versions stay until the
+ * memtable is flushed, the flush keeps only those an open snapshot can still see.
+ *
+ * Keys and values are copied on the way in, so the arrays in the map are owned by the memtable
+ * and never change. That lets {@link #get(byte[], ByteBuffer)} and {@link #getView(byte[])} hand
+ * out the stored bytes without a defensive copy. Each entry is stored as the {@link KeyValuePair}
+ * the iterators return, so walking the map's values yields key and value together without the
+ * entry objects the map would otherwise allocate, and {@link #cursor()} scans without allocating
+ * at all.
+ *
+ * With more than one shard the keys are spread over several maps by hash, so concurrent writers
+ * mostly land on different index nodes, and the sizes are kept in {@link LongAdder}s instead of
+ * single contended counters. All versions of a key live in the same shard, ordered iteration
+ * merges the shards on the fly. The retained size adds the estimated object overhead of every
+ * version, see {@link HeapEstimates}, the logical size subtracts the version a put replaces.
+ */
 public class SkipListMemtable implements Memtable {
-    private ConcurrentSkipListMap<ByteArrayWrapper, byte[]> map = new ConcurrentSkipListMap<>();
+    private static final ThreadLocal<ProbeKey> PROBE = ThreadLocal.withInitial(ProbeKey::new);
+    // Levels of the skiplist index a spliterator splits along, up to 2^depth - 1 split points
+    private static final int SPLIT_DEPTH = 8;
+
+    private final ConcurrentSkipListMap<InternalKey, KeyValuePair>[] shards;
     private final int id;
-    private AtomicLong estimatedSize = new AtomicLong(0);
+    private final LongAdder logicalSize = new LongAdder();
+    private final LongAdder retainedSize = new LongAdder();
+    private final WriteAheadLog wal;
+    private final Sequencer sequencer;
 
     public SkipListMemtable(int id) {
+        this(id, null);
+    }
+
+    /**
+     * Memtable whose writes are appended to the given log before they are applied
+     * @param id
+     * @param wal log for this memtable, or null to keep writes in memory only
+     */
+    public SkipListMemtable(int id, WriteAheadLog wal) {
+        this(id, wal, new Sequencer());
+    }
+
+    /**
+     * @param sequencer source of sequence numbers, shared by every memtable of a storage
+     */
+    public SkipListMemtable(int id, WriteAheadLog wal, Sequencer sequencer) {
+        this(id, wal, sequencer, 1);
+    }
+
+    /**
+     * @param shards number of maps the keys are spread over, 1 keeps a single map
+     */
+    public SkipListMemtable(int id, WriteAheadLog wal, Sequencer sequencer, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shards);
+        }
         this.id = id;
+        this.wal = wal;
+        this.sequencer = sequencer;
+        this.shards = newShards(shards);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentSkipListMap<InternalKey, KeyValuePair>[] newShards(int count) {
+        ConcurrentSkipListMap<InternalKey, KeyValuePair>[] shards = new ConcurrentSkipListMap[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new ConcurrentSkipListMap<>();
+        }
+        return shards;
     }
 
     @Override
     public byte[] get(byte[] key) {
-        byte[] value = map.get(new ByteArrayWrapper(key));
-        return value == null ? null : Arrays.copyOf(value, value.length);
+        byte[] value = probe(key, sequencer.visible());
+        return value == null || value == KeyValuePair.TOMBSTONE ? null : Arrays.copyOf(value, value.length);
+    }
+
+    /**
+     * @return a copy of the value the snapshot sees, or null if it sees the key absent or deleted
+     */
+    public byte[] get(byte[] key, Snapshot snapshot) {
+        byte[] value = lookup(key, snapshot.sequence());
+        return value == KeyValuePair.TOMBSTONE ? null : value;
+    }
+
+    @Override
+    public int get(byte[] key, ByteBuffer dst) {
+        byte[] value = probe(key, sequencer.visible());
+        if (value == null || value == KeyValuePair.TOMBSTONE) {
+            return -1;
+        }
+        if (dst.remaining() >= value.length) {
+            dst.put(value);
+        }
+        return value.length;
+    }
+
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        byte[] value = probe(key, sequencer.visible());
+        if (value == null || value == KeyValuePair.TOMBSTONE) {
+            return null;
+        }
+        return ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] lookup(byte[] key) {
+        return lookup(key, sequencer.visible());
+    }
+
+    /**
+     * Like {@link #lookup(byte[])} but as of the given sequence number
+     */
+    public byte[] lookup(byte[] key, long sequence) {
+        byte[] value = probe(key, sequence);
+        if (value == null || value == KeyValuePair.TOMBSTONE) {
+            return value;
+        }
+        return Arrays.copyOf(value, value.length);
     }
 
     @Override
     public void put(byte[] key, byte[] value) {
-        map.put(new ByteArrayWrapper(key), value);
-        estimatedSize.addAndGet(key.length + value.length);
+        long sequence = sequencer.allocate(1);
+        try {
+            insert(key.clone(), value == KeyValuePair.TOMBSTONE ? value : value.clone(), sequence);
+        } finally {
+            sequencer.publish(sequence);
+        }
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        long sequence = sequencer.allocate(1);
+        try {
+            insert(toArray(key), toArray(value), sequence);
+        } finally {
+            sequencer.publish(sequence);
+        }
+    }
+
+    /**
+     * Like {@link #put(byte[], byte[])} but does not wait for the log. The write is visible once
+     * this returns, the future completes when the log has made it as durable as its sync mode
+     * promises, a crash before then can lose it.
+     */
+    public CompletableFuture<Void> putAsync(byte[] key, byte[] value) {
+        long sequence = sequencer.allocate(1);
+        try {
+            byte[] ownedKey = key.clone();
+            byte[] ownedValue = value == KeyValuePair.TOMBSTONE ? value : value.clone();
+            CompletableFuture<Void> logged = wal == null ? CompletableFuture.completedFuture(null)
+                    : wal.appendAsync(ownedKey, ownedValue, sequence);
+            add(ownedKey, ownedValue, sequence);
+            return logged;
+        } finally {
+            sequencer.publish(sequence);
+        }
+    }
+
+    /**
+     * Adds a version whose sequence number was assigned elsewhere, used to replay a log before
+     * any other writer runs. The sequencer is moved past it so that reads see it.
+     */
+    public void put(byte[] key, byte[] value, long sequence) {
+        insert(key.clone(), value == KeyValuePair.TOMBSTONE ? value : value.clone(), sequence);
+        sequencer.advanceTo(sequence);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        put(key, KeyValuePair.TOMBSTONE);
+    }
+
+    /**
+     * Applies the batch under consecutive sequence numbers in batch order. The batch is logged as
+     * one record and published once every entry is in the map, so readers see all of it or none.
+     */
+    public void write(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long first = sequencer.allocate(batch.count());
+        try {
+            if (wal != null) {
+                try {
+                    wal.append(batch, first);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            apply(batch, first);
+        } finally {
+            sequencer.publish(first, batch.count());
+        }
+    }
+
+    /**
+     * Like {@link #write(WriteBatch)} but does not wait for the log, see {@link #putAsync(byte[], byte[])}
+     */
+    public CompletableFuture<Void> writeAsync(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long first = sequencer.allocate(batch.count());
+        try {
+            CompletableFuture<Void> logged = wal == null ? CompletableFuture.completedFuture(null)
+                    : wal.appendAsync(batch, first);
+            apply(batch, first);
+            return logged;
+        } finally {
+            sequencer.publish(first, batch.count());
+        }
+    }
+
+    /**
+     * Adds a batch whose sequence numbers were assigned elsewhere, used to replay a log
+     */
+    public void write(WriteBatch batch, long firstSequence) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        apply(batch, firstSequence);
+        sequencer.advanceTo(firstSequence + batch.count() - 1);
+    }
+
+    /**
+     * Opens a snapshot at the visible sequence of this memtable's sequencer
+     */
+    public Snapshot snapshot() {
+        return sequencer.snapshot();
     }
 
     @Override
@@ -31,12 +269,517 @@ public class SkipListMemtable implements Memtable {
     }
 
     @Override
-    public long approximateSize() {
-        return estimatedSize.get();
+    public long logicalSize() {
+        return logicalSize.sum();
+    }
+
+    @Override
+    public long retainedSize() {
+        return retainedSize.sum();
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public WriteAheadLog getWal() {
+        return wal;
     }
 
+    /**
+     * Iterates the newest version of every key as of the visible sequence when it is called
+     */
     public MemtableIterator iterator() {
-        return new DefaultMemtableIterator(map);
+        return iterator(null, null);
+    }
+
+    /**
+     * Iterates the keys between beginKey and endKey, both inclusive, a null key leaves that end open
+     */
+    public MemtableIterator iterator(byte[] beginKey, byte[] endKey) {
+        return iterator(inclusive(beginKey), inclusive(endKey), false);
+    }
+
+    /**
+     * Like {@link #iterator(byte[], byte[])} but as of the snapshot
+     */
+    public MemtableIterator iterator(byte[] beginKey, byte[] endKey, Snapshot snapshot) {
+        return iterator(inclusive(beginKey), inclusive(endKey), false, snapshot);
+    }
+
+    /**
+     * Iterates the newest version of every key between the bounds as of the visible sequence when
+     * it is called, from the upper bound down if descending, for the last N keys of a range
+     */
+    public VersionIterator iterator(Bound lower, Bound upper, boolean descending) {
+        return new VersionIterator(lower, upper, descending, sequencer.visible());
+    }
+
+    /**
+     * Like {@link #iterator(Bound, Bound, boolean)} but as of the snapshot
+     */
+    public VersionIterator iterator(Bound lower, Bound upper, boolean descending, Snapshot snapshot) {
+        return new VersionIterator(lower, upper, descending, snapshot.sequence());
+    }
+
+    public Cursor cursor() {
+        return cursor(null, null);
+    }
+
+    /**
+     * Cursor over every version of the keys between beginKey and endKey, both inclusive, a null
+     * key leaves that end open. Versions of a key come newest first.
+     */
+    public Cursor cursor(byte[] beginKey, byte[] endKey) {
+        return new SkipListCursor(beginKey, endKey);
+    }
+
+    /**
+     * Spliterator over the newest version of every key as of the visible sequence when it is
+     * called, like {@link #iterator()}, that splits into disjoint key ranges for parallel streams.
+     * The ranges are cut at keys of the upper index levels of the skiplist, which the map spaces
+     * out evenly over its entries. Every part reads as of the same sequence.
+     */
+    public Spliterator<KeyValuePair> spliterator() {
+        return spliterator(sequencer.visible());
+    }
+
+    /**
+     * Like {@link #spliterator()} but as of the snapshot
+     */
+    public Spliterator<KeyValuePair> spliterator(Snapshot snapshot) {
+        return spliterator(snapshot.sequence());
     }
 
+    public Stream<KeyValuePair> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Scan for aggregations in a fork join pool, see {@link #spliterator()}
+     */
+    public Stream<KeyValuePair> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    private Spliterator<KeyValuePair> spliterator(long sequence) {
+        // Keys are hashed over the shards, so the first one shows how they spread over the key space
+        List<byte[]> points = new ArrayList<>();
+        Spliterator<InternalKey> keys = shards[0].keySet().spliterator();
+        // A fresh one sits on the head node, which it cannot split at
+        if (keys.tryAdvance(key -> { })) {
+            splitPoints(keys, SPLIT_DEPTH, points);
+        }
+        long estimate = 0;
+        for (ConcurrentSkipListMap<InternalKey, KeyValuePair> shard : shards) {
+            // Counts versions rather than keys, the map keeps the count without walking
+            estimate += shard.size();
+        }
+        return new KeyRangeSpliterator((beginKey, endKey) -> new VersionIterator(inclusive(beginKey), inclusive(endKey),
+                false, sequence), points, estimate, Spliterator.CONCURRENT);
+    }
+
+    /**
+     * Collects in order the user keys at which the map's own spliterator splits, it cuts at index
+     * nodes and descends one level with every split
+     */
+    private static void splitPoints(Spliterator<InternalKey> keys, int depth, List<byte[]> points) {
+        if (depth == 0) {
+            return;
+        }
+        Spliterator<InternalKey> prefix = keys.trySplit();
+        if (prefix == null) {
+            return;
+        }
+        splitPoints(prefix, depth - 1, points);
+        // The suffix starts at the split key, versions of one key may straddle several splits
+        keys.tryAdvance(key -> {
+            if (points.isEmpty() || !Arrays.equals(points.get(points.size() - 1), key.getValue())) {
+                points.add(key.getValue());
+            }
+        });
+        splitPoints(keys, depth - 1, points);
+    }
+
+    /**
+     * Logs and applies a write, both arrays must be owned by the memtable from here on
+     */
+    private void insert(byte[] key, byte[] value, long sequence) {
+        if (wal != null) {
+            try {
+                wal.append(key, value, sequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        add(key, value, sequence);
+    }
+
+    private void add(byte[] key, byte[] value, long sequence) {
+        logicalSize.add(store(key, value, sequence));
+        retainedSize.add(HeapEstimates.entry(key.length, value));
+    }
+
+    /**
+     * Inserts in key order, consecutive inserts then descend through the same index nodes while
+     * they are still in cache. The batch never changes its arrays, so they are shared, not copied.
+     */
+    private void apply(WriteBatch batch, long first) {
+        long logical = 0;
+        long retained = 0;
+        byte[] previousKey = null;
+        for (int i : batch.sortedOrder()) {
+            byte[] key = batch.key(i);
+            byte[] value = batch.value(i);
+            long delta = store(key, value, first + i);
+            // Earlier operations on a key come after the latest one and are hidden by it
+            if (previousKey == null || !Arrays.equals(previousKey, key)) {
+                logical += delta;
+            }
+            previousKey = key;
+            retained += HeapEstimates.entry(key.length, value);
+        }
+        logicalSize.add(logical);
+        retainedSize.add(retained);
+    }
+
+    /**
+     * Puts the version into its shard
+     *
+     * @return how much the version changed the logical size
+     */
+    private long store(byte[] key, byte[] value, long sequence) {
+        ConcurrentSkipListMap<InternalKey, KeyValuePair> shard = shard(key);
+        InternalKey internalKey = new InternalKey(key, sequence);
+        KeyValuePair replaced = shard.put(internalKey, new KeyValuePair(internalKey, value));
+        if (replaced != null) {
+            // Only a replayed log without sequence numbers writes the same version twice
+            retainedSize.add(-HeapEstimates.entry(key.length, replaced.data()));
+            return value.length - replaced.data().length;
+        }
+        // The next entry in the map is the version this one hides, if the key had one
+        Map.Entry<InternalKey, KeyValuePair> older = shard.higherEntry(internalKey);
+        if (older != null && Arrays.equals(older.getKey().getValue(), key)) {
+            return value.length - older.getValue().data().length;
+        }
+        return key.length + value.length;
+    }
+
+    /**
+     * @return the stored value of the newest version at or below the sequence, not a copy
+     */
+    private byte[] probe(byte[] key, long sequence) {
+        ProbeKey probe = PROBE.get();
+        probe.reset(key);
+        probe.sequence = sequence;
+        try {
+            Map.Entry<InternalKey, KeyValuePair> entry = shard(key).ceilingEntry(probe);
+            if (entry == null || !Arrays.equals(entry.getKey().getValue(), key)) {
+                return null;
+            }
+            return entry.getValue().data();
+        } finally {
+            probe.reset(null);
+        }
+    }
+
+    private ConcurrentSkipListMap<InternalKey, KeyValuePair> shard(byte[] key) {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+        int hash = Arrays.hashCode(key);
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Every version of the keys between the two keys in order, both inclusive, a null key leaves
+     * that end open
+     */
+    private Iterator<KeyValuePair> versions(byte[] beginKey, byte[] endKey) {
+        return versions(inclusive(beginKey), inclusive(endKey), false);
+    }
+
+    /**
+     * Every version of the keys between the bounds in internal key order, or in reverse
+     */
+    private Iterator<KeyValuePair> versions(Bound lower, Bound upper, boolean descending) {
+        if (shards.length == 1) {
+            return range(shards[0], lower, upper, descending).values().iterator();
+        }
+        List<Iterator<KeyValuePair>> ranges = new ArrayList<>(shards.length);
+        for (ConcurrentSkipListMap<InternalKey, KeyValuePair> shard : shards) {
+            ranges.add(range(shard, lower, upper, descending).values().iterator());
+        }
+        return new ShardMergingIterator(ranges, descending);
+    }
+
+    private static NavigableMap<InternalKey, KeyValuePair> range(NavigableMap<InternalKey, KeyValuePair> map,
+                                                                 Bound lower, Bound upper, boolean descending) {
+        // The newest possible version of a key sorts first and version 0 last, an included lower
+        // bound starts before the first and an excluded one after the last, and the upper the reverse
+        InternalKey from = lower.isUnbounded() ? null
+                : new InternalKey(lower.key(), lower.isInclusive() ? Long.MAX_VALUE : 0);
+        InternalKey to = upper.isUnbounded() ? null
+                : new InternalKey(upper.key(), upper.isInclusive() ? 0 : Long.MAX_VALUE);
+        NavigableMap<InternalKey, KeyValuePair> range;
+        if (from == null) {
+            range = to == null ? map : map.headMap(to, upper.isInclusive());
+        } else if (to == null) {
+            range = map.tailMap(from, lower.isInclusive());
+        } else if (from.compareTo(to) > 0) {
+            return Collections.emptyNavigableMap();
+        } else {
+            range = map.subMap(from, lower.isInclusive(), to, upper.isInclusive());
+        }
+        return descending ? range.descendingMap() : range;
+    }
+
+    private static Bound inclusive(byte[] key) {
+        return key == null ? Bound.unbounded() : Bound.included(key);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the newest version of each key between the bounds at or below the read sequence,
+     * tombstones included. {@link #seek(byte[])} moves it to another key of the range by searching
+     * the skiplist, rather than walking it from the start, and keeps the read sequence.
+     */
+    public final class VersionIterator implements MemtableIterator {
+        private final Bound lower;
+        private final Bound upper;
+        private final boolean descending;
+        private final long sequence;
+        private Iterator<KeyValuePair> pairs;
+        private KeyValuePair next;
+        private byte[] lastKey;
+        // Descending only, the first version of the key after the one just returned
+        private KeyValuePair pending;
+
+        private VersionIterator(Bound lower, Bound upper, boolean descending, long sequence) {
+            this.lower = lower;
+            this.upper = upper;
+            this.descending = descending;
+            this.sequence = sequence;
+            position(lower, upper);
+        }
+
+        /**
+         * Positions the iterator at the first key of the range at or after key in iteration order,
+         * so at or below key when descending. The key may lie outside the range and may be behind
+         * the current position.
+         */
+        public void seek(byte[] key) {
+            Bound target = Bound.included(key);
+            if (descending) {
+                position(lower, Bound.tighterUpper(upper, target));
+            } else {
+                position(Bound.tighterLower(lower, target), upper);
+            }
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public KeyValuePair next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            KeyValuePair result = next;
+            advance();
+            return result;
+        }
+
+        private void position(Bound from, Bound to) {
+            pairs = versions(from, to, descending);
+            lastKey = null;
+            pending = null;
+            advance();
+        }
+
+        private void advance() {
+            if (descending) {
+                advanceDescending();
+                return;
+            }
+            next = null;
+            while (next == null && pairs.hasNext()) {
+                KeyValuePair pair = pairs.next();
+                InternalKey key = (InternalKey) pair.keyWrapper();
+                // Skips versions written after the read started and older versions of the key just returned
+                if (key.sequence() > sequence || (lastKey != null && Arrays.equals(lastKey, key.getValue()))) {
+                    continue;
+                }
+                lastKey = key.getValue();
+                next = pair;
+            }
+        }
+
+        /**
+         * Versions of a key come oldest first in reverse, so each key is read to its end and its
+         * last version at or below the read sequence is the one returned
+         */
+        private void advanceDescending() {
+            next = null;
+            while (next == null && (pending != null || pairs.hasNext())) {
+                KeyValuePair pair = pending != null ? pending : pairs.next();
+                byte[] userKey = pair.keyWrapper().getValue();
+                pending = null;
+                while (pair != null) {
+                    if (!Arrays.equals(userKey, pair.keyWrapper().getValue())) {
+                        pending = pair;
+                        break;
+                    }
+                    if (((InternalKey) pair.keyWrapper()).sequence() <= sequence) {
+                        next = pair;
+                    }
+                    pair = pairs.hasNext() ? pairs.next() : null;
+                }
+            }
+        }
+    }
+
+    private class SkipListCursor implements Cursor {
+        private final byte[] beginKey;
+        private final byte[] endKey;
+        private final Slice key = new Slice();
+        private final Slice value = new Slice();
+        private Iterator<KeyValuePair> pairs;
+        private KeyValuePair current;
+
+        SkipListCursor(byte[] beginKey, byte[] endKey) {
+            this.beginKey = beginKey;
+            this.endKey = endKey;
+            position(beginKey);
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @Override
+        public void next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+        }
+
+        @Override
+        public void seek(byte[] target) {
+            position(beginKey != null && Arrays.compareUnsigned(target, beginKey) < 0 ? beginKey : target);
+        }
+
+        @Override
+        public Slice key() {
+            return key;
+        }
+
+        @Override
+        public Slice value() {
+            return value;
+        }
+
+        @Override
+        public long sequence() {
+            return ((InternalKey) current.keyWrapper()).sequence();
+        }
+
+        @Override
+        public boolean isTombstone() {
+            return current.isTombstone();
+        }
+
+        private void position(byte[] from) {
+            pairs = versions(from, endKey);
+            advance();
+        }
+
+        private void advance() {
+            current = pairs.hasNext() ? pairs.next() : null;
+            if (current != null) {
+                key.set(current.keyWrapper().getValue());
+                value.set(current.data());
+            }
+        }
+    }
+
+    /**
+     * Merges the ranges of several shards by internal key, or in reverse, shards never share a user key
+     */
+    private static final class ShardMergingIterator implements Iterator<KeyValuePair> {
+        private final PriorityQueue<Head> heap;
+
+        ShardMergingIterator(List<Iterator<KeyValuePair>> ranges, boolean descending) {
+            Comparator<Head> order = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            heap = new PriorityQueue<>(ranges.size(), order);
+            for (Iterator<KeyValuePair> range : ranges) {
+                if (range.hasNext()) {
+                    heap.add(new Head(range, range.next()));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public KeyValuePair next() {
+            Head head = heap.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            KeyValuePair result = head.current;
+            if (head.range.hasNext()) {
+                head.current = head.range.next();
+                heap.add(head);
+            }
+            return result;
+        }
+
+        private static final class Head implements Comparable<Head> {
+            private final Iterator<KeyValuePair> range;
+            private KeyValuePair current;
+
+            Head(Iterator<KeyValuePair> range, KeyValuePair current) {
+                this.range = range;
+                this.current = current;
+            }
+
+            @Override
+            public int compareTo(Head o) {
+                return current.keyWrapper().compareTo(o.current.keyWrapper());
+            }
+        }
+    }
+
+    /**
+     * Reusable lookup key, only ever passed to the map as an argument and never stored in it
+     */
+    private static final class ProbeKey extends InternalKey {
+        private long sequence;
+
+        ProbeKey() {
+            super(null, 0);
+        }
+
+        @Override
+        public long sequence() {
+            return sequence;
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package io.sigstkflt.memtable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Mutable window onto a run of bytes, a {@link Cursor} hands out the same slice for every entry.
+ *
+ * A slice either points into an array owned by someone else, the stored key of a memtable for
+ * instance, or into its own scratch array that bytes living off-heap are copied into. The scratch
+ * array only grows, so once it fits the largest entry of a scan nothing more is allocated.
+ */
+public final class Slice implements Comparable<Slice> {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] array = EMPTY;
+    private int offset;
+    private int length;
+    private byte[] scratch = EMPTY;
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void set(byte[] array) {
+        set(array, 0, array.length);
+    }
+
+    /**
+     * Points the slice at bytes owned by the caller, nothing is copied
+     */
+    public void set(byte[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Copies the bytes into the slice's own scratch array
+     */
+    public void copyFrom(MemorySegment segment, long offset, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset, scratch, 0, length);
+        set(scratch, 0, length);
+    }
+
+    /**
+     * Copies the bytes another slice points at into this slice's own scratch array
+     */
+    public void copyFrom(Slice other) {
+        if (scratch.length < other.length) {
+            scratch = new byte[Math.max(other.length, scratch.length * 2)];
+        }
+        System.arraycopy(other.array, other.offset, scratch, 0, other.length);
+        set(scratch, 0, other.length);
+    }
+
+    public void clear() {
+        set(EMPTY, 0, 0);
+    }
+
+    /**
+     * @return a copy of the bytes, safe to keep after the cursor moves
+     */
+    public byte[] toArray() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    /**
+     * Unsigned lexicographic comparison, the same order as {@link ByteArrayWrapper}
+     */
+    @Override
+    public int compareTo(Slice o) {
+        return Arrays.compareUnsigned(array, offset, offset + length, o.array, o.offset, o.offset + o.length);
+    }
+
+    public int compareTo(byte[] key) {
+        return Arrays.compareUnsigned(array, offset, offset + length, key, 0, key.length);
+    }
+}
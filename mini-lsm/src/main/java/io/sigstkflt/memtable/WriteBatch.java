@@ -0,0 +1,94 @@
+package io.sigstkflt.memtable;
+
+import java.util.Arrays;
+
+/**
+ * Puts and deletes applied together, see {@link SkipListMemtable#write(WriteBatch)}.
+ *
+ * The whole batch takes one range of sequence numbers, one log record and one publication, so a
+ * reader sees all of it or none of it and the per write costs are paid once per batch. Later
+ * operations on a key win over earlier ones. Keys and values are copied when they are added, a
+ * batch can be applied more than once and reused after {@link #clear()}.
+ */
+public class WriteBatch {
+    private byte[][] keys = new byte[16][];
+    private byte[][] values = new byte[16][];
+    private int count;
+    private long approximateSize;
+
+    public WriteBatch put(byte[] key, byte[] value) {
+        return add(key.clone(), value == KeyValuePair.TOMBSTONE ? value : value.clone());
+    }
+
+    public WriteBatch delete(byte[] key) {
+        return add(key.clone(), KeyValuePair.TOMBSTONE);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Bytes of keys and values in the batch
+     */
+    public long approximateSize() {
+        return approximateSize;
+    }
+
+    /**
+     * Key of the i-th operation, owned by the batch and not to be modified
+     */
+    public byte[] key(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Value of the i-th operation, {@link KeyValuePair#TOMBSTONE} for a delete
+     */
+    public byte[] value(int i) {
+        return values[i];
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        approximateSize = 0;
+    }
+
+    /**
+     * Operation indexes ordered by key and, for the same key, latest operation first, which is the
+     * order the versions take in a memtable
+     */
+    int[] sortedOrder() {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Arrays.compareUnsigned(keys[a], keys[b]);
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        });
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    private WriteBatch add(byte[] key, byte[] value) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        keys[count] = key;
+        values[count] = value;
+        count++;
+        approximateSize += key.length + value.length;
+        return this;
+    }
+}
@@ -0,0 +1,192 @@
+package io.sigstkflt.mvcc;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out sequence numbers to writes, publishes them in order and tracks the open snapshots.
+ *
+ * Concurrent writers finish in any order, so a number is only handed out at the start of a write
+ * and the write is published once it is applied. The visible sequence is the highest number below
+ * which every write has been published, a reader that takes it never sees a write appear later
+ * with a smaller number. A writer waits in {@link #publish(long, int)} until its write is visible,
+ * so it always reads its own writes.
+ *
+ * Writes never lock. Allocation is a single add, publication records the last number of the write
+ * in a ring slot picked by its first number, and whichever writer finds the write after the
+ * visible sequence published moves the visible sequence past it with a compare-and-set and wakes
+ * the one writer parked on that write. Writes more than the ring size ahead of the visible
+ * sequence wait for it to catch up before they take their slot. Only snapshot bookkeeping locks.
+ */
+public class Sequencer {
+    private static final int SLOTS = 4096;
+    private static final int MASK = SLOTS - 1;
+    // Checks of the visible sequence before a writer waiting for its write parks
+    private static final int SPINS = 128;
+
+    private final AtomicLong lastAllocated;
+    private final AtomicLong visible;
+    // Last number of the published write starting at a number mapping to the slot, stale entries are at most visible
+    private final AtomicLongArray completed = new AtomicLongArray(SLOTS);
+    // Writer parked until the write starting at a number mapping to the slot is visible
+    private final AtomicReferenceArray<Thread> parked = new AtomicReferenceArray<>(SLOTS);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+    public Sequencer() {
+        this(0);
+    }
+
+    /**
+     * @param lastSequence highest sequence number already used by stored data
+     */
+    public Sequencer(long lastSequence) {
+        this.lastAllocated = new AtomicLong(lastSequence);
+        this.visible = new AtomicLong(lastSequence);
+    }
+
+    /**
+     * Reserves count consecutive numbers, the caller must {@link #publish(long, int)} them once the
+     * write is applied, or readers stop advancing
+     *
+     * @return the first reserved number
+     */
+    public long allocate(int count) {
+        return lastAllocated.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Publishes a write of a single number, see {@link #publish(long, int)}
+     */
+    public void publish(long first) {
+        publish(first, 1);
+    }
+
+    /**
+     * Marks the write of count numbers that started at first as applied and waits until the writes
+     * numbered before it are applied too, which takes no longer than their memtable inserts
+     */
+    public void publish(long first, int count) {
+        // The slot is free once the write that held it a lap earlier is visible
+        long backoff = 1;
+        while (first - visible.get() > SLOTS) {
+            LockSupport.parkNanos(backoff);
+            backoff = Math.min(backoff * 2, 1_000_000);
+        }
+        completed.set(slot(first), first + count - 1);
+        advance();
+        awaitVisible(first);
+    }
+
+    /**
+     * Moves the visible sequence past every published write that directly follows it
+     */
+    private void advance() {
+        long current = visible.get();
+        while (true) {
+            long next = current + 1;
+            long last = completed.get(slot(next));
+            if (last < next) {
+                // Not published yet, its writer advances once it is
+                return;
+            }
+            if (visible.compareAndSet(current, last)) {
+                Thread waiter = parked.get(slot(next));
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+                current = last;
+            } else {
+                current = visible.get();
+            }
+        }
+    }
+
+    private void awaitVisible(long first) {
+        for (int i = 0; i < SPINS; i++) {
+            if (visible.get() >= first) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        int slot = slot(first);
+        Thread current = Thread.currentThread();
+        // Registered before the visible sequence is checked again, so the advancing writer either
+        // sees this thread or this thread sees the advance
+        parked.set(slot, current);
+        while (visible.get() < first) {
+            LockSupport.park(this);
+        }
+        parked.compareAndSet(slot, current, null);
+    }
+
+    private static int slot(long sequence) {
+        return (int) (sequence & MASK);
+    }
+
+    /**
+     * Moves past a number assigned elsewhere, used while replaying a log before any writer runs
+     */
+    public void advanceTo(long sequence) {
+        // Nothing is in flight during replay, every allocated number is visible
+        visible.set(lastAllocated.accumulateAndGet(sequence, Math::max));
+    }
+
+    /**
+     * Highest sequence number a read started now may see
+     */
+    public long visible() {
+        return visible.get();
+    }
+
+    public long lastAllocated() {
+        return lastAllocated.get();
+    }
+
+    /**
+     * Opens a snapshot at the visible sequence
+     */
+    public Snapshot snapshot() {
+        lock.lock();
+        try {
+            // Read under the lock, so a flush listing the snapshots either sees this one or ran before it
+            long sequence = visible.get();
+            snapshots.merge(sequence, 1, Integer::sum);
+            return new Snapshot(this, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sequence numbers of the open snapshots in ascending order, each listed once
+     */
+    public long[] snapshots() {
+        lock.lock();
+        try {
+            long[] sequences = new long[snapshots.size()];
+            int i = 0;
+            for (long sequence : snapshots.keySet()) {
+                sequences[i++] = sequence;
+            }
+            return sequences;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long sequence) {
+        lock.lock();
+        try {
+            snapshots.computeIfPresent(sequence, (key, count) -> count == 1 ? null : count - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.sigstkflt.mvcc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handle on a consistent view of the data, reads through it see every write up to its sequence
+ * number and none after.
+ *
+ * While a snapshot is open, flushes and compactions keep the versions it can see. Closing it
+ * lets them go, a snapshot that is never closed pins old versions until the storage is reopened.
+ */
+public final class Snapshot implements AutoCloseable {
+    private final Sequencer owner;
+    private final long sequence;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    Snapshot(Sequencer owner, long sequence) {
+        this.owner = owner;
+        this.sequence = sequence;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            owner.release(sequence);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package io.sigstkflt.sstable;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.Slice;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads one prefix compressed data block, the segment is usually a slice of a mapped file.
+ *
+ * A block is read front to back from a restart point, each entry only stores the key bytes it
+ * does not share with the key before it, so the reader rebuilds the current key in a reused
+ * buffer. Restart entries store their whole key, a seek binary searches them comparing keys in
+ * place and then scans forward. Values are never copied until asked for. A reader can be
+ * {@link #reset(MemorySegment) reset} onto another block, so a scan reuses one reader and one key
+ * buffer for the whole table.
+ */
+class Block {
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private MemorySegment data;
+    private int restartCount;
+    private long restartsStart;
+
+    // The entry the reader stands on, current == restartsStart once it ran past the last one
+    private long current;
+    private long next;
+    private byte[] key = new byte[64];
+    private int keyLength;
+    private int valueLength;
+    private long valueOffset;
+    private long sequence;
+
+    Block(MemorySegment data) {
+        reset(data);
+    }
+
+    /**
+     * Points the reader at another block and positions it on the first entry
+     */
+    void reset(MemorySegment data) {
+        this.data = data;
+        this.restartCount = data.get(INT, data.byteSize() - Integer.BYTES);
+        this.restartsStart = data.byteSize() - Integer.BYTES - (long) restartCount * Integer.BYTES;
+        seekToFirst();
+    }
+
+    void seekToFirst() {
+        keyLength = 0;
+        decode(0);
+    }
+
+    boolean isValid() {
+        return current < restartsStart;
+    }
+
+    void next() {
+        decode(next);
+    }
+
+    /**
+     * Positions the reader on the first entry whose key is greater than or equal to the given key,
+     * or past the last entry when every key is smaller
+     */
+    void seek(byte[] target) {
+        MemorySegment probe = MemorySegment.ofArray(target);
+        // Last restart point whose key is smaller than the target, the answer lies after it
+        int low = 0;
+        int high = restartCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (compareRestartKey(mid, probe) < 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        keyLength = 0;
+        decode(restartCount == 0 ? restartsStart : restartOffset(low));
+        while (isValid() && compareKey(target) < 0) {
+            next();
+        }
+    }
+
+    /**
+     * Unsigned comparison of the current key against another key
+     */
+    int compareKey(byte[] other) {
+        return Arrays.compareUnsigned(key, 0, keyLength, other, 0, other.length);
+    }
+
+    boolean keyEquals(byte[] other) {
+        return Arrays.equals(key, 0, keyLength, other, 0, other.length);
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    boolean isTombstone() {
+        return valueLength == -1;
+    }
+
+    /**
+     * Points dst at the reader's key buffer, valid until the reader moves
+     */
+    void key(Slice dst) {
+        dst.set(key, 0, keyLength);
+    }
+
+    /**
+     * @return a copy of the current value, or {@link KeyValuePair#TOMBSTONE}
+     */
+    byte[] value() {
+        if (valueLength == -1) {
+            return KeyValuePair.TOMBSTONE;
+        }
+        return data.asSlice(valueOffset, valueLength).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    /**
+     * Copies the current value into dst, a tombstone leaves dst empty
+     * @return false if the entry is a tombstone
+     */
+    boolean value(Slice dst) {
+        if (valueLength == -1) {
+            dst.clear();
+            return false;
+        }
+        dst.copyFrom(data, valueOffset, valueLength);
+        return true;
+    }
+
+    private long restartOffset(int index) {
+        return data.get(INT, restartsStart + (long) index * Integer.BYTES);
+    }
+
+    private int compareRestartKey(int index, MemorySegment target) {
+        long offset = restartOffset(index);
+        return compare(data, offset + SsTableFormat.ENTRY_HEADER_SIZE, data.get(INT, offset + Integer.BYTES), target);
+    }
+
+    /**
+     * Loads the entry at the offset, the key before it must be in the key buffer
+     */
+    private void decode(long offset) {
+        current = offset;
+        if (offset >= restartsStart) {
+            current = restartsStart;
+            return;
+        }
+        int shared = data.get(INT, offset);
+        int unshared = data.get(INT, offset + Integer.BYTES);
+        valueLength = data.get(INT, offset + 2 * Integer.BYTES);
+        sequence = data.get(LONG, offset + 3 * Integer.BYTES);
+        long keyStart = offset + SsTableFormat.ENTRY_HEADER_SIZE;
+        keyLength = shared + unshared;
+        if (key.length < keyLength) {
+            key = Arrays.copyOf(key, Math.max(keyLength, key.length * 2));
+        }
+        MemorySegment.copy(data, ValueLayout.JAVA_BYTE, keyStart, key, shared, unshared);
+        valueOffset = keyStart + unshared;
+        next = valueOffset + Math.max(valueLength, 0);
+    }
+
+    /**
+     * Unsigned lexicographic comparison of a key stored in a segment against another key
+     */
+    static int compare(MemorySegment segment, long offset, int length, MemorySegment key) {
+        long mismatch = MemorySegment.mismatch(segment, offset, offset + length, key, 0, key.byteSize());
+        if (mismatch == -1) {
+            return 0;
+        }
+        if (mismatch == length) {
+            return -1;
+        }
+        if (mismatch == key.byteSize()) {
+            return 1;
+        }
+        return Byte.compareUnsigned(segment.get(ValueLayout.JAVA_BYTE, offset + mismatch),
+                key.get(ValueLayout.JAVA_BYTE, mismatch));
+    }
+}
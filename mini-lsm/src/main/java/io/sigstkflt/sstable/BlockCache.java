@@ -0,0 +1,430 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of decompressed data blocks shared by the tables of a storage, held off the heap.
+ *
+ * Blocks are keyed by the cache id of their table, see {@link #newId()}, and their index in the
+ * table. The cache is split into shards by key hash, each with its own lock and an equal part of
+ * the capacity, so lookups of different blocks rarely contend. A shard evicts with CLOCK: a hit
+ * only sets the entry's reference bit, and making room sweeps a hand over the entries, clearing
+ * the bits it passes and evicting the first entry that was neither referenced since the last sweep
+ * nor pinned. Each shard carves its blocks out of a few large slabs, see {@link SlabAllocator},
+ * and takes a block's piece back as soon as the block is evicted and unpinned, so caching and
+ * evicting a block never creates or closes an arena. The slabs are freed when the cache is closed
+ * and its last pinned block released. Block bytes never exceed the capacity, a block that does not
+ * fit because everything else is pinned, or that is larger than a slab, is not cached.
+ */
+public class BlockCache implements AutoCloseable {
+    public static final int DEFAULT_SHARDS = 16;
+
+    private final Shard[] shards;
+    private final long capacity;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BlockCache(long capacity) {
+        this(capacity, DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param capacity bytes of block contents the cache may hold
+     * @param shards number of independently locked parts, rounded up to a power of two
+     */
+    public BlockCache(long capacity, int shards) {
+        if (capacity <= 0 || shards <= 0) {
+            throw new IllegalArgumentException("Capacity and shard count must be positive: " + capacity + ", " + shards);
+        }
+        int count = Integer.highestOneBit(shards - 1) << 1;
+        count = Math.max(1, count);
+        this.capacity = capacity;
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard(capacity / count);
+        }
+    }
+
+    /**
+     * Id for a table to key its blocks by, never handed out twice
+     */
+    public int newId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * @return the block pinned until {@link Entry#release()} is called, or null if it is not cached
+     */
+    public Entry get(int tableId, int block) {
+        long key = key(tableId, block);
+        long hash = hash(key);
+        Entry entry = shard(hash).get(key, (int) hash);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Copies the block into the cache unless it is cached already or cannot be made room for
+     */
+    public void put(int tableId, int block, MemorySegment contents) {
+        long key = key(tableId, block);
+        long hash = hash(key);
+        shard(hash).put(key, (int) hash, contents);
+    }
+
+    /**
+     * Drops the block, used when its table is closed. A pinned block is freed once released.
+     */
+    public void erase(int tableId, int block) {
+        long key = key(tableId, block);
+        long hash = hash(key);
+        shard(hash).erase(key, (int) hash);
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes of the blocks held, cached or still pinned after being dropped
+     */
+    public long usage() {
+        long usage = 0;
+        for (Shard shard : shards) {
+            usage += shard.usage();
+        }
+        return usage;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Fraction of lookups served from the cache
+     */
+    public double hitRate() {
+        long hits = this.hits.sum();
+        long lookups = hits + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Frees every block, pinned ones when they are released. Later puts are ignored.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    private Shard shard(long hash) {
+        return shards[(int) (hash >>> 32) & (shards.length - 1)];
+    }
+
+    private static long key(int tableId, int block) {
+        return (long) tableId << 32 | (block & 0xFFFFFFFFL);
+    }
+
+    private static long hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * A cached block. The contents stay readable until the entry is released.
+     */
+    public static final class Entry {
+        private final Shard shard;
+        private final long key;
+        private final int hash;
+        private final int chunk;
+        private final MemorySegment data;
+        // Guarded by the shard lock
+        private int pins;
+        private boolean referenced;
+        private boolean removed;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(Shard shard, long key, int hash, int chunk, MemorySegment data) {
+            this.shard = shard;
+            this.key = key;
+            this.hash = hash;
+            this.chunk = chunk;
+            this.data = data;
+        }
+
+        public MemorySegment data() {
+            return data;
+        }
+
+        public void release() {
+            shard.release(this);
+        }
+    }
+
+    private final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long capacity;
+        private final SlabAllocator slabs;
+        // Open addressing by key hash, linear probing
+        private Entry[] table = new Entry[64];
+        // The CLOCK ring, a circular list of the cached entries, new ones go in just behind the hand
+        private Entry hand;
+        private int size;
+        private long usage;
+        // Pieces of the slabs held by entries, cached or still pinned after being dropped
+        private int allocated;
+        private boolean closed;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+            this.slabs = new SlabAllocator(capacity);
+        }
+
+        Entry get(long key, int hash) {
+            lock.lock();
+            try {
+                Entry entry = table[find(key, hash)];
+                if (entry != null) {
+                    entry.pins++;
+                    entry.referenced = true;
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(long key, int hash, MemorySegment contents) {
+            long bytes = contents.byteSize();
+            lock.lock();
+            try {
+                int index = find(key, hash);
+                if (closed || table[index] != null || bytes > capacity || bytes > slabs.slabSize()) {
+                    return;
+                }
+                int chunk = makeRoom(bytes);
+                if (chunk == SlabAllocator.NONE) {
+                    return;
+                }
+                Entry entry = new Entry(this, key, hash, chunk, slabs.segment(chunk, bytes));
+                entry.data.copyFrom(contents);
+                allocated++;
+                usage += bytes;
+                link(entry);
+                // Evictions may have moved entries of the probe sequence
+                table[find(key, hash)] = entry;
+                if (size * 2 > table.length) {
+                    rehash();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void erase(long key, int hash) {
+            lock.lock();
+            try {
+                Entry entry = table[find(key, hash)];
+                if (entry != null) {
+                    remove(entry);
+                    if (entry.pins == 0) {
+                        free(entry);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(Entry entry) {
+            lock.lock();
+            try {
+                if (--entry.pins > 0 || !entry.removed) {
+                    return;
+                }
+                usage -= entry.data.byteSize();
+                free(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long usage() {
+            lock.lock();
+            try {
+                return usage;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                while (hand != null) {
+                    Entry entry = hand;
+                    remove(entry);
+                    if (entry.pins == 0) {
+                        free(entry);
+                    }
+                }
+                if (allocated == 0) {
+                    slabs.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Sweeps the clock until the bytes fit and a piece of the slabs is free for them, or every
+         * entry was passed twice, the second pass finds the reference bits the first one cleared
+         *
+         * @return the chunk allocated for the bytes, or {@link SlabAllocator#NONE}
+         */
+        private int makeRoom(long bytes) {
+            int steps = 2 * size;
+            while (true) {
+                if (usage + bytes <= capacity) {
+                    // Rounding and fragmentation can leave no piece large enough even when the bytes fit
+                    int chunk = slabs.allocate(bytes);
+                    if (chunk != SlabAllocator.NONE) {
+                        return chunk;
+                    }
+                }
+                if (hand == null || steps == 0) {
+                    return SlabAllocator.NONE;
+                }
+                Entry entry = hand;
+                if (entry.pins > 0 || entry.referenced) {
+                    entry.referenced = false;
+                    hand = entry.next;
+                    steps--;
+                } else {
+                    // Moves the hand on to the next entry
+                    remove(entry);
+                    free(entry);
+                    evictions.increment();
+                }
+            }
+        }
+
+        /**
+         * Takes the entry out of the table and the ring, the bytes of a pinned entry are counted
+         * until its last pin is released
+         */
+        private void remove(Entry entry) {
+            entry.removed = true;
+            if (entry.pins == 0) {
+                usage -= entry.data.byteSize();
+            }
+            deleteFromTable(find(entry.key, entry.hash));
+            if (entry.next == entry) {
+                hand = null;
+            } else {
+                entry.previous.next = entry.next;
+                entry.next.previous = entry.previous;
+                if (hand == entry) {
+                    hand = entry.next;
+                }
+            }
+            size--;
+        }
+
+        /**
+         * Adds the entry to the ring where the hand reaches it last
+         */
+        private void link(Entry entry) {
+            if (hand == null) {
+                entry.previous = entry;
+                entry.next = entry;
+                hand = entry;
+            } else {
+                entry.previous = hand.previous;
+                entry.next = hand;
+                hand.previous.next = entry;
+                hand.previous = entry;
+            }
+            size++;
+        }
+
+        /**
+         * @return the slot holding the key, or the empty slot that ends its probe sequence
+         */
+        private int find(long key, int hash) {
+            int mask = table.length - 1;
+            int index = hash & mask;
+            while (table[index] != null && table[index].key != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * Empties the slot and shifts later entries of the probe sequence back into the gap
+         */
+        private void deleteFromTable(int gap) {
+            int mask = table.length - 1;
+            table[gap] = null;
+            int index = gap;
+            while (true) {
+                index = (index + 1) & mask;
+                Entry entry = table[index];
+                if (entry == null) {
+                    return;
+                }
+                int home = entry.hash & mask;
+                // The entry may fill the gap unless its home lies cyclically in (gap, index]
+                boolean stays = gap <= index ? gap < home && home <= index : gap < home || home <= index;
+                if (!stays) {
+                    table[gap] = entry;
+                    table[index] = null;
+                    gap = index;
+                }
+            }
+        }
+
+        private void rehash() {
+            Entry[] old = table;
+            table = new Entry[old.length * 2];
+            for (Entry entry : old) {
+                if (entry != null) {
+                    table[find(entry.key, entry.hash)] = entry;
+                }
+            }
+        }
+
+        /**
+         * Hands the piece of a removed and unpinned entry back to the slabs, and frees the slabs
+         * once the shard is closed and holds no piece
+         */
+        private void free(Entry entry) {
+            slabs.free(entry.chunk, entry.data.byteSize());
+            if (--allocated == 0 && closed) {
+                slabs.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Compresses the data blocks of a table, see {@link BlockCodecs} for the built in codecs.
+ *
+ * Every block records the id of the codec that wrote it, so a reader picks the decoder per block
+ * and tables written with different codecs can be read side by side. A codec from another library
+ * is plugged in by implementing this interface and passing it to {@link BlockCodecs#register}
+ * before tables using it are opened. Implementations must be thread safe, many readers decompress
+ * through the same instance.
+ */
+public interface BlockCodec {
+
+    /**
+     * Id stored with every block this codec compresses, 0 to 255, the ids of the built in codecs
+     * are reserved
+     */
+    int id();
+
+    String name();
+
+    /**
+     * Upper bound of the compressed size of any input of the given length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses the input into dst, which has room for {@link #maxCompressedLength} bytes
+     *
+     * @return the number of bytes written to dst
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset);
+
+    /**
+     * Decompresses the whole segment into dst
+     *
+     * @param length size of the uncompressed block, recorded when it was written
+     * @throws IllegalArgumentException if the segment does not decompress to exactly length bytes
+     */
+    void decompress(MemorySegment src, byte[] dst, int dstOffset, int length);
+}
@@ -0,0 +1,86 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of the {@link BlockCodec}s readers can decode, by id.
+ *
+ * Three codecs are built in: {@link #NONE} stores blocks as they are and lets readers serve them
+ * straight from the mapping, {@link #LZ} trades little CPU for a moderate ratio, and
+ * {@link #DEFLATE} compresses harder at several times the cost, which suits cold levels.
+ */
+public final class BlockCodecs {
+    public static final BlockCodec NONE = new NoneCodec();
+    public static final BlockCodec LZ = new LzBlockCodec();
+    public static final BlockCodec DEFLATE = new DeflateBlockCodec();
+
+    private static final AtomicReferenceArray<BlockCodec> CODECS = new AtomicReferenceArray<>(256);
+
+    static {
+        CODECS.set(NONE.id(), NONE);
+        CODECS.set(LZ.id(), LZ);
+        CODECS.set(DEFLATE.id(), DEFLATE);
+    }
+
+    private BlockCodecs() {
+    }
+
+    /**
+     * Makes tables written with the codec readable, registering the same codec twice is allowed
+     *
+     * @throws IllegalArgumentException if the id is out of range or taken by another codec
+     */
+    public static void register(BlockCodec codec) {
+        int id = codec.id();
+        if (id < 0 || id > 255) {
+            throw new IllegalArgumentException("Codec id must be between 0 and 255: " + id);
+        }
+        if (!CODECS.compareAndSet(id, null, codec) && CODECS.get(id) != codec) {
+            throw new IllegalArgumentException("Codec id " + id + " is taken by " + CODECS.get(id).name());
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if no codec with the id is registered
+     */
+    public static BlockCodec forId(int id) {
+        BlockCodec codec = id < 0 || id > 255 ? null : CODECS.get(id);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown block codec " + id);
+        }
+        return codec;
+    }
+
+    private static final class NoneCodec implements BlockCodec {
+        @Override
+        public int id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return length;
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            return length;
+        }
+
+        @Override
+        public void decompress(MemorySegment src, byte[] dst, int dstOffset, int length) {
+            if (src.byteSize() != length) {
+                throw new IllegalArgumentException("Block of " + src.byteSize() + " bytes, expected " + length);
+            }
+            MemorySegment.copy(src, ValueLayout.JAVA_BYTE, 0, dst, dstOffset, length);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Bloom filter stored next to the block index of a table.
+ *
+ * Encoded as the bit array followed by one byte holding the number of probes. Probes are derived
+ * from a single 32 bit hash per key with double hashing, so the builder only has to remember one
+ * int per key and lookups hash the probe key once.
+ */
+public final class BloomFilter {
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private static final long MAX_BITS = Integer.MAX_VALUE & ~7;
+
+    private BloomFilter() {
+    }
+
+    /**
+     * Builds the encoded filter for the first {@code count} key hashes
+     */
+    public static byte[] build(int[] hashes, int count, int bitsPerKey) {
+        // ln(2) * bits per key minimises the false positive rate
+        int probes = Math.max(1, Math.min(30, (int) (bitsPerKey * 0.69)));
+        // Bit positions are ints, a filter that would need more is capped and only gets less precise
+        long wanted = Math.min(Math.max(64L, (long) count * bitsPerKey), MAX_BITS);
+        int bytes = (int) ((wanted + 7) / 8);
+        int bits = bytes * 8;
+
+        byte[] filter = new byte[bytes + 1];
+        for (int i = 0; i < count; i++) {
+            int hash = hashes[i];
+            int delta = Integer.rotateRight(hash, 17);
+            for (int probe = 0; probe < probes; probe++) {
+                int bit = Integer.remainderUnsigned(hash, bits);
+                filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+                hash += delta;
+            }
+        }
+        filter[bytes] = (byte) probes;
+        return filter;
+    }
+
+    /**
+     * @return false only if the key with the given hash was definitely not added to the filter
+     */
+    public static boolean mayContain(MemorySegment filter, int hash) {
+        long length = filter.byteSize();
+        if (length < 2) {
+            return true;
+        }
+        int bits = (int) (length - 1) * 8;
+        int probes = filter.get(ValueLayout.JAVA_BYTE, length - 1);
+        int delta = Integer.rotateRight(hash, 17);
+        for (int probe = 0; probe < probes; probe++) {
+            int bit = Integer.remainderUnsigned(hash, bits);
+            if ((filter.get(ValueLayout.JAVA_BYTE, bit >>> 3) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+            hash += delta;
+        }
+        return true;
+    }
+
+    /**
+     * Murmur3 32 bit hash of the key
+     */
+    public static int hash(byte[] key) {
+        return hash(key, 0, key.length);
+    }
+
+    /**
+     * Murmur3 32 bit hash of length bytes of the array starting at offset
+     */
+    public static int hash(byte[] key, int offset, int length) {
+        int h = 0x9747B28C;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 4 <= end; i += 4) {
+            int k = (key[i] & 0xFF) | (key[i + 1] & 0xFF) << 8 | (key[i + 2] & 0xFF) << 16 | (key[i + 3] & 0xFF) << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+        }
+        int tail = end - i;
+        if (tail > 0) {
+            int k = key[i] & 0xFF;
+            if (tail > 1) {
+                k ^= (key[i + 1] & 0xFF) << 8;
+            }
+            if (tail > 2) {
+                k ^= (key[i + 2] & 0xFF) << 16;
+            }
+            h ^= mixK(k);
+        }
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1B873593;
+    }
+}
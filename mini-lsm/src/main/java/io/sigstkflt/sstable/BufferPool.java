@@ -0,0 +1,38 @@
+package io.sigstkflt.sstable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Heap buffers that compressed blocks are decompressed into for point lookups.
+ *
+ * A lookup borrows a buffer for as long as it reads the block and hands it back before
+ * returning, so steady state lookups do not allocate. At most a bounded number of buffers are
+ * kept, a buffer too small for the block asked for is dropped and replaced by a larger one.
+ */
+final class BufferPool {
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxPooled;
+
+    BufferPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    byte[] acquire(int minLength) {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            return new byte[minLength];
+        }
+        pooled.decrementAndGet();
+        return buffer.length < minLength ? new byte[minLength] : buffer;
+    }
+
+    void release(byte[] buffer) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
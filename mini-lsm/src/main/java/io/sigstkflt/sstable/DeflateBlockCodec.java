@@ -0,0 +1,109 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Zlib codec from {@code java.util.zip}, a stronger and slower alternative to {@link LzBlockCodec}.
+ *
+ * Deflaters and inflaters hold native memory, they are pooled and reset between blocks rather
+ * than created per block. Zlib cannot read a mapping that may be unmapped concurrently, so the
+ * compressed block is first copied into a heap buffer pooled along with the inflater. The zlib
+ * checksum of every block is verified on the way.
+ */
+public final class DeflateBlockCodec implements BlockCodec {
+    private final int level;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Inflating> inflaters = new ConcurrentLinkedQueue<>();
+
+    public DeflateBlockCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level zlib compression level from 1 to 9, only affects writing
+     */
+    public DeflateBlockCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public int id() {
+        return 2;
+    }
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // zlib's compressBound plus the stream header and checksum
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13 + 6;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            deflater.setInput(src, srcOffset, length);
+            deflater.finish();
+            int out = dstOffset;
+            int limit = dstOffset + maxCompressedLength(length);
+            while (!deflater.finished()) {
+                out += deflater.deflate(dst, out, limit - out);
+            }
+            return out - dstOffset;
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    @Override
+    public void decompress(MemorySegment src, byte[] dst, int dstOffset, int length) {
+        Inflating inflating = inflaters.poll();
+        if (inflating == null) {
+            inflating = new Inflating();
+        }
+        Inflater inflater = inflating.inflater;
+        try {
+            int inputLength = (int) src.byteSize();
+            if (inflating.input.length < inputLength) {
+                inflating.input = new byte[Math.max(inputLength, inflating.input.length * 2)];
+            }
+            MemorySegment.copy(src, ValueLayout.JAVA_BYTE, 0, inflating.input, 0, inputLength);
+            inflater.setInput(inflating.input, 0, inputLength);
+            int out = dstOffset;
+            int limit = dstOffset + length;
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(dst, out, limit - out);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || out == limit)) {
+                    break;
+                }
+                out += inflated;
+            }
+            if (!inflater.finished() || out != limit) {
+                throw new IllegalArgumentException("Corrupt deflate block");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt deflate block", e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflating);
+        }
+    }
+
+    private static final class Inflating {
+        final Inflater inflater = new Inflater();
+        byte[] input = new byte[4 * 1024];
+    }
+}
@@ -0,0 +1,181 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fast byte oriented LZ77 codec using the LZ4 block format, written in plain Java.
+ *
+ * A compressed block is a run of sequences, each a token holding the literal and match length
+ * nibbles, the literals, a two byte little endian offset back into the output and the match. The
+ * last sequence carries literals only. Matches are found greedily through a hash table of the
+ * four byte strings seen so far, the tables are pooled so compressing a block does not allocate.
+ * Decompression copies from the mapping straight into the destination.
+ */
+final class LzBlockCodec implements BlockCodec {
+    private static final int MIN_MATCH = 4;
+    // The format requires the last five bytes to be literals and the last match to start twelve
+    // bytes before the end
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+    // Reads four bytes of the input at any offset without wrapping the array
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ConcurrentLinkedQueue<int[]> tables = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public int id() {
+        return 1;
+    }
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int end = srcOffset + length;
+        int anchor = srcOffset;
+        int out = dstOffset;
+        if (length > MATCH_FIND_LIMIT) {
+            int[] table = tables.poll();
+            if (table == null) {
+                table = new int[1 << HASH_BITS];
+            }
+            Arrays.fill(table, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int findLimit = end - MATCH_FIND_LIMIT;
+            int position = srcOffset;
+            while (position < findLimit) {
+                int sequence = (int) INT.get(src, position);
+                int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_BITS);
+                int candidate = table[hash];
+                table[hash] = position;
+                if (candidate < 0 || position - candidate > MAX_OFFSET || (int) INT.get(src, candidate) != sequence) {
+                    position++;
+                    continue;
+                }
+                while (position > anchor && candidate > srcOffset && src[position - 1] == src[candidate - 1]) {
+                    position--;
+                    candidate--;
+                }
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchLimit && src[position + matchLength] == src[candidate + matchLength]) {
+                    matchLength++;
+                }
+                out = writeSequence(src, anchor, position - anchor, position - candidate, matchLength, dst, out);
+                position += matchLength;
+                anchor = position;
+            }
+            tables.offer(table);
+        }
+        out = writeSequence(src, anchor, end - anchor, 0, 0, dst, out);
+        return out - dstOffset;
+    }
+
+    @Override
+    public void decompress(MemorySegment src, byte[] dst, int dstOffset, int length) {
+        long in = 0;
+        long inEnd = src.byteSize();
+        int out = dstOffset;
+        int outEnd = dstOffset + length;
+        while (in < inEnd) {
+            int token = src.get(ValueLayout.JAVA_BYTE, in++) & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src.get(ValueLayout.JAVA_BYTE, in++) & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > outEnd - out || literals > inEnd - in) {
+                throw corrupt();
+            }
+            MemorySegment.copy(src, ValueLayout.JAVA_BYTE, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in == inEnd) {
+                break;
+            }
+
+            int offset = (src.get(ValueLayout.JAVA_BYTE, in) & 0xFF) | (src.get(ValueLayout.JAVA_BYTE, in + 1) & 0xFF) << 8;
+            in += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src.get(ValueLayout.JAVA_BYTE, in++) & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int from = out - offset;
+            if (offset == 0 || from < dstOffset || matchLength > outEnd - out) {
+                throw corrupt();
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(dst, from, dst, out, matchLength);
+            } else {
+                // The match overlaps the bytes it produces, a short offset repeats a pattern
+                for (int i = 0; i < matchLength; i++) {
+                    dst[out + i] = dst[from + i];
+                }
+            }
+            out += matchLength;
+        }
+        if (out != outEnd) {
+            throw corrupt();
+        }
+    }
+
+    /**
+     * Writes the literals and, unless matchLength is 0, the match that follows them
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literals, int offset, int matchLength,
+                                     byte[] dst, int out) {
+        int token = out++;
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        dst[token] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchCode, 15));
+        if (literals >= 15) {
+            out = writeLength(literals - 15, dst, out);
+        }
+        System.arraycopy(src, literalStart, dst, out, literals);
+        out += literals;
+        if (matchLength == 0) {
+            return out;
+        }
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >>> 8);
+        if (matchCode >= 15) {
+            out = writeLength(matchCode - 15, dst, out);
+        }
+        return out;
+    }
+
+    private static int writeLength(int length, byte[] dst, int out) {
+        while (length >= 255) {
+            dst[out++] = (byte) 255;
+            length -= 255;
+        }
+        dst[out++] = (byte) length;
+        return out;
+    }
+
+    private static IllegalArgumentException corrupt() {
+        return new IllegalArgumentException("Corrupt lz block");
+    }
+}
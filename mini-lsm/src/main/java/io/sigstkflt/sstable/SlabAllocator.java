@@ -0,0 +1,191 @@
+package io.sigstkflt.sstable;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Buddy allocator carving the blocks of a cache shard out of a few large off-heap slabs.
+ *
+ * The slabs come from one shared arena and are taken as they are needed, enough of them to hold
+ * the capacity. A request is rounded up to a power of two no smaller than {@link #MIN_CHUNK} and
+ * served by halving the smallest free chunk that fits, a freed chunk is merged with its buddy
+ * whenever that is free too, so memory freed by small blocks can serve large ones again. The free
+ * lists are linked through the free chunks themselves. Chunks are named by their index in units
+ * of {@link #MIN_CHUNK} across the slabs. Not thread safe, the shard's lock guards it.
+ */
+final class SlabAllocator implements AutoCloseable {
+    static final int MIN_CHUNK = 64;
+    static final long MAX_SLAB_SIZE = 1L << 20;
+    static final int NONE = -1;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CHUNK);
+    // Free list links, the next and previous free chunk of the same order
+    private static final long NEXT = 0;
+    private static final long PREVIOUS = Integer.BYTES;
+
+    private final Arena arena = Arena.ofShared();
+    private final long slabSize;
+    private final int maxSlabs;
+    // A whole slab is a chunk of this order, and this many bits of a chunk index pick the chunk in its slab
+    private final int maxOrder;
+    private final List<MemorySegment> slabs = new ArrayList<>();
+    private final int[] heads;
+    // Order plus one of the free chunk starting at each chunk index, 0 if none starts there
+    private byte[] freeOrder = new byte[0];
+
+    /**
+     * @param capacity bytes the slabs must be able to hold, they are rounded up to whole slabs
+     */
+    SlabAllocator(long capacity) {
+        long wanted = Math.max(capacity, MIN_CHUNK);
+        this.slabSize = Math.min(MAX_SLAB_SIZE, Long.highestOneBit(wanted - 1) << 1);
+        this.maxOrder = Long.numberOfTrailingZeros(slabSize) - MIN_SHIFT;
+        long slabCount = (wanted + slabSize - 1) / slabSize;
+        if (slabCount > Integer.MAX_VALUE >> maxOrder) {
+            throw new IllegalArgumentException("Capacity too large for one allocator: " + capacity);
+        }
+        this.maxSlabs = (int) slabCount;
+        this.heads = new int[maxOrder + 1];
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * Largest request that can be served
+     */
+    long slabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Bytes of the slabs taken from the arena so far
+     */
+    long reserved() {
+        return slabs.size() * slabSize;
+    }
+
+    /**
+     * @return the first chunk index of a piece holding the bytes, or {@link #NONE} if no free chunk
+     * is large enough and every slab is taken
+     */
+    int allocate(long bytes) {
+        int order = order(bytes);
+        if (order > maxOrder) {
+            return NONE;
+        }
+        int found = order;
+        while (found <= maxOrder && heads[found] == NONE) {
+            found++;
+        }
+        int chunk;
+        if (found <= maxOrder) {
+            chunk = heads[found];
+            unlink(chunk, found);
+        } else if (slabs.size() < maxSlabs) {
+            chunk = addSlab();
+            found = maxOrder;
+        } else {
+            return NONE;
+        }
+        // Hands the upper halves back until the piece is as small as the request allows
+        while (found > order) {
+            found--;
+            push(chunk + (1 << found), found);
+        }
+        return chunk;
+    }
+
+    /**
+     * The bytes of an allocated piece, readable until the allocator is closed
+     */
+    MemorySegment segment(int chunk, long bytes) {
+        return slab(chunk).asSlice(offset(chunk), bytes);
+    }
+
+    /**
+     * Returns a piece allocated for the given number of bytes
+     */
+    void free(int chunk, long bytes) {
+        int order = order(bytes);
+        while (order < maxOrder) {
+            int buddy = chunk ^ (1 << order);
+            if (freeOrder[buddy] != order + 1) {
+                break;
+            }
+            unlink(buddy, order);
+            chunk &= ~(1 << order);
+            order++;
+        }
+        push(chunk, order);
+    }
+
+    /**
+     * Frees the slabs, every piece becomes unreadable. Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        if (arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+
+    private int addSlab() {
+        slabs.add(arena.allocate(slabSize, MIN_CHUNK));
+        freeOrder = Arrays.copyOf(freeOrder, slabs.size() << maxOrder);
+        return (slabs.size() - 1) << maxOrder;
+    }
+
+    private void push(int chunk, int order) {
+        int head = heads[order];
+        freeOrder[chunk] = (byte) (order + 1);
+        setLink(chunk, NEXT, head);
+        setLink(chunk, PREVIOUS, NONE);
+        if (head != NONE) {
+            setLink(head, PREVIOUS, chunk);
+        }
+        heads[order] = chunk;
+    }
+
+    private void unlink(int chunk, int order) {
+        int next = link(chunk, NEXT);
+        int previous = link(chunk, PREVIOUS);
+        freeOrder[chunk] = 0;
+        if (previous == NONE) {
+            heads[order] = next;
+        } else {
+            setLink(previous, NEXT, next);
+        }
+        if (next != NONE) {
+            setLink(next, PREVIOUS, previous);
+        }
+    }
+
+    private int link(int chunk, long field) {
+        return slab(chunk).get(ValueLayout.JAVA_INT, offset(chunk) + field);
+    }
+
+    private void setLink(int chunk, long field, int value) {
+        slab(chunk).set(ValueLayout.JAVA_INT, offset(chunk) + field, value);
+    }
+
+    private MemorySegment slab(int chunk) {
+        return slabs.get(chunk >>> maxOrder);
+    }
+
+    private long offset(int chunk) {
+        return (long) (chunk & ((1 << maxOrder) - 1)) << MIN_SHIFT;
+    }
+
+    /**
+     * @return the order of the smallest chunk holding the bytes, chunks of order n hold MIN_CHUNK << n
+     */
+    private static int order(long bytes) {
+        if (bytes <= MIN_CHUNK) {
+            return 0;
+        }
+        return Long.SIZE - Long.numberOfLeadingZeros(bytes - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,381 @@
+package io.sigstkflt.sstable;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.Slice;
+import io.sigstkflt.util.RateLimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes sorted key value pairs into an SSTable file, see {@link SsTableFormat} for the layout.
+ *
+ * Entries are encoded straight into a reusable block buffer and finished blocks are staged in a
+ * single output buffer in front of the file channel, so building a table allocates per block
+ * (first and last key for the index) but never per entry, and {@link #add(Cursor)} takes entries
+ * straight from a cursor's views. Keys must be added in ascending order. Each key is stored as
+ * the bytes it does not share with the key before it, the previous key is kept in a reused buffer
+ * and every {@link SsTableFormat#RESTART_INTERVAL}th entry starts over with a whole key.
+ * One hash per key is kept for the bloom filter written after the index. A finished block is
+ * compressed with the builder's {@link BlockCodec} into a reused buffer and stored as it is when
+ * compression saves less than an eighth of it.
+ */
+public class SsTableBuilder implements AutoCloseable {
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+    private final Path path;
+    private final int blockSize;
+    private final int bitsPerKey;
+    private final BlockCodec codec;
+    private final RateLimiter rateLimiter;
+    private final FileChannel channel;
+    private final ByteBuffer output;
+    private ByteBuffer block;
+    private ByteBuffer compressed = ByteBuffer.allocate(0);
+    private ByteBuffer index = ByteBuffer.allocate(4 * 1024);
+    private int[] restartOffsets = new int[16];
+    private int restartCount;
+    private byte[] previousKey = new byte[64];
+    private int previousKeyLength;
+    private int[] keyHashes = new int[1024];
+    private int blockEntries;
+    private int indexEntryStart;
+    private int blockCount;
+    private long entryCount;
+    private long fileOffset;
+    private long maxSequence;
+    private byte[] firstKey;
+    private byte[] lastKey;
+    private boolean finished;
+
+    public SsTableBuilder(Path path) throws IOException {
+        this(path, SsTableFormat.DEFAULT_BLOCK_SIZE);
+    }
+
+    public SsTableBuilder(Path path, int blockSize) throws IOException {
+        this(path, blockSize, BloomFilter.DEFAULT_BITS_PER_KEY);
+    }
+
+    public SsTableBuilder(Path path, int blockSize, int bitsPerKey) throws IOException {
+        this(path, blockSize, bitsPerKey, RateLimiter.unlimited());
+    }
+
+    /**
+     * @param bitsPerKey bloom filter size per key, 0 disables the filter
+     * @param rateLimiter throttles writes to the file, used by background compaction
+     */
+    public SsTableBuilder(Path path, int blockSize, int bitsPerKey, RateLimiter rateLimiter) throws IOException {
+        this(path, blockSize, bitsPerKey, BlockCodecs.NONE, rateLimiter);
+    }
+
+    /**
+     * @param codec compresses the data blocks, {@link BlockCodecs#NONE} stores them as they are
+     */
+    public SsTableBuilder(Path path, int blockSize, int bitsPerKey, BlockCodec codec, RateLimiter rateLimiter)
+            throws IOException {
+        this.path = path;
+        this.blockSize = blockSize;
+        this.bitsPerKey = bitsPerKey;
+        this.codec = codec;
+        this.rateLimiter = rateLimiter;
+        this.block = ByteBuffer.allocate(blockSize);
+        this.output = ByteBuffer.allocateDirect(Math.max(OUTPUT_BUFFER_SIZE, blockSize));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Drains the iterator into a new table at the given path. Iterators carry no sequence numbers,
+     * every entry is written at sequence 0.
+     */
+    public static SsTableInfo write(Path path, MemtableIterator iterator, int blockSize) throws IOException {
+        return write(path, iterator, blockSize, BloomFilter.DEFAULT_BITS_PER_KEY);
+    }
+
+    public static SsTableInfo write(Path path, MemtableIterator iterator, int blockSize, int bitsPerKey)
+            throws IOException {
+        try (SsTableBuilder builder = new SsTableBuilder(path, blockSize, bitsPerKey)) {
+            while (iterator.hasNext()) {
+                KeyValuePair pair = iterator.next();
+                builder.add(pair.keyWrapper().getValue(), pair.data(), 0);
+            }
+            return builder.finish();
+        }
+    }
+
+    public static SsTableInfo write(Path path, MemtableIterator iterator) throws IOException {
+        return write(path, iterator, SsTableFormat.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Drains the cursor into a new table at the given path without allocating per entry
+     */
+    public static SsTableInfo write(Path path, Cursor cursor, int blockSize, int bitsPerKey) throws IOException {
+        return write(path, cursor, blockSize, bitsPerKey, BlockCodecs.NONE);
+    }
+
+    public static SsTableInfo write(Path path, Cursor cursor, int blockSize, int bitsPerKey, BlockCodec codec)
+            throws IOException {
+        try (SsTableBuilder builder = new SsTableBuilder(path, blockSize, bitsPerKey, codec, RateLimiter.unlimited())) {
+            for (; cursor.isValid(); cursor.next()) {
+                builder.add(cursor);
+            }
+            return builder.finish();
+        }
+    }
+
+    /**
+     * Adds the next entry at sequence 0, a {@link KeyValuePair#TOMBSTONE} value is stored as a tombstone
+     */
+    public void add(byte[] key, byte[] value) throws IOException {
+        add(key, value, 0);
+    }
+
+    /**
+     * Adds the next entry, versions of the same key must be added newest first
+     */
+    public void add(byte[] key, byte[] value, long sequence) throws IOException {
+        add(key, 0, key.length, value, 0, value == KeyValuePair.TOMBSTONE ? -1 : value.length, sequence);
+    }
+
+    /**
+     * Adds the entry the cursor stands on, the cursor is not moved
+     */
+    public void add(Cursor cursor) throws IOException {
+        Slice key = cursor.key();
+        Slice value = cursor.value();
+        add(key.array(), key.offset(), key.length(),
+                value.array(), value.offset(), cursor.isTombstone() ? -1 : value.length(), cursor.sequence());
+    }
+
+    /**
+     * Whether the key equals the key of the last entry added, a table written for a level must
+     * not end in the middle of the versions of a key
+     */
+    public boolean isLastKey(Slice key) {
+        return entryCount > 0 && Arrays.equals(previousKey, 0, previousKeyLength,
+                key.array(), key.offset(), key.offset() + key.length());
+    }
+
+    /**
+     * @param valueLength length of the value, -1 for a tombstone
+     */
+    private void add(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength,
+                     long sequence) throws IOException {
+        // Sized for a restart entry, which a new block starts with
+        int entrySize = SsTableFormat.ENTRY_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        if (blockEntries > 0 && encodedBlockSize(entrySize) > blockSize) {
+            finishBlock();
+        }
+        if (blockEntries == 0) {
+            startBlock(key, keyOffset, keyLength);
+        }
+        int shared = 0;
+        if (blockEntries % SsTableFormat.RESTART_INTERVAL == 0) {
+            if (restartCount == restartOffsets.length) {
+                restartOffsets = Arrays.copyOf(restartOffsets, restartCount * 2);
+            }
+            restartOffsets[restartCount++] = block.position();
+        } else {
+            shared = sharedPrefix(key, keyOffset, keyLength);
+        }
+        if (block.remaining() < entrySize) {
+            block = grow(block, block.position() + entrySize);
+        }
+        if (bitsPerKey > 0) {
+            if (entryCount == keyHashes.length) {
+                keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+            }
+            keyHashes[(int) entryCount] = BloomFilter.hash(key, keyOffset, keyLength);
+        }
+
+        blockEntries++;
+        block.putInt(shared);
+        block.putInt(keyLength - shared);
+        block.putInt(valueLength);
+        block.putLong(sequence);
+        block.put(key, keyOffset + shared, keyLength - shared);
+        if (valueLength > 0) {
+            block.put(value, valueOffset, valueLength);
+        }
+        if (previousKey.length < keyLength) {
+            previousKey = Arrays.copyOf(previousKey, Math.max(keyLength, previousKey.length * 2));
+        }
+        System.arraycopy(key, keyOffset + shared, previousKey, shared, keyLength - shared);
+        previousKeyLength = keyLength;
+        entryCount++;
+        maxSequence = Math.max(maxSequence, sequence);
+    }
+
+    /**
+     * Writes the last block, the block index and the footer, then forces the file to disk
+     */
+    public SsTableInfo finish() throws IOException {
+        if (blockEntries > 0) {
+            finishBlock();
+        }
+        long indexOffset = fileOffset;
+        index.flip();
+        write(index);
+
+        long bloomOffset = fileOffset;
+        int bloomLength = 0;
+        if (bitsPerKey > 0 && entryCount > 0) {
+            byte[] bloom = BloomFilter.build(keyHashes, (int) entryCount, bitsPerKey);
+            bloomLength = bloom.length;
+            write(ByteBuffer.wrap(bloom));
+        }
+
+        ByteBuffer footer = ByteBuffer.allocate(SsTableFormat.FOOTER_SIZE);
+        footer.putLong(indexOffset);
+        footer.putInt(blockCount);
+        footer.putLong(bloomOffset);
+        footer.putInt(bloomLength);
+        footer.putLong(maxSequence);
+        footer.putInt(SsTableFormat.MAGIC);
+        footer.flip();
+        write(footer);
+
+        flushOutput();
+        channel.force(true);
+        channel.close();
+        finished = true;
+        return new SsTableInfo(path, fileOffset, blockCount, entryCount, firstKey, lastKey);
+    }
+
+    /**
+     * Bytes written so far plus the block being built, the index and filter are not included
+     */
+    public long estimatedSize() {
+        return fileOffset + block.position();
+    }
+
+    public long entryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+        }
+    }
+
+    private int encodedBlockSize(int nextEntrySize) {
+        return block.position() + nextEntrySize + (restartCount + 1) * Integer.BYTES + Integer.BYTES;
+    }
+
+    private int sharedPrefix(byte[] key, int keyOffset, int keyLength) {
+        int mismatch = Arrays.mismatch(previousKey, 0, previousKeyLength, key, keyOffset, keyOffset + keyLength);
+        return mismatch == -1 ? keyLength : mismatch;
+    }
+
+    private void startBlock(byte[] key, int keyOffset, int keyLength) {
+        if (firstKey == null) {
+            firstKey = Arrays.copyOfRange(key, keyOffset, keyOffset + keyLength);
+        }
+        ensureIndexCapacity(Long.BYTES + 3 * Integer.BYTES + 1 + keyLength);
+        indexEntryStart = index.position();
+        index.putLong(fileOffset);
+        // Lengths and codec are patched in finishBlock
+        index.putInt(0);
+        index.putInt(0);
+        index.put((byte) 0);
+        index.putInt(keyLength);
+        index.put(key, keyOffset, keyLength);
+    }
+
+    private void finishBlock() throws IOException {
+        int lastKeyLength = previousKeyLength;
+        lastKey = Arrays.copyOf(previousKey, lastKeyLength);
+
+        int trailer = (restartCount + 1) * Integer.BYTES;
+        if (block.remaining() < trailer) {
+            block = grow(block, block.position() + trailer);
+        }
+        for (int i = 0; i < restartCount; i++) {
+            block.putInt(restartOffsets[i]);
+        }
+        block.putInt(restartCount);
+        block.flip();
+
+        ByteBuffer stored = compress(block);
+        index.putInt(indexEntryStart + Long.BYTES, stored.remaining());
+        index.putInt(indexEntryStart + Long.BYTES + Integer.BYTES, block.remaining());
+        index.put(indexEntryStart + Long.BYTES + 2 * Integer.BYTES, (byte) (stored == block ? 0 : codec.id()));
+        ensureIndexCapacity(Integer.BYTES + lastKeyLength);
+        index.putInt(lastKeyLength);
+        index.put(lastKey);
+
+        write(stored);
+        block.clear();
+        if (block.capacity() > blockSize) {
+            block = ByteBuffer.allocate(blockSize);
+        }
+        blockEntries = 0;
+        restartCount = 0;
+        blockCount++;
+    }
+
+    /**
+     * @return the compressed block, or the block itself if compression is off or not worth it
+     */
+    private ByteBuffer compress(ByteBuffer raw) {
+        if (codec.id() == 0) {
+            return raw;
+        }
+        int rawLength = raw.remaining();
+        int bound = codec.maxCompressedLength(rawLength);
+        if (compressed.capacity() < bound) {
+            compressed = ByteBuffer.allocate(Math.max(bound, compressed.capacity() * 2));
+        }
+        int length = codec.compress(raw.array(), 0, rawLength, compressed.array(), 0);
+        // Below an eighth saved the block is not worth decompressing on every read
+        if (length > rawLength - rawLength / 8) {
+            return raw;
+        }
+        compressed.clear().limit(length);
+        return compressed;
+    }
+
+    private void ensureIndexCapacity(int bytes) {
+        if (index.remaining() < bytes) {
+            index = grow(index, index.position() + bytes);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        fileOffset += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            if (!output.hasRemaining()) {
+                flushOutput();
+            }
+            int length = Math.min(output.remaining(), buffer.remaining());
+            output.put(output.position(), buffer, buffer.position(), length);
+            output.position(output.position() + length);
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private void flushOutput() throws IOException {
+        output.flip();
+        rateLimiter.acquire(output.remaining());
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minCapacity));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
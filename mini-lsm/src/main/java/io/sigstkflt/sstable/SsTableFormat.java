@@ -0,0 +1,45 @@
+package io.sigstkflt.sstable;
+
+import java.nio.file.Path;
+
+/**
+ * On-disk layout shared by {@link SsTableBuilder} and the readers.
+ *
+ * <pre>
+ * | data block | data block | ... | block index | bloom filter | footer |
+ *
+ * data block:  | entry | entry | ... | restart offset (int) * r | r (int) |
+ * entry:       | shared key length (int) | unshared key length (int) | value length (int)
+ *              | sequence (long) | unshared key bytes | value |
+ * block index: | block offset (long) | block length (int) | uncompressed length (int) | codec (byte)
+ *              | first key length (int) | first key | last key length (int) | last key | ... one per block
+ * bloom filter: see {@link BloomFilter}, empty when filters are disabled
+ * footer:      | index offset (long) | block count (int) | bloom offset (long) | bloom length (int)
+ *              | max sequence (long) | magic (int) |
+ * </pre>
+ * A value length of -1 marks a tombstone and is followed by no value bytes. Entries are sorted by
+ * key and versions of the same key by sequence number, newest first. An entry's key is the first
+ * shared bytes of the key before it followed by its own unshared bytes. Every
+ * {@link #RESTART_INTERVAL}th entry of a block is a restart point that shares nothing, the offsets
+ * of the restart points relative to the start of the block let a reader binary search them. A
+ * block is stored compressed by the {@link BlockCodec} whose id the index records for it, or as it
+ * is under id 0, the block length is its size in the file. All integers are big endian.
+ */
+public final class SsTableFormat {
+    public static final String SUFFIX = ".sst";
+    public static final int MAGIC = 0x4C534D34;
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024;
+    public static final int RESTART_INTERVAL = 16;
+    public static final int ENTRY_HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    public static final int FOOTER_SIZE = 3 * Long.BYTES + 3 * Integer.BYTES;
+
+    private SsTableFormat() {
+    }
+
+    /**
+     * File of the table with the given id inside a storage directory
+     */
+    public static Path path(Path dir, int id) {
+        return dir.resolve(id + SUFFIX);
+    }
+}
@@ -0,0 +1,8 @@
+package io.sigstkflt.sstable;
+
+import java.nio.file.Path;
+
+/**
+ * Summary of a table produced by {@link SsTableBuilder}
+ */
+public record SsTableInfo(Path path, long fileSize, int blockCount, long entryCount, byte[] firstKey, byte[] lastKey) {}
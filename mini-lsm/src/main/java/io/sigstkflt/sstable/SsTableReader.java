@@ -0,0 +1,514 @@
+package io.sigstkflt.sstable;
+
+import io.sigstkflt.iterator.MergingCursor;
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.CursorIterator;
+import io.sigstkflt.memtable.KeyRangeSpliterator;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.Slice;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Serves point lookups and range scans from a memory mapped SSTable.
+ *
+ * The block index is decoded onto the heap when the table is opened, it holds two keys per
+ * block. Uncompressed data blocks are never copied, lookups binary search the index and then the
+ * restart points of a single block in the mapping before scanning at most one restart interval,
+ * so a read costs page cache hits and the copy of the value handed back to the caller. Compressed
+ * blocks are decompressed into a buffer borrowed from a shared pool for lookups, a cursor keeps
+ * one buffer for every block it visits. With a {@link BlockCache} the decompressed blocks are
+ * cached, lookups read a cached block in place while it is pinned and cursors copy it out, as they
+ * may stay on a block indefinitely. Point lookups consult the table's bloom filter, which also
+ * stays in the mapping, before any block is touched.
+ */
+public class SsTableReader implements AutoCloseable {
+    private static final BufferPool BUFFERS = new BufferPool(64);
+
+    private final int id;
+    private final Path path;
+    private final Arena arena;
+    private final MemorySegment file;
+    private final BlockCache cache;
+    private final int cacheId;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] rawLengths;
+    private final BlockCodec[] codecs;
+    // Largest decompressed block, 0 if the table has no compressed block
+    private final int maxRawLength;
+    private final byte[][] firstKeys;
+    private final byte[][] lastKeys;
+    private final MemorySegment bloom;
+    private final long maxSequence;
+    private final LongAdder bloomChecks = new LongAdder();
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
+
+    private SsTableReader(int id, Path path, Arena arena, MemorySegment file, BlockCache cache) {
+        this.id = id;
+        this.path = path;
+        this.arena = arena;
+        this.file = file;
+
+        long footer = file.byteSize() - SsTableFormat.FOOTER_SIZE;
+        if (footer < 0 || file.get(Block.INT, file.byteSize() - Integer.BYTES) != SsTableFormat.MAGIC) {
+            throw new IllegalArgumentException(path + " is not an SSTable");
+        }
+        long position = file.get(Block.LONG, footer);
+        int blockCount = file.get(Block.INT, footer + Long.BYTES);
+        long bloomOffset = file.get(Block.LONG, footer + Long.BYTES + Integer.BYTES);
+        int bloomLength = file.get(Block.INT, footer + 2 * Long.BYTES + Integer.BYTES);
+        bloom = file.asSlice(bloomOffset, bloomLength);
+        maxSequence = file.get(Block.LONG, footer + 2 * Long.BYTES + 2 * Integer.BYTES);
+
+        blockOffsets = new long[blockCount];
+        blockLengths = new int[blockCount];
+        rawLengths = new int[blockCount];
+        codecs = new BlockCodec[blockCount];
+        firstKeys = new byte[blockCount][];
+        lastKeys = new byte[blockCount][];
+        int maxRaw = 0;
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = file.get(Block.LONG, position);
+            blockLengths[i] = file.get(Block.INT, position + Long.BYTES);
+            rawLengths[i] = file.get(Block.INT, position + Long.BYTES + Integer.BYTES);
+            codecs[i] = BlockCodecs.forId(file.get(ValueLayout.JAVA_BYTE, position + Long.BYTES + 2 * Integer.BYTES) & 0xFF);
+            if (codecs[i].id() != 0) {
+                maxRaw = Math.max(maxRaw, rawLengths[i]);
+            }
+            position += Long.BYTES + 2 * Integer.BYTES + 1;
+            firstKeys[i] = readKey(position);
+            position += Integer.BYTES + firstKeys[i].length;
+            lastKeys[i] = readKey(position);
+            position += Integer.BYTES + lastKeys[i].length;
+        }
+        maxRawLength = maxRaw;
+        this.cache = maxRaw == 0 ? null : cache;
+        this.cacheId = this.cache == null ? -1 : this.cache.newId();
+    }
+
+    public static SsTableReader open(Path path) throws IOException {
+        return open(path, -1);
+    }
+
+    /**
+     * @param id table id used by the storage engine to name and track the file
+     */
+    public static SsTableReader open(Path path, int id) throws IOException {
+        return open(path, id, null);
+    }
+
+    /**
+     * @param cache caches the table's decompressed blocks, null to read without a cache
+     */
+    public static SsTableReader open(Path path, int id, BlockCache cache) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new SsTableReader(id, path, arena, file, cache);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a copy of the value stored for the key, or null if it is absent or deleted
+     */
+    public byte[] get(byte[] key) {
+        byte[] value = lookup(key);
+        return value == KeyValuePair.TOMBSTONE ? null : value;
+    }
+
+    /**
+     * @return a copy of the value, {@link KeyValuePair#TOMBSTONE} if the table records a delete
+     * of the key, or null if the table knows nothing about it
+     */
+    public byte[] lookup(byte[] key) {
+        return lookup(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #lookup(byte[])} but returns the newest version at or below the sequence number,
+     * a table holding only newer versions of the key knows nothing about it
+     */
+    public byte[] lookup(byte[] key, long sequence) {
+        boolean filtered = bloom.byteSize() > 0;
+        if (filtered) {
+            bloomChecks.increment();
+            if (!BloomFilter.mayContain(bloom, BloomFilter.hash(key))) {
+                bloomNegatives.increment();
+                return null;
+            }
+        }
+
+        int blockIndex = findBlock(key);
+        if (blockIndex == blockOffsets.length) {
+            return notFound(filtered, false);
+        }
+        byte[] buffer = maxRawLength == 0 ? null : BUFFERS.acquire(maxRawLength);
+        BlockCache.Entry pinned = pin(blockIndex);
+        try {
+            boolean found = false;
+            Block block = new Block(pinned != null ? pinned.data() : load(blockIndex, buffer));
+            block.seek(key);
+            // The versions of a key may run on into the following blocks
+            while (true) {
+                for (; block.isValid(); block.next()) {
+                    if (!block.keyEquals(key)) {
+                        return notFound(filtered, found);
+                    }
+                    found = true;
+                    if (block.sequence() <= sequence) {
+                        return block.value();
+                    }
+                }
+                if (++blockIndex == blockOffsets.length) {
+                    return notFound(filtered, found);
+                }
+                if (pinned != null) {
+                    pinned.release();
+                }
+                pinned = pin(blockIndex);
+                block.reset(pinned != null ? pinned.data() : load(blockIndex, buffer));
+            }
+        } finally {
+            if (pinned != null) {
+                pinned.release();
+            }
+            if (buffer != null) {
+                BUFFERS.release(buffer);
+            }
+        }
+    }
+
+    public MemtableIterator iterator() {
+        return iterator(null, null);
+    }
+
+    /**
+     * Iterates the newest version of the keys between beginKey and endKey, both inclusive, a null
+     * key leaves that end open
+     */
+    public MemtableIterator iterator(byte[] beginKey, byte[] endKey) {
+        return new CursorIterator(new MergingCursor(List.of(cursor(beginKey, endKey)), true));
+    }
+
+    public Cursor cursor() {
+        return cursor(null, null);
+    }
+
+    /**
+     * Cursor over every version of the keys between beginKey and endKey, both inclusive, a null key
+     * leaves that end open. Keys are rebuilt in the block reader's buffer and values copied out
+     * of the block into the cursor's slice, the reader and the decompression buffer are reused
+     * from block to block.
+     */
+    public Cursor cursor(byte[] beginKey, byte[] endKey) {
+        return new SsTableCursor(beginKey, endKey);
+    }
+
+    /**
+     * Spliterator over the newest version of every key, like {@link #iterator()}, that splits
+     * into disjoint key ranges at block boundaries for parallel streams. A part opens its own
+     * cursor, parts never share a block reader or a decompression buffer.
+     */
+    public Spliterator<KeyValuePair> spliterator() {
+        List<byte[]> points = new ArrayList<>();
+        for (int i = 1; i < firstKeys.length; i++) {
+            // A key whose versions span several blocks starts each of them after the first
+            if (Arrays.compareUnsigned(firstKeys[i], firstKeys[i - 1]) > 0) {
+                points.add(firstKeys[i]);
+            }
+        }
+        // The table does not record its entry count, the block count stands in for it as only the
+        // ratios between the parts matter to a stream's splitting
+        return new KeyRangeSpliterator(this::iterator, points, blockOffsets.length, Spliterator.IMMUTABLE);
+    }
+
+    public Stream<KeyValuePair> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Scan for aggregations in a fork join pool, see {@link #spliterator()}
+     */
+    public Stream<KeyValuePair> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int blockCount() {
+        return blockOffsets.length;
+    }
+
+    public byte[] firstKey() {
+        return blockOffsets.length == 0 ? null : firstKeys[0];
+    }
+
+    public byte[] lastKey() {
+        return blockOffsets.length == 0 ? null : lastKeys[lastKeys.length - 1];
+    }
+
+    /**
+     * Highest sequence number of any entry in the table
+     */
+    public long maxSequence() {
+        return maxSequence;
+    }
+
+    public long fileSize() {
+        return file.byteSize();
+    }
+
+    /**
+     * Size of the data blocks before compression
+     */
+    public long uncompressedDataSize() {
+        long size = 0;
+        for (int length : rawLengths) {
+            size += length;
+        }
+        return size;
+    }
+
+    /**
+     * Number of point lookups that consulted the bloom filter
+     */
+    public long bloomChecks() {
+        return bloomChecks.sum();
+    }
+
+    /**
+     * Number of point lookups answered by the bloom filter without reading a block
+     */
+    public long bloomNegatives() {
+        return bloomNegatives.sum();
+    }
+
+    /**
+     * Number of lookups the bloom filter let through for keys that are not in the table
+     */
+    public long bloomFalsePositives() {
+        return bloomFalsePositives.sum();
+    }
+
+    /**
+     * Fraction of lookups for absent keys that the bloom filter failed to reject
+     */
+    public double bloomFalsePositiveRate() {
+        long falsePositives = bloomFalsePositives.sum();
+        long absent = falsePositives + bloomNegatives.sum();
+        return absent == 0 ? 0.0 : (double) falsePositives / absent;
+    }
+
+    @Override
+    public void close() {
+        if (cache != null) {
+            for (int i = 0; i < codecs.length; i++) {
+                if (codecs[i].id() != 0) {
+                    cache.erase(cacheId, i);
+                }
+            }
+        }
+        arena.close();
+    }
+
+    /**
+     * @return index of the first block whose last key is greater than or equal to the key
+     */
+    int findBlock(byte[] key) {
+        int low = 0;
+        int high = lastKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(lastKeys[mid], key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Contents of the block, a slice of the mapping or, for a compressed block, the buffer it was
+     * decompressed into, which must hold {@link #maxRawLength} bytes
+     */
+    private MemorySegment data(int index, byte[] buffer) {
+        MemorySegment stored = file.asSlice(blockOffsets[index], blockLengths[index]);
+        if (codecs[index].id() == 0) {
+            return stored;
+        }
+        codecs[index].decompress(stored, buffer, 0, rawLengths[index]);
+        return MemorySegment.ofArray(buffer).asSlice(0, rawLengths[index]);
+    }
+
+    /**
+     * @return the cached block pinned, or null if it is not compressed or not cached
+     */
+    private BlockCache.Entry pin(int index) {
+        return cache == null || codecs[index].id() == 0 ? null : cache.get(cacheId, index);
+    }
+
+    /**
+     * Like {@link #data} but caches the block once it is decompressed
+     */
+    private MemorySegment load(int index, byte[] buffer) {
+        MemorySegment contents = data(index, buffer);
+        if (cache != null && codecs[index].id() != 0) {
+            cache.put(cacheId, index, contents);
+        }
+        return contents;
+    }
+
+    /**
+     * Like {@link #load} but copies a cached block into the buffer rather than keeping it pinned
+     */
+    private MemorySegment copy(int index, byte[] buffer) {
+        BlockCache.Entry entry = pin(index);
+        if (entry == null) {
+            return load(index, buffer);
+        }
+        try {
+            MemorySegment.copy(entry.data(), ValueLayout.JAVA_BYTE, 0, buffer, 0, rawLengths[index]);
+        } finally {
+            entry.release();
+        }
+        return MemorySegment.ofArray(buffer).asSlice(0, rawLengths[index]);
+    }
+
+    private byte[] notFound(boolean filtered, boolean found) {
+        if (filtered && !found) {
+            bloomFalsePositives.increment();
+        }
+        return null;
+    }
+
+    private byte[] readKey(long position) {
+        int length = file.get(Block.INT, position);
+        return file.asSlice(position + Integer.BYTES, length).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private class SsTableCursor implements Cursor {
+        private final byte[] beginKey;
+        private final byte[] endKey;
+        private final Slice key = new Slice();
+        private final Slice value = new Slice();
+        private final byte[] buffer = maxRawLength == 0 ? null : new byte[maxRawLength];
+        private int blockIndex;
+        // Reused for every block the cursor visits, null once it ran past the last one
+        private Block reader;
+        private Block block;
+        private boolean valid;
+        private boolean tombstone;
+
+        SsTableCursor(byte[] beginKey, byte[] endKey) {
+            this.beginKey = beginKey;
+            this.endKey = endKey;
+            position(beginKey);
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public void next() {
+            if (!valid) {
+                throw new NoSuchElementException();
+            }
+            block.next();
+            settle();
+        }
+
+        @Override
+        public void seek(byte[] target) {
+            position(beginKey != null && Arrays.compareUnsigned(target, beginKey) < 0 ? beginKey : target);
+        }
+
+        @Override
+        public Slice key() {
+            return key;
+        }
+
+        @Override
+        public Slice value() {
+            return value;
+        }
+
+        @Override
+        public long sequence() {
+            return block.sequence();
+        }
+
+        @Override
+        public boolean isTombstone() {
+            return tombstone;
+        }
+
+        private void position(byte[] target) {
+            blockIndex = target == null ? 0 : findBlock(target);
+            load();
+            if (block != null && target != null) {
+                block.seek(target);
+            }
+            settle();
+        }
+
+        /**
+         * Points the reader at the block with the current index, or clears it past the last one
+         */
+        private void load() {
+            if (blockIndex == blockOffsets.length) {
+                block = null;
+            } else if (reader == null) {
+                reader = new Block(copy(blockIndex, buffer));
+                block = reader;
+            } else {
+                reader.reset(copy(blockIndex, buffer));
+                block = reader;
+            }
+        }
+
+        /**
+         * Moves to the next block when the current one is exhausted, checks the end key and loads
+         * the entry the cursor ends up on
+         */
+        private void settle() {
+            while (block != null && !block.isValid()) {
+                blockIndex++;
+                load();
+            }
+            valid = block != null && (endKey == null || block.compareKey(endKey) <= 0);
+            if (valid) {
+                block.key(key);
+                tombstone = !block.value(value);
+            }
+        }
+    }
+}
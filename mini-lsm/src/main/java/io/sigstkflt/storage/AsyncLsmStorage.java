@@ -0,0 +1,113 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.WriteBatch;
+import io.sigstkflt.mvcc.Snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non-blocking view of a {@link LsmStorage} for callers that must not wait on disk, such as
+ * request handlers running on a small pool of threads.
+ *
+ * Every call runs on the executor, by default a virtual thread per call. The storage only blocks
+ * on {@link java.util.concurrent.locks.ReentrantLock}s and conditions, never in a synchronized
+ * block, so a virtual thread waiting on a table read, a stalled write or the log unmounts from its
+ * carrier instead of pinning it.
+ *
+ * A put, delete or batch is visible to reads once it reached the memtable, its future completes
+ * only when the write ahead log has made it as durable as its sync mode promises. Group commits
+ * complete those futures from one thread per log however many of them are outstanding, callbacks
+ * chained without an executor run on that thread and should hand blocking work to an executor of
+ * their own. Closing the facade leaves the storage open.
+ */
+public class AsyncLsmStorage implements AutoCloseable {
+    private final LsmStorage storage;
+    private final Executor executor;
+    // Null if the executor was passed in and belongs to the caller
+    private final ExecutorService owned;
+
+    /**
+     * Runs every call on a virtual thread of its own
+     */
+    public AsyncLsmStorage(LsmStorage storage) {
+        this.storage = storage;
+        this.owned = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lsm-async-", 0).factory());
+        this.executor = owned;
+    }
+
+    public AsyncLsmStorage(LsmStorage storage, Executor executor) {
+        this.storage = storage;
+        this.executor = executor;
+        this.owned = null;
+    }
+
+    /**
+     * @return completes with the newest value of the key, or null if it is absent or deleted
+     */
+    public CompletableFuture<byte[]> get(byte[] key) {
+        return CompletableFuture.supplyAsync(() -> storage.get(key), executor);
+    }
+
+    /**
+     * @return completes with the value the snapshot sees, which must stay open until then
+     */
+    public CompletableFuture<byte[]> get(byte[] key, Snapshot snapshot) {
+        return CompletableFuture.supplyAsync(() -> storage.get(key, snapshot), executor);
+    }
+
+    /**
+     * @return completes once the write is durable
+     */
+    public CompletableFuture<Void> put(byte[] key, byte[] value) {
+        return CompletableFuture.supplyAsync(() -> storage.putAsync(key, value), executor)
+                .thenCompose(logged -> logged);
+    }
+
+    public CompletableFuture<Void> delete(byte[] key) {
+        return put(key, KeyValuePair.TOMBSTONE);
+    }
+
+    /**
+     * Applies the batch atomically, see {@link LsmStorage#write(WriteBatch)}
+     *
+     * @return completes once the batch is durable
+     */
+    public CompletableFuture<Void> write(WriteBatch batch) {
+        return CompletableFuture.supplyAsync(() -> storage.writeAsync(batch), executor)
+                .thenCompose(logged -> logged);
+    }
+
+    /**
+     * Reads the live keys between beginKey and endKey, both inclusive, a null key leaves that end open
+     *
+     * @param limit most entries returned, the first ones in key order
+     * @return completes with copies of the entries
+     */
+    public CompletableFuture<List<KeyValuePair>> scan(byte[] beginKey, byte[] endKey, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<KeyValuePair> entries = new ArrayList<>();
+            try (LsmIterator iterator = storage.scan(beginKey, endKey)) {
+                while (entries.size() < limit && iterator.hasNext()) {
+                    entries.add(iterator.next());
+                }
+            }
+            return entries;
+        }, executor);
+    }
+
+    /**
+     * Lets the calls already submitted finish if the facade created its executor, the storage stays open
+     */
+    @Override
+    public void close() {
+        if (owned != null) {
+            owned.close();
+        }
+    }
+}
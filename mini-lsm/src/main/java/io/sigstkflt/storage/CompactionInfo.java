@@ -0,0 +1,10 @@
+package io.sigstkflt.storage;
+
+/**
+ * A compaction installed in the current version
+ *
+ * @param bytesRead size of the input tables
+ * @param bytesWritten size of the output tables
+ */
+public record CompactionInfo(int outputLevel, int inputTables, int outputTables, long bytesRead, long bytesWritten,
+                             long durationNanos) {}
@@ -0,0 +1,8 @@
+package io.sigstkflt.storage;
+
+/**
+ * A memtable written to a table
+ *
+ * @param tableBytes size of the table written, 0 if the memtable held nothing worth writing
+ */
+public record FlushInfo(int memtableId, long memtableBytes, long tableBytes, long durationNanos) {}
@@ -0,0 +1,19 @@
+package io.sigstkflt.storage;
+
+/**
+ * One latency histogram of a {@link LsmStorage} as published over JMX, in nanoseconds
+ */
+public interface LatencyMXBean {
+
+    long getCount();
+
+    double getMean();
+
+    long getP50();
+
+    long getP99();
+
+    long getP999();
+
+    long getMax();
+}
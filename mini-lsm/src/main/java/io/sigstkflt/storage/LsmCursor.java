@@ -0,0 +1,125 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.iterator.MergingCursor;
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.Slice;
+import io.sigstkflt.version.Version;
+import io.sigstkflt.vlog.ValueLog;
+import io.sigstkflt.vlog.ValuePointer;
+
+import java.util.List;
+
+/**
+ * Allocation free scan over a pinned {@link Version} and the memtables of one {@link LsmState} as
+ * of a sequence number, deleted keys are skipped.
+ *
+ * The version is released once the cursor runs past its range or is closed, until then the
+ * tables it reads survive any compaction. A cursor abandoned half way must be closed, or the
+ * tables it pins are only deleted when the storage is reopened. Seeking a released cursor
+ * leaves it invalid.
+ *
+ * When values are separated the cursor also pins the value log files, and a value stored in the
+ * log is read into a buffer of the cursor when it is asked for.
+ */
+public class LsmCursor implements Cursor, AutoCloseable {
+    private final MergingCursor merged;
+    private final StorageMetrics metrics;
+    // Null unless values are separated
+    private final ValueLog.Pin pin;
+    private final Slice value = new Slice();
+    private byte[] buffer = new byte[0];
+    // System.nanoTime() when the scan was opened
+    private final long start;
+    private Version version;
+    // Entries moved past, added to the metrics once the version is released
+    private long entries;
+
+    /**
+     * @param sequence versions written after this sequence number are not visited
+     * @param start when the scan was opened, its latency is recorded once the version is released
+     */
+    LsmCursor(List<Cursor> sources, Version version, long sequence, ValueLog.Pin pin, StorageMetrics metrics,
+              long start) {
+        this.merged = new MergingCursor(sources, sequence, false);
+        this.metrics = metrics;
+        this.pin = pin;
+        this.start = start;
+        this.version = version;
+        releaseIfDone();
+    }
+
+    @Override
+    public boolean isValid() {
+        return version != null && merged.isValid();
+    }
+
+    @Override
+    public void next() {
+        merged.next();
+        entries++;
+        releaseIfDone();
+    }
+
+    @Override
+    public void seek(byte[] key) {
+        if (version != null) {
+            merged.seek(key);
+            releaseIfDone();
+        }
+    }
+
+    @Override
+    public Slice key() {
+        return merged.key();
+    }
+
+    @Override
+    public Slice value() {
+        Slice stored = merged.value();
+        if (pin == null) {
+            return stored;
+        }
+        byte[] array = stored.array();
+        int offset = stored.offset();
+        if (array[offset] == ValueLog.INLINE) {
+            value.set(array, offset + 1, stored.length() - 1);
+            return value;
+        }
+        // Taken apart in place, decoding a pointer object per value would allocate
+        int length = ValuePointer.length(array, offset);
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        pin.read(ValuePointer.fileId(array, offset), ValuePointer.offset(array, offset), length, buffer);
+        value.set(buffer, 0, length);
+        return value;
+    }
+
+    @Override
+    public long sequence() {
+        return merged.sequence();
+    }
+
+    @Override
+    public boolean isTombstone() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (version != null) {
+            version.release();
+            version = null;
+            if (pin != null) {
+                pin.close();
+            }
+            metrics.scanned(entries, System.nanoTime() - start);
+        }
+    }
+
+    private void releaseIfDone() {
+        if (!merged.isValid()) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.memtable.CursorIterator;
+
+/**
+ * {@link LsmCursor} that copies every entry it returns, see there for how long the tables it
+ * reads are pinned. A scan abandoned half way must be closed.
+ */
+public class LsmIterator extends CursorIterator implements AutoCloseable {
+    private final LsmCursor cursor;
+
+    LsmIterator(LsmCursor cursor) {
+        super(cursor);
+        this.cursor = cursor;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
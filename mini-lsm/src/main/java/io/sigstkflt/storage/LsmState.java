@@ -0,0 +1,49 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the memtables a read has to consult, swapped as a whole on every change.
+ * Tables are tracked separately by the {@link io.sigstkflt.version.VersionSet}.
+ *
+ * @param active memtable receiving writes
+ * @param immutables frozen memtables waiting to be flushed, newest first
+ * @param immutableSize retained size of the frozen memtables, which no longer change
+ */
+record LsmState(SkipListMemtable active, List<SkipListMemtable> immutables, long immutableSize) {
+
+    LsmState(SkipListMemtable active, List<SkipListMemtable> immutables) {
+        this(active, immutables, retainedSize(immutables));
+    }
+
+    LsmState freeze(SkipListMemtable next) {
+        List<SkipListMemtable> frozen = new ArrayList<>(immutables.size() + 1);
+        frozen.add(active);
+        frozen.addAll(immutables);
+        return new LsmState(next, List.copyOf(frozen));
+    }
+
+    LsmState flushed(SkipListMemtable memtable) {
+        List<SkipListMemtable> remaining = new ArrayList<>(immutables);
+        remaining.remove(memtable);
+        return new LsmState(active, List.copyOf(remaining));
+    }
+
+    /**
+     * Retained size of every memtable, the active one included
+     */
+    long memtableSize() {
+        return active.retainedSize() + immutableSize;
+    }
+
+    private static long retainedSize(List<SkipListMemtable> memtables) {
+        long size = 0;
+        for (SkipListMemtable memtable : memtables) {
+            size += memtable.retainedSize();
+        }
+        return size;
+    }
+}
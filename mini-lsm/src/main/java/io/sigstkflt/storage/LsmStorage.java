@@ -0,0 +1,960 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.compaction.CompactionPicker;
+import io.sigstkflt.compaction.CompactionStyle;
+import io.sigstkflt.compaction.CompactionTask;
+import io.sigstkflt.compaction.Compactor;
+import io.sigstkflt.compaction.LeveledCompactionPicker;
+import io.sigstkflt.compaction.TieredCompactionPicker;
+import io.sigstkflt.iterator.GarbageCollectingCursor;
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.memtable.WriteBatch;
+import io.sigstkflt.mvcc.Sequencer;
+import io.sigstkflt.mvcc.Snapshot;
+import io.sigstkflt.sstable.BlockCache;
+import io.sigstkflt.sstable.SsTableBuilder;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.util.RateLimiter;
+import io.sigstkflt.version.Version;
+import io.sigstkflt.version.VersionSet;
+import io.sigstkflt.vlog.ValueLog;
+import io.sigstkflt.wal.WriteAheadLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Storage engine tying the memtables and SSTables together.
+ *
+ * Writes go to the active memtable. Once it crosses the configured size it is frozen, a new
+ * memtable with the next id takes its place and the frozen one is queued for a background
+ * flusher, so writers never wait on disk I/O unless too many frozen memtables pile up. Reads see
+ * an immutable {@link LsmState} and consult the active memtable, the frozen memtables newest
+ * first, then the tables of the {@link Version} they pin level by level.
+ *
+ * Every write takes a sequence number from the shared {@link Sequencer} and adds a version
+ * instead of overwriting, a read only sees versions at or below the sequence it started at. A
+ * {@link Snapshot} pins that sequence for as long as it is open, flushes and compactions keep the
+ * versions open snapshots can see and drop the rest.
+ *
+ * Every installed flush or compaction may leave work for the compaction thread, which asks the
+ * {@link CompactionPicker} for tasks until the levels are in shape. Table changes go through the
+ * {@link VersionSet}, which logs them to the manifest before installing them, so opening the
+ * storage replays the manifest and the logs of unflushed memtables instead of inspecting tables.
+ *
+ * With {@link LsmStorageOptions#setValueSeparationThreshold(int)} set, large values go to a
+ * {@link ValueLog} as they are written and the memtables and tables keep pointers to them.
+ * Overwrites and deletes leave dead values behind in the log, garbage collection copies the live
+ * values of mostly dead files forward and retires the files once no snapshot can see their values.
+ */
+public class LsmStorage implements AutoCloseable {
+    /**
+     * Present in a directory whose values are kept in their stored form, see {@link ValueLog}
+     */
+    public static final String VALUE_LOG_MARKER = "VALUELOG";
+
+    // Relocated entries applied per acquisition of the rotation lock
+    private static final int RELOCATION_BATCH = 1024;
+
+    private final Path dir;
+    private final LsmStorageOptions options;
+    private final VersionSet versions;
+    private final AtomicInteger nextId;
+    private final ExecutorService flusher;
+    private final ExecutorService compactionScheduler;
+    private final CompactionPicker picker;
+    private final Compactor compactor;
+    private final Sequencer sequencer;
+    private final BlockCache blockCache;
+    private final StorageMetrics metrics;
+    // Null unless values are separated
+    private final ValueLog valueLog;
+    private final ExecutorService valueLogCollector;
+
+    // Writers share the read lock while touching the active memtable, rotation takes the write lock
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Condition flushed = stateLock.newCondition();
+    private final Condition compacted = stateLock.newCondition();
+    // Taken by one value log collection at a time
+    private final ReentrantLock collectionLock = new ReentrantLock();
+    // Guarded by collectionLock, relocated value log files and the sequence their relocation became visible at
+    private final Map<Integer, Long> relocated = new TreeMap<>();
+
+    private volatile LsmState state;
+    private volatile IOException backgroundError;
+    private volatile boolean closed;
+    // Guarded by stateLock
+    private boolean compacting;
+    private boolean compactionRequested;
+    private boolean collecting;
+    private long collectedAt;
+
+    private LsmStorage(Path dir, LsmStorageOptions options, VersionSet versions, Sequencer sequencer,
+                       BlockCache blockCache, ValueLog valueLog) throws IOException {
+        this.dir = dir;
+        this.valueLog = valueLog;
+        this.valueLogCollector = valueLog == null ? null
+                : Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("lsm-vlog-gc").factory());
+        this.sequencer = sequencer;
+        this.blockCache = blockCache;
+        this.options = options;
+        this.versions = versions;
+        this.nextId = new AtomicInteger(versions.nextId());
+        this.flusher = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("lsm-flush").factory());
+        this.compactionScheduler = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().daemon().name("lsm-compaction").factory());
+        this.picker = newPicker(options);
+        this.compactor = new Compactor(dir, this.nextId::getAndIncrement, options.getBlockSize(),
+                options.getBloomBitsPerKey(), options::getCompression, options.getTargetFileSize(),
+                options.getCompactionThreads(),
+                options.getMaxSubcompactions(), new RateLimiter(options.getCompactionBytesPerSecond()), blockCache);
+        this.metrics = new StorageMetrics(this, options.getListeners());
+        this.state = new LsmState(newMemtable(), List.of());
+    }
+
+    /**
+     * Opens the storage in the given directory, flushing any memtable left behind in a log
+     */
+    public static LsmStorage open(Path dir, LsmStorageOptions options) throws IOException {
+        Files.createDirectories(dir);
+        BlockCache blockCache = options.getBlockCacheSize() > 0 ? new BlockCache(options.getBlockCacheSize()) : null;
+        VersionSet versions;
+        try {
+            versions = VersionSet.recover(dir, emptyVersion(options), blockCache);
+        } catch (IOException | RuntimeException e) {
+            closeCache(blockCache);
+            throw e;
+        }
+        try {
+            // Logs hold data newer than any table, they are flushed oldest first to end up on top
+            for (int id : versions.liveMemtables()) {
+                Path wal = WriteAheadLog.path(dir, id);
+                SkipListMemtable recovered = Files.exists(wal) ? WriteAheadLog.replay(dir, id) : new SkipListMemtable(id);
+                versions.logFlush(id, flush(dir, options, blockCache, recovered, new long[0]));
+                Files.deleteIfExists(wal);
+            }
+        } catch (IOException | RuntimeException e) {
+            versions.close();
+            closeCache(blockCache);
+            throw e;
+        }
+
+        ValueLog valueLog;
+        try {
+            valueLog = openValueLog(dir, options, versions.current());
+        } catch (IOException | RuntimeException e) {
+            versions.close();
+            closeCache(blockCache);
+            throw e;
+        }
+
+        // Every logged write is in a table now, numbering continues after the newest of them
+        Sequencer sequencer = new Sequencer(versions.current().maxSequence());
+        LsmStorage storage = new LsmStorage(dir, options, versions, sequencer, blockCache, valueLog);
+        if (options.isJmxEnabled()) {
+            try {
+                storage.metrics.register(dir);
+            } catch (IOException e) {
+                storage.close();
+                throw e;
+            }
+        }
+        storage.stateLock.lock();
+        try {
+            storage.scheduleCompaction();
+        } finally {
+            storage.stateLock.unlock();
+        }
+        return storage;
+    }
+
+    /**
+     * @return the newest value of the key, or null if it was never written or has been deleted
+     */
+    public byte[] get(byte[] key) {
+        byte[] value = lookup(key, null);
+        return value == KeyValuePair.TOMBSTONE ? null : value;
+    }
+
+    /**
+     * @return the value the snapshot sees, or null if the key was absent or deleted when it was taken
+     */
+    public byte[] get(byte[] key, Snapshot snapshot) {
+        byte[] value = lookup(key, snapshot);
+        return value == KeyValuePair.TOMBSTONE ? null : value;
+    }
+
+    /**
+     * Opens a snapshot of everything written so far, it must be closed for old versions to be dropped
+     */
+    public Snapshot snapshot() {
+        return sequencer.snapshot();
+    }
+
+    /**
+     * Iterates the live keys between beginKey and endKey, both inclusive, a null key leaves that
+     * end open. The iterator reads the memtables and tables that existed when it was created and
+     * should be closed if it is not drained.
+     */
+    public LsmIterator scan(byte[] beginKey, byte[] endKey) {
+        return new LsmIterator(cursor(beginKey, endKey));
+    }
+
+    /**
+     * Like {@link #scan(byte[], byte[])} but as of the snapshot
+     */
+    public LsmIterator scan(byte[] beginKey, byte[] endKey, Snapshot snapshot) {
+        return new LsmIterator(cursor(beginKey, endKey, snapshot));
+    }
+
+    /**
+     * Like {@link #scan(byte[], byte[])} but hands out views that are reused for every entry, so
+     * the scan allocates nothing per entry
+     */
+    public LsmCursor cursor(byte[] beginKey, byte[] endKey) {
+        return cursor(beginKey, endKey, null);
+    }
+
+    /**
+     * Like {@link #cursor(byte[], byte[])} but as of the snapshot
+     */
+    public LsmCursor cursor(byte[] beginKey, byte[] endKey, Snapshot snapshot) {
+        long start = System.nanoTime();
+        // Before the sequence, a value log file retired earlier only holds values relocated below it
+        ValueLog.Pin pin = valueLog == null ? null : valueLog.pin();
+        // The memtables must be read before the version, a flush installs its table first
+        LsmState current = state;
+        Version version = versions.acquire();
+        long sequence = readSequence(snapshot);
+        List<Cursor> sources = new ArrayList<>();
+        sources.add(current.active().cursor(beginKey, endKey));
+        for (SkipListMemtable memtable : current.immutables()) {
+            sources.add(memtable.cursor(beginKey, endKey));
+        }
+        sources.addAll(version.cursors(beginKey, endKey));
+        return new LsmCursor(sources, version, sequence, pin, metrics, start);
+    }
+
+    public void put(byte[] key, byte[] value) {
+        long start = System.nanoTime();
+        checkWritable();
+        stallIfNeeded();
+        byte[] stored = store(key, value);
+        applyToActive(active -> {
+            active.put(key, stored);
+            return null;
+        });
+        metrics.putLatency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Applies every put and delete of the batch atomically, a read sees all of them or none. The
+     * whole batch lands in one memtable, which may leave it above the size limit until it rotates.
+     */
+    public void write(WriteBatch batch) {
+        long start = System.nanoTime();
+        checkWritable();
+        stallIfNeeded();
+        WriteBatch stored = valueLog == null ? batch : store(batch);
+        applyToActive(active -> {
+            active.write(stored);
+            return null;
+        });
+        metrics.putLatency().record(System.nanoTime() - start);
+    }
+
+    public void delete(byte[] key) {
+        put(key, KeyValuePair.TOMBSTONE);
+    }
+
+    /**
+     * Like {@link #put(byte[], byte[])} but returns as soon as the write is visible, see
+     * {@link AsyncLsmStorage}
+     *
+     * @return completes once the write ahead log has made the write durable
+     */
+    CompletableFuture<Void> putAsync(byte[] key, byte[] value) {
+        long start = System.nanoTime();
+        checkWritable();
+        stallIfNeeded();
+        byte[] stored = store(key, value);
+        CompletableFuture<Void> logged = applyToActive(active -> active.putAsync(key, stored));
+        metrics.putLatency().record(System.nanoTime() - start);
+        return logged;
+    }
+
+    /**
+     * Like {@link #write(WriteBatch)} but returns as soon as the batch is visible, see {@link #putAsync(byte[], byte[])}
+     */
+    CompletableFuture<Void> writeAsync(WriteBatch batch) {
+        long start = System.nanoTime();
+        checkWritable();
+        stallIfNeeded();
+        WriteBatch stored = valueLog == null ? batch : store(batch);
+        CompletableFuture<Void> logged = applyToActive(active -> active.writeAsync(stored));
+        metrics.putLatency().record(System.nanoTime() - start);
+        return logged;
+    }
+
+    /**
+     * Freezes the active memtable, if it has any data, and waits until every frozen memtable is on disk
+     */
+    public void forceFlush() throws IOException {
+        SkipListMemtable active = state.active();
+        if (active.approximateSize() > 0) {
+            rotate(active);
+        }
+        stateLock.lock();
+        try {
+            while (!state.immutables().isEmpty() && backgroundError == null) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        if (backgroundError != null) {
+            throw backgroundError;
+        }
+    }
+
+    /**
+     * Number of writes that had to wait for the flusher to catch up
+     */
+    public long writeStallCount() {
+        return metrics.getWriteStallCount();
+    }
+
+    /**
+     * Estimated memory held by the active and frozen memtables
+     */
+    public long memtableMemoryUsage() {
+        return state.memtableSize();
+    }
+
+    public int immutableMemtableCount() {
+        return state.immutables().size();
+    }
+
+    /**
+     * Waits until the compaction thread has nothing left to do
+     */
+    public void awaitCompactions() throws IOException {
+        stateLock.lock();
+        try {
+            while (compacting && backgroundError == null) {
+                compacted.awaitUninterruptibly();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        if (backgroundError != null) {
+            throw backgroundError;
+        }
+    }
+
+    public long compactionCount() {
+        return metrics.getCompactionCount();
+    }
+
+    public int tableCount() {
+        Version version = versions.acquire();
+        try {
+            return version.tableCount();
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * @param level level number, 0 for the flushed tables
+     */
+    public int tableCount(int level) {
+        Version version = versions.acquire();
+        try {
+            return level < version.levelCount() ? version.tables(level).size() : 0;
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Copies the live values out of the sealed value log files in which at least the configured
+     * share of the values were overwritten or deleted, then retires those files once no open
+     * snapshot can see their old values. Runs in the background once the log has grown by a file
+     * since the last collection.
+     *
+     * @return bytes of value log files retired, 0 if values are not separated
+     */
+    public long collectValueLogGarbage() throws IOException {
+        if (valueLog == null) {
+            return 0;
+        }
+        collectionLock.lock();
+        try {
+            for (int id : valueLog.sealedFiles()) {
+                if (closed) {
+                    break;
+                }
+                if (!relocated.containsKey(id) && mostlyGarbage(id) && !relocate(id)) {
+                    break;
+                }
+            }
+            return retireRelocated();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            collectionLock.unlock();
+        }
+    }
+
+    /**
+     * Latency histograms and counters of this storage
+     */
+    public StorageMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * The cache of decompressed blocks, null if it is disabled
+     */
+    public BlockCache blockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Waits for queued flushes and the running compaction, then closes every log and table. The
+     * active memtable stays in its log and is flushed by the next open.
+     */
+    @Override
+    public void close() throws IOException {
+        rotationLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+
+        // The flusher schedules compactions, so it has to stop first
+        shutdown(flusher);
+        shutdown(compactionScheduler);
+        if (valueLogCollector != null) {
+            shutdown(valueLogCollector);
+        }
+        compactor.close();
+
+        LsmState last = state;
+        last.active().getWal().close();
+        for (SkipListMemtable memtable : last.immutables()) {
+            memtable.getWal().close();
+        }
+        // The logs flush it before they force themselves
+        if (valueLog != null) {
+            valueLog.close();
+        }
+        versions.close();
+        closeCache(blockCache);
+        metrics.unregister();
+    }
+
+    private byte[] lookup(byte[] key, Snapshot snapshot) {
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                byte[] stored = probe(key, snapshot);
+                if (valueLog == null || stored == null || stored == KeyValuePair.TOMBSTONE) {
+                    return stored;
+                }
+                byte[] value = valueLog.resolve(stored);
+                if (value != null) {
+                    return value;
+                }
+                // Garbage collection relocated the value and retired its file since, the key points elsewhere now
+            }
+        } finally {
+            metrics.getLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The first source that knows the key answers, a tombstone stops the search
+     *
+     * @param snapshot snapshot to read at, or null to read everything published so far
+     * @return the value in its stored form
+     */
+    private byte[] probe(byte[] key, Snapshot snapshot) {
+        LsmState current = state;
+        Version version = versions.acquire();
+        try {
+            long sequence = readSequence(snapshot);
+            byte[] value = current.active().lookup(key, sequence);
+            if (value != null) {
+                return value;
+            }
+            for (SkipListMemtable memtable : current.immutables()) {
+                value = memtable.lookup(key, sequence);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return version.lookup(key, sequence);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * The form the memtables and tables keep the value in, a pointer if it goes to the value log
+     */
+    private byte[] store(byte[] key, byte[] value) {
+        if (valueLog == null || value == KeyValuePair.TOMBSTONE) {
+            return value;
+        }
+        int threshold = options.getValueSeparationThreshold();
+        if (threshold <= 0 || value.length < threshold) {
+            return ValueLog.inline(value);
+        }
+        try {
+            return valueLog.append(key, value).encode();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private WriteBatch store(WriteBatch batch) {
+        WriteBatch stored = new WriteBatch();
+        for (int i = 0; i < batch.count(); i++) {
+            byte[] value = batch.value(i);
+            if (value == KeyValuePair.TOMBSTONE) {
+                stored.delete(batch.key(i));
+            } else {
+                stored.put(batch.key(i), store(batch.key(i), value));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Whether the live values of the file, those the newest version of their key still points
+     * at, make up no more than what the garbage ratio leaves of it
+     */
+    private boolean mostlyGarbage(int id) throws IOException {
+        long size = valueLog.fileSize(id);
+        long[] live = new long[1];
+        valueLog.scan(id, (key, pointer) -> {
+            if (Arrays.equals(probe(key, null), pointer.encode())) {
+                live[0] += key.length + pointer.length();
+            }
+        });
+        return live[0] <= (1 - options.getValueLogGcRatio()) * size;
+    }
+
+    /**
+     * Appends the live values of the file to the value log and points their keys at the copies,
+     * keys overwritten in the meantime are left alone
+     *
+     * @return false if the storage closed first
+     */
+    private boolean relocate(int id) throws IOException {
+        List<Relocation> moves = new ArrayList<>();
+        valueLog.scan(id, (key, pointer) -> {
+            byte[] from = pointer.encode();
+            if (Arrays.equals(probe(key, null), from)) {
+                byte[] value = valueLog.read(pointer);
+                moves.add(new Relocation(key, from, valueLog.append(key, value).encode()));
+            }
+        });
+        for (int i = 0; i < moves.size(); i += RELOCATION_BATCH) {
+            if (!applyRelocations(moves.subList(i, Math.min(i + RELOCATION_BATCH, moves.size())))) {
+                return false;
+            }
+        }
+        // Reads at or above this sequence find the copies
+        relocated.put(id, sequencer.visible());
+        return true;
+    }
+
+    private boolean applyRelocations(List<Relocation> moves) throws IOException {
+        SkipListMemtable active;
+        // Writers hold the read lock while they write, so no key changes between the check and the batch
+        rotationLock.writeLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            WriteBatch batch = new WriteBatch();
+            for (Relocation move : moves) {
+                if (Arrays.equals(probe(move.key(), null), move.from())) {
+                    batch.put(move.key(), move.to());
+                }
+            }
+            active = state.active();
+            active.write(batch);
+            // The old file goes once the collection ends, the pointers must not depend on a periodic sync
+            active.getWal().sync();
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+        if (active.approximateSize() >= options.getMemtableSizeLimit()) {
+            rotate(active);
+        }
+        return true;
+    }
+
+    /**
+     * Retires the relocated files no open snapshot is old enough to read from
+     *
+     * @return bytes retired
+     */
+    private long retireRelocated() {
+        long[] snapshots = sequencer.snapshots();
+        long oldest = snapshots.length == 0 ? Long.MAX_VALUE : snapshots[0];
+        long retired = 0;
+        Iterator<Map.Entry<Integer, Long>> it = relocated.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Long> entry = it.next();
+            if (entry.getValue() <= oldest) {
+                retired += valueLog.fileSize(entry.getKey());
+                valueLog.retire(entry.getKey());
+                it.remove();
+            }
+        }
+        return retired;
+    }
+
+    /**
+     * Bloom filter false positive rate over the tables of the current version, the counts of
+     * tables compacted away are lost with them
+     */
+    double bloomFalsePositiveRate() {
+        Version version = versions.acquire();
+        try {
+            long falsePositives = 0;
+            long negatives = 0;
+            for (SsTableReader table : version.allTables()) {
+                falsePositives += table.bloomFalsePositives();
+                negatives += table.bloomNegatives();
+            }
+            long absent = falsePositives + negatives;
+            return absent == 0 ? 0.0 : (double) falsePositives / absent;
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Taken after the state and version a read uses, so that the memtables and tables it reads
+     * still hold every version at or below it. Versions dropped by a flush that finished earlier
+     * were all hidden by newer ones at or below the visible sequence.
+     */
+    private long readSequence(Snapshot snapshot) {
+        return snapshot == null ? sequencer.visible() : snapshot.sequence();
+    }
+
+    /**
+     * Runs the write against the active memtable and rotates it once it is full
+     */
+    private <T> T applyToActive(Function<SkipListMemtable, T> write) {
+        SkipListMemtable active;
+        T result;
+        rotationLock.readLock().lock();
+        try {
+            active = state.active();
+            result = write.apply(active);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+
+        if (active.approximateSize() >= options.getMemtableSizeLimit()) {
+            rotate(active);
+        }
+        return result;
+    }
+
+    private void rotate(SkipListMemtable expected) {
+        rotationLock.writeLock().lock();
+        try {
+            if (closed || state.active() != expected) {
+                // Another writer rotated first
+                return;
+            }
+            SkipListMemtable next = newMemtable();
+            stateLock.lock();
+            try {
+                state = state.freeze(next);
+            } finally {
+                stateLock.unlock();
+            }
+            flusher.execute(this::flushOldest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+    }
+
+    private void flushOldest() {
+        List<SkipListMemtable> immutables = state.immutables();
+        if (immutables.isEmpty() || backgroundError != null) {
+            return;
+        }
+        SkipListMemtable memtable = immutables.getLast();
+        try {
+            long start = System.nanoTime();
+            SsTableReader table = flush(dir, options, blockCache, memtable, sequencer.snapshots());
+            // Readers see the table before the memtable goes away, never neither of them
+            versions.logFlush(memtable.getId(), table);
+            // Before the memtable goes, so that a writer waiting on the flush finds it counted
+            metrics.flushed(new FlushInfo(memtable.getId(), memtable.approximateSize(),
+                    table == null ? 0 : table.fileSize(), System.nanoTime() - start));
+            stateLock.lock();
+            try {
+                state = state.flushed(memtable);
+                flushed.signalAll();
+                scheduleCompaction();
+                scheduleValueLogCollection();
+            } finally {
+                stateLock.unlock();
+            }
+            memtable.getWal().delete();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Makes sure the compaction thread looks at the current version, caller holds the state lock
+     */
+    private void scheduleCompaction() {
+        if (closed || backgroundError != null) {
+            return;
+        }
+        compactionRequested = true;
+        if (!compacting) {
+            compacting = true;
+            compactionScheduler.execute(this::runCompactions);
+        }
+    }
+
+    /**
+     * Starts a collection once the value log grew by a file since the last one, caller holds the state lock
+     */
+    private void scheduleValueLogCollection() {
+        if (valueLog == null || collecting || closed || backgroundError != null) {
+            return;
+        }
+        long appended = valueLog.appendedBytes();
+        if (appended - collectedAt < options.getValueLogFileSize()) {
+            return;
+        }
+        collecting = true;
+        collectedAt = appended;
+        valueLogCollector.execute(this::runValueLogCollection);
+    }
+
+    private void runValueLogCollection() {
+        try {
+            collectValueLogGarbage();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            stateLock.lock();
+            try {
+                collecting = false;
+            } finally {
+                stateLock.unlock();
+            }
+        }
+    }
+
+    private void runCompactions() {
+        while (true) {
+            stateLock.lock();
+            try {
+                if (!compactionRequested || closed || backgroundError != null) {
+                    compacting = false;
+                    compacted.signalAll();
+                    return;
+                }
+                compactionRequested = false;
+            } finally {
+                stateLock.unlock();
+            }
+            try {
+                boolean more = true;
+                while (more && !closed) {
+                    more = compactOnce();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the next task the picker asks for. This thread is the only one removing tables, so the
+     * inputs stay open without pinning the version they were picked from.
+     *
+     * @return false if there was nothing to do
+     */
+    private boolean compactOnce() throws IOException {
+        CompactionTask task = picker.pick(versions.current());
+        if (task == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        List<SsTableReader> outputs = compactor.compact(task, sequencer.snapshots());
+        versions.logCompaction(version -> picker.apply(version, task, outputs));
+        long written = 0;
+        for (SsTableReader output : outputs) {
+            written += output.fileSize();
+        }
+        metrics.compacted(new CompactionInfo(task.outputLevel(), task.inputTables().size(), outputs.size(),
+                task.inputSize(), written, System.nanoTime() - start));
+        return true;
+    }
+
+    private void fail(IOException e) {
+        stateLock.lock();
+        try {
+            if (backgroundError == null) {
+                backgroundError = e;
+            }
+            flushed.signalAll();
+            compacted.signalAll();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    private void stallIfNeeded() {
+        if (!flushBacklogFull(state)) {
+            return;
+        }
+        long start = System.nanoTime();
+        stateLock.lock();
+        try {
+            while (flushBacklogFull(state) && backgroundError == null && !closed) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        metrics.stalled(System.nanoTime() - start);
+        checkWritable();
+    }
+
+    /**
+     * Whether the frozen memtables reach the configured count, or hold as much memory as that many
+     * full memtables would, batches can leave a memtable well above the size limit
+     */
+    private boolean flushBacklogFull(LsmState current) {
+        int max = options.getMaxImmutableMemtables();
+        return current.immutables().size() >= max || current.immutableSize() >= max * options.getMemtableSizeLimit();
+    }
+
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("Storage is closed");
+        }
+        if (backgroundError != null) {
+            throw new UncheckedIOException("Background flush or compaction failed", backgroundError);
+        }
+    }
+
+    private SkipListMemtable newMemtable() throws IOException {
+        int id = nextId.getAndIncrement();
+        WriteAheadLog wal = new WriteAheadLog(dir, id, options.getWalSyncMode(),
+                WriteAheadLog.DEFAULT_SYNC_INTERVAL_MILLIS, valueLog);
+        versions.logNewMemtable(id);
+        return new SkipListMemtable(id, wal, sequencer, options.getMemtableShards());
+    }
+
+    /**
+     * Writes the versions the snapshots can still see and the newest version of every key
+     *
+     * @return the new table, or null if the memtable held nothing worth writing
+     */
+    private static SsTableReader flush(Path dir, LsmStorageOptions options, BlockCache blockCache,
+                                       SkipListMemtable memtable, long[] snapshots) throws IOException {
+        if (memtable.approximateSize() == 0) {
+            return null;
+        }
+        Path path = SsTableFormat.path(dir, memtable.getId());
+        SsTableBuilder.write(path, new GarbageCollectingCursor(memtable.cursor(), snapshots, false),
+                options.getBlockSize(), options.getBloomBitsPerKey(), options.getCompression(0));
+        return SsTableReader.open(path, memtable.getId(), blockCache);
+    }
+
+    /**
+     * Opens the value log if values are separated, which can only start in a directory without tables
+     *
+     * @return null if values are not separated
+     */
+    private static ValueLog openValueLog(Path dir, LsmStorageOptions options, Version version) throws IOException {
+        Path marker = dir.resolve(VALUE_LOG_MARKER);
+        if (!Files.exists(marker)) {
+            if (options.getValueSeparationThreshold() <= 0) {
+                return null;
+            }
+            if (version.tableCount() > 0) {
+                throw new IllegalArgumentException("Cannot separate values in " + dir + ", it already holds tables");
+            }
+            Files.createFile(marker);
+        }
+        return ValueLog.open(dir, options.getValueLogFileSize());
+    }
+
+    private static Version emptyVersion(LsmStorageOptions options) {
+        return Version.empty(options.getCompactionStyle() == CompactionStyle.TIERED ? 0 : options.getLevelCount());
+    }
+
+    private static CompactionPicker newPicker(LsmStorageOptions options) {
+        if (options.getCompactionStyle() == CompactionStyle.TIERED) {
+            return new TieredCompactionPicker(options.getLevelCount(), options.getLevel0CompactionTrigger());
+        }
+        return new LeveledCompactionPicker(options.getLevelCount(), options.getLevel0CompactionTrigger(),
+                options.getBaseLevelSize(), options.getLevelSizeMultiplier());
+    }
+
+    private static void closeCache(BlockCache blockCache) {
+        if (blockCache != null) {
+            blockCache.close();
+        }
+    }
+
+    private record Relocation(byte[] key, byte[] from, byte[] to) {
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.compaction.CompactionStyle;
+import io.sigstkflt.sstable.BlockCodec;
+import io.sigstkflt.sstable.BlockCodecs;
+import io.sigstkflt.sstable.BloomFilter;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.vlog.ValueLog;
+import io.sigstkflt.wal.SyncMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tuning knobs for {@link LsmStorage}, setters return this so options can be chained
+ */
+public class LsmStorageOptions {
+    private long memtableSizeLimit = 64L * 1024 * 1024;
+    private int maxImmutableMemtables = 4;
+    private int memtableShards = 1;
+    private int blockSize = SsTableFormat.DEFAULT_BLOCK_SIZE;
+    private int bloomBitsPerKey = BloomFilter.DEFAULT_BITS_PER_KEY;
+    private long blockCacheSize = 8L * 1024 * 1024;
+    private BlockCodec compression = BlockCodecs.NONE;
+    private BlockCodec[] levelCompression = new BlockCodec[0];
+    private SyncMode walSyncMode = SyncMode.GROUP;
+    private CompactionStyle compactionStyle = CompactionStyle.LEVELED;
+    private int levelCount = 6;
+    private int level0CompactionTrigger = 4;
+    private long baseLevelSize = 256L * 1024 * 1024;
+    private int levelSizeMultiplier = 10;
+    private long targetFileSize = 64L * 1024 * 1024;
+    private int compactionThreads = 2;
+    private int maxSubcompactions = 4;
+    private long compactionBytesPerSecond;
+    private int valueSeparationThreshold;
+    private long valueLogFileSize = ValueLog.DEFAULT_FILE_SIZE;
+    private double valueLogGcRatio = 0.5;
+    private boolean jmxEnabled;
+    private final List<StorageListener> listeners = new ArrayList<>();
+
+    public static LsmStorageOptions defaults() {
+        return new LsmStorageOptions();
+    }
+
+    public long getMemtableSizeLimit() {
+        return memtableSizeLimit;
+    }
+
+    /**
+     * Retained memory at which the active memtable is frozen and queued for flushing, object
+     * overhead and replaced versions included
+     */
+    public LsmStorageOptions setMemtableSizeLimit(long memtableSizeLimit) {
+        this.memtableSizeLimit = memtableSizeLimit;
+        return this;
+    }
+
+    public int getMaxImmutableMemtables() {
+        return maxImmutableMemtables;
+    }
+
+    /**
+     * Writers stall while this many frozen memtables, or as much memory as this many full ones
+     * would hold, are waiting to be flushed
+     */
+    public LsmStorageOptions setMaxImmutableMemtables(int maxImmutableMemtables) {
+        this.maxImmutableMemtables = maxImmutableMemtables;
+        return this;
+    }
+
+    public int getMemtableShards() {
+        return memtableShards;
+    }
+
+    /**
+     * Number of skip lists each memtable spreads its keys over, more shards let many writer
+     * threads insert without contending on the same index nodes
+     */
+    public LsmStorageOptions setMemtableShards(int memtableShards) {
+        this.memtableShards = memtableShards;
+        return this;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public LsmStorageOptions setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public int getBloomBitsPerKey() {
+        return bloomBitsPerKey;
+    }
+
+    public LsmStorageOptions setBloomBitsPerKey(int bloomBitsPerKey) {
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        return this;
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    /**
+     * Off-heap memory for decompressed blocks, 0 disables the cache. Uncompressed blocks are read
+     * straight from the page cache and never take up room in it.
+     */
+    public LsmStorageOptions setBlockCacheSize(long blockCacheSize) {
+        this.blockCacheSize = blockCacheSize;
+        return this;
+    }
+
+    /**
+     * Codec for the tables written to the level, level 0 receives the flushed memtables
+     */
+    public BlockCodec getCompression(int level) {
+        BlockCodec codec = level < levelCompression.length ? levelCompression[level] : null;
+        return codec == null ? compression : codec;
+    }
+
+    /**
+     * Codec for the levels without a codec of their own, none by default
+     */
+    public LsmStorageOptions setCompression(BlockCodec compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Codec for the tables written to one level. Hot upper levels are rewritten soon and read
+     * often, a cheap codec or none suits them, while most of the data settles in the deepest
+     * levels where a stronger codec saves the most space. Takes effect for tables written from
+     * now on, existing tables keep the codec they were written with.
+     */
+    public LsmStorageOptions setCompression(int level, BlockCodec compression) {
+        if (level >= levelCompression.length) {
+            levelCompression = Arrays.copyOf(levelCompression, level + 1);
+        }
+        levelCompression[level] = compression;
+        return this;
+    }
+
+    public SyncMode getWalSyncMode() {
+        return walSyncMode;
+    }
+
+    public LsmStorageOptions setWalSyncMode(SyncMode walSyncMode) {
+        this.walSyncMode = walSyncMode;
+        return this;
+    }
+
+    public CompactionStyle getCompactionStyle() {
+        return compactionStyle;
+    }
+
+    public LsmStorageOptions setCompactionStyle(CompactionStyle compactionStyle) {
+        this.compactionStyle = compactionStyle;
+        return this;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * Number of levels below level 0 for leveled compaction, for tiered compaction the number of
+     * sorted runs tolerated before they are merged together
+     */
+    public LsmStorageOptions setLevelCount(int levelCount) {
+        this.levelCount = levelCount;
+        return this;
+    }
+
+    public int getLevel0CompactionTrigger() {
+        return level0CompactionTrigger;
+    }
+
+    /**
+     * Number of flushed tables in level 0 that triggers compacting them into the level below
+     */
+    public LsmStorageOptions setLevel0CompactionTrigger(int level0CompactionTrigger) {
+        this.level0CompactionTrigger = level0CompactionTrigger;
+        return this;
+    }
+
+    public long getBaseLevelSize() {
+        return baseLevelSize;
+    }
+
+    /**
+     * Target size of level 1, deeper levels grow by the level size multiplier
+     */
+    public LsmStorageOptions setBaseLevelSize(long baseLevelSize) {
+        this.baseLevelSize = baseLevelSize;
+        return this;
+    }
+
+    public int getLevelSizeMultiplier() {
+        return levelSizeMultiplier;
+    }
+
+    public LsmStorageOptions setLevelSizeMultiplier(int levelSizeMultiplier) {
+        this.levelSizeMultiplier = levelSizeMultiplier;
+        return this;
+    }
+
+    public long getTargetFileSize() {
+        return targetFileSize;
+    }
+
+    /**
+     * Size at which compaction finishes an output table and starts the next one
+     */
+    public LsmStorageOptions setTargetFileSize(long targetFileSize) {
+        this.targetFileSize = targetFileSize;
+        return this;
+    }
+
+    public int getCompactionThreads() {
+        return compactionThreads;
+    }
+
+    public LsmStorageOptions setCompactionThreads(int compactionThreads) {
+        this.compactionThreads = compactionThreads;
+        return this;
+    }
+
+    public int getMaxSubcompactions() {
+        return maxSubcompactions;
+    }
+
+    /**
+     * Upper bound of key ranges a compaction is split into and merged in parallel
+     */
+    public LsmStorageOptions setMaxSubcompactions(int maxSubcompactions) {
+        this.maxSubcompactions = maxSubcompactions;
+        return this;
+    }
+
+    public long getCompactionBytesPerSecond() {
+        return compactionBytesPerSecond;
+    }
+
+    /**
+     * Limits the rate compaction writes tables at, 0 leaves it unlimited
+     */
+    public LsmStorageOptions setCompactionBytesPerSecond(long compactionBytesPerSecond) {
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        return this;
+    }
+
+    public int getValueSeparationThreshold() {
+        return valueSeparationThreshold;
+    }
+
+    /**
+     * Values of at least this many bytes are written to a value log and the tables only keep a
+     * pointer to them, so compaction rewrites keys rather than large values. 0 keeps every value
+     * in the tables. Once set for a directory it stays separated, the threshold itself may change
+     * between opens, and it cannot be turned on for a directory that already holds tables.
+     */
+    public LsmStorageOptions setValueSeparationThreshold(int valueSeparationThreshold) {
+        this.valueSeparationThreshold = valueSeparationThreshold;
+        return this;
+    }
+
+    public long getValueLogFileSize() {
+        return valueLogFileSize;
+    }
+
+    /**
+     * Size at which the value log starts a new file, garbage is collected a whole file at a time
+     */
+    public LsmStorageOptions setValueLogFileSize(long valueLogFileSize) {
+        this.valueLogFileSize = valueLogFileSize;
+        return this;
+    }
+
+    public double getValueLogGcRatio() {
+        return valueLogGcRatio;
+    }
+
+    /**
+     * Share of a value log file that must be overwritten or deleted values before garbage
+     * collection copies its live values forward and removes it
+     */
+    public LsmStorageOptions setValueLogGcRatio(double valueLogGcRatio) {
+        this.valueLogGcRatio = valueLogGcRatio;
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Publishes the {@link StorageMetrics} over JMX while the storage is open, off by default
+     */
+    public LsmStorageOptions setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    public List<StorageListener> getListeners() {
+        return List.copyOf(listeners);
+    }
+
+    /**
+     * Adds a listener for flushes, compactions and write stalls of the storages opened with these options
+     */
+    public LsmStorageOptions addListener(StorageListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+}
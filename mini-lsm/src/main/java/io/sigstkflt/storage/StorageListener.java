@@ -0,0 +1,24 @@
+package io.sigstkflt.storage;
+
+/**
+ * Callbacks for the background work of a {@link LsmStorage}, registered through
+ * {@link LsmStorageOptions#addListener(StorageListener)}.
+ *
+ * Flush and compaction events arrive on the thread that did the work, once the result is
+ * installed, stall events on the stalled writer. Listeners should return quickly, an exception
+ * thrown by one is ignored so that it cannot fail the storage.
+ */
+public interface StorageListener {
+
+    default void onFlushCompleted(FlushInfo info) {
+    }
+
+    default void onCompactionCompleted(CompactionInfo info) {
+    }
+
+    /**
+     * @param nanos how long the writer waited for the flusher
+     */
+    default void onWriteStall(long nanos) {
+    }
+}
@@ -0,0 +1,42 @@
+package io.sigstkflt.storage;
+
+/**
+ * Counters and gauges of a {@link LsmStorage} as published over JMX, see {@link StorageMetrics}.
+ * Durations are in nanoseconds and sizes in bytes.
+ */
+public interface StorageMXBean {
+
+    long getMemtableBytes();
+
+    int getImmutableMemtableCount();
+
+    int getTableCount();
+
+    long getFlushCount();
+
+    long getFlushBytes();
+
+    long getCompactionCount();
+
+    long getCompactionBytesRead();
+
+    long getCompactionBytesWritten();
+
+    long getWriteStallCount();
+
+    long getWriteStallNanos();
+
+    long getScanEntries();
+
+    /**
+     * Fraction of block lookups served from the block cache, 0 without a cache
+     */
+    double getBlockCacheHitRate();
+
+    long getBlockCacheUsage();
+
+    /**
+     * Fraction of lookups for absent keys the bloom filters of the current tables let through
+     */
+    double getBloomFalsePositiveRate();
+}
@@ -0,0 +1,258 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.sstable.BlockCache;
+import io.sigstkflt.util.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters of a {@link LsmStorage}, read through {@link LsmStorage#metrics()}
+ * or over JMX when {@link LsmStorageOptions#setJmxEnabled(boolean)} is set.
+ *
+ * Recording a latency costs two reads of the nanosecond clock and a few atomic increments, whose
+ * counters {@link Histogram} spreads over more arrays once concurrent recorders collide on them,
+ * the gauges are only computed when read. Put latency covers puts, deletes and batches including
+ * any stall. Scan latency runs from opening a scan until it is released, by running past its range
+ * or being closed, and is recorded together with the entries it returned. Flush, compaction and
+ * stall events are recorded here before they are passed on to the {@link StorageListener}s.
+ */
+public final class StorageMetrics implements StorageMXBean {
+    private static final String DOMAIN = "io.sigstkflt";
+
+    private final LsmStorage storage;
+    private final List<StorageListener> listeners;
+    private final Histogram putLatency = new Histogram();
+    private final Histogram getLatency = new Histogram();
+    private final Histogram scanLatency = new Histogram();
+    private final Histogram flushDuration = new Histogram();
+    private final Histogram compactionDuration = new Histogram();
+    private final Histogram writeStalls = new Histogram();
+    private final LongAdder scanEntries = new LongAdder();
+    private final LongAdder flushBytes = new LongAdder();
+    private final LongAdder compactionBytesRead = new LongAdder();
+    private final LongAdder compactionBytesWritten = new LongAdder();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    StorageMetrics(LsmStorage storage, List<StorageListener> listeners) {
+        this.storage = storage;
+        this.listeners = List.copyOf(listeners);
+    }
+
+    public Histogram putLatency() {
+        return putLatency;
+    }
+
+    public Histogram getLatency() {
+        return getLatency;
+    }
+
+    public Histogram scanLatency() {
+        return scanLatency;
+    }
+
+    public Histogram flushDuration() {
+        return flushDuration;
+    }
+
+    public Histogram compactionDuration() {
+        return compactionDuration;
+    }
+
+    /**
+     * How long stalled writers waited for the flusher
+     */
+    public Histogram writeStalls() {
+        return writeStalls;
+    }
+
+    @Override
+    public long getMemtableBytes() {
+        return storage.memtableMemoryUsage();
+    }
+
+    @Override
+    public int getImmutableMemtableCount() {
+        return storage.immutableMemtableCount();
+    }
+
+    @Override
+    public int getTableCount() {
+        return storage.tableCount();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushDuration.count();
+    }
+
+    @Override
+    public long getFlushBytes() {
+        return flushBytes.sum();
+    }
+
+    @Override
+    public long getCompactionCount() {
+        return compactionDuration.count();
+    }
+
+    @Override
+    public long getCompactionBytesRead() {
+        return compactionBytesRead.sum();
+    }
+
+    @Override
+    public long getCompactionBytesWritten() {
+        return compactionBytesWritten.sum();
+    }
+
+    @Override
+    public long getWriteStallCount() {
+        return writeStalls.count();
+    }
+
+    @Override
+    public long getWriteStallNanos() {
+        return writeStalls.sum();
+    }
+
+    @Override
+    public long getScanEntries() {
+        return scanEntries.sum();
+    }
+
+    @Override
+    public double getBlockCacheHitRate() {
+        BlockCache cache = storage.blockCache();
+        return cache == null ? 0.0 : cache.hitRate();
+    }
+
+    @Override
+    public long getBlockCacheUsage() {
+        BlockCache cache = storage.blockCache();
+        return cache == null ? 0 : cache.usage();
+    }
+
+    @Override
+    public double getBloomFalsePositiveRate() {
+        return storage.bloomFalsePositiveRate();
+    }
+
+    void scanned(long entries, long durationNanos) {
+        scanEntries.add(entries);
+        scanLatency.record(durationNanos);
+    }
+
+    void flushed(FlushInfo info) {
+        flushDuration.record(info.durationNanos());
+        flushBytes.add(info.tableBytes());
+        for (StorageListener listener : listeners) {
+            try {
+                listener.onFlushCompleted(info);
+            } catch (RuntimeException ignored) {
+                // A failing listener must not fail the flush
+            }
+        }
+    }
+
+    void compacted(CompactionInfo info) {
+        compactionDuration.record(info.durationNanos());
+        compactionBytesRead.add(info.bytesRead());
+        compactionBytesWritten.add(info.bytesWritten());
+        for (StorageListener listener : listeners) {
+            try {
+                listener.onCompactionCompleted(info);
+            } catch (RuntimeException ignored) {
+                // A failing listener must not stop the compaction thread
+            }
+        }
+    }
+
+    void stalled(long nanos) {
+        writeStalls.record(nanos);
+        for (StorageListener listener : listeners) {
+            try {
+                listener.onWriteStall(nanos);
+            } catch (RuntimeException ignored) {
+                // A failing listener must not fail the write
+            }
+        }
+    }
+
+    /**
+     * Publishes the counters and one bean per latency histogram under names keyed by the directory
+     */
+    void register(Path dir) throws IOException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = DOMAIN + ":type=LsmStorage,name=" + ObjectName.quote(dir.toAbsolutePath().toString());
+        try {
+            register(server, new ObjectName(base), this);
+            register(server, new ObjectName(base + ",latency=put"), new Latency(putLatency));
+            register(server, new ObjectName(base + ",latency=get"), new Latency(getLatency));
+            register(server, new ObjectName(base + ",latency=scan"), new Latency(scanLatency));
+            register(server, new ObjectName(base + ",latency=flush"), new Latency(flushDuration));
+            register(server, new ObjectName(base + ",latency=compaction"), new Latency(compactionDuration));
+            register(server, new ObjectName(base + ",latency=writeStall"), new Latency(writeStalls));
+        } catch (JMException e) {
+            unregister();
+            throw new IOException("Cannot register the JMX beans of " + dir, e);
+        }
+    }
+
+    void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignored) {
+                // Already gone
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        server.registerMBean(bean, name);
+        registered.add(name);
+    }
+
+    private record Latency(Histogram histogram) implements LatencyMXBean {
+
+        @Override
+        public long getCount() {
+            return histogram.count();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.mean();
+        }
+
+        @Override
+        public long getP50() {
+            return histogram.percentile(50);
+        }
+
+        @Override
+        public long getP99() {
+            return histogram.percentile(99);
+        }
+
+        @Override
+        public long getP999() {
+            return histogram.percentile(99.9);
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.max();
+        }
+    }
+}
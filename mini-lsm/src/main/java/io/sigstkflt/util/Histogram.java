@@ -0,0 +1,197 @@
+package io.sigstkflt.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative values, such as latencies in nanoseconds, with a bounded
+ * relative error in the style of HdrHistogram.
+ *
+ * Values below 128 get a bucket each. Above that every power of two is split into 64 linear
+ * buckets, so a bucket is never wider than 1/64 of the values it holds and percentiles are off by
+ * less than 1.6%. The buckets cover every long in about 3700 counters, recording only
+ * increments a counter and a striped sum and never locks. Reads are not atomic with concurrent
+ * recording, a percentile may miss values recorded while it is computed.
+ *
+ * The counters are striped like a {@link LongAdder}: they start as a single array, and once
+ * recording threads collide on a counter the number of arrays doubles, up to the number of cores,
+ * and each thread records into the one its id hashes to. Arrays are only allocated when a thread
+ * first lands on them, so a histogram recorded by one thread at a time stays at one array. Reads
+ * fold the arrays.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // The highest bit of Long.MAX_VALUE is bit 62
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+    // The number of cores rounded up to a power of two
+    private static final int MAX_STRIPES =
+            Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+    // Power of two, stripes at and above it are not used yet
+    private final AtomicInteger width;
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        this(MAX_STRIPES, 1);
+    }
+
+    /**
+     * @param stripes most arrays the counters are spread over, used from the start
+     */
+    Histogram(int stripes) {
+        this(stripes, stripes);
+    }
+
+    private Histogram(int maxStripes, int width) {
+        if (maxStripes < 1 || Integer.bitCount(maxStripes) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + maxStripes);
+        }
+        this.stripes = new AtomicReferenceArray<>(maxStripes);
+        this.stripes.set(0, new AtomicLongArray(BUCKETS));
+        this.width = new AtomicInteger(width);
+    }
+
+    /**
+     * @param value negative values are counted as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        int index = index(v);
+        int used = width.get();
+        AtomicLongArray counts = stripe(probe() & (used - 1));
+        long count = counts.get(index);
+        if (!counts.compareAndSet(index, count, count + 1)) {
+            counts.getAndIncrement(index);
+            // Another thread records into the same array, spreads the threads over twice as many
+            if (used < stripes.length()) {
+                width.compareAndSet(used, used * 2);
+            }
+        }
+        sum.add(v);
+        long current = max.get();
+        // Rarely taken once the histogram has seen a few values
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    public long count() {
+        long count = 0;
+        for (long bucket : fold()) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0.0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the largest value that may have landed in the bucket holding the percentile, capped
+     * at the maximum, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long[] snapshot = fold();
+        long count = 0;
+        for (long bucket : snapshot) {
+            count += bucket;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Arrays the counters are currently spread over
+     */
+    int stripeCount() {
+        return width.get();
+    }
+
+    /**
+     * Sums the counters of every array into one
+     */
+    private long[] fold() {
+        long[] counts = new long[BUCKETS];
+        for (int s = 0; s < stripes.length(); s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    private AtomicLongArray stripe(int s) {
+        AtomicLongArray stripe = stripes.get(s);
+        if (stripe == null) {
+            // The loser of a race drops its array before counting into it
+            stripes.compareAndSet(s, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(s);
+        }
+        return stripe;
+    }
+
+    private static int probe() {
+        long hash = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32);
+    }
+
+    /**
+     * Bucket of the value, values below {@link #SUB_BUCKETS} index themselves
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keeps the top seven bits of the value, whose leading one picks the upper half of the buckets
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Largest value that falls into the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long top = index - (long) shift * HALF;
+        // For the last bucket the shift overflows to Long.MIN_VALUE, one less is Long.MAX_VALUE
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package io.sigstkflt.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting background I/O to a number of bytes per second.
+ *
+ * Callers take the bytes they are about to write and park for as long as the bucket is in debt,
+ * so a large write is never split and the long term rate still holds. The bucket holds at most
+ * one second worth of tokens to bound bursts after idle periods.
+ */
+public class RateLimiter {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long available;
+    private long lastRefill;
+
+    /**
+     * @param bytesPerSecond allowed rate, 0 or less disables limiting
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(long bytesPerSecond, LongSupplier clock) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.clock = clock;
+        this.available = bytesPerSecond;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0);
+    }
+
+    public void acquire(long bytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long debt;
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            // A full second already fills the bucket, longer idle times would only overflow the product
+            long elapsed = Math.min(now - lastRefill, SECOND);
+            long refill = elapsed * bytesPerSecond / SECOND;
+            if (refill > 0) {
+                available = Math.min(bytesPerSecond, available + refill);
+                lastRefill = now;
+            }
+            available -= bytes;
+            debt = -available;
+        } finally {
+            lock.unlock();
+        }
+        if (debt > 0) {
+            LockSupport.parkNanos((long) ((double) debt / bytesPerSecond * SECOND));
+        }
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
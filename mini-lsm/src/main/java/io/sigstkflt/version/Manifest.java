@@ -0,0 +1,192 @@
+package io.sigstkflt.version;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of {@link ManifestRecord}s describing which tables and logs are live.
+ *
+ * <pre>
+ * record: | crc32c (int) | payload length (int) | payload |
+ * payload: | type (byte) | fields, ints and int lists as count followed by the ints |
+ * </pre>
+ * Every record is forced to disk before the change it describes becomes visible. A new manifest
+ * starts with a snapshot and is moved over the old one atomically, replay stops at the first torn
+ * or corrupt record just like the write-ahead log.
+ */
+public class Manifest implements AutoCloseable {
+    public static final String FILE_NAME = "MANIFEST";
+
+    private static final byte NEW_MEMTABLE = 1;
+    private static final byte FLUSH = 2;
+    private static final byte COMPACTION = 3;
+    private static final byte SNAPSHOT = 4;
+
+    private final FileChannel channel;
+
+    private Manifest(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static Path path(Path dir) {
+        return dir.resolve(FILE_NAME);
+    }
+
+    /**
+     * Writes a new manifest holding only the snapshot and replaces the current one with it
+     */
+    public static Manifest create(Path dir, ManifestRecord.Snapshot snapshot) throws IOException {
+        Path temp = dir.resolve(FILE_NAME + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            channel.write(encode(snapshot));
+            channel.force(true);
+            Files.move(temp, path(dir), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new Manifest(channel);
+    }
+
+    /**
+     * Reads every intact record of the manifest in the directory
+     *
+     * @return the records in the order they were appended, empty if there is no manifest
+     */
+    public static List<ManifestRecord> replay(Path dir) throws IOException {
+        List<ManifestRecord> records = new ArrayList<>();
+        Path path = path(dir);
+        if (!Files.exists(path)) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32C crc = new CRC32C();
+        while (buffer.remaining() >= 2 * Integer.BYTES) {
+            int checksum = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 1 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            records.add(decode(payload));
+        }
+        return records;
+    }
+
+    public void append(ManifestRecord record) throws IOException {
+        ByteBuffer encoded = encode(record);
+        while (encoded.hasRemaining()) {
+            channel.write(encoded);
+        }
+        channel.force(false);
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer encode(ManifestRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        switch (record) {
+            case ManifestRecord.NewMemtable newMemtable -> {
+                out.writeByte(NEW_MEMTABLE);
+                out.writeInt(newMemtable.id());
+            }
+            case ManifestRecord.Flush flush -> {
+                out.writeByte(FLUSH);
+                out.writeInt(flush.memtableId());
+                out.writeInt(flush.tableId());
+            }
+            case ManifestRecord.Compaction compaction -> {
+                out.writeByte(COMPACTION);
+                writeIds(out, compaction.removed());
+                writeLevels(out, compaction.levels());
+            }
+            case ManifestRecord.Snapshot snapshot -> {
+                out.writeByte(SNAPSHOT);
+                out.writeInt(snapshot.nextId());
+                writeIds(out, snapshot.memtables());
+                writeIds(out, snapshot.l0());
+                writeLevels(out, snapshot.levels());
+            }
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        return buffer.flip();
+    }
+
+    private static ManifestRecord decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        return switch (type) {
+            case NEW_MEMTABLE -> new ManifestRecord.NewMemtable(in.readInt());
+            case FLUSH -> new ManifestRecord.Flush(in.readInt(), in.readInt());
+            case COMPACTION -> new ManifestRecord.Compaction(readIds(in), readLevels(in));
+            case SNAPSHOT -> new ManifestRecord.Snapshot(in.readInt(), readIds(in), readIds(in), readLevels(in));
+            default -> throw new IOException("Unknown manifest record type " + type);
+        };
+    }
+
+    private static void writeIds(DataOutputStream out, List<Integer> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (int id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    private static void writeLevels(DataOutputStream out, List<List<Integer>> levels) throws IOException {
+        out.writeInt(levels.size());
+        for (List<Integer> level : levels) {
+            writeIds(out, level);
+        }
+    }
+
+    private static List<Integer> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readInt());
+        }
+        return List.copyOf(ids);
+    }
+
+    private static List<List<Integer>> readLevels(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<List<Integer>> levels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            levels.add(readIds(in));
+        }
+        return List.copyOf(levels);
+    }
+}
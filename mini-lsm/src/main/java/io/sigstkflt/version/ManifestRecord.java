@@ -0,0 +1,45 @@
+package io.sigstkflt.version;
+
+import java.util.List;
+
+/**
+ * One change to the set of live files, as logged by {@link Manifest}
+ */
+public sealed interface ManifestRecord {
+
+    /**
+     * A memtable and its log were created, the id is taken
+     */
+    record NewMemtable(int id) implements ManifestRecord {
+    }
+
+    /**
+     * A memtable was written to level 0 and its log is no longer needed
+     *
+     * @param tableId id of the new table, -1 when the memtable was empty and nothing was written
+     */
+    record Flush(int memtableId, int tableId) implements ManifestRecord {
+    }
+
+    /**
+     * A compaction replaced tables, carries the full layout of the levels below level 0 because
+     * tiered compaction moves whole runs around
+     *
+     * @param removed ids of the replaced tables from any level
+     * @param levels table ids of every level below level 0, in order
+     */
+    record Compaction(List<Integer> removed, List<List<Integer>> levels) implements ManifestRecord {
+    }
+
+    /**
+     * Complete state, always the first record of a manifest
+     *
+     * @param nextId smallest id never handed out
+     * @param memtables ids of memtables that still live in their logs, oldest first
+     * @param l0 level 0 table ids, newest first
+     * @param levels table ids of every level below level 0
+     */
+    record Snapshot(int nextId, List<Integer> memtables, List<Integer> l0, List<List<Integer>> levels)
+            implements ManifestRecord {
+    }
+}
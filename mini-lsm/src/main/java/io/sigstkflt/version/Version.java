@@ -0,0 +1,221 @@
+package io.sigstkflt.version;
+
+import io.sigstkflt.iterator.ConcatCursor;
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.sstable.SsTableReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable set of on-disk tables, a flush or compaction installs a new version instead of
+ * changing this one.
+ *
+ * Level 0 holds flushed tables whose key ranges may overlap, newest first. Every deeper level is
+ * a single sorted run: its tables are ordered by key and never overlap, so a point lookup probes
+ * at most one table per level. Data in a shallower level is always newer than data below it.
+ *
+ * Once installed by a {@link VersionSet} a version is reference counted. Readers pin it with
+ * {@link VersionSet#acquire()} and {@link #release()} it when done, tables dropped by a compaction
+ * are closed and deleted after the last version holding them is released.
+ */
+public final class Version {
+    private final List<SsTableReader> l0Tables;
+    private final List<List<SsTableReader>> levels;
+    private final AtomicInteger refs = new AtomicInteger();
+    private VersionSet owner;
+
+    /**
+     * @param l0Tables flushed tables, newest first
+     * @param levels sorted runs for levels 1 and up, index 0 holds level 1
+     */
+    public Version(List<SsTableReader> l0Tables, List<List<SsTableReader>> levels) {
+        this.l0Tables = l0Tables;
+        this.levels = levels;
+    }
+
+    public static Version empty(int levelCount) {
+        List<List<SsTableReader>> levels = new ArrayList<>(levelCount);
+        for (int i = 0; i < levelCount; i++) {
+            levels.add(List.of());
+        }
+        return new Version(List.of(), List.copyOf(levels));
+    }
+
+    public List<SsTableReader> l0Tables() {
+        return l0Tables;
+    }
+
+    public List<List<SsTableReader>> levels() {
+        return levels;
+    }
+
+    /**
+     * @param level level number, 0 for the flushed tables
+     */
+    public List<SsTableReader> tables(int level) {
+        return level == 0 ? l0Tables : levels.get(level - 1);
+    }
+
+    /**
+     * @return number of levels including level 0
+     */
+    public int levelCount() {
+        return levels.size() + 1;
+    }
+
+    public long levelSize(int level) {
+        long size = 0;
+        for (SsTableReader table : tables(level)) {
+            size += table.fileSize();
+        }
+        return size;
+    }
+
+    public int tableCount() {
+        int count = l0Tables.size();
+        for (List<SsTableReader> level : levels) {
+            count += level.size();
+        }
+        return count;
+    }
+
+    public List<SsTableReader> allTables() {
+        List<SsTableReader> tables = new ArrayList<>(l0Tables);
+        for (List<SsTableReader> level : levels) {
+            tables.addAll(level);
+        }
+        return tables;
+    }
+
+    /**
+     * @return the newest value or tombstone stored for the key, or null if no table has it
+     */
+    public byte[] lookup(byte[] key) {
+        return lookup(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #lookup(byte[])} but skips versions written after the given sequence number
+     */
+    public byte[] lookup(byte[] key, long sequence) {
+        for (SsTableReader table : l0Tables) {
+            byte[] value = table.lookup(key, sequence);
+            if (value != null) {
+                return value;
+            }
+        }
+        for (List<SsTableReader> level : levels) {
+            SsTableReader table = find(level, key);
+            if (table != null) {
+                byte[] value = table.lookup(key, sequence);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Highest sequence number stored in any table, 0 when there are none
+     */
+    public long maxSequence() {
+        long max = 0;
+        for (SsTableReader table : allTables()) {
+            max = Math.max(max, table.maxSequence());
+        }
+        return max;
+    }
+
+    /**
+     * Cursors over every table overlapping the range, newest first, one per level below level 0
+     */
+    public List<Cursor> cursors(byte[] beginKey, byte[] endKey) {
+        List<Cursor> sources = new ArrayList<>(l0Tables.size() + levels.size());
+        for (SsTableReader table : l0Tables) {
+            sources.add(table.cursor(beginKey, endKey));
+        }
+        for (List<SsTableReader> level : levels) {
+            if (!level.isEmpty()) {
+                sources.add(new ConcatCursor(level, beginKey, endKey));
+            }
+        }
+        return sources;
+    }
+
+    public Version withFlushed(SsTableReader table) {
+        List<SsTableReader> tables = new ArrayList<>(l0Tables.size() + 1);
+        tables.add(table);
+        tables.addAll(l0Tables);
+        return new Version(List.copyOf(tables), levels);
+    }
+
+    /**
+     * Drops a reference taken by {@link VersionSet#acquire()}
+     */
+    public void release() {
+        if (refs.decrementAndGet() == 0 && owner != null) {
+            owner.dropped(this);
+        }
+    }
+
+    /**
+     * Takes a reference unless the count already dropped to zero, a dead version never comes back
+     */
+    boolean tryRetain() {
+        int current;
+        do {
+            current = refs.get();
+            if (current == 0) {
+                return false;
+            }
+        } while (!refs.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Called once by the version set, the set itself holds the first reference while the
+     * version is current
+     */
+    void install(VersionSet owner) {
+        this.owner = owner;
+        refs.set(1);
+    }
+
+    /**
+     * Tables of a sorted run whose key range intersects [beginKey, endKey], both inclusive
+     */
+    public static List<SsTableReader> overlapping(List<SsTableReader> run, byte[] beginKey, byte[] endKey) {
+        List<SsTableReader> result = new ArrayList<>();
+        for (SsTableReader table : run) {
+            if (Arrays.compareUnsigned(table.lastKey(), beginKey) >= 0
+                    && Arrays.compareUnsigned(table.firstKey(), endKey) <= 0) {
+                result.add(table);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Binary searches a sorted run for the only table that may hold the key
+     */
+    private static SsTableReader find(List<SsTableReader> run, byte[] key) {
+        int low = 0;
+        int high = run.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(run.get(mid).lastKey(), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == run.size() || Arrays.compareUnsigned(run.get(low).firstKey(), key) > 0) {
+            return null;
+        }
+        return run.get(low);
+    }
+}
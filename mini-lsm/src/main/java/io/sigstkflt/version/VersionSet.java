@@ -0,0 +1,401 @@
+package io.sigstkflt.version;
+
+import io.sigstkflt.sstable.BlockCache;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.wal.WriteAheadLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Owns the current {@link Version} and the {@link Manifest} recording how it came to be.
+ *
+ * Readers pin the current version without taking a lock: they load it and bump its reference
+ * count with a CAS, retrying in the rare case it was replaced and released in between. Changes
+ * are serialized by a lock, logged to the manifest and only then installed.
+ * Each table counts the versions holding it, so a table replaced by a compaction stays readable
+ * for scans that started before and is closed and deleted when the last of them lets go.
+ */
+public class VersionSet implements AutoCloseable {
+    // Rewrite the manifest as a single snapshot once the log grows past this
+    static final long MAX_MANIFEST_SIZE = 4L * 1024 * 1024;
+
+    private final Path dir;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final Map<SsTableReader, Integer> tableRefs = new IdentityHashMap<>();
+    private final List<Integer> liveMemtables;
+    private Manifest manifest;
+    private int nextId;
+    private boolean closed;
+
+    private volatile Version current;
+
+    private VersionSet(Path dir, Version version, List<Integer> liveMemtables, int nextId) {
+        this.dir = dir;
+        this.liveMemtables = liveMemtables;
+        this.nextId = nextId;
+        retainTables(version);
+        version.install(this);
+        this.current = version;
+    }
+
+    /**
+     * Rebuilds the last state from the manifest and starts a fresh manifest holding just that
+     * state. Only tables the manifest lists are opened, tables and logs it does not know belong to
+     * changes that never completed and are deleted. A directory without a manifest is taken as
+     * written before manifests existed, all its tables go to level 0.
+     *
+     * @param empty layout to start from when the directory holds no tables
+     */
+    public static VersionSet recover(Path dir, Version empty) throws IOException {
+        return recover(dir, empty, null);
+    }
+
+    /**
+     * @param cache block cache for the tables opened, null to read them without a cache
+     */
+    public static VersionSet recover(Path dir, Version empty, BlockCache cache) throws IOException {
+        List<ManifestRecord> records = Manifest.replay(dir);
+        ManifestRecord.Snapshot state = records.isEmpty() ? scan(dir, empty) : replay(records);
+
+        Map<Integer, SsTableReader> opened = new HashMap<>();
+        try {
+            List<SsTableReader> l0 = open(dir, state.l0(), opened, cache);
+            List<List<SsTableReader>> levels = new ArrayList<>(state.levels().size());
+            for (List<Integer> level : state.levels()) {
+                levels.add(open(dir, level, opened, cache));
+            }
+            // A level count that grew since the manifest was written gets empty levels below
+            for (int i = levels.size(); i < empty.levels().size(); i++) {
+                levels.add(List.of());
+            }
+            deleteUnknownFiles(dir, opened.keySet(), state.memtables());
+
+            VersionSet versions = new VersionSet(dir, new Version(l0, List.copyOf(levels)),
+                    new ArrayList<>(state.memtables()), state.nextId());
+            versions.manifest = Manifest.create(dir, versions.snapshot());
+            return versions;
+        } catch (IOException | RuntimeException e) {
+            for (SsTableReader table : opened.values()) {
+                table.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The current version without taking a reference. Only safe for the thread that is the sole
+     * remover of tables, the compaction thread, as nothing else can release what it reads.
+     */
+    public Version current() {
+        return current;
+    }
+
+    /**
+     * Pins the current version, the caller must {@link Version#release()} it
+     */
+    public Version acquire() {
+        while (true) {
+            Version version = current;
+            if (version.tryRetain()) {
+                return version;
+            }
+        }
+    }
+
+    /**
+     * Smallest id not used by any table or memtable known to the manifest
+     */
+    public int nextId() {
+        lock.lock();
+        try {
+            return nextId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ids of memtables that were never flushed, oldest first, their logs need replaying
+     */
+    public List<Integer> liveMemtables() {
+        lock.lock();
+        try {
+            return List.copyOf(liveMemtables);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logNewMemtable(int id) throws IOException {
+        lock.lock();
+        try {
+            log(new ManifestRecord.NewMemtable(id));
+            liveMemtables.add(id);
+            nextId = Math.max(nextId, id + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Installs a version with the flushed table on top of level 0
+     *
+     * @param table the new table, or null if the memtable held nothing
+     */
+    public void logFlush(int memtableId, SsTableReader table) throws IOException {
+        lock.lock();
+        try {
+            log(new ManifestRecord.Flush(memtableId, table == null ? -1 : table.getId()));
+            liveMemtables.remove(Integer.valueOf(memtableId));
+            if (table != null) {
+                nextId = Math.max(nextId, table.getId() + 1);
+                install(current.withFlushed(table));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Installs the version the change builds from the current one, tables it leaves out are
+     * deleted once no reader holds them
+     */
+    public void logCompaction(UnaryOperator<Version> change) throws IOException {
+        lock.lock();
+        try {
+            Version base = current;
+            Version next = change.apply(base);
+            Set<SsTableReader> kept = tableSet(next);
+            List<Integer> removed = new ArrayList<>();
+            for (SsTableReader table : base.allTables()) {
+                if (!kept.contains(table)) {
+                    removed.add(table.getId());
+                }
+            }
+            for (SsTableReader table : next.allTables()) {
+                nextId = Math.max(nextId, table.getId() + 1);
+            }
+            log(new ManifestRecord.Compaction(List.copyOf(removed), levelIds(next.levels())));
+            install(next);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the manifest and every open table, versions still pinned by readers become unusable
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (SsTableReader table : tableRefs.keySet()) {
+                table.close();
+            }
+            tableRefs.clear();
+            manifest.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when the last reference to an installed version is released
+     */
+    void dropped(Version version) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (SsTableReader table : version.allTables()) {
+                int refs = tableRefs.merge(table, -1, Integer::sum);
+                if (refs == 0) {
+                    tableRefs.remove(table);
+                    table.close();
+                    Files.deleteIfExists(table.getPath());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void log(ManifestRecord record) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Version set is closed");
+        }
+        manifest.append(record);
+        if (manifest.size() > MAX_MANIFEST_SIZE) {
+            manifest.close();
+            manifest = Manifest.create(dir, snapshot());
+        }
+    }
+
+    /**
+     * Caller holds the lock, the manifest already records the change
+     */
+    private void install(Version next) {
+        retainTables(next);
+        next.install(this);
+        Version previous = current;
+        current = next;
+        previous.release();
+    }
+
+    private void retainTables(Version version) {
+        for (SsTableReader table : version.allTables()) {
+            tableRefs.merge(table, 1, Integer::sum);
+        }
+    }
+
+    private ManifestRecord.Snapshot snapshot() {
+        Version version = current;
+        return new ManifestRecord.Snapshot(nextId, List.copyOf(liveMemtables),
+                ids(version.l0Tables()), levelIds(version.levels()));
+    }
+
+    private static List<Integer> ids(List<SsTableReader> tables) {
+        List<Integer> ids = new ArrayList<>(tables.size());
+        for (SsTableReader table : tables) {
+            ids.add(table.getId());
+        }
+        return List.copyOf(ids);
+    }
+
+    private static List<List<Integer>> levelIds(List<List<SsTableReader>> levels) {
+        List<List<Integer>> ids = new ArrayList<>(levels.size());
+        for (List<SsTableReader> level : levels) {
+            ids.add(ids(level));
+        }
+        return List.copyOf(ids);
+    }
+
+    private static Set<SsTableReader> tableSet(Version version) {
+        Set<SsTableReader> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(version.allTables());
+        return set;
+    }
+
+    /**
+     * Folds the records into the state they describe
+     */
+    private static ManifestRecord.Snapshot replay(List<ManifestRecord> records) {
+        int nextId = 0;
+        List<Integer> memtables = new ArrayList<>();
+        List<Integer> l0 = new ArrayList<>();
+        List<List<Integer>> levels = List.of();
+        for (ManifestRecord record : records) {
+            switch (record) {
+                case ManifestRecord.Snapshot snapshot -> {
+                    nextId = snapshot.nextId();
+                    memtables = new ArrayList<>(snapshot.memtables());
+                    l0 = new ArrayList<>(snapshot.l0());
+                    levels = snapshot.levels();
+                }
+                case ManifestRecord.NewMemtable newMemtable -> {
+                    memtables.add(newMemtable.id());
+                    nextId = Math.max(nextId, newMemtable.id() + 1);
+                }
+                case ManifestRecord.Flush flush -> {
+                    memtables.remove(Integer.valueOf(flush.memtableId()));
+                    if (flush.tableId() >= 0) {
+                        l0.addFirst(flush.tableId());
+                        nextId = Math.max(nextId, flush.tableId() + 1);
+                    }
+                }
+                case ManifestRecord.Compaction compaction -> {
+                    l0.removeAll(compaction.removed());
+                    levels = compaction.levels();
+                    for (List<Integer> level : levels) {
+                        for (int id : level) {
+                            nextId = Math.max(nextId, id + 1);
+                        }
+                    }
+                }
+            }
+        }
+        return new ManifestRecord.Snapshot(nextId, memtables, l0, levels);
+    }
+
+    /**
+     * State of a directory written without a manifest, found by listing its files
+     */
+    private static ManifestRecord.Snapshot scan(Path dir, Version empty) throws IOException {
+        List<Integer> tableIds = listIds(dir, SsTableFormat.SUFFIX);
+        List<Integer> walIds = listIds(dir, WriteAheadLog.SUFFIX);
+        int nextId = 0;
+        for (int id : tableIds) {
+            nextId = Math.max(nextId, id + 1);
+        }
+        for (int id : walIds) {
+            nextId = Math.max(nextId, id + 1);
+        }
+        List<Integer> l0 = new ArrayList<>(tableIds);
+        l0.sort(Comparator.reverseOrder());
+        List<List<Integer>> levels = new ArrayList<>();
+        for (int i = 0; i < empty.levels().size(); i++) {
+            levels.add(List.of());
+        }
+        return new ManifestRecord.Snapshot(nextId, walIds, l0, levels);
+    }
+
+    private static List<SsTableReader> open(Path dir, List<Integer> ids, Map<Integer, SsTableReader> opened,
+                                            BlockCache cache) throws IOException {
+        List<SsTableReader> tables = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            SsTableReader table = SsTableReader.open(SsTableFormat.path(dir, id), id, cache);
+            opened.put(id, table);
+            tables.add(table);
+        }
+        return List.copyOf(tables);
+    }
+
+    private static void deleteUnknownFiles(Path dir, Set<Integer> tables, List<Integer> memtables)
+            throws IOException {
+        Set<Integer> logs = new HashSet<>(memtables);
+        for (int id : listIds(dir, SsTableFormat.SUFFIX)) {
+            if (!tables.contains(id)) {
+                Files.delete(SsTableFormat.path(dir, id));
+            }
+        }
+        for (int id : listIds(dir, WriteAheadLog.SUFFIX)) {
+            if (!logs.contains(id)) {
+                Files.delete(WriteAheadLog.path(dir, id));
+            }
+        }
+    }
+
+    private static List<Integer> listIds(Path dir, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(suffix))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - suffix.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
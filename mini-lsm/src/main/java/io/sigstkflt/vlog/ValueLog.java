@@ -0,0 +1,388 @@
+package io.sigstkflt.vlog;
+
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only files holding large values apart from the keys, in the manner of WiscKey.
+ *
+ * A separated value is appended here when it is written and the memtables and tables store a
+ * {@link ValuePointer} to it instead, so flushes and compactions move a few bytes per entry
+ * rather than the value. Stored values are tagged with a leading byte, {@link #INLINE} for values
+ * kept in place and {@link #POINTER} for pointers. Record format:
+ * <pre>
+ * | key length (int) | value length (int) | key | value |
+ * </pre>
+ * The key lets garbage collection, see {@link #scan(int, RecordVisitor)}, ask whether the key
+ * still points at the record. The newest file takes the appends and is replaced by a new one
+ * once it reaches the size limit, older files are sealed and only read.
+ *
+ * A pointer must not become durable before the value it points to, the write ahead logs take
+ * the log as a {@link Flushable} and force it before themselves. Files are reference counted: a
+ * retired file is deleted once the readers that {@link #pin()}ned it let go, and reading a
+ * pointer into a retired file returns null so the caller can look the key up again.
+ */
+public class ValueLog implements Flushable, AutoCloseable {
+    public static final String SUFFIX = ".vlog";
+    public static final long DEFAULT_FILE_SIZE = 256L * 1024 * 1024;
+    public static final byte INLINE = 0;
+    public static final byte POINTER = 1;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path dir;
+    private final long maxFileSize;
+    private final Map<Integer, LogFile> files = new ConcurrentHashMap<>();
+    private final Set<Integer> retired = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    // Guarded by lock, read without it by flush
+    private volatile LogFile active;
+    private volatile long appendedBytes;
+    private int nextId;
+
+    private ValueLog(Path dir, long maxFileSize) {
+        this.dir = dir;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Opens the files left in the directory as sealed files and starts a new one for appends,
+     * the tail of the previous one may be torn
+     */
+    public static ValueLog open(Path dir, long maxFileSize) throws IOException {
+        ValueLog log = new ValueLog(dir, maxFileSize);
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path path : paths.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = path.getFileName().toString();
+                int id = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+                log.files.put(id, new LogFile(id, path));
+                log.nextId = Math.max(log.nextId, id + 1);
+            }
+            log.roll();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    public static Path path(Path dir, int id) {
+        return dir.resolve(id + SUFFIX);
+    }
+
+    /**
+     * Copies the value into a stored value tagged as kept in place
+     */
+    public static byte[] inline(byte[] value) {
+        byte[] stored = new byte[value.length + 1];
+        stored[0] = INLINE;
+        System.arraycopy(value, 0, stored, 1, value.length);
+        return stored;
+    }
+
+    /**
+     * Appends the record to the newest file, it is durable once the log is flushed
+     */
+    public ValuePointer append(byte[] key, byte[] value) throws IOException {
+        long length = HEADER_SIZE + key.length + value.length;
+        lock.lock();
+        try {
+            LogFile file = active;
+            if (file.size > 0 && file.size + length > maxFileSize) {
+                file.channel.force(false);
+                roll();
+                file = active;
+            }
+            long start = file.size;
+            header.clear();
+            header.putInt(key.length).putInt(value.length).flip();
+            ByteBuffer[] record = {header, ByteBuffer.wrap(key), ByteBuffer.wrap(value)};
+            long written = 0;
+            while (written < length) {
+                written += file.channel.write(record);
+            }
+            file.size += length;
+            appendedBytes += length;
+            return new ValuePointer(file.id, start + HEADER_SIZE + key.length, value.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resolves a stored value, tagged as {@link #INLINE} or {@link #POINTER}
+     *
+     * @return a copy of the value, or null if it points into a retired file and the key has to be
+     * looked up again
+     */
+    public byte[] resolve(byte[] stored) {
+        if (stored[0] == INLINE) {
+            return Arrays.copyOfRange(stored, 1, stored.length);
+        }
+        return read(ValuePointer.decode(stored, 0));
+    }
+
+    /**
+     * @return a copy of the value, or null if its file was retired and the key has to be looked up again
+     */
+    public byte[] read(ValuePointer pointer) {
+        LogFile file = files.get(pointer.fileId());
+        if (file == null || !file.acquire()) {
+            return missing(pointer.fileId());
+        }
+        try {
+            byte[] value = new byte[pointer.length()];
+            file.read(pointer.offset(), value, pointer.length());
+            return value;
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Keeps every current file readable until the pin is closed, for scans that meet pointers long
+     * after they started. Pin before taking the read sequence, a file retired before then only
+     * holds values the read sees relocated.
+     */
+    public Pin pin() {
+        Map<Integer, LogFile> pinned = new HashMap<>();
+        for (LogFile file : files.values()) {
+            if (file.acquire()) {
+                pinned.put(file.id, file);
+            }
+        }
+        return new Pin(pinned);
+    }
+
+    /**
+     * Ids of the files no longer appended to, oldest first
+     */
+    public List<Integer> sealedFiles() {
+        LogFile current = active;
+        List<Integer> ids = new ArrayList<>();
+        for (int id : files.keySet()) {
+            if (current == null || id != current.id) {
+                ids.add(id);
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    /**
+     * Bytes appended since the log was opened, records relocated by garbage collection included
+     */
+    public long appendedBytes() {
+        return appendedBytes;
+    }
+
+    /**
+     * @return size of the file, or 0 if it is gone
+     */
+    public long fileSize(int id) {
+        LogFile file = files.get(id);
+        return file == null ? 0 : file.size;
+    }
+
+    /**
+     * Visits the records of a sealed file in order, stopping at a torn record at its end. Values
+     * are not read, the visitor can read the ones it needs through their pointers.
+     */
+    public void scan(int id, RecordVisitor visitor) throws IOException {
+        LogFile file = files.get(id);
+        if (file == null || !file.acquire()) {
+            return;
+        }
+        try {
+            byte[] lengths = new byte[HEADER_SIZE];
+            long position = 0;
+            while (position + HEADER_SIZE <= file.size) {
+                file.read(position, lengths, HEADER_SIZE);
+                ByteBuffer header = ByteBuffer.wrap(lengths);
+                int keyLength = header.getInt();
+                int valueLength = header.getInt();
+                long end = position + HEADER_SIZE + keyLength + valueLength;
+                if (keyLength < 0 || valueLength < 0 || end > file.size) {
+                    return;
+                }
+                byte[] key = new byte[keyLength];
+                file.read(position + HEADER_SIZE, key, keyLength);
+                visitor.visit(key, new ValuePointer(id, position + HEADER_SIZE + keyLength, valueLength));
+                position = end;
+            }
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Drops a sealed file whose values have all been relocated or are dead, it is deleted once no
+     * pin holds it
+     */
+    public void retire(int id) {
+        LogFile file = files.remove(id);
+        if (file != null) {
+            retired.add(id);
+            file.release();
+        }
+    }
+
+    /**
+     * Forces the appended records to stable storage
+     */
+    @Override
+    public void flush() throws IOException {
+        LogFile file = active;
+        // A file replaced since was forced when it was
+        file.channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            for (LogFile file : files.values()) {
+                if (file == active) {
+                    file.channel.force(false);
+                }
+                file.channel.close();
+            }
+            files.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new file for appends, caller holds the lock or is opening the log
+     */
+    private void roll() throws IOException {
+        int id = nextId++;
+        LogFile file = new LogFile(id, path(dir, id));
+        files.put(id, file);
+        active = file;
+    }
+
+    private byte[] missing(int id) {
+        if (retired.contains(id)) {
+            return null;
+        }
+        throw new UncheckedIOException(new IOException("Value log file " + id + " is missing"));
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(byte[] key, ValuePointer pointer) throws IOException;
+    }
+
+    /**
+     * Files held readable for a scan, see {@link #pin()}
+     */
+    public static final class Pin implements AutoCloseable {
+        private final Map<Integer, LogFile> files;
+
+        private Pin(Map<Integer, LogFile> files) {
+            this.files = files;
+        }
+
+        /**
+         * Reads the value into the buffer, which must hold {@link ValuePointer#length()} bytes
+         */
+        public void read(ValuePointer pointer, byte[] buffer) {
+            read(pointer.fileId(), pointer.offset(), pointer.length(), buffer);
+        }
+
+        /**
+         * Like {@link #read(ValuePointer, byte[])} with the pointer taken apart, see
+         * {@link ValuePointer#fileId(byte[], int)}
+         */
+        public void read(int fileId, long offset, int length, byte[] buffer) {
+            LogFile file = files.get(fileId);
+            if (file == null) {
+                throw new UncheckedIOException(new IOException("Value log file " + fileId + " is missing"));
+            }
+            file.read(offset, buffer, length);
+        }
+
+        @Override
+        public void close() {
+            for (LogFile file : files.values()) {
+                file.release();
+            }
+            files.clear();
+        }
+    }
+
+    private static final class LogFile {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        // The log holds one reference until the file is retired, readers one each while they read
+        private final AtomicInteger references = new AtomicInteger(1);
+        // Only grows while the file is active, appends are under the log's lock
+        private volatile long size;
+
+        LogFile(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = channel.size();
+            channel.position(size);
+        }
+
+        boolean acquire() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // A file left behind holds no live values, the next collection retires it again
+            }
+        }
+
+        void read(long position, byte[] buffer, int length) {
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+            try {
+                while (target.hasRemaining()) {
+                    if (channel.read(target, position + target.position()) < 0) {
+                        throw new EOFException("Value log file " + id + " ends before " + (position + length));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
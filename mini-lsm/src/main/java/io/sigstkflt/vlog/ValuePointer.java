@@ -0,0 +1,69 @@
+package io.sigstkflt.vlog;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Location of a value in a {@link ValueLog}, stored in the memtables and tables in place of the value
+ *
+ * @param fileId value log file holding the value
+ * @param offset position of the first value byte in the file
+ * @param length value length
+ */
+public record ValuePointer(int fileId, long offset, int length) {
+    /**
+     * Tag byte, file id, offset and length
+     */
+    public static final int ENCODED_SIZE = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    // Big endian like the ByteBuffer that encodes the pointer
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * The stored form of the pointer, tagged as {@link ValueLog#POINTER}
+     */
+    public byte[] encode() {
+        return ByteBuffer.allocate(ENCODED_SIZE)
+                .put(ValueLog.POINTER)
+                .putInt(fileId)
+                .putLong(offset)
+                .putInt(length)
+                .array();
+    }
+
+    /**
+     * @param offset position of the tag byte
+     */
+    public static ValuePointer decode(byte[] stored, int offset) {
+        if (stored[offset] != ValueLog.POINTER) {
+            throw new IllegalArgumentException("Not a value pointer");
+        }
+        return new ValuePointer(fileId(stored, offset), offset(stored, offset), length(stored, offset));
+    }
+
+    /**
+     * Reads the file id of a stored pointer in place, for scans that must not allocate
+     *
+     * @param offset position of the tag byte
+     */
+    public static int fileId(byte[] stored, int offset) {
+        return (int) INT.get(stored, offset + 1);
+    }
+
+    /**
+     * Like {@link #fileId(byte[], int)} for the position of the value in the file
+     */
+    public static long offset(byte[] stored, int offset) {
+        return (long) LONG.get(stored, offset + 1 + Integer.BYTES);
+    }
+
+    /**
+     * Like {@link #fileId(byte[], int)} for the value length
+     */
+    public static int length(byte[] stored, int offset) {
+        return (int) INT.get(stored, offset + 1 + Integer.BYTES + Long.BYTES);
+    }
+}
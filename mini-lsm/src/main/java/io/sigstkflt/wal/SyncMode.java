@@ -0,0 +1,21 @@
+package io.sigstkflt.wal;
+
+/**
+ * When a {@link WriteAheadLog} forces appended records to stable storage
+ */
+public enum SyncMode {
+    /**
+     * Every append is written and forced before it returns
+     */
+    PER_WRITE,
+    /**
+     * Concurrent appends are batched into a single write and force, an append returns once
+     * the batch containing it is durable
+     */
+    GROUP,
+    /**
+     * Appends are written to the file immediately and forced on a fixed interval, a crash can
+     * lose the writes of the last interval
+     */
+    PERIODIC
+}
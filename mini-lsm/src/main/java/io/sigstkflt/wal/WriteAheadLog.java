@@ -0,0 +1,590 @@
+package io.sigstkflt.wal;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.memtable.WriteBatch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log backing a single memtable, the file is named after the memtable id.
+ *
+ * Record format:
+ * <pre>
+ * | crc32c (int) | key length (int) | value length (int) | sequence (long) | key | value |
+ * </pre>
+ * A value length of -1 records a delete and is followed by no value bytes. A {@link WriteBatch}
+ * is logged as a single record so that replay applies all of it or none of it:
+ * <pre>
+ * | crc32c (int) | -1 (int) | body length (int) | first sequence (long) | count (int) | entries |
+ * </pre>
+ * where every entry is {@code | key length (int) | value length (int) | key | value |} and takes
+ * the next sequence number. The checksum covers everything after it. Replay stops at the first
+ * torn or corrupt record, which can only be the tail of the file since records are never rewritten.
+ *
+ * The asynchronous appends return a future instead of waiting. In group mode the futures queue
+ * up behind the log and a single virtual thread per log leads group commits until every one of
+ * them is durable, so many outstanding appends cost no thread each.
+ *
+ * A log may be given a dependency, such as the value log its records point into, that is flushed
+ * before every force so that no record becomes durable ahead of what it refers to.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    public static final String SUFFIX = ".wal";
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    private static final int BATCH_MARKER = -1;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final SyncMode syncMode;
+    private final ScheduledExecutorService syncer;
+    private final Flushable dependency;
+    private final CRC32C crc = new CRC32C();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appended;
+    private long synced;
+    private boolean committing;
+    private IOException failure;
+    // Asynchronous appends waiting for a group commit, by ascending ticket
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+    private boolean draining;
+
+    public WriteAheadLog(Path dir, int id, SyncMode syncMode) throws IOException {
+        this(dir, id, syncMode, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    public WriteAheadLog(Path dir, int id, SyncMode syncMode, long syncIntervalMillis) throws IOException {
+        this(dir, id, syncMode, syncIntervalMillis, null);
+    }
+
+    /**
+     * @param dependency flushed before the log is forced, or null
+     */
+    public WriteAheadLog(Path dir, int id, SyncMode syncMode, long syncIntervalMillis, Flushable dependency)
+            throws IOException {
+        this(dir, id, syncMode, syncIntervalMillis, dependency, FileChannel.open(path(dir, id),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    /**
+     * @param channel opened for appending to the log's path, used by tests to inject failures
+     */
+    WriteAheadLog(Path dir, int id, SyncMode syncMode, long syncIntervalMillis, Flushable dependency,
+                  FileChannel channel) {
+        this.id = id;
+        this.dependency = dependency;
+        this.path = path(dir, id);
+        this.syncMode = syncMode;
+        this.channel = channel;
+        if (syncMode == SyncMode.PERIODIC) {
+            syncer = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("wal-sync-" + id).factory());
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    public static Path path(Path dir, int id) {
+        return dir.resolve(id + SUFFIX);
+    }
+
+    /**
+     * Rebuilds the memtable with the given id from its log
+     */
+    public static SkipListMemtable replay(Path dir, int id) throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(id);
+        replay(path(dir, id), memtable);
+        return memtable;
+    }
+
+    /**
+     * Applies every intact record of the log file to the target memtable at its logged sequence
+     * number. Lengths are checked against the bytes left in the file before anything is allocated,
+     * a torn header cannot ask for more memory than the file holds.
+     *
+     * @return number of writes applied, a batch counts once per entry
+     */
+    public static long replay(Path file, SkipListMemtable target) throws IOException {
+        long records = 0;
+        long remaining = Files.size(file);
+        CRC32C checksum = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int expected;
+                long sequence;
+                byte[] key;
+                byte[] value;
+                try {
+                    expected = in.readInt();
+                    int keyLength = in.readInt();
+                    int valueLength = in.readInt();
+                    sequence = in.readLong();
+                    remaining -= HEADER_SIZE;
+                    if (keyLength == BATCH_MARKER && valueLength >= Integer.BYTES) {
+                        if (valueLength > remaining) {
+                            break;
+                        }
+                        remaining -= valueLength;
+                        byte[] body = new byte[valueLength];
+                        in.readFully(body);
+                        WriteBatch batch = decodeBatch(checksum, expected, sequence, body);
+                        if (batch == null) {
+                            break;
+                        }
+                        target.write(batch, sequence);
+                        records += batch.count();
+                        continue;
+                    }
+                    if (keyLength < 0 || valueLength < -1 || (long) keyLength + Math.max(valueLength, 0) > remaining) {
+                        break;
+                    }
+                    remaining -= keyLength + Math.max(valueLength, 0);
+                    key = new byte[keyLength];
+                    value = valueLength == -1 ? KeyValuePair.TOMBSTONE : new byte[valueLength];
+                    in.readFully(key);
+                    in.readFully(value);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (checksum(checksum, key, value, sequence) != expected) {
+                    break;
+                }
+                target.put(key, value, sequence);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Appends a record without a sequence number, see {@link #append(byte[], byte[], long)}
+     */
+    public void append(byte[] key, byte[] value) throws IOException {
+        append(key, value, 0);
+    }
+
+    /**
+     * Appends a record and returns once it is as durable as the sync mode promises. Passing
+     * {@link KeyValuePair#TOMBSTONE} as the value records a delete.
+     */
+    public void append(byte[] key, byte[] value, long sequence) throws IOException {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(key, value, sequence);
+            commit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the batch as one record, its entries take consecutive sequence numbers from
+     * firstSequence on
+     */
+    public void append(WriteBatch batch, long firstSequence) throws IOException {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(batch, firstSequence);
+            commit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #append(byte[], byte[], long)} but returns once the record is queued, the future
+     * completes when it is as durable as the sync mode promises and fails if the log does
+     */
+    public CompletableFuture<Void> appendAsync(byte[] key, byte[] value, long sequence) {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(key, value, sequence);
+            return commitAsync();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #append(WriteBatch, long)} but returns once the record is queued, see
+     * {@link #appendAsync(byte[], byte[], long)}
+     */
+    public CompletableFuture<Void> appendAsync(WriteBatch batch, long firstSequence) {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(batch, firstSequence);
+            return commitAsync();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces everything written so far to stable storage
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            if (syncMode == SyncMode.GROUP) {
+                awaitGroupCommit(appended);
+                return;
+            }
+            writeFully(pending);
+        } finally {
+            lock.unlock();
+        }
+        force();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        lock.lock();
+        try {
+            while (committing) {
+                committed.awaitUninterruptibly();
+            }
+            if (channel.isOpen()) {
+                writeFully(pending);
+                force();
+                channel.close();
+                synced = appended;
+                committed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the log and removes its file, used once the memtable has been flushed
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write ahead log " + id + " failed earlier", failure);
+        }
+    }
+
+    /**
+     * Makes the record just encoded as durable as the sync mode promises, caller holds the lock
+     */
+    private void commit() throws IOException {
+        long ticket = ++appended;
+        switch (syncMode) {
+            case PER_WRITE -> {
+                writeFully(pending);
+                force();
+                synced = ticket;
+            }
+            case PERIODIC -> writeFully(pending);
+            case GROUP -> awaitGroupCommit(ticket);
+        }
+    }
+
+    /**
+     * Like {@link #commit()} but hands group commits to the draining thread instead of waiting,
+     * caller holds the lock
+     */
+    private CompletableFuture<Void> commitAsync() throws IOException {
+        if (syncMode != SyncMode.GROUP) {
+            commit();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(++appended, future));
+        if (!draining) {
+            draining = true;
+            Thread.ofVirtual().name("wal-commit-" + id).start(this::drainWaiters);
+        }
+        return future;
+    }
+
+    /**
+     * The first waiter that finds no commit in flight becomes the leader. It takes every record
+     * queued so far, writes and forces them without holding the lock so that other writers keep
+     * queueing behind it, then wakes everyone covered by the batch.
+     */
+    private void awaitGroupCommit(long ticket) throws IOException {
+        while (synced < ticket) {
+            if (failure != null) {
+                throw new IOException("Write ahead log " + id + " failed", failure);
+            }
+            if (committing) {
+                committed.awaitUninterruptibly();
+                continue;
+            }
+            commitGroup();
+        }
+    }
+
+    /**
+     * Leads group commits until no asynchronous append is left waiting, completing the futures
+     * outside the lock so that their callbacks never run under it
+     */
+    private void drainWaiters() {
+        while (true) {
+            List<Waiter> done = new ArrayList<>();
+            IOException error = null;
+            lock.lock();
+            try {
+                while (!waiters.isEmpty() && waiters.peek().ticket() <= synced) {
+                    done.add(waiters.poll());
+                }
+                if (done.isEmpty()) {
+                    if (waiters.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    if (failure != null) {
+                        done.addAll(waiters);
+                        waiters.clear();
+                        error = new IOException("Write ahead log " + id + " failed", failure);
+                    } else if (committing) {
+                        committed.awaitUninterruptibly();
+                    } else {
+                        commitGroup();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Waiter waiter : done) {
+                if (error == null) {
+                    waiter.future().complete(null);
+                } else {
+                    waiter.future().completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes and forces every record queued so far as one batch, caller holds the lock and no
+     * commit is in flight
+     */
+    private void commitGroup() {
+        committing = true;
+        ByteBuffer batch = pending;
+        pending = spare;
+        long batchEnd = appended;
+        IOException error = null;
+        lock.unlock();
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            force();
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+
+        batch.clear();
+        spare = batch;
+        committing = false;
+        if (error != null) {
+            failure = error;
+        } else {
+            synced = batchEnd;
+        }
+        committed.signalAll();
+    }
+
+    private void encode(byte[] key, byte[] value, long sequence) {
+        ensureCapacity(HEADER_SIZE + key.length + value.length);
+
+        pending.putInt(checksum(crc, key, value, sequence));
+        pending.putInt(key.length);
+        pending.putInt(valueLength(value));
+        pending.putLong(sequence);
+        pending.put(key);
+        pending.put(value);
+    }
+
+    private void encode(WriteBatch batch, long firstSequence) {
+        int bodyLength = Integer.BYTES;
+        for (int i = 0; i < batch.count(); i++) {
+            bodyLength += 2 * Integer.BYTES + batch.key(i).length + batch.value(i).length;
+        }
+        ensureCapacity(HEADER_SIZE + bodyLength);
+
+        int start = pending.position();
+        // The checksum is patched in once the rest of the record is in the buffer
+        pending.putInt(0);
+        pending.putInt(BATCH_MARKER);
+        pending.putInt(bodyLength);
+        pending.putLong(firstSequence);
+        pending.putInt(batch.count());
+        for (int i = 0; i < batch.count(); i++) {
+            byte[] key = batch.key(i);
+            byte[] value = batch.value(i);
+            pending.putInt(key.length);
+            pending.putInt(valueLength(value));
+            pending.put(key);
+            pending.put(value);
+        }
+        crc.reset();
+        crc.update(pending.array(), start + Integer.BYTES, pending.position() - start - Integer.BYTES);
+        pending.putInt(start, (int) crc.getValue());
+    }
+
+    /**
+     * @return the batch, or null if the record is corrupt
+     */
+    private static WriteBatch decodeBatch(CRC32C checksum, int expected, long firstSequence, byte[] body) {
+        checksum.reset();
+        updateInt(checksum, BATCH_MARKER);
+        updateInt(checksum, body.length);
+        updateInt(checksum, (int) (firstSequence >>> 32));
+        updateInt(checksum, (int) firstSequence);
+        checksum.update(body);
+        if ((int) checksum.getValue() != expected) {
+            return null;
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(body);
+        int count = in.getInt();
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[in.getInt()];
+            int valueLength = in.getInt();
+            in.get(key);
+            if (valueLength == -1) {
+                batch.delete(key);
+            } else {
+                byte[] value = new byte[valueLength];
+                in.get(value);
+                batch.put(key, value);
+            }
+        }
+        return batch;
+    }
+
+    private void ensureCapacity(int size) {
+        if (pending.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private void force() throws IOException {
+        if (dependency != null) {
+            dependency.flush();
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Writes the buffer out and empties it, caller holds the lock. A failed write leaves an unknown
+     * part of the records in the file, so the log refuses every later append.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            force();
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static int checksum(CRC32C checksum, byte[] key, byte[] value, long sequence) {
+        checksum.reset();
+        updateInt(checksum, key.length);
+        updateInt(checksum, valueLength(value));
+        updateInt(checksum, (int) (sequence >>> 32));
+        updateInt(checksum, (int) sequence);
+        checksum.update(key);
+        checksum.update(value);
+        return (int) checksum.getValue();
+    }
+
+    private static int valueLength(byte[] value) {
+        return value == KeyValuePair.TOMBSTONE ? -1 : value.length;
+    }
+
+    private static void updateInt(CRC32C checksum, int value) {
+        checksum.update(value >>> 24);
+        checksum.update(value >>> 16);
+        checksum.update(value >>> 8);
+        checksum.update(value);
+    }
+
+    private record Waiter(long ticket, CompletableFuture<Void> future) {
+    }
+}
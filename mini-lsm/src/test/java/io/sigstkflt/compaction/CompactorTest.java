@@ -0,0 +1,245 @@
+package io.sigstkflt.compaction;
+
+import io.sigstkflt.iterator.ConcatIterator;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.sstable.BlockCodecs;
+import io.sigstkflt.sstable.SsTableBuilder;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.util.RateLimiter;
+import io.sigstkflt.version.Version;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactorTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger ids = new AtomicInteger(100);
+    private final List<SsTableReader> opened = new ArrayList<>();
+    private Compactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        compactor = new Compactor(dir, ids::getAndIncrement, 256, 10, level -> BlockCodecs.NONE, 2 * 1024, 2, 4,
+                RateLimiter.unlimited(), null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        compactor.close();
+        for (SsTableReader table : opened) {
+            table.close();
+        }
+    }
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    private SsTableReader table(int id, SkipListMemtable memtable) throws IOException {
+        SsTableBuilder.write(SsTableFormat.path(dir, id), memtable.iterator(), 256);
+        SsTableReader table = SsTableReader.open(SsTableFormat.path(dir, id), id);
+        opened.add(table);
+        return table;
+    }
+
+    /**
+     * Every key in [from, to) with a value tagged by the round
+     */
+    private SsTableReader table(int id, int from, int to, String round) throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(id);
+        for (int i = from; i < to; i++) {
+            memtable.put(toBytes(key(i)), toBytes(round + i));
+        }
+        return table(id, memtable);
+    }
+
+    private List<KeyValuePair> drain(List<SsTableReader> tables) {
+        List<KeyValuePair> pairs = new ArrayList<>();
+        MemtableIterator iterator = new ConcatIterator(tables, null, null);
+        while (iterator.hasNext()) {
+            pairs.add(iterator.next());
+        }
+        return pairs;
+    }
+
+    // ==================== Merge Tests ====================
+
+    @Test
+    @DisplayName("compact should merge overlapping inputs keeping the newest value")
+    void testMergeNewestWins() throws IOException {
+        SsTableReader newer = table(1, 50, 150, "new");
+        SsTableReader older = table(2, 0, 100, "old");
+        CompactionTask task = new CompactionTask(List.of(new CompactionTask.Input(0, List.of(newer, older))), 1, true);
+
+        List<SsTableReader> outputs = compactor.compact(task);
+        opened.addAll(outputs);
+
+        List<KeyValuePair> pairs = drain(outputs);
+        assertEquals(150, pairs.size());
+        assertArrayEquals(toBytes("old49"), pairs.get(49).data());
+        assertArrayEquals(toBytes("new50"), pairs.get(50).data());
+        assertArrayEquals(toBytes("new149"), pairs.get(149).data());
+    }
+
+    @Test
+    @DisplayName("outputs should be split by size, sorted and never overlap")
+    void testOutputsAreSortedRun() throws IOException {
+        List<SsTableReader> lower = List.of(table(1, 0, 300, "a"), table(2, 300, 600, "a"), table(3, 600, 900, "a"));
+        SsTableReader upper = table(4, 0, 900, "b");
+        CompactionTask task = new CompactionTask(
+                List.of(new CompactionTask.Input(1, List.of(upper)), new CompactionTask.Input(2, lower)), 2, true);
+
+        List<SsTableReader> outputs = compactor.compact(task);
+        opened.addAll(outputs);
+
+        assertTrue(outputs.size() > 3);
+        for (int i = 1; i < outputs.size(); i++) {
+            assertTrue(Arrays.compareUnsigned(outputs.get(i - 1).lastKey(), outputs.get(i).firstKey()) < 0);
+        }
+        List<KeyValuePair> pairs = drain(outputs);
+        assertEquals(900, pairs.size());
+        for (int i = 0; i < 900; i++) {
+            assertArrayEquals(toBytes(key(i)), pairs.get(i).keyWrapper().getValue());
+            assertArrayEquals(toBytes("b" + i), pairs.get(i).data());
+        }
+    }
+
+    @Test
+    @DisplayName("outputs should be compressed with the codec of the output level")
+    void testCompressionPerLevel() throws IOException {
+        compactor.close();
+        compactor = new Compactor(dir, ids::getAndIncrement, 256, 10,
+                level -> level >= 2 ? BlockCodecs.DEFLATE : BlockCodecs.NONE, 2 * 1024, 2, 4, RateLimiter.unlimited(),
+                null);
+        List<SsTableReader> inputs = List.of(table(1, 0, 900, "value-"));
+
+        List<SsTableReader> plain = compactor.compact(new CompactionTask(List.of(new CompactionTask.Input(0, inputs)), 1, true));
+        opened.addAll(plain);
+        List<SsTableReader> compressed = compactor.compact(new CompactionTask(List.of(new CompactionTask.Input(1, inputs)), 2, true));
+        opened.addAll(compressed);
+
+        long plainSize = 0;
+        long compressedSize = 0;
+        for (SsTableReader table : plain) {
+            plainSize += table.fileSize();
+        }
+        for (SsTableReader table : compressed) {
+            compressedSize += table.fileSize();
+        }
+        assertTrue(compressedSize < plainSize, compressedSize + " >= " + plainSize);
+        List<KeyValuePair> pairs = drain(compressed);
+        assertEquals(900, pairs.size());
+        for (int i = 0; i < 900; i++) {
+            assertArrayEquals(toBytes("value-" + i), pairs.get(i).data());
+        }
+    }
+
+    @Test
+    @DisplayName("tombstones should be kept unless the output is the bottommost level")
+    void testTombstones() throws IOException {
+        SkipListMemtable deletes = new SkipListMemtable(1);
+        deletes.delete(toBytes(key(1)));
+        SsTableReader newer = table(1, deletes);
+        SsTableReader older = table(2, 0, 3, "v");
+
+        List<SsTableReader> kept = compactor.compact(new CompactionTask(
+                List.of(new CompactionTask.Input(0, List.of(newer, older))), 1, false));
+        opened.addAll(kept);
+        List<SsTableReader> dropped = compactor.compact(new CompactionTask(
+                List.of(new CompactionTask.Input(0, List.of(newer, older))), 1, true));
+        opened.addAll(dropped);
+
+        assertEquals(3, drain(kept).size());
+        assertTrue(drain(kept).get(1).isTombstone());
+        assertEquals(2, drain(dropped).size());
+    }
+
+    // ==================== Picker Tests ====================
+
+    @Test
+    @DisplayName("leveled picker should merge level 0 with the overlapping level 1 tables")
+    void testLeveledPickLevel0() throws IOException {
+        SsTableReader l1a = table(1, 0, 100, "a");
+        SsTableReader l1b = table(2, 200, 300, "a");
+        SsTableReader l1c = table(3, 400, 500, "a");
+        SsTableReader l0a = table(4, 150, 250, "b");
+        SsTableReader l0b = table(5, 180, 220, "b");
+        Version version = new Version(List.of(l0b, l0a), List.of(List.of(l1a, l1b, l1c), List.of()));
+        LeveledCompactionPicker picker = new LeveledCompactionPicker(2, 2, 1L << 30, 10);
+
+        CompactionTask task = picker.pick(version);
+
+        assertEquals(1, task.outputLevel());
+        assertEquals(List.of(l0b, l0a, l1b), task.inputTables());
+        assertTrue(task.bottommost());
+
+        SsTableReader output = table(6, 150, 300, "c");
+        Version next = picker.apply(version, task, List.of(output));
+        assertEquals(List.of(), next.l0Tables());
+        assertEquals(List.of(l1a, output, l1c), next.tables(1));
+    }
+
+    @Test
+    @DisplayName("leveled picker should push a table down from a level over its target size")
+    void testLeveledPickBySize() throws IOException {
+        SsTableReader l1a = table(1, 0, 100, "a");
+        SsTableReader l1b = table(2, 100, 200, "a");
+        SsTableReader l2 = table(3, 50, 150, "a");
+        Version version = new Version(List.of(), List.of(List.of(l1a, l1b), List.of(l2), List.of()));
+        LeveledCompactionPicker picker = new LeveledCompactionPicker(3, 4, 1, 10);
+
+        CompactionTask first = picker.pick(version);
+        CompactionTask second = picker.pick(version);
+
+        assertEquals(2, first.outputLevel());
+        assertEquals(List.of(l1a, l2), first.inputTables());
+        assertEquals(List.of(l1b, l2), second.inputTables());
+        assertTrue(first.bottommost());
+    }
+
+    @Test
+    @DisplayName("tiered picker should stack new runs and merge them once there are too many")
+    void testTieredPick() throws IOException {
+        SsTableReader l0a = table(1, 0, 10, "a");
+        SsTableReader l0b = table(2, 0, 10, "b");
+        SsTableReader run = table(3, 0, 10, "c");
+        TieredCompactionPicker picker = new TieredCompactionPicker(2, 2);
+        Version version = new Version(List.of(l0b, l0a), List.of(List.of(run)));
+
+        CompactionTask flush = picker.pick(version);
+        assertEquals(List.of(l0b, l0a), flush.inputTables());
+        assertFalse(flush.bottommost());
+
+        SsTableReader merged = table(4, 0, 10, "d");
+        Version stacked = picker.apply(version, flush, List.of(merged));
+        assertEquals(List.of(List.of(merged), List.of(run)), stacked.levels());
+        assertNull(picker.pick(stacked));
+
+        Version crowded = new Version(List.of(), List.of(List.of(merged), List.of(run), List.of(l0a)));
+        CompactionTask full = picker.pick(crowded);
+        assertTrue(full.bottommost());
+        assertEquals(List.of(List.of(l0b)), picker.apply(crowded, full, List.of(l0b)).levels());
+    }
+}
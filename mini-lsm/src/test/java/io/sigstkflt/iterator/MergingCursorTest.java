@@ -0,0 +1,135 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.mvcc.Sequencer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergingCursorTest {
+
+    // Shared like the memtables of one storage, sources written later get higher sequence numbers
+    private final Sequencer sequencer = new Sequencer();
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Cursor cursor(String... keyValues) {
+        SkipListMemtable memtable = new SkipListMemtable(0, null, sequencer);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (keyValues[i + 1] == null) {
+                memtable.delete(toBytes(keyValues[i]));
+            } else {
+                memtable.put(toBytes(keyValues[i]), toBytes(keyValues[i + 1]));
+            }
+        }
+        return memtable.cursor();
+    }
+
+    private List<String> collect(Cursor cursor) {
+        List<String> entries = new ArrayList<>();
+        for (; cursor.isValid(); cursor.next()) {
+            String key = new String(cursor.key().toArray(), StandardCharsets.UTF_8);
+            entries.add(cursor.isTombstone() ? key + "=x" : key + "=" + new String(cursor.value().toArray(), StandardCharsets.UTF_8));
+        }
+        return entries;
+    }
+
+    @Test
+    @DisplayName("newest source should win for duplicate keys")
+    void testNewestWins() {
+        Cursor oldest = cursor("b", "oldest", "c", "old");
+        Cursor older = cursor("a", "old", "b", "older");
+        Cursor newest = cursor("b", "new", "d", "4");
+        MergingCursor cursor = new MergingCursor(List.of(newest, older, oldest), false);
+
+        assertEquals(List.of("a=old", "b=new", "c=old", "d=4"), collect(cursor));
+        assertThrows(NoSuchElementException.class, cursor::next);
+    }
+
+    @Test
+    @DisplayName("tombstones should hide older versions unless they are kept")
+    void testTombstones() {
+        SkipListMemtable memtable = new SkipListMemtable(0, null, sequencer);
+        memtable.put(toBytes("a"), toBytes("1"));
+        memtable.put(toBytes("b"), toBytes("2"));
+        memtable.put(toBytes("c"), toBytes("3"));
+        memtable.delete(toBytes("b"));
+
+        assertEquals(List.of("a=1", "c=3"), collect(new MergingCursor(List.of(memtable.cursor()), false)));
+        assertEquals(List.of("a=1", "b=x", "c=3"), collect(new MergingCursor(List.of(memtable.cursor()), true)));
+    }
+
+    @Test
+    @DisplayName("versions written after the read sequence should be skipped")
+    void testReadSequence() {
+        SkipListMemtable memtable = new SkipListMemtable(0, null, sequencer);
+        memtable.put(toBytes("a"), toBytes("1"));
+        memtable.put(toBytes("b"), toBytes("2"));
+        long sequence = sequencer.visible();
+        memtable.put(toBytes("a"), toBytes("3"));
+        memtable.delete(toBytes("b"));
+        memtable.put(toBytes("c"), toBytes("4"));
+
+        assertEquals(List.of("a=1", "b=2"), collect(new MergingCursor(List.of(memtable.cursor()), sequence, false)));
+        assertEquals(List.of("a=3", "c=4"), collect(new MergingCursor(List.of(memtable.cursor()), false)));
+    }
+
+    @Test
+    @DisplayName("allVersions should visit every version newest first")
+    void testAllVersions() {
+        Cursor older = cursor("a", "1", "b", "2");
+        Cursor newer = cursor("a", "3", "b", null);
+
+        assertEquals(List.of("a=3", "a=1", "b=x", "b=2"),
+                collect(MergingCursor.allVersions(List.of(newer, older))));
+    }
+
+    @Test
+    @DisplayName("garbage collection should keep the newest version per snapshot stripe")
+    void testGarbageCollection() {
+        SkipListMemtable memtable = new SkipListMemtable(0, null, sequencer);
+        memtable.put(toBytes("a"), toBytes("1"));
+        memtable.put(toBytes("b"), toBytes("1"));
+        memtable.put(toBytes("a"), toBytes("2"));
+        long snapshot = sequencer.visible();
+        memtable.put(toBytes("a"), toBytes("3"));
+        memtable.delete(toBytes("b"));
+        memtable.put(toBytes("a"), toBytes("4"));
+
+        assertEquals(List.of("a=4", "b=x"),
+                collect(new GarbageCollectingCursor(memtable.cursor(), new long[0], false)));
+        assertEquals(List.of("a=4"),
+                collect(new GarbageCollectingCursor(memtable.cursor(), new long[0], true)));
+        assertEquals(List.of("a=4", "a=2", "b=x", "b=1"),
+                collect(new GarbageCollectingCursor(memtable.cursor(), new long[]{snapshot}, true)));
+    }
+
+    @Test
+    @DisplayName("seek should reposition every source")
+    void testSeek() {
+        MergingCursor cursor = new MergingCursor(List.of(
+                cursor("a", "1", "d", "4"),
+                cursor("b", "2", "e", "5")), false);
+
+        cursor.seek(toBytes("c"));
+        assertEquals(List.of("d=4", "e=5"), collect(cursor));
+        cursor.seek(toBytes("a"));
+        assertEquals(List.of("a=1", "b=2", "d=4", "e=5"), collect(cursor));
+    }
+
+    @Test
+    @DisplayName("no sources should give an invalid cursor")
+    void testEmpty() {
+        assertFalse(new MergingCursor(List.of(), false).isValid());
+        assertFalse(new MergingCursor(List.of(cursor(), cursor("a", null)), false).isValid());
+    }
+}
@@ -0,0 +1,96 @@
+package io.sigstkflt.iterator;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.SkipListMemtable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergingIteratorTest {
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SkipListMemtable memtable(String... keyValues) {
+        SkipListMemtable memtable = new SkipListMemtable(0);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (keyValues[i + 1] == null) {
+                memtable.delete(toBytes(keyValues[i]));
+            } else {
+                memtable.put(toBytes(keyValues[i]), toBytes(keyValues[i + 1]));
+            }
+        }
+        return memtable;
+    }
+
+    private List<String> collect(MemtableIterator iterator) {
+        List<String> entries = new ArrayList<>();
+        while (iterator.hasNext()) {
+            KeyValuePair pair = iterator.next();
+            String key = new String(pair.keyWrapper().getValue(), StandardCharsets.UTF_8);
+            entries.add(pair.isTombstone() ? key + "=x" : key + "=" + new String(pair.data(), StandardCharsets.UTF_8));
+        }
+        return entries;
+    }
+
+    @Test
+    @DisplayName("should interleave disjoint sources in key order")
+    void testDisjointSources() {
+        MergingIterator iterator = new MergingIterator(List.of(
+                memtable("a", "1", "d", "4").iterator(),
+                memtable("b", "2", "e", "5").iterator(),
+                memtable("c", "3").iterator()));
+
+        assertEquals(List.of("a=1", "b=2", "c=3", "d=4", "e=5"), collect(iterator));
+    }
+
+    @Test
+    @DisplayName("newest source should win for duplicate keys")
+    void testNewestWins() {
+        MergingIterator iterator = new MergingIterator(List.of(
+                memtable("b", "new").iterator(),
+                memtable("a", "old", "b", "older").iterator(),
+                memtable("b", "oldest", "c", "old").iterator()));
+
+        assertEquals(List.of("a=old", "b=new", "c=old"), collect(iterator));
+    }
+
+    @Test
+    @DisplayName("tombstones should hide older versions and be dropped")
+    void testTombstonesDropped() {
+        MergingIterator iterator = new MergingIterator(List.of(
+                memtable("b", null, "d", null).iterator(),
+                memtable("a", "1", "b", "2", "c", "3").iterator()));
+
+        assertEquals(List.of("a=1", "c=3"), collect(iterator));
+    }
+
+    @Test
+    @DisplayName("tombstones should be returned when asked to keep them")
+    void testTombstonesKept() {
+        MergingIterator iterator = new MergingIterator(List.of(
+                memtable("b", null).iterator(),
+                memtable("a", "1", "b", "2").iterator()), true);
+
+        assertEquals(List.of("a=1", "b=x"), collect(iterator));
+    }
+
+    @Test
+    @DisplayName("should handle no sources and empty sources")
+    void testEmptySources() {
+        assertFalse(new MergingIterator(List.of()).hasNext());
+
+        MergingIterator iterator = new MergingIterator(List.of(memtable().iterator(), memtable().iterator()));
+
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+}
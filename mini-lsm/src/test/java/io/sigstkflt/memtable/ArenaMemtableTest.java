@@ -0,0 +1,281 @@
+package io.sigstkflt.memtable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArenaMemtableTest {
+
+    private ArenaMemtable memTable;
+
+    @BeforeEach
+    void setUp() {
+        memTable = new ArenaMemtable(1, 1024 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memTable.close();
+    }
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ==================== Basic Operations Tests ====================
+
+    @Test
+    @DisplayName("put and get should store and retrieve a value")
+    void testPutAndGet() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+
+        assertArrayEquals(toBytes("value1"), memTable.get(toBytes("key1")));
+    }
+
+    @Test
+    @DisplayName("get should return null for non-existent key")
+    void testGetNonExistentKey() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+
+        assertNull(memTable.get(toBytes("key0")));
+        assertNull(memTable.get(toBytes("key2")));
+    }
+
+    @Test
+    @DisplayName("put should overwrite existing value")
+    void testPutOverwrite() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        memTable.put(toBytes("key1"), toBytes("longer-value2"));
+
+        assertArrayEquals(toBytes("longer-value2"), memTable.get(toBytes("key1")));
+    }
+
+    @Test
+    @DisplayName("put should copy the caller's arrays into the arena")
+    void testPutCopiesInput() {
+        byte[] key = toBytes("key1");
+        byte[] value = toBytes("value1");
+        memTable.put(key, value);
+        value[0] = 'X';
+
+        assertArrayEquals(toBytes("value1"), memTable.get(toBytes("key1")));
+    }
+
+    @Test
+    @DisplayName("should handle empty key and empty value")
+    void testEmptyKeyAndValue() {
+        memTable.put(new byte[0], toBytes("value"));
+        memTable.put(toBytes("key"), new byte[0]);
+
+        assertArrayEquals(toBytes("value"), memTable.get(new byte[0]));
+        assertArrayEquals(new byte[0], memTable.get(toBytes("key")));
+    }
+
+    @Test
+    @DisplayName("keys should be compared as unsigned bytes")
+    void testUnsignedOrdering() {
+        memTable.put(new byte[]{(byte) 255}, toBytes("high"));
+        memTable.put(new byte[]{1}, toBytes("low"));
+        memTable.put(new byte[]{1, 0}, toBytes("longer"));
+
+        MemtableIterator iterator = memTable.iterator();
+        assertArrayEquals(new byte[]{1}, iterator.next().keyWrapper().getValue());
+        assertArrayEquals(new byte[]{1, 0}, iterator.next().keyWrapper().getValue());
+        assertArrayEquals(new byte[]{(byte) 255}, iterator.next().keyWrapper().getValue());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    @DisplayName("delete should hide the key and record a tombstone")
+    void testDelete() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+
+        memTable.delete(toBytes("key1"));
+
+        assertNull(memTable.get(toBytes("key1")));
+        assertSame(KeyValuePair.TOMBSTONE, memTable.lookup(toBytes("key1")));
+        assertTrue(memTable.iterator().next().isTombstone());
+    }
+
+    // ==================== Buffer Read and Write Tests ====================
+
+    @Test
+    @DisplayName("get into a buffer or segment should copy the value without allocating arrays")
+    void testGetIntoBufferAndSegment() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        ByteBuffer dst = ByteBuffer.allocateDirect(16);
+
+        assertEquals(6, memTable.get(toBytes("key1"), dst));
+        assertEquals(6, dst.position());
+        assertEquals(ByteBuffer.wrap(toBytes("value1")), dst.flip());
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(6);
+            assertEquals(6, memTable.get(toBytes("key1"), segment));
+            assertArrayEquals(toBytes("value1"), segment.toArray(ValueLayout.JAVA_BYTE));
+            assertEquals(6, memTable.get(toBytes("key1"), arena.allocate(2)));
+        }
+        assertEquals(-1, memTable.get(toBytes("key2"), dst));
+    }
+
+    @Test
+    @DisplayName("getView should expose the arena bytes read-only")
+    void testGetView() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        memTable.delete(toBytes("key2"));
+
+        ByteBuffer view = memTable.getView(toBytes("key1"));
+
+        assertTrue(view.isReadOnly());
+        assertEquals(ByteBuffer.wrap(toBytes("value1")), view);
+        assertNull(memTable.getView(toBytes("key2")));
+    }
+
+    @Test
+    @DisplayName("put with buffers and segments should copy into the arena")
+    void testPutBuffersAndSegments() {
+        memTable.put(ByteBuffer.wrap(toBytes("key1")), ByteBuffer.allocateDirect(3).put(toBytes("abc")).flip());
+        memTable.put(MemorySegment.ofArray(toBytes("key2")), MemorySegment.ofArray(toBytes("def")));
+        memTable.put(MemorySegment.ofArray(toBytes("key2")), null);
+
+        assertArrayEquals(toBytes("abc"), memTable.get(toBytes("key1")));
+        assertSame(KeyValuePair.TOMBSTONE, memTable.lookup(toBytes("key2")));
+    }
+
+    // ==================== Approximate Size Tests ====================
+
+    @Test
+    @DisplayName("approximateSize should grow by the bytes allocated for every put")
+    void testApproximateSizeTracksArena() {
+        long empty = memTable.approximateSize();
+        assertTrue(empty > 0);
+
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        long afterPut = memTable.approximateSize();
+        assertTrue(afterPut - empty >= 10);
+
+        memTable.put(toBytes("key1"), toBytes("v2"));
+        assertEquals(afterPut + 2, memTable.approximateSize());
+    }
+
+    @Test
+    @DisplayName("logicalSize should replace the value size on overwrite")
+    void testLogicalSize() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        memTable.put(toBytes("key1"), toBytes("v2"));
+        memTable.delete(toBytes("key2"));
+
+        assertEquals(10, memTable.logicalSize());
+        assertEquals(memTable.retainedSize(), memTable.approximateSize());
+        memTable.delete(toBytes("key1"));
+        assertEquals(8, memTable.logicalSize());
+    }
+
+    @Test
+    @DisplayName("put should fail once the arena is exhausted")
+    void testArenaFull() {
+        try (ArenaMemtable small = new ArenaMemtable(2, 512)) {
+            assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    small.put(toBytes("key" + i), new byte[32]);
+                }
+            });
+            assertTrue(small.approximateSize() <= small.capacity());
+        }
+    }
+
+    // ==================== Iterator Tests ====================
+
+    @Test
+    @DisplayName("iterator should return all entries in sorted order")
+    void testIterator() {
+        for (int i = 99; i >= 0; i--) {
+            memTable.put(toBytes(String.format("key%03d", i)), toBytes("value" + i));
+        }
+
+        MemtableIterator iterator = memTable.iterator();
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(new String(iterator.next().keyWrapper().getValue(), StandardCharsets.UTF_8));
+        }
+
+        assertEquals(100, keys.size());
+        assertEquals("key000", keys.get(0));
+        assertEquals("key099", keys.get(99));
+    }
+
+    @Test
+    @DisplayName("cursor should copy entries into reused slices and stop at the end key")
+    void testCursor() {
+        for (int i = 0; i < 10; i++) {
+            memTable.put(toBytes("key" + i), toBytes("value" + i));
+        }
+        memTable.delete(toBytes("key5"));
+
+        Cursor cursor = memTable.cursor(toBytes("key3"), toBytes("key6"));
+        List<String> entries = new ArrayList<>();
+        for (; cursor.isValid(); cursor.next()) {
+            String value = cursor.isTombstone() ? "x" : new String(cursor.value().toArray(), StandardCharsets.UTF_8);
+            entries.add(new String(cursor.key().toArray(), StandardCharsets.UTF_8) + "=" + value);
+        }
+
+        assertEquals(List.of("key3=value3", "key4=value4", "key5=x", "key6=value6"), entries);
+        cursor.seek(toBytes("key0"));
+        assertArrayEquals(toBytes("key3"), cursor.key().toArray());
+    }
+
+    // ==================== Concurrency Tests ====================
+
+    @Test
+    @DisplayName("concurrent writers and readers should see every committed entry")
+    void testConcurrentPuts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        byte[] key = toBytes("t" + thread + "-" + i);
+                        memTable.put(key, key);
+                        assertArrayEquals(key, memTable.get(key));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int count = 0;
+        MemtableIterator iterator = memTable.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(2000, count);
+    }
+
+    @Test
+    @DisplayName("ArenaMemtable should implement Memtable interface")
+    void testImplementsMemtable() {
+        assertTrue(memTable instanceof Memtable);
+        assertEquals(1, memTable.getId());
+    }
+}
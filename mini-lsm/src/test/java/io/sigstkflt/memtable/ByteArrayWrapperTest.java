@@ -0,0 +1,91 @@
+package io.sigstkflt.memtable;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteArrayWrapperTest {
+
+    /**
+     * Keys that tie on the cached prefix in every possible way: shorter than it, zero padded,
+     * sharing it and differing only after it, and bytes above 0x7F
+     */
+    private List<byte[]> keys() {
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(new byte[0]);
+        keys.add(new byte[]{0});
+        keys.add(new byte[]{0, 0});
+        keys.add(new byte[8]);
+        keys.add(new byte[9]);
+        keys.add(new byte[]{'a'});
+        keys.add(new byte[]{'a', 0});
+        keys.add(new byte[]{(byte) 0xFF});
+        keys.add(new byte[]{(byte) 0x80, 1, 2, 3, 4, 5, 6, 7, 8});
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            byte[] key = new byte[random.nextInt(20)];
+            random.nextBytes(key);
+            // Most keys share their first bytes, as the keys of a real table tend to
+            for (int j = 0; j < Math.min(key.length, random.nextInt(12)); j++) {
+                key[j] = (byte) ('p' + (j & 1));
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    // ==================== Comparison Tests ====================
+
+    @Test
+    @DisplayName("compareTo should agree with an unsigned comparison of the whole keys")
+    void testCompareTo() {
+        List<byte[]> keys = keys();
+        for (byte[] a : keys) {
+            for (byte[] b : keys) {
+                int expected = Integer.signum(Arrays.compareUnsigned(a, b));
+                int actual = Integer.signum(new ByteArrayWrapper(a).compareTo(new ByteArrayWrapper(b)));
+                assertEquals(expected, actual, Arrays.toString(a) + " vs " + Arrays.toString(b));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("internal keys should order by user key and then newest sequence first")
+    void testInternalKeyOrder() {
+        List<byte[]> keys = keys();
+        for (int i = 1; i < keys.size(); i++) {
+            byte[] a = keys.get(i - 1);
+            byte[] b = keys.get(i);
+            int userOrder = Integer.signum(Arrays.compareUnsigned(a, b));
+            // The older version of the same key sorts last
+            int expected = userOrder != 0 ? userOrder : 1;
+            assertEquals(expected, Integer.signum(new InternalKey(a, 1).compareTo(new InternalKey(b, 9))));
+        }
+        byte[] key = {'k', 'e', 'y', 0, 0, 0, 0, 0, 1};
+        assertTrue(new InternalKey(key, 9).compareTo(new InternalKey(key.clone(), 1)) < 0);
+        assertEquals(0, new InternalKey(key, 5).compareTo(new InternalKey(key.clone(), 5)));
+    }
+
+    // ==================== Equality Tests ====================
+
+    @Test
+    @DisplayName("equal keys should be equal and hash alike, keys tying on the prefix should not be equal")
+    void testEqualsAndHashCode() {
+        ByteArrayWrapper key = new ByteArrayWrapper(new byte[]{'a'});
+        ByteArrayWrapper same = new ByteArrayWrapper(new byte[]{'a'});
+        ByteArrayWrapper padded = new ByteArrayWrapper(new byte[]{'a', 0});
+
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+        assertEquals(Arrays.hashCode(new byte[]{'a'}), key.hashCode());
+        assertNotEquals(key, padded);
+        assertNotEquals(new InternalKey(new byte[]{'a'}, 1), new InternalKey(new byte[]{'a'}, 2));
+        assertEquals(new InternalKey(new byte[]{'a'}, 1), new InternalKey(new byte[]{'a'}, 1));
+    }
+}
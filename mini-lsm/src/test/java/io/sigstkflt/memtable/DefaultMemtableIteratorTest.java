@@ -226,6 +226,130 @@ class DefaultMemtableIteratorTest {
         }
     }
 
+    // ==================== Bound Tests ====================
+
+    @Nested
+    @DisplayName("Range iteration with explicit bounds")
+    class BoundTests {
+
+        @BeforeEach
+        void setUpRangeData() {
+            putEntry("a", "1");
+            putEntry("b", "2");
+            putEntry("c", "3");
+            putEntry("d", "4");
+            putEntry("e", "5");
+        }
+
+        private DefaultMemtableIterator iterator(Bound lower, Bound upper, boolean descending) {
+            return new DefaultMemtableIterator(map, lower, upper, descending);
+        }
+
+        @Test
+        @DisplayName("should honour every combination of included and excluded ends")
+        void testIncludedAndExcluded() {
+            assertEquals(List.of("b", "c", "d"),
+                    collectKeys(iterator(Bound.included(toBytes("b")), Bound.included(toBytes("d")), false)));
+            assertEquals(List.of("c", "d"),
+                    collectKeys(iterator(Bound.excluded(toBytes("b")), Bound.included(toBytes("d")), false)));
+            assertEquals(List.of("b", "c"),
+                    collectKeys(iterator(Bound.included(toBytes("b")), Bound.excluded(toBytes("d")), false)));
+            assertEquals(List.of("c"),
+                    collectKeys(iterator(Bound.excluded(toBytes("b")), Bound.excluded(toBytes("d")), false)));
+            assertEquals(List.of("a", "b", "c"),
+                    collectKeys(iterator(Bound.unbounded(), Bound.included(toBytes("c")), false)));
+            assertEquals(List.of("d", "e"),
+                    collectKeys(iterator(Bound.excluded(toBytes("c")), Bound.unbounded(), false)));
+        }
+
+        @Test
+        @DisplayName("should be empty for inverted or degenerate ranges")
+        void testEmptyRanges() {
+            assertFalse(iterator(Bound.included(toBytes("d")), Bound.included(toBytes("b")), false).hasNext());
+            assertFalse(iterator(Bound.included(toBytes("d")), Bound.included(toBytes("b")), true).hasNext());
+            assertFalse(iterator(Bound.excluded(toBytes("c")), Bound.included(toBytes("c")), false).hasNext());
+            assertEquals(List.of("c"),
+                    collectKeys(iterator(Bound.included(toBytes("c")), Bound.included(toBytes("c")), true)));
+        }
+
+        @Test
+        @DisplayName("should iterate in descending order within the bounds")
+        void testDescending() {
+            assertEquals(List.of("e", "d", "c", "b", "a"),
+                    collectKeys(iterator(Bound.unbounded(), Bound.unbounded(), true)));
+            assertEquals(List.of("c", "b"),
+                    collectKeys(iterator(Bound.excluded(toBytes("a")), Bound.included(toBytes("c")), true)));
+            assertEquals(List.of("d", "c"),
+                    collectKeys(iterator(Bound.included(toBytes("bb")), Bound.excluded(toBytes("e")), true)));
+        }
+
+        @Test
+        @DisplayName("seek should move the iterator forwards and backwards within the range")
+        void testSeekAscending() {
+            DefaultMemtableIterator iterator = iterator(Bound.included(toBytes("b")), Bound.excluded(toBytes("e")), false);
+
+            iterator.seek(toBytes("cc"));
+            assertArrayEquals(toBytes("d"), iterator.next().keyWrapper().getValue());
+
+            iterator.seek(toBytes("c"));
+            assertEquals(List.of("c", "d"), collectKeys(iterator));
+
+            // Keys outside the range clamp to its ends
+            iterator.seek(toBytes("a"));
+            assertEquals(List.of("b", "c", "d"), collectKeys(iterator));
+            iterator.seek(toBytes("e"));
+            assertFalse(iterator.hasNext());
+        }
+
+        @Test
+        @DisplayName("seek on a descending iterator should position at or below the key")
+        void testSeekDescending() {
+            DefaultMemtableIterator iterator = iterator(Bound.excluded(toBytes("a")), Bound.included(toBytes("d")), true);
+
+            iterator.seek(toBytes("cc"));
+            assertEquals(List.of("c", "b"), collectKeys(iterator));
+
+            iterator.seek(toBytes("z"));
+            assertEquals(List.of("d", "c", "b"), collectKeys(iterator));
+            iterator.seek(toBytes("a"));
+            assertFalse(iterator.hasNext());
+        }
+
+        @Test
+        @DisplayName("pages resumed after their last key should cover the range once")
+        void testPagination() {
+            for (int i = 0; i < 50; i++) {
+                putEntry("page" + String.format("%02d", i), "v" + i);
+            }
+
+            List<String> keys = new ArrayList<>();
+            Bound from = Bound.included(toBytes("page"));
+            while (true) {
+                DefaultMemtableIterator page = iterator(from, Bound.excluded(toBytes("pagf")), false);
+                String last = null;
+                for (int i = 0; i < 7 && page.hasNext(); i++) {
+                    last = new String(page.next().keyWrapper().getValue(), StandardCharsets.UTF_8);
+                    keys.add(last);
+                }
+                if (last == null) {
+                    break;
+                }
+                from = Bound.excluded(toBytes(last));
+            }
+
+            assertEquals(50, keys.size());
+            assertEquals("page00", keys.get(0));
+            assertEquals("page49", keys.get(49));
+        }
+
+        @Test
+        @DisplayName("should reject a null key")
+        void testNullKey() {
+            assertThrows(IllegalArgumentException.class, () -> Bound.included(null));
+            assertTrue(Bound.unbounded().isUnbounded());
+        }
+    }
+
     // ==================== KeyValuePair Tests ====================
 
     @Nested
@@ -0,0 +1,26 @@
+package io.sigstkflt.memtable;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeapEstimatesTest {
+
+    // ==================== Layout Tests ====================
+
+    @Test
+    @DisplayName("an internal key should count its cached prefix and hash")
+    void testInternalKeyLayout() {
+        // 12 byte header, 4 byte array reference, 8 byte prefix, 4 byte hash, 8 byte sequence
+        assertEquals(40, HeapEstimates.INTERNAL_KEY);
+    }
+
+    @Test
+    @DisplayName("entry should add up the arrays, the key, the pair and the skiplist node")
+    void testEntry() {
+        // Key array 16 + 5 -> 24, value array 16 + 10 -> 32, then 40 + 24 + 24 + 12
+        assertEquals(24 + 32 + 40 + 24 + 24 + 12, HeapEstimates.entry(5, new byte[10]));
+        assertEquals(24 + 40 + 24 + 24 + 12, HeapEstimates.entry(5, KeyValuePair.TOMBSTONE));
+    }
+}
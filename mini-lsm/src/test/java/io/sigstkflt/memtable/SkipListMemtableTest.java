@@ -1,10 +1,21 @@
 package io.sigstkflt.memtable;
 
+import io.sigstkflt.mvcc.Sequencer;
+import io.sigstkflt.mvcc.Snapshot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,6 +28,10 @@ class SkipListMemtableTest {
         memTable = new SkipListMemtable(1);
     }
 
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
     // ==================== Constructor Tests ====================
 
     @Test
@@ -80,6 +95,480 @@ class SkipListMemtableTest {
 
     // ==================== Delete Operation Tests ====================
 
+    @Test
+    @DisplayName("get should return null for a deleted key")
+    void testDelete() {
+        byte[] key = "key1".getBytes(StandardCharsets.UTF_8);
+        memTable.put(key, "value1".getBytes(StandardCharsets.UTF_8));
+
+        memTable.delete(key);
+
+        assertNull(memTable.get(key));
+    }
+
+    @Test
+    @DisplayName("lookup should tell a deleted key apart from an absent one")
+    void testLookupTombstone() {
+        byte[] key = "key1".getBytes(StandardCharsets.UTF_8);
+        memTable.delete(key);
+
+        assertSame(KeyValuePair.TOMBSTONE, memTable.lookup(key));
+        assertNull(memTable.lookup("other".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("put after delete should make the key visible again")
+    void testPutAfterDelete() {
+        byte[] key = "key1".getBytes(StandardCharsets.UTF_8);
+        byte[] value = "value2".getBytes(StandardCharsets.UTF_8);
+        memTable.delete(key);
+
+        memTable.put(key, value);
+
+        assertArrayEquals(value, memTable.get(key));
+    }
+
+    @Test
+    @DisplayName("iterator should return tombstones for deleted keys")
+    void testIteratorReturnsTombstones() {
+        memTable.put("a".getBytes(StandardCharsets.UTF_8), "1".getBytes(StandardCharsets.UTF_8));
+        memTable.delete("b".getBytes(StandardCharsets.UTF_8));
+
+        MemtableIterator iterator = memTable.iterator();
+
+        assertFalse(iterator.next().isTombstone());
+        assertTrue(iterator.next().isTombstone());
+    }
+
+    @Test
+    @DisplayName("empty value should not be mistaken for a tombstone")
+    void testEmptyValueIsNotTombstone() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        memTable.put(key, new byte[0]);
+
+        assertNotNull(memTable.get(key));
+        assertNotSame(KeyValuePair.TOMBSTONE, memTable.lookup(key));
+    }
+
+    // ==================== Buffer Read and Write Tests ====================
+
+    @Test
+    @DisplayName("put should copy the caller's arrays")
+    void testPutCopiesInput() {
+        byte[] key = toBytes("key1");
+        byte[] value = toBytes("value1");
+        memTable.put(key, value);
+        key[0] = 'X';
+        value[0] = 'X';
+
+        assertArrayEquals(toBytes("value1"), memTable.get(toBytes("key1")));
+        assertNull(memTable.get(toBytes("Xey1")));
+    }
+
+    @Test
+    @DisplayName("get into a buffer should copy the value and advance the buffer")
+    void testGetIntoBuffer() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        ByteBuffer dst = ByteBuffer.allocate(16);
+        dst.put((byte) '>');
+
+        assertEquals(6, memTable.get(toBytes("key1"), dst));
+        assertEquals(7, dst.position());
+        assertEquals(-1, memTable.get(toBytes("key2"), dst));
+        assertArrayEquals(toBytes(">value1"), Arrays.copyOf(dst.array(), 7));
+    }
+
+    @Test
+    @DisplayName("get into a small buffer should report the length and copy nothing")
+    void testGetIntoSmallBuffer() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        ByteBuffer dst = ByteBuffer.allocate(4);
+
+        assertEquals(6, memTable.get(toBytes("key1"), dst));
+        assertEquals(0, dst.position());
+    }
+
+    @Test
+    @DisplayName("getView should return a read-only view and null for deleted keys")
+    void testGetView() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        memTable.put(toBytes("key2"), toBytes("value2"));
+        memTable.delete(toBytes("key2"));
+
+        ByteBuffer view = memTable.getView(toBytes("key1"));
+
+        assertTrue(view.isReadOnly());
+        assertEquals(ByteBuffer.wrap(toBytes("value1")), view);
+        assertNull(memTable.getView(toBytes("key2")));
+        assertNull(memTable.getView(toBytes("key3")));
+    }
+
+    @Test
+    @DisplayName("put with buffers should store their remaining bytes and leave positions alone")
+    void testPutBuffers() {
+        ByteBuffer key = ByteBuffer.wrap(toBytes("xxkey1"));
+        key.position(2);
+        ByteBuffer value = ByteBuffer.allocateDirect(6).put(toBytes("value1")).flip();
+
+        memTable.put(key, value);
+
+        assertEquals(2, key.position());
+        assertEquals(0, value.position());
+        assertArrayEquals(toBytes("value1"), memTable.get(toBytes("key1")));
+    }
+
+    // ==================== Range Iterator Tests ====================
+
+    @Test
+    @DisplayName("range iterator should include both bounds")
+    void testRangeIteratorBounds() {
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            memTable.put(key.getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        MemtableIterator iterator = memTable.iterator(null, "b".getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), iterator.next().data());
+        assertArrayEquals("b".getBytes(StandardCharsets.UTF_8), iterator.next().data());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    @DisplayName("range iterator should honour included and excluded bounds over every version of a key")
+    void testRangeIteratorExcludedBounds() {
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            memTable.put(toBytes(key), toBytes(key + "1"));
+            memTable.put(toBytes(key), toBytes(key + "2"));
+        }
+
+        List<String> values = new ArrayList<>();
+        MemtableIterator iterator = memTable.iterator(Bound.excluded(toBytes("a")), Bound.excluded(toBytes("d")), false);
+        while (iterator.hasNext()) {
+            values.add(new String(iterator.next().data(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of("b2", "c2"), values);
+
+        iterator = memTable.iterator(Bound.included(toBytes("c")), Bound.unbounded(), false);
+        assertArrayEquals(toBytes("c2"), iterator.next().data());
+        assertArrayEquals(toBytes("d2"), iterator.next().data());
+        assertFalse(iterator.hasNext());
+        assertFalse(memTable.iterator(Bound.included(toBytes("b")), Bound.excluded(toBytes("b")), false).hasNext());
+    }
+
+    @Test
+    @DisplayName("descending iterator should return the newest visible version of each key")
+    void testDescendingIterator() {
+        memTable = new SkipListMemtable(1, null, new Sequencer(), 4);
+        memTable.put(toBytes("a"), toBytes("a1"));
+        memTable.put(toBytes("a"), toBytes("a2"));
+        memTable.put(toBytes("b"), toBytes("b1"));
+
+        try (Snapshot snapshot = memTable.snapshot()) {
+            memTable.put(toBytes("a"), toBytes("a3"));
+            memTable.delete(toBytes("b"));
+            memTable.put(toBytes("c"), toBytes("c1"));
+
+            SkipListMemtable.VersionIterator iterator = memTable.iterator(Bound.unbounded(), Bound.unbounded(), true);
+            assertTrue(iterator.isDescending());
+            assertArrayEquals(toBytes("c1"), iterator.next().data());
+            assertTrue(iterator.next().isTombstone());
+            assertArrayEquals(toBytes("a3"), iterator.next().data());
+            assertFalse(iterator.hasNext());
+
+            iterator = memTable.iterator(Bound.unbounded(), Bound.unbounded(), true, snapshot);
+            assertArrayEquals(toBytes("b1"), iterator.next().data());
+            assertArrayEquals(toBytes("a2"), iterator.next().data());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    @DisplayName("seek should reposition the iterator within its range in either direction")
+    void testIteratorSeek() {
+        memTable = new SkipListMemtable(1, null, new Sequencer(), 4);
+        for (String key : new String[]{"a", "b", "c", "d", "e"}) {
+            memTable.put(toBytes(key), toBytes(key + "1"));
+            memTable.put(toBytes(key), toBytes(key + "2"));
+        }
+
+        SkipListMemtable.VersionIterator ascending = memTable.iterator(Bound.included(toBytes("b")),
+                Bound.included(toBytes("d")), false);
+        ascending.seek(toBytes("cc"));
+        assertArrayEquals(toBytes("d2"), ascending.next().data());
+        assertFalse(ascending.hasNext());
+        ascending.seek(toBytes("a"));
+        assertArrayEquals(toBytes("b2"), ascending.next().data());
+
+        SkipListMemtable.VersionIterator descending = memTable.iterator(Bound.included(toBytes("b")),
+                Bound.included(toBytes("d")), true);
+        descending.seek(toBytes("cc"));
+        assertArrayEquals(toBytes("c2"), descending.next().data());
+        assertArrayEquals(toBytes("b2"), descending.next().data());
+        assertFalse(descending.hasNext());
+        descending.seek(toBytes("z"));
+        assertArrayEquals(toBytes("d2"), descending.next().data());
+    }
+
+    // ==================== Cursor Tests ====================
+
+    @Test
+    @DisplayName("cursor should expose the stored entries through reused slices")
+    void testCursor() {
+        memTable.put(toBytes("a"), toBytes("1"));
+        memTable.delete(toBytes("b"));
+        memTable.put(toBytes("c"), toBytes("3"));
+
+        Cursor cursor = memTable.cursor();
+        Slice key = cursor.key();
+
+        assertArrayEquals(toBytes("a"), key.toArray());
+        assertArrayEquals(toBytes("1"), cursor.value().toArray());
+        cursor.next();
+        assertSame(key, cursor.key());
+        assertTrue(cursor.isTombstone());
+        assertEquals(0, cursor.value().length());
+        cursor.next();
+        assertArrayEquals(toBytes("c"), key.toArray());
+        cursor.next();
+        assertFalse(cursor.isValid());
+    }
+
+    @Test
+    @DisplayName("cursor should honour inclusive bounds and seek within them")
+    void testCursorBoundsAndSeek() {
+        for (String key : new String[]{"a", "b", "c", "d", "e"}) {
+            memTable.put(toBytes(key), toBytes(key));
+        }
+
+        Cursor cursor = memTable.cursor(toBytes("b"), toBytes("d"));
+        assertArrayEquals(toBytes("b"), cursor.key().toArray());
+
+        cursor.seek(toBytes("cc"));
+        assertArrayEquals(toBytes("d"), cursor.key().toArray());
+        cursor.next();
+        assertFalse(cursor.isValid());
+
+        cursor.seek(toBytes("a"));
+        assertArrayEquals(toBytes("b"), cursor.key().toArray());
+        assertFalse(memTable.cursor(toBytes("d"), toBytes("b")).isValid());
+    }
+
+    // ==================== Snapshot Tests ====================
+
+    @Test
+    @DisplayName("a snapshot should keep seeing the versions written before it")
+    void testSnapshotReads() {
+        memTable.put(toBytes("a"), toBytes("1"));
+        memTable.put(toBytes("b"), toBytes("2"));
+
+        try (Snapshot snapshot = memTable.snapshot()) {
+            memTable.put(toBytes("a"), toBytes("3"));
+            memTable.delete(toBytes("b"));
+            memTable.put(toBytes("c"), toBytes("4"));
+
+            assertArrayEquals(toBytes("1"), memTable.get(toBytes("a"), snapshot));
+            assertArrayEquals(toBytes("2"), memTable.get(toBytes("b"), snapshot));
+            assertNull(memTable.get(toBytes("c"), snapshot));
+            assertArrayEquals(toBytes("3"), memTable.get(toBytes("a")));
+            assertNull(memTable.get(toBytes("b")));
+
+            MemtableIterator iterator = memTable.iterator(null, null, snapshot);
+            assertArrayEquals(toBytes("1"), iterator.next().data());
+            assertArrayEquals(toBytes("2"), iterator.next().data());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    @DisplayName("iterator should return the newest version while the cursor visits all of them")
+    void testVersions() {
+        memTable.put(toBytes("a"), toBytes("1"));
+        memTable.put(toBytes("a"), toBytes("2"));
+        memTable.put(toBytes("a"), toBytes("3"));
+
+        MemtableIterator iterator = memTable.iterator();
+        assertArrayEquals(toBytes("3"), iterator.next().data());
+        assertFalse(iterator.hasNext());
+
+        Cursor cursor = memTable.cursor();
+        long previous = Long.MAX_VALUE;
+        int versions = 0;
+        for (; cursor.isValid(); cursor.next()) {
+            assertTrue(cursor.sequence() < previous);
+            previous = cursor.sequence();
+            versions++;
+        }
+        assertEquals(3, versions);
+    }
+
+    // ==================== Write Batch Tests ====================
+
+    @Test
+    @DisplayName("write should apply a batch under consecutive sequence numbers, later operations winning")
+    void testWriteBatch() {
+        memTable.put(toBytes("b"), toBytes("0"));
+        WriteBatch batch = new WriteBatch()
+                .put(toBytes("c"), toBytes("1"))
+                .put(toBytes("a"), toBytes("2"))
+                .delete(toBytes("b"))
+                .put(toBytes("a"), toBytes("3"));
+
+        try (Snapshot before = memTable.snapshot()) {
+            memTable.write(batch);
+
+            assertArrayEquals(toBytes("3"), memTable.get(toBytes("a")));
+            assertNull(memTable.get(toBytes("b")));
+            assertArrayEquals(toBytes("1"), memTable.get(toBytes("c")));
+            assertArrayEquals(toBytes("0"), memTable.get(toBytes("b"), before));
+            assertNull(memTable.get(toBytes("a"), before));
+            try (Snapshot after = memTable.snapshot()) {
+                assertEquals(before.sequence() + 4, after.sequence());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("a batch should copy its input and be reusable after clear")
+    void testWriteBatchCopiesInput() {
+        byte[] value = toBytes("value");
+        WriteBatch batch = new WriteBatch().put(toBytes("key"), value);
+        value[0] = 'X';
+        memTable.write(batch);
+        batch.clear();
+        memTable.write(batch.put(toBytes("other"), toBytes("1")));
+
+        assertArrayEquals(toBytes("value"), memTable.get(toBytes("key")));
+        assertArrayEquals(toBytes("1"), memTable.get(toBytes("other")));
+        assertEquals(1, batch.count());
+    }
+
+    // ==================== Shard Tests ====================
+
+    @Test
+    @DisplayName("a sharded memtable should iterate and scan in key order across shards")
+    void testShardedOrder() {
+        SkipListMemtable sharded = new SkipListMemtable(1, null, new Sequencer(), 8);
+        for (int i = 99; i >= 0; i--) {
+            sharded.put(toBytes(String.format("key%03d", i)), toBytes("old" + i));
+        }
+        for (int i = 0; i < 100; i += 3) {
+            sharded.put(toBytes(String.format("key%03d", i)), toBytes("new" + i));
+        }
+
+        MemtableIterator iterator = sharded.iterator(toBytes("key010"), toBytes("key019"));
+        for (int i = 10; i < 20; i++) {
+            KeyValuePair pair = iterator.next();
+            assertArrayEquals(toBytes(String.format("key%03d", i)), pair.keyWrapper().getValue());
+            assertArrayEquals(toBytes((i % 3 == 0 ? "new" : "old") + i), pair.data());
+        }
+        assertFalse(iterator.hasNext());
+
+        Cursor cursor = sharded.cursor();
+        int versions = 0;
+        Slice previous = new Slice();
+        for (; cursor.isValid(); cursor.next()) {
+            assertTrue(versions == 0 || previous.compareTo(cursor.key()) <= 0);
+            previous.copyFrom(cursor.key());
+            versions++;
+        }
+        assertEquals(134, versions);
+        assertEquals(8, sharded.shardCount());
+    }
+
+    @Test
+    @DisplayName("concurrent writers on a sharded memtable should not lose writes")
+    void testShardedConcurrentPuts() throws Exception {
+        SkipListMemtable sharded = new SkipListMemtable(1, null, new Sequencer(), 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        byte[] key = toBytes("t" + thread + "-" + i);
+                        sharded.put(key, key);
+                        assertArrayEquals(key, sharded.get(key));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int count = 0;
+        MemtableIterator iterator = sharded.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(2000, count);
+        assertThrows(IllegalArgumentException.class, () -> new SkipListMemtable(1, null, new Sequencer(), 0));
+    }
+
+    // ==================== Spliterator Tests ====================
+
+    /**
+     * Splits the spliterator as far as it goes and drains the parts in order
+     */
+    private void splitAndDrain(Spliterator<KeyValuePair> spliterator, List<List<String>> parts) {
+        Spliterator<KeyValuePair> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            splitAndDrain(prefix, parts);
+            splitAndDrain(spliterator, parts);
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        spliterator.forEachRemaining(pair -> keys.add(new String(pair.keyWrapper().getValue(), StandardCharsets.UTF_8)));
+        parts.add(keys);
+    }
+
+    @Test
+    @DisplayName("spliterator parts should cover every key once, in order and with its newest version")
+    void testSpliteratorParts() {
+        SkipListMemtable sharded = new SkipListMemtable(1, null, new Sequencer(), 4);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String key = String.format("key%05d", i);
+            expected.add(key);
+            // Several versions per key, so that some straddle the split points
+            for (int v = 0; v < 3; v++) {
+                sharded.put(toBytes(key), toBytes("v" + v));
+            }
+        }
+
+        List<List<String>> parts = new ArrayList<>();
+        splitAndDrain(sharded.spliterator(), parts);
+
+        assertTrue(parts.size() > 1, "parts " + parts.size());
+        assertEquals(expected, parts.stream().flatMap(List::stream).toList());
+        assertTrue(sharded.stream().allMatch(pair -> Arrays.equals(toBytes("v2"), pair.data())));
+    }
+
+    @Test
+    @DisplayName("a parallel stream should aggregate the entries a snapshot sees")
+    void testParallelStream() {
+        for (int i = 0; i < 3000; i++) {
+            memTable.put(toBytes(String.format("key%05d", i)), toBytes(Integer.toString(i)));
+        }
+        Snapshot snapshot = memTable.snapshot();
+        for (int i = 0; i < 3000; i += 2) {
+            memTable.delete(toBytes(String.format("key%05d", i)));
+        }
+
+        long sum = StreamSupport.stream(memTable.spliterator(snapshot), true)
+                .mapToLong(pair -> Long.parseLong(new String(pair.data(), StandardCharsets.UTF_8)))
+                .sum();
+        long live = memTable.parallelStream().filter(pair -> !pair.isTombstone()).count();
+
+        assertEquals(2999L * 3000 / 2, sum);
+        assertEquals(1500, live);
+        snapshot.close();
+    }
+
     // ==================== ID Tests ====================
 
     @Test
@@ -98,6 +587,29 @@ class SkipListMemtableTest {
         assertEquals(0, size);
     }
 
+    @Test
+    @DisplayName("logicalSize should count replaced values once while retainedSize keeps every version")
+    void testLogicalAndRetainedSize() {
+        memTable.put(toBytes("key1"), toBytes("value1"));
+        assertEquals(10, memTable.logicalSize());
+        long oneVersion = memTable.retainedSize();
+        assertTrue(oneVersion >= 10 + 3 * 24);
+
+        memTable.put(toBytes("key1"), toBytes("v2"));
+        assertEquals(6, memTable.logicalSize());
+        assertTrue(memTable.retainedSize() > oneVersion);
+        assertEquals(memTable.retainedSize(), memTable.approximateSize());
+
+        memTable.delete(toBytes("key1"));
+        assertEquals(4, memTable.logicalSize());
+
+        memTable.write(new WriteBatch()
+                .put(toBytes("key2"), toBytes("a"))
+                .put(toBytes("key2"), toBytes("abc"))
+                .put(toBytes("key1"), toBytes("xy")));
+        assertEquals(13, memTable.logicalSize());
+    }
+
     // ==================== Multiple Operations Tests ====================
 
     @Test
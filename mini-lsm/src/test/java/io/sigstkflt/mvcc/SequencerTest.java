@@ -0,0 +1,109 @@
+package io.sigstkflt.mvcc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequencerTest {
+
+    // ==================== Publication Tests ====================
+
+    @Test
+    @DisplayName("allocate should hand out consecutive ranges after the last sequence")
+    void testAllocate() {
+        Sequencer sequencer = new Sequencer(10);
+
+        assertEquals(11, sequencer.allocate(1));
+        assertEquals(12, sequencer.allocate(3));
+        assertEquals(15, sequencer.allocate(1));
+        assertEquals(15, sequencer.lastAllocated());
+        assertEquals(10, sequencer.visible());
+    }
+
+    @Test
+    @DisplayName("publish should wait until everything numbered below the write is published")
+    void testPublishOutOfOrder() throws Exception {
+        Sequencer sequencer = new Sequencer();
+        long first = sequencer.allocate(1);
+        long second = sequencer.allocate(2);
+        long third = sequencer.allocate(1);
+
+        Thread late = Thread.ofPlatform().start(() -> sequencer.publish(third));
+        late.join(100);
+        assertTrue(late.isAlive());
+        assertEquals(0, sequencer.visible());
+
+        sequencer.publish(first);
+        assertEquals(first, sequencer.visible());
+        sequencer.publish(second, 2);
+        assertEquals(third, sequencer.visible());
+        late.join();
+    }
+
+    @Test
+    @DisplayName("publish should keep the visible sequence in order under concurrent writers")
+    void testConcurrentPublish() throws Exception {
+        Sequencer sequencer = new Sequencer();
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2000; i++) {
+                    int count = random.nextInt(1, 4);
+                    long first = sequencer.allocate(count);
+                    sequencer.publish(first, count);
+                    if (sequencer.visible() < first + count - 1) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(sequencer.lastAllocated(), sequencer.visible());
+    }
+
+    @Test
+    @DisplayName("advanceTo should move the visible sequence when nothing is in flight")
+    void testAdvanceTo() {
+        Sequencer sequencer = new Sequencer();
+        sequencer.advanceTo(7);
+        sequencer.advanceTo(3);
+
+        assertEquals(7, sequencer.visible());
+        assertEquals(8, sequencer.allocate(1));
+    }
+
+    // ==================== Snapshot Tests ====================
+
+    @Test
+    @DisplayName("snapshots should be listed once each until every handle is closed")
+    void testSnapshots() {
+        Sequencer sequencer = new Sequencer();
+        Snapshot first = sequencer.snapshot();
+        Snapshot shared = sequencer.snapshot();
+        sequencer.publish(sequencer.allocate(1));
+        Snapshot second = sequencer.snapshot();
+
+        assertEquals(0, first.sequence());
+        assertEquals(1, second.sequence());
+        assertArrayEquals(new long[]{0, 1}, sequencer.snapshots());
+
+        first.close();
+        first.close();
+        assertArrayEquals(new long[]{0, 1}, sequencer.snapshots());
+        shared.close();
+        second.close();
+        assertArrayEquals(new long[0], sequencer.snapshots());
+    }
+}
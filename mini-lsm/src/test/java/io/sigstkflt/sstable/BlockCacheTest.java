@@ -0,0 +1,210 @@
+package io.sigstkflt.sstable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockCacheTest {
+
+    private BlockCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    private MemorySegment block(int size, int fill) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) fill);
+        return MemorySegment.ofArray(bytes);
+    }
+
+    private boolean cached(int table, int block) {
+        BlockCache.Entry entry = cache.get(table, block);
+        if (entry == null) {
+            return false;
+        }
+        entry.release();
+        return true;
+    }
+
+    // ==================== Lookup Tests ====================
+
+    @Test
+    @DisplayName("put should copy the block off heap and get should pin it")
+    void testGetAndPut() {
+        cache = new BlockCache(4096, 1);
+        assertNull(cache.get(1, 0));
+
+        MemorySegment contents = block(100, 7);
+        cache.put(1, 0, contents);
+        contents.fill((byte) 0);
+        BlockCache.Entry entry = cache.get(1, 0);
+
+        assertNotNull(entry);
+        assertTrue(entry.data().isNative());
+        assertEquals(100, entry.data().byteSize());
+        assertEquals(7, entry.data().get(ValueLayout.JAVA_BYTE, 99));
+        entry.release();
+        assertNull(cache.get(2, 0));
+        assertNull(cache.get(1, 1));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(100, cache.usage());
+    }
+
+    // ==================== Eviction Tests ====================
+
+    @Test
+    @DisplayName("usage should never exceed the capacity")
+    void testCapacity() {
+        cache = new BlockCache(10_000, 4);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(1, i, block(ThreadLocalRandom.current().nextInt(1, 1000), i));
+            assertTrue(cache.usage() <= 10_000, "usage " + cache.usage());
+        }
+
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.usage() > 5_000, "usage " + cache.usage());
+    }
+
+    @Test
+    @DisplayName("the clock should pass over blocks read since its last sweep")
+    void testClockKeepsReferencedBlocks() {
+        cache = new BlockCache(400, 1);
+        for (int i = 0; i < 4; i++) {
+            cache.put(1, i, block(100, i));
+        }
+        // The hand starts at the oldest block and new blocks join the ring just behind it
+        cache.put(1, 4, block(100, 4));
+        assertFalse(cached(1, 0));
+        assertTrue(cached(1, 2));
+
+        cache.put(1, 5, block(100, 5));
+        cache.put(1, 6, block(100, 6));
+
+        assertFalse(cached(1, 1));
+        assertFalse(cached(1, 3));
+        assertTrue(cached(1, 2));
+        assertEquals(3, cache.evictions());
+    }
+
+    @Test
+    @DisplayName("pinned blocks should stay cached and refuse room to new ones")
+    void testPinnedBlocks() {
+        cache = new BlockCache(200, 1);
+        cache.put(1, 0, block(100, 0));
+        cache.put(1, 1, block(100, 1));
+        BlockCache.Entry first = cache.get(1, 0);
+        BlockCache.Entry second = cache.get(1, 1);
+
+        cache.put(1, 2, block(100, 2));
+        assertFalse(cached(1, 2));
+        assertEquals(200, cache.usage());
+
+        second.release();
+        cache.put(1, 2, block(100, 2));
+        assertTrue(cached(1, 2));
+        assertTrue(cached(1, 0));
+        assertEquals(0, first.data().get(ValueLayout.JAVA_BYTE, 0));
+        first.release();
+    }
+
+    @Test
+    @DisplayName("an erased block should be freed once its last pin is released")
+    void testEraseWhilePinned() {
+        cache = new BlockCache(1000, 1);
+        cache.put(1, 0, block(100, 3));
+        BlockCache.Entry entry = cache.get(1, 0);
+
+        cache.erase(1, 0);
+        assertNull(cache.get(1, 0));
+        assertEquals(100, cache.usage());
+        assertEquals(3, entry.data().get(ValueLayout.JAVA_BYTE, 50));
+
+        entry.release();
+        assertEquals(0, cache.usage());
+        cache.put(1, 1, block(100, 4));
+        BlockCache.Entry reused = cache.get(1, 1);
+        assertEquals(entry.data().address(), reused.data().address());
+        reused.release();
+    }
+
+    @Test
+    @DisplayName("a block larger than a slab should not be cached")
+    void testBlockLargerThanSlab() {
+        cache = new BlockCache(4 * SlabAllocator.MAX_SLAB_SIZE, 1);
+        cache.put(1, 0, block((int) SlabAllocator.MAX_SLAB_SIZE + 1, 1));
+        cache.put(1, 1, block((int) SlabAllocator.MAX_SLAB_SIZE, 2));
+
+        assertFalse(cached(1, 0));
+        assertTrue(cached(1, 1));
+        assertEquals(SlabAllocator.MAX_SLAB_SIZE, cache.usage());
+    }
+
+    @Test
+    @DisplayName("closing the cache should free a pinned block once it is released")
+    void testCloseWhilePinned() {
+        cache = new BlockCache(1000, 1);
+        cache.put(1, 0, block(100, 5));
+        BlockCache.Entry entry = cache.get(1, 0);
+
+        cache.close();
+        assertEquals(5, entry.data().get(ValueLayout.JAVA_BYTE, 99));
+        entry.release();
+        assertThrows(IllegalStateException.class, () -> entry.data().get(ValueLayout.JAVA_BYTE, 0));
+    }
+
+    // ==================== Concurrency Tests ====================
+
+    @Test
+    @DisplayName("concurrent readers should only ever see the contents put for a block")
+    void testConcurrentAccess() throws Exception {
+        cache = new BlockCache(64 * 1024, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        int block = random.nextInt(500);
+                        BlockCache.Entry entry = cache.get(7, block);
+                        if (entry == null) {
+                            cache.put(7, block, block(256, block));
+                            continue;
+                        }
+                        try {
+                            assertEquals((byte) block, entry.data().get(ValueLayout.JAVA_BYTE, 255));
+                        } finally {
+                            entry.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.usage() <= 64 * 1024);
+        assertTrue(cache.hits() > 0);
+        assertTrue(cache.evictions() > 0);
+    }
+}
@@ -0,0 +1,94 @@
+package io.sigstkflt.sstable;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockCodecTest {
+
+    private static final List<BlockCodec> CODECS = List.of(BlockCodecs.NONE, BlockCodecs.LZ, BlockCodecs.DEFLATE);
+
+    private byte[] roundTrip(BlockCodec codec, byte[] input) {
+        byte[] compressed = new byte[codec.maxCompressedLength(input.length) + 3];
+        int length = codec.compress(input, 0, input.length, compressed, 3);
+        assertTrue(length <= codec.maxCompressedLength(input.length));
+
+        byte[] output = new byte[input.length + 2];
+        codec.decompress(MemorySegment.ofArray(compressed).asSlice(3, length), output, 2, input.length);
+        return Arrays.copyOfRange(output, 2, output.length);
+    }
+
+    private byte[] repetitive(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < length; i++) {
+            text.append("user/").append(i % 50).append("/profile=").append(i % 7).append(';');
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.UTF_8), length);
+    }
+
+    // ==================== Round Trip Tests ====================
+
+    @Test
+    @DisplayName("every codec should restore empty, tiny, random and repetitive inputs")
+    void testRoundTrip() {
+        byte[] random = new byte[10_000];
+        new Random(42).nextBytes(random);
+        byte[] run = new byte[5_000];
+        Arrays.fill(run, (byte) 'x');
+        List<byte[]> inputs = List.of(new byte[0], new byte[]{1}, Arrays.copyOf(random, 13), random, run,
+                repetitive(4096), repetitive(100_000));
+
+        for (BlockCodec codec : CODECS) {
+            for (byte[] input : inputs) {
+                assertArrayEquals(input, roundTrip(codec, input), codec.name() + " " + input.length);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("lz and deflate should shrink repetitive blocks, deflate the most")
+    void testCompressionRatio() {
+        byte[] input = repetitive(4096);
+        byte[] buffer = new byte[BlockCodecs.DEFLATE.maxCompressedLength(input.length)];
+
+        int lz = BlockCodecs.LZ.compress(input, 0, input.length, buffer, 0);
+        int deflate = BlockCodecs.DEFLATE.compress(input, 0, input.length, buffer, 0);
+
+        assertTrue(lz < input.length / 2, "lz " + lz);
+        assertTrue(deflate < lz, "deflate " + deflate + " lz " + lz);
+    }
+
+    @Test
+    @DisplayName("decompress should reject a block that does not restore the expected length")
+    void testCorruptBlock() {
+        byte[] input = repetitive(4096);
+        for (BlockCodec codec : List.of(BlockCodecs.LZ, BlockCodecs.DEFLATE)) {
+            byte[] compressed = new byte[codec.maxCompressedLength(input.length)];
+            int length = codec.compress(input, 0, input.length, compressed, 0);
+            MemorySegment segment = MemorySegment.ofArray(compressed).asSlice(0, length);
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> codec.decompress(segment, new byte[input.length + 1], 0, input.length + 1), codec.name());
+        }
+    }
+
+    // ==================== Registry Tests ====================
+
+    @Test
+    @DisplayName("the registry should resolve built in ids and refuse to rebind a taken id")
+    void testRegistry() {
+        assertSame(BlockCodecs.LZ, BlockCodecs.forId(BlockCodecs.LZ.id()));
+        assertSame(BlockCodecs.DEFLATE, BlockCodecs.forId(BlockCodecs.DEFLATE.id()));
+        assertThrows(IllegalArgumentException.class, () -> BlockCodecs.forId(200));
+
+        BlockCodecs.register(BlockCodecs.LZ);
+        assertThrows(IllegalArgumentException.class, () -> BlockCodecs.register(new DeflateBlockCodec(9)));
+    }
+}
@@ -0,0 +1,118 @@
+package io.sigstkflt.sstable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlabAllocatorTest {
+
+    private SlabAllocator slabs;
+
+    @AfterEach
+    void tearDown() {
+        if (slabs != null) {
+            slabs.close();
+        }
+    }
+
+    // ==================== Allocation Tests ====================
+
+    @Test
+    @DisplayName("slabs should be sized to the capacity and taken only when needed")
+    void testSlabSize() {
+        slabs = new SlabAllocator(400);
+        assertEquals(512, slabs.slabSize());
+        assertEquals(0, slabs.reserved());
+
+        assertNotEquals(SlabAllocator.NONE, slabs.allocate(100));
+        assertEquals(512, slabs.reserved());
+        slabs.close();
+
+        slabs = new SlabAllocator(3 * SlabAllocator.MAX_SLAB_SIZE + 1);
+        assertEquals(SlabAllocator.MAX_SLAB_SIZE, slabs.slabSize());
+        for (int i = 0; i < 4; i++) {
+            assertNotEquals(SlabAllocator.NONE, slabs.allocate(SlabAllocator.MAX_SLAB_SIZE));
+        }
+        assertEquals(SlabAllocator.NONE, slabs.allocate(1));
+        assertEquals(4 * SlabAllocator.MAX_SLAB_SIZE, slabs.reserved());
+    }
+
+    @Test
+    @DisplayName("allocate should round up to powers of two and refuse requests that do not fit")
+    void testAllocate() {
+        slabs = new SlabAllocator(512);
+        int first = slabs.allocate(100);
+        int second = slabs.allocate(128);
+        int third = slabs.allocate(200);
+
+        MemorySegment segment = slabs.segment(first, 100);
+        assertEquals(100, segment.byteSize());
+        assertEquals(128, slabs.segment(second, 128).address() - segment.address());
+        assertEquals(256, slabs.segment(third, 200).address() - segment.address());
+        assertEquals(SlabAllocator.NONE, slabs.allocate(1));
+        assertEquals(SlabAllocator.NONE, slabs.allocate(513));
+    }
+
+    @Test
+    @DisplayName("free should merge buddies back into chunks large enough for any request")
+    void testFreeMergesBuddies() {
+        slabs = new SlabAllocator(4096);
+        List<Integer> chunks = new ArrayList<>();
+        int chunk;
+        while ((chunk = slabs.allocate(SlabAllocator.MIN_CHUNK)) != SlabAllocator.NONE) {
+            chunks.add(chunk);
+        }
+        assertEquals(4096 / SlabAllocator.MIN_CHUNK, chunks.size());
+
+        // Every other chunk freed leaves the memory too fragmented for anything larger
+        for (int i = 0; i < chunks.size(); i += 2) {
+            slabs.free(chunks.get(i), SlabAllocator.MIN_CHUNK);
+        }
+        assertEquals(SlabAllocator.NONE, slabs.allocate(SlabAllocator.MIN_CHUNK + 1));
+
+        for (int i = 1; i < chunks.size(); i += 2) {
+            slabs.free(chunks.get(i), SlabAllocator.MIN_CHUNK);
+        }
+        assertEquals((int) chunks.get(0), slabs.allocate(4096));
+    }
+
+    @Test
+    @DisplayName("pieces handed out at the same time should never overlap")
+    void testRandomAllocations() {
+        slabs = new SlabAllocator(64 * 1024);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<MemorySegment> live = new ArrayList<>();
+        List<Integer> chunks = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            if (!live.isEmpty() && random.nextBoolean()) {
+                int victim = random.nextInt(live.size());
+                slabs.free(chunks.remove(victim), live.remove(victim).byteSize());
+                continue;
+            }
+            long bytes = random.nextLong(1, 4096);
+            int chunk = slabs.allocate(bytes);
+            if (chunk == SlabAllocator.NONE) {
+                continue;
+            }
+            MemorySegment segment = slabs.segment(chunk, bytes);
+            for (MemorySegment other : live) {
+                boolean disjoint = segment.address() + bytes <= other.address()
+                        || other.address() + other.byteSize() <= segment.address();
+                assertTrue(disjoint);
+            }
+            live.add(segment);
+            chunks.add(chunk);
+        }
+        for (int i = 0; i < live.size(); i++) {
+            slabs.free(chunks.get(i), live.get(i).byteSize());
+        }
+        assertNotEquals(SlabAllocator.NONE, slabs.allocate(64 * 1024));
+    }
+}
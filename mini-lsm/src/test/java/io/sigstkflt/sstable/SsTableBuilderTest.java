@@ -0,0 +1,127 @@
+package io.sigstkflt.sstable;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SsTableBuilderTest {
+
+    @TempDir
+    Path dir;
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SkipListMemtable memtableWith(int entries) {
+        SkipListMemtable memtable = new SkipListMemtable(1);
+        for (int i = 0; i < entries; i++) {
+            memtable.put(toBytes(String.format("key%05d", i)), toBytes("value" + i));
+        }
+        return memtable;
+    }
+
+    @Test
+    @DisplayName("should write every entry and a footer pointing at the block index")
+    void testWriteFromMemtable() throws IOException {
+        Path path = dir.resolve("1.sst");
+
+        SsTableInfo info = SsTableBuilder.write(path, memtableWith(1000).iterator(), 256);
+
+        assertEquals(1000, info.entryCount());
+        assertTrue(info.blockCount() > 1);
+        assertEquals(Files.size(path), info.fileSize());
+        assertArrayEquals(toBytes("key00000"), info.firstKey());
+        assertArrayEquals(toBytes("key00999"), info.lastKey());
+
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        int footer = file.limit() - SsTableFormat.FOOTER_SIZE;
+        long indexOffset = file.getLong(footer);
+        assertEquals(info.blockCount(), file.getInt(footer + Long.BYTES));
+        long bloomOffset = file.getLong(footer + Long.BYTES + Integer.BYTES);
+        assertEquals(SsTableFormat.MAGIC, file.getInt(file.limit() - Integer.BYTES));
+
+        // Walk the block index and count the entries of every block
+        MemorySegment segment = MemorySegment.ofArray(file.array());
+        file.position((int) indexOffset);
+        long entries = 0;
+        for (int i = 0; i < info.blockCount(); i++) {
+            long blockOffset = file.getLong();
+            int blockLength = file.getInt();
+            assertEquals(blockLength, file.getInt());
+            assertEquals(0, file.get());
+            int firstKeyLength = file.getInt();
+            file.position(file.position() + firstKeyLength);
+            int lastKeyLength = file.getInt();
+            file.position(file.position() + lastKeyLength);
+            assertTrue(blockLength <= 256);
+            for (Block block = new Block(segment.asSlice(blockOffset, blockLength)); block.isValid(); block.next()) {
+                entries++;
+            }
+        }
+        assertEquals(1000, entries);
+        assertEquals(bloomOffset, file.position());
+    }
+
+    @Test
+    @DisplayName("should store only the key bytes an entry does not share with the key before it")
+    void testPrefixCompression() throws IOException {
+        Path path = dir.resolve("4.sst");
+        String prefix = "user/0000000000/profile/";
+        long rawSize = 0;
+        SsTableInfo info;
+        try (SsTableBuilder builder = new SsTableBuilder(path)) {
+            for (int i = 0; i < 1000; i++) {
+                byte[] key = toBytes(prefix + String.format("%05d", i));
+                builder.add(key, toBytes("v"));
+                rawSize += SsTableFormat.ENTRY_HEADER_SIZE + key.length + 1;
+            }
+            info = builder.finish();
+        }
+
+        // Only one entry in RESTART_INTERVAL repeats the prefix, index and filter included
+        assertTrue(info.fileSize() < rawSize * 3 / 4);
+        try (SsTableReader reader = SsTableReader.open(path)) {
+            assertArrayEquals(toBytes("v"), reader.get(toBytes(prefix + "00017")));
+        }
+    }
+
+    @Test
+    @DisplayName("should place an entry larger than the block size in its own block")
+    void testOversizedEntry() throws IOException {
+        Path path = dir.resolve("2.sst");
+        SsTableInfo info;
+        try (SsTableBuilder builder = new SsTableBuilder(path, 64)) {
+            builder.add(toBytes("a"), toBytes("1"));
+            builder.add(toBytes("b"), new byte[1000]);
+            builder.add(toBytes("c"), toBytes("3"));
+            info = builder.finish();
+        }
+
+        assertEquals(3, info.blockCount());
+        assertEquals(3, info.entryCount());
+        assertTrue(info.fileSize() > 1000);
+    }
+
+    @Test
+    @DisplayName("should write a valid table for an empty iterator")
+    void testEmptyTable() throws IOException {
+        Path path = dir.resolve("3.sst");
+
+        SsTableInfo info = SsTableBuilder.write(path, new SkipListMemtable(3).iterator());
+
+        assertEquals(0, info.blockCount());
+        assertEquals(SsTableFormat.FOOTER_SIZE, info.fileSize());
+        assertNull(info.firstKey());
+    }
+}
@@ -0,0 +1,411 @@
+package io.sigstkflt.sstable;
+
+import io.sigstkflt.memtable.Cursor;
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.memtable.Slice;
+import io.sigstkflt.util.RateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SsTableReaderTest {
+
+    @TempDir
+    Path dir;
+
+    private SsTableReader reader;
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(1);
+        // Even keys only, so that odd keys can be used as absent probes
+        for (int i = 0; i < 1000; i += 2) {
+            memtable.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        Path path = dir.resolve("1.sst");
+        SsTableBuilder.write(path, memtable.iterator(), 256);
+        reader = SsTableReader.open(path);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.close();
+    }
+
+    private List<String> collectKeys(MemtableIterator iterator) {
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(new String(iterator.next().keyWrapper().getValue(), StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+
+    // ==================== Point Lookup Tests ====================
+
+    @Test
+    @DisplayName("get should find every stored key")
+    void testGetExisting() {
+        for (int i = 0; i < 1000; i += 2) {
+            assertArrayEquals(toBytes("value" + i), reader.get(toBytes(key(i))));
+        }
+    }
+
+    @Test
+    @DisplayName("get should return null for absent keys inside and outside the key range")
+    void testGetAbsent() {
+        assertNull(reader.get(toBytes(key(1))));
+        assertNull(reader.get(toBytes(key(555))));
+        assertNull(reader.get(toBytes("a")));
+        assertNull(reader.get(toBytes("zzz")));
+    }
+
+    @Test
+    @DisplayName("should expose the key range of the table")
+    void testKeyRange() {
+        assertTrue(reader.blockCount() > 1);
+        assertArrayEquals(toBytes(key(0)), reader.firstKey());
+        assertArrayEquals(toBytes(key(998)), reader.lastKey());
+    }
+
+    // ==================== Iterator Tests ====================
+
+    @Test
+    @DisplayName("full iterator should return every entry in order")
+    void testFullIterator() {
+        MemtableIterator iterator = reader.iterator();
+
+        List<String> keys = collectKeys(iterator);
+
+        assertEquals(500, keys.size());
+        assertEquals(key(0), keys.get(0));
+        assertEquals(key(998), keys.get(499));
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    @DisplayName("range iterator should include both bounds")
+    void testRangeIterator() {
+        List<String> keys = collectKeys(reader.iterator(toBytes(key(100)), toBytes(key(110))));
+
+        assertEquals(List.of(key(100), key(102), key(104), key(106), key(108), key(110)), keys);
+    }
+
+    @Test
+    @DisplayName("range iterator should start at the next key when the begin key is absent")
+    void testRangeIteratorAbsentBounds() {
+        List<String> keys = collectKeys(reader.iterator(toBytes(key(101)), toBytes(key(105))));
+
+        assertEquals(List.of(key(102), key(104)), keys);
+    }
+
+    @Test
+    @DisplayName("range iterator should support open ends")
+    void testOpenEnds() {
+        assertEquals(3, collectKeys(reader.iterator(null, toBytes(key(4)))).size());
+        assertEquals(2, collectKeys(reader.iterator(toBytes(key(996)), null)).size());
+        assertFalse(reader.iterator(toBytes("zzz"), null).hasNext());
+    }
+
+    @Test
+    @DisplayName("iterator should return the stored values")
+    void testIteratorValues() {
+        KeyValuePair pair = reader.iterator(toBytes(key(42)), null).next();
+
+        assertArrayEquals(toBytes(key(42)), pair.keyWrapper().getValue());
+        assertArrayEquals(toBytes("value42"), pair.data());
+    }
+
+    @Test
+    @DisplayName("spliterator should split at block boundaries into parts that cover every key once")
+    void testSpliterator() {
+        List<String> keys = new ArrayList<>();
+        List<Spliterator<KeyValuePair>> parts = new ArrayList<>(List.of(reader.spliterator()));
+        // Splits every part as far as it goes, keeping the parts in key order
+        for (int i = 0; i < parts.size(); ) {
+            Spliterator<KeyValuePair> prefix = parts.get(i).trySplit();
+            if (prefix != null) {
+                parts.add(i, prefix);
+            } else {
+                i++;
+            }
+        }
+        for (Spliterator<KeyValuePair> part : parts) {
+            part.forEachRemaining(pair -> keys.add(new String(pair.keyWrapper().getValue(), StandardCharsets.UTF_8)));
+        }
+
+        assertEquals(reader.blockCount(), parts.size());
+        assertEquals(collectKeys(reader.iterator()), keys);
+        assertEquals(500, reader.parallelStream().count());
+        assertEquals(250_000 - 500, reader.parallelStream()
+                .mapToLong(pair -> Long.parseLong(new String(pair.data(), StandardCharsets.UTF_8).substring(5)))
+                .sum());
+    }
+
+    @Test
+    @DisplayName("spliterator should not split a key whose versions span several blocks")
+    void testSpliteratorVersionsAcrossBlocks() throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(1);
+        for (int v = 0; v < 200; v++) {
+            memtable.put(toBytes("hot"), toBytes("version" + v));
+        }
+        memtable.put(toBytes("after"), toBytes("x"));
+        memtable.put(toBytes("zz"), toBytes("y"));
+        Path path = dir.resolve("versions.sst");
+        SsTableBuilder.write(path, memtable.cursor(), 128, 10, BlockCodecs.NONE);
+
+        try (SsTableReader table = SsTableReader.open(path)) {
+            assertTrue(table.blockCount() > 3);
+            List<KeyValuePair> pairs = table.parallelStream().toList();
+
+            assertEquals(3, pairs.size());
+            assertArrayEquals(toBytes("version199"), pairs.get(1).data());
+        }
+    }
+
+    // ==================== Cursor Tests ====================
+
+    @Test
+    @DisplayName("cursor should visit the range through the same reused views")
+    void testCursor() {
+        Cursor cursor = reader.cursor(toBytes(key(101)), toBytes(key(105)));
+        Slice key = cursor.key();
+
+        assertArrayEquals(toBytes(key(102)), key.toArray());
+        assertArrayEquals(toBytes("value102"), cursor.value().toArray());
+        cursor.next();
+        assertSame(key, cursor.key());
+        assertArrayEquals(toBytes(key(104)), key.toArray());
+        cursor.next();
+        assertFalse(cursor.isValid());
+        assertThrows(NoSuchElementException.class, cursor::next);
+    }
+
+    @Test
+    @DisplayName("seek should move across blocks and clamp to the begin key")
+    void testCursorSeek() {
+        Cursor cursor = reader.cursor(toBytes(key(100)), null);
+
+        cursor.seek(toBytes(key(901)));
+        assertArrayEquals(toBytes(key(902)), cursor.key().toArray());
+        cursor.seek(toBytes(key(0)));
+        assertArrayEquals(toBytes(key(100)), cursor.key().toArray());
+        cursor.seek(toBytes("zzz"));
+        assertFalse(cursor.isValid());
+    }
+
+    @Test
+    @DisplayName("lookups should find every version of a key whose versions span restart points")
+    void testVersionsAcrossRestarts() throws IOException {
+        Path path = dir.resolve("4.sst");
+        int versions = SsTableFormat.RESTART_INTERVAL * 3;
+        try (SsTableBuilder builder = new SsTableBuilder(path)) {
+            builder.add(toBytes("a"), toBytes("a"), 1);
+            for (int seq = versions; seq > 0; seq--) {
+                builder.add(toBytes("key"), toBytes("v" + seq), seq);
+            }
+            builder.add(toBytes("key0"), toBytes("k0"), 1);
+            builder.finish();
+        }
+
+        try (SsTableReader table = SsTableReader.open(path)) {
+            for (int seq = 1; seq <= versions; seq++) {
+                assertArrayEquals(toBytes("v" + seq), table.lookup(toBytes("key"), seq));
+            }
+            assertNull(table.lookup(toBytes("key"), 0));
+            assertArrayEquals(toBytes("k0"), table.lookup(toBytes("key0"), 1));
+            assertNull(table.lookup(toBytes("ke"), 1));
+
+            Cursor cursor = table.cursor(toBytes("key"), null);
+            int seen = 0;
+            for (; cursor.isValid() && cursor.key().compareTo(toBytes("key")) == 0; cursor.next()) {
+                assertEquals(versions - seen, cursor.sequence());
+                seen++;
+            }
+            assertEquals(versions, seen);
+            assertArrayEquals(toBytes("key0"), cursor.key().toArray());
+        }
+    }
+
+    // ==================== Bloom Filter Tests ====================
+
+    @Test
+    @DisplayName("bloom filter should reject most absent keys without reading a block")
+    void testBloomFilterRejectsAbsentKeys() {
+        for (int i = 1; i < 1000; i += 2) {
+            assertNull(reader.get(toBytes(key(i))));
+        }
+
+        assertEquals(500, reader.bloomChecks());
+        assertEquals(500, reader.bloomNegatives() + reader.bloomFalsePositives());
+        assertTrue(reader.bloomFalsePositiveRate() < 0.05, "rate " + reader.bloomFalsePositiveRate());
+    }
+
+    @Test
+    @DisplayName("bloom filter should never reject a stored key")
+    void testBloomFilterHasNoFalseNegatives() {
+        for (int i = 0; i < 1000; i += 2) {
+            assertNotNull(reader.get(toBytes(key(i))));
+        }
+
+        assertEquals(0, reader.bloomNegatives());
+        assertEquals(0, reader.bloomFalsePositives());
+    }
+
+    @Test
+    @DisplayName("tables written without a bloom filter should still answer lookups")
+    void testBloomFilterDisabled() throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(2);
+        memtable.put(toBytes("a"), toBytes("1"));
+        Path path = dir.resolve("2.sst");
+        SsTableBuilder.write(path, memtable.iterator(), 256, 0);
+
+        try (SsTableReader unfiltered = SsTableReader.open(path)) {
+            assertArrayEquals(toBytes("1"), unfiltered.get(toBytes("a")));
+            assertNull(unfiltered.get(toBytes("b")));
+            assertEquals(0, unfiltered.bloomChecks());
+        }
+    }
+
+    // ==================== Tombstone Tests ====================
+
+    @Test
+    @DisplayName("tombstones should survive a flush")
+    void testTombstones() throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(3);
+        memtable.put(toBytes("a"), toBytes("1"));
+        memtable.delete(toBytes("b"));
+        memtable.put(toBytes("c"), new byte[0]);
+        Path path = dir.resolve("3.sst");
+        SsTableBuilder.write(path, memtable.iterator());
+
+        try (SsTableReader table = SsTableReader.open(path)) {
+            assertNull(table.get(toBytes("b")));
+            assertSame(KeyValuePair.TOMBSTONE, table.lookup(toBytes("b")));
+            assertArrayEquals(new byte[0], table.get(toBytes("c")));
+            assertNull(table.lookup(toBytes("d")));
+
+            MemtableIterator iterator = table.iterator();
+            assertFalse(iterator.next().isTombstone());
+            assertTrue(iterator.next().isTombstone());
+            assertFalse(iterator.next().isTombstone());
+        }
+    }
+
+    // ==================== Compression Tests ====================
+
+    @Test
+    @DisplayName("compressed tables should answer lookups and scans like uncompressed ones")
+    void testCompressedTable() throws IOException {
+        for (BlockCodec codec : List.of(BlockCodecs.LZ, BlockCodecs.DEFLATE)) {
+            Path path = dir.resolve(codec.name() + ".sst");
+            try (SsTableBuilder builder = new SsTableBuilder(path, 1024, 10, codec, RateLimiter.unlimited())) {
+                for (int i = 0; i < 1000; i += 2) {
+                    builder.add(toBytes(key(i)), toBytes("value" + i));
+                }
+                builder.finish();
+            }
+
+            try (SsTableReader table = SsTableReader.open(path)) {
+                assertTrue(table.fileSize() < reader.fileSize(), codec.name());
+                assertTrue(table.uncompressedDataSize() > table.fileSize(), codec.name());
+                for (int i = 0; i < 1000; i++) {
+                    assertArrayEquals(reader.get(toBytes(key(i))), table.get(toBytes(key(i))), codec.name() + " " + i);
+                }
+                assertEquals(collectKeys(reader.iterator()), collectKeys(table.iterator()));
+
+                Cursor cursor = table.cursor(toBytes(key(301)), toBytes(key(700)));
+                assertArrayEquals(toBytes("value302"), cursor.value().toArray());
+                cursor.seek(toBytes(key(651)));
+                assertArrayEquals(toBytes(key(652)), cursor.key().toArray());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("lookups should decompress a block once and then read it from the block cache")
+    void testBlockCache() throws IOException {
+        Path path = dir.resolve("cached.sst");
+        try (SsTableBuilder builder = new SsTableBuilder(path, 1024, 10, BlockCodecs.LZ, RateLimiter.unlimited())) {
+            for (int i = 0; i < 1000; i += 2) {
+                builder.add(toBytes(key(i)), toBytes("value" + i));
+            }
+            builder.finish();
+        }
+
+        try (BlockCache cache = new BlockCache(1024 * 1024)) {
+            try (SsTableReader table = SsTableReader.open(path, 1, cache)) {
+                for (int i = 0; i < 1000; i += 2) {
+                    assertArrayEquals(toBytes("value" + i), table.get(toBytes(key(i))));
+                }
+                assertEquals(table.blockCount(), cache.misses());
+                assertTrue(cache.usage() > 0);
+
+                for (int i = 0; i < 1000; i += 2) {
+                    assertArrayEquals(toBytes("value" + i), table.get(toBytes(key(i))));
+                }
+                assertEquals(table.blockCount(), cache.misses());
+                assertEquals(1000 - table.blockCount(), cache.hits());
+                assertEquals(collectKeys(reader.iterator()), collectKeys(table.iterator()));
+            }
+            assertEquals(0, cache.usage());
+        }
+    }
+
+    @Test
+    @DisplayName("blocks that do not compress should be stored as they are")
+    void testIncompressibleBlocks() throws IOException {
+        Path path = dir.resolve("random.sst");
+        Random random = new Random(7);
+        byte[][] values = new byte[50][];
+        try (SsTableBuilder builder = new SsTableBuilder(path, 1024, 10, BlockCodecs.LZ, RateLimiter.unlimited())) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new byte[200];
+                random.nextBytes(values[i]);
+                builder.add(toBytes(key(i)), values[i]);
+            }
+            builder.finish();
+        }
+
+        try (SsTableReader table = SsTableReader.open(path)) {
+            assertTrue(table.uncompressedDataSize() < table.fileSize());
+            for (int i = 0; i < values.length; i++) {
+                assertArrayEquals(values[i], table.get(toBytes(key(i))));
+            }
+        }
+    }
+
+    // ==================== Format Tests ====================
+
+    @Test
+    @DisplayName("open should reject a file without the SSTable footer")
+    void testRejectsGarbage() throws IOException {
+        Path path = dir.resolve("garbage.sst");
+        Files.write(path, new byte[64]);
+
+        assertThrows(IllegalArgumentException.class, () -> SsTableReader.open(path));
+    }
+}
@@ -0,0 +1,107 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.WriteBatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLsmStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private LsmStorage storage;
+    private AsyncLsmStorage async;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = LsmStorage.open(dir, LsmStorageOptions.defaults()
+                .setMemtableSizeLimit(4 * 1024)
+                .setBlockSize(512)
+                .setTargetFileSize(4 * 1024));
+        async = new AsyncLsmStorage(storage);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        async.close();
+        storage.close();
+    }
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    // ==================== Write Tests ====================
+
+    @Test
+    @DisplayName("puts should complete once durable and survive a reopen")
+    void testPut() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            futures.add(async.put(toBytes(key(i)), toBytes("value" + i)));
+        }
+        futures.add(async.write(new WriteBatch().put(toBytes("batch"), toBytes("value")).delete(toBytes(key(0)))));
+        futures.add(async.delete(toBytes(key(1))));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        async.close();
+        storage.close();
+        storage = LsmStorage.open(dir, LsmStorageOptions.defaults());
+        async = new AsyncLsmStorage(storage);
+
+        assertNull(async.get(toBytes(key(0))).get());
+        assertNull(async.get(toBytes(key(1))).get());
+        assertArrayEquals(toBytes("value1999"), async.get(toBytes(key(1999))).get());
+        assertArrayEquals(toBytes("value"), async.get(toBytes("batch")).get());
+    }
+
+    @Test
+    @DisplayName("a failing write should fail its future instead of throwing")
+    void testPutAfterClose() throws IOException {
+        storage.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> async.put(toBytes("key"), toBytes("value")).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    // ==================== Read Tests ====================
+
+    @Test
+    @DisplayName("gets and scans should see the completed puts")
+    void testGetAndScan() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            async.put(toBytes(key(i)), toBytes("value" + i)).get();
+        }
+
+        assertArrayEquals(toBytes("value42"), async.get(toBytes(key(42))).get());
+        assertNull(async.get(toBytes("missing")).get());
+
+        List<KeyValuePair> entries = async.scan(toBytes(key(10)), toBytes(key(50)), 5).get();
+        assertEquals(5, entries.size());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(toBytes(key(10 + i)), entries.get(i).keyWrapper().getValue());
+            assertArrayEquals(toBytes("value" + (10 + i)), entries.get(i).data());
+        }
+        assertEquals(41, async.scan(toBytes(key(10)), toBytes(key(50)), Integer.MAX_VALUE).get().size());
+    }
+}
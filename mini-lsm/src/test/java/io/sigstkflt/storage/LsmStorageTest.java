@@ -0,0 +1,729 @@
+package io.sigstkflt.storage;
+
+import io.sigstkflt.compaction.CompactionStyle;
+import io.sigstkflt.memtable.MemtableIterator;
+import io.sigstkflt.memtable.WriteBatch;
+import io.sigstkflt.mvcc.Snapshot;
+import io.sigstkflt.sstable.BlockCodecs;
+import io.sigstkflt.util.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private LsmStorage storage;
+
+    private LsmStorageOptions smallMemtables() {
+        return LsmStorageOptions.defaults()
+                .setMemtableSizeLimit(4 * 1024)
+                .setMaxImmutableMemtables(2)
+                .setBlockSize(512)
+                .setTargetFileSize(4 * 1024);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = LsmStorage.open(dir, smallMemtables());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+    }
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    // ==================== Basic Operations Tests ====================
+
+    @Test
+    @DisplayName("put and get should work before any flush")
+    void testPutAndGet() {
+        storage.put(toBytes("key1"), toBytes("value1"));
+
+        assertArrayEquals(toBytes("value1"), storage.get(toBytes("key1")));
+        assertNull(storage.get(toBytes("key2")));
+        assertEquals(0, storage.tableCount());
+    }
+
+    @Test
+    @DisplayName("memtables should rotate and flush once they exceed the size limit")
+    void testRotationAndFlush() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            storage.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        storage.forceFlush();
+
+        assertTrue(storage.tableCount() > 1);
+        assertEquals(0, storage.immutableMemtableCount());
+        for (int i = 0; i < 2000; i++) {
+            assertArrayEquals(toBytes("value" + i), storage.get(toBytes(key(i))));
+        }
+    }
+
+    @Test
+    @DisplayName("reads should return the newest value across memtables and tables")
+    void testNewestValueWins() throws IOException {
+        storage.put(toBytes("key"), toBytes("old"));
+        storage.forceFlush();
+        storage.put(toBytes("key"), toBytes("new"));
+
+        assertArrayEquals(toBytes("new"), storage.get(toBytes("key")));
+
+        storage.forceFlush();
+
+        assertArrayEquals(toBytes("new"), storage.get(toBytes("key")));
+    }
+
+    @Test
+    @DisplayName("concurrent writers should not lose writes across rotations")
+    void testConcurrentWriters() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        storage.put(toBytes(thread + "-" + key(i)), toBytes("value" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(storage.memtableMemoryUsage() > 0);
+        storage.forceFlush();
+        assertEquals(0, storage.memtableMemoryUsage());
+
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 1000; i++) {
+                assertArrayEquals(toBytes("value" + i), storage.get(toBytes(t + "-" + key(i))));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("a write batch should become visible at once and survive reopening")
+    void testWriteBatch() throws IOException {
+        storage.put(toBytes("key1"), toBytes("old"));
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        batch.delete(toBytes("key1"));
+
+        try (Snapshot snapshot = storage.snapshot()) {
+            storage.write(batch);
+            assertNull(storage.get(toBytes(key(0)), snapshot));
+            assertArrayEquals(toBytes("old"), storage.get(toBytes("key1"), snapshot));
+        }
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables());
+
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(toBytes("value" + i), storage.get(toBytes(key(i))));
+        }
+        assertNull(storage.get(toBytes("key1")));
+    }
+
+    @Test
+    @DisplayName("sharded memtables should scan and flush in key order")
+    void testShardedMemtables() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables().setMemtableShards(4));
+
+        for (int i = 299; i >= 0; i--) {
+            storage.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        storage.forceFlush();
+        for (int i = 0; i < 300; i += 2) {
+            storage.delete(toBytes(key(i)));
+        }
+
+        MemtableIterator iterator = storage.scan(null, null);
+        for (int i = 1; i < 300; i += 2) {
+            assertArrayEquals(toBytes(key(i)), iterator.next().keyWrapper().getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    // ==================== Delete and Scan Tests ====================
+
+    @Test
+    @DisplayName("delete should hide values that were already flushed")
+    void testDeleteHidesFlushedValue() throws IOException {
+        storage.put(toBytes("key"), toBytes("value"));
+        storage.forceFlush();
+
+        storage.delete(toBytes("key"));
+        assertNull(storage.get(toBytes("key")));
+
+        storage.forceFlush();
+        assertNull(storage.get(toBytes("key")));
+    }
+
+    @Test
+    @DisplayName("scan should merge memtables and tables and skip deleted keys")
+    void testScan() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            storage.put(toBytes(key(i)), toBytes("old" + i));
+        }
+        storage.forceFlush();
+        storage.put(toBytes(key(3)), toBytes("new3"));
+        storage.delete(toBytes(key(4)));
+
+        MemtableIterator iterator = storage.scan(toBytes(key(2)), toBytes(key(5)));
+
+        List<String> values = new ArrayList<>();
+        while (iterator.hasNext()) {
+            values.add(new String(iterator.next().data(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of("old2", "new3", "old5"), values);
+    }
+
+    @Test
+    @DisplayName("cursor should see the same entries as scan and seek across memtables and tables")
+    void testCursor() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            storage.put(toBytes(key(i)), toBytes("old" + i));
+        }
+        storage.forceFlush();
+        storage.put(toBytes(key(3)), toBytes("new3"));
+        storage.delete(toBytes(key(4)));
+
+        try (LsmCursor cursor = storage.cursor(toBytes(key(2)), null)) {
+            List<String> values = new ArrayList<>();
+            for (; cursor.isValid(); cursor.next()) {
+                values.add(new String(cursor.value().toArray(), StandardCharsets.UTF_8));
+            }
+            assertEquals(List.of("old2", "new3", "old5", "old6", "old7", "old8", "old9"), values);
+        }
+
+        try (LsmCursor cursor = storage.cursor(null, null)) {
+            cursor.seek(toBytes(key(4)));
+            assertArrayEquals(toBytes(key(5)), cursor.key().toArray());
+        }
+    }
+
+    // ==================== Compaction Tests ====================
+
+    private void writeOverlappingTables(int rounds) throws IOException {
+        for (int round = 0; round < rounds; round++) {
+            for (int i = round % 2; i < 400; i += 2) {
+                storage.put(toBytes(key(i)), toBytes("value" + round + "-" + i));
+            }
+            storage.forceFlush();
+        }
+    }
+
+    private void assertLatestRound(int rounds) {
+        for (int i = 0; i < 400; i++) {
+            int last = (rounds - 1) % 2 == i % 2 ? rounds - 1 : rounds - 2;
+            assertArrayEquals(toBytes("value" + last + "-" + i), storage.get(toBytes(key(i))));
+        }
+    }
+
+    @Test
+    @DisplayName("leveled compaction should move level 0 tables into the levels below")
+    void testLeveledCompaction() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables()
+                .setLevel0CompactionTrigger(2)
+                .setBaseLevelSize(16 * 1024)
+                .setLevelSizeMultiplier(2)
+                .setLevelCount(3));
+
+        writeOverlappingTables(8);
+        storage.awaitCompactions();
+
+        assertTrue(storage.compactionCount() > 0);
+        assertTrue(storage.tableCount(0) < 2);
+        assertTrue(storage.tableCount(1) + storage.tableCount(2) + storage.tableCount(3) > 0);
+        assertLatestRound(8);
+    }
+
+    @Test
+    @DisplayName("tiered compaction should merge level 0 into runs and bound their number")
+    void testTieredCompaction() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables()
+                .setCompactionStyle(CompactionStyle.TIERED)
+                .setLevel0CompactionTrigger(2)
+                .setLevelCount(2));
+
+        writeOverlappingTables(10);
+        storage.awaitCompactions();
+
+        assertTrue(storage.compactionCount() > 0);
+        assertEquals(0, storage.tableCount(3));
+        assertLatestRound(10);
+    }
+
+    @Test
+    @DisplayName("levels should be readable whatever codec they were written with")
+    void testCompressionPerLevel() throws IOException {
+        storage.close();
+        LsmStorageOptions options = smallMemtables()
+                .setLevel0CompactionTrigger(2)
+                .setCompression(BlockCodecs.LZ)
+                .setCompression(0, BlockCodecs.NONE)
+                .setCompression(2, BlockCodecs.DEFLATE);
+        storage = LsmStorage.open(dir, options);
+
+        writeOverlappingTables(6);
+        storage.awaitCompactions();
+        assertLatestRound(6);
+        storage.close();
+
+        // Tables keep the codec they were written with when the policy changes
+        storage = LsmStorage.open(dir, smallMemtables().setCompression(BlockCodecs.DEFLATE));
+        assertLatestRound(6);
+        assertLatestRound(6);
+        assertTrue(storage.blockCache().hits() > 0);
+        assertTrue(storage.blockCache().usage() <= storage.blockCache().capacity());
+    }
+
+    @Test
+    @DisplayName("compaction should drop deleted keys once nothing older is below")
+    void testCompactionDropsTombstones() throws IOException {
+        storage.close();
+        // Each round has to fit one memtable, so that exactly two tables trigger the compaction
+        storage = LsmStorage.open(dir, smallMemtables()
+                .setMemtableSizeLimit(64 * 1024)
+                .setLevel0CompactionTrigger(2)
+                .setLevelCount(1));
+
+        for (int i = 0; i < 100; i++) {
+            storage.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        storage.forceFlush();
+        for (int i = 0; i < 100; i++) {
+            storage.delete(toBytes(key(i)));
+        }
+        storage.forceFlush();
+        storage.awaitCompactions();
+
+        assertEquals(0, storage.tableCount());
+        assertFalse(storage.scan(null, null).hasNext());
+    }
+
+    @Test
+    @DisplayName("scan should stay consistent while compactions replace tables")
+    void testScanDuringCompaction() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables().setLevel0CompactionTrigger(2));
+        writeOverlappingTables(2);
+
+        MemtableIterator iterator = storage.scan(null, null);
+        writeOverlappingTables(6);
+        storage.awaitCompactions();
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(400, count);
+    }
+
+    @Test
+    @DisplayName("tables replaced by compaction should be deleted once open scans are closed")
+    void testReplacedTablesDeletedAfterScan() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables().setLevel0CompactionTrigger(2));
+        writeOverlappingTables(1);
+        // A compaction already running could replace the tables before the scan pins them
+        storage.awaitCompactions();
+        List<Path> before;
+        try (Stream<Path> files = Files.list(dir)) {
+            before = files.filter(path -> path.toString().endsWith(".sst")).toList();
+        }
+
+        LsmIterator iterator = storage.scan(null, null);
+        writeOverlappingTables(3);
+        storage.awaitCompactions();
+        assertTrue(storage.compactionCount() > 0);
+        for (Path path : before) {
+            assertTrue(Files.exists(path));
+        }
+
+        iterator.close();
+
+        for (Path path : before) {
+            assertFalse(Files.exists(path));
+        }
+    }
+
+    // ==================== Snapshot Tests ====================
+
+    @Test
+    @DisplayName("a snapshot should keep its view across flushes and compactions")
+    void testSnapshotSurvivesCompaction() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables().setLevel0CompactionTrigger(2).setLevelCount(2));
+
+        for (int i = 0; i < 200; i++) {
+            storage.put(toBytes(key(i)), toBytes("old" + i));
+        }
+        try (Snapshot snapshot = storage.snapshot()) {
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < 200; i++) {
+                    if (i % 10 == 0) {
+                        storage.delete(toBytes(key(i)));
+                    } else {
+                        storage.put(toBytes(key(i)), toBytes("new" + round + "-" + i));
+                    }
+                }
+                storage.forceFlush();
+            }
+            storage.awaitCompactions();
+            assertTrue(storage.compactionCount() > 0);
+
+            for (int i = 0; i < 200; i++) {
+                assertArrayEquals(toBytes("old" + i), storage.get(toBytes(key(i)), snapshot));
+                assertArrayEquals(i % 10 == 0 ? null : toBytes("new3-" + i), storage.get(toBytes(key(i))));
+            }
+            int count = 0;
+            MemtableIterator iterator = storage.scan(null, null, snapshot);
+            while (iterator.hasNext()) {
+                assertArrayEquals(toBytes("old" + count), iterator.next().data());
+                count++;
+            }
+            assertEquals(200, count);
+        }
+    }
+
+    @Test
+    @DisplayName("sequence numbers should continue after reopening")
+    void testSequenceAfterReopen() throws IOException {
+        storage.put(toBytes("key"), toBytes("value1"));
+        storage.forceFlush();
+        storage.put(toBytes("other"), toBytes("value"));
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables());
+
+        try (Snapshot snapshot = storage.snapshot()) {
+            storage.put(toBytes("key"), toBytes("value2"));
+
+            assertArrayEquals(toBytes("value1"), storage.get(toBytes("key"), snapshot));
+            assertArrayEquals(toBytes("value"), storage.get(toBytes("other"), snapshot));
+            assertArrayEquals(toBytes("value2"), storage.get(toBytes("key")));
+        }
+    }
+
+    // ==================== Recovery Tests ====================
+
+    @Test
+    @DisplayName("reopening should recover flushed tables and unflushed memtables")
+    void testReopen() throws IOException {
+        for (int i = 0; i < 500; i++) {
+            storage.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        storage.put(toBytes(key(0)), toBytes("latest"));
+        storage.close();
+
+        storage = LsmStorage.open(dir, smallMemtables());
+
+        assertArrayEquals(toBytes("latest"), storage.get(toBytes(key(0))));
+        for (int i = 1; i < 500; i++) {
+            assertArrayEquals(toBytes("value" + i), storage.get(toBytes(key(i))));
+        }
+        storage.put(toBytes("after"), toBytes("reopen"));
+        assertArrayEquals(toBytes("reopen"), storage.get(toBytes("after")));
+    }
+
+    @Test
+    @DisplayName("reopening should restore tables to the levels compaction left them in")
+    void testReopenAfterCompaction() throws IOException {
+        storage.close();
+        LsmStorageOptions options = smallMemtables().setLevel0CompactionTrigger(2);
+        storage = LsmStorage.open(dir, options);
+        writeOverlappingTables(6);
+        storage.awaitCompactions();
+        int level1 = storage.tableCount(1);
+        storage.close();
+
+        storage = LsmStorage.open(dir, options);
+
+        assertEquals(level1, storage.tableCount(1));
+        assertLatestRound(6);
+    }
+
+    // ==================== Value Separation Tests ====================
+
+    private LsmStorageOptions separatedValues() {
+        return smallMemtables()
+                .setValueSeparationThreshold(64)
+                .setValueLogFileSize(16 * 1024);
+    }
+
+    private byte[] largeValue(int i, int round) {
+        byte[] value = new byte[200];
+        Arrays.fill(value, (byte) (i + round));
+        return value;
+    }
+
+    private long valueLogBytes() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".vlog")).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    @Test
+    @DisplayName("large values should go to the value log and read back through gets, scans and batches")
+    void testValueSeparation() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, separatedValues());
+        for (int i = 0; i < 300; i++) {
+            storage.put(toBytes(key(i)), i % 2 == 0 ? largeValue(i, 0) : toBytes("small" + i));
+        }
+        storage.write(new WriteBatch().put(toBytes("batch"), largeValue(7, 0)).delete(toBytes(key(0))));
+        storage.forceFlush();
+
+        assertTrue(Files.exists(dir.resolve(LsmStorage.VALUE_LOG_MARKER)));
+        assertTrue(valueLogBytes() >= 150 * 200);
+        assertNull(storage.get(toBytes(key(0))));
+        assertArrayEquals(largeValue(7, 0), storage.get(toBytes("batch")));
+        for (int i = 1; i < 300; i++) {
+            assertArrayEquals(i % 2 == 0 ? largeValue(i, 0) : toBytes("small" + i), storage.get(toBytes(key(i))));
+        }
+        try (LsmCursor cursor = storage.cursor(toBytes(key(1)), toBytes(key(4)))) {
+            for (int i = 1; i <= 4; i++) {
+                assertTrue(cursor.isValid());
+                assertArrayEquals(i % 2 == 0 ? largeValue(i, 0) : toBytes("small" + i), cursor.value().toArray());
+                cursor.next();
+            }
+            assertFalse(cursor.isValid());
+        }
+
+        storage.close();
+        storage = LsmStorage.open(dir, separatedValues());
+        assertArrayEquals(largeValue(2, 0), storage.get(toBytes(key(2))));
+        assertArrayEquals(toBytes("small3"), storage.get(toBytes(key(3))));
+    }
+
+    @Test
+    @DisplayName("values should not be separated in a directory that already holds tables")
+    void testValueSeparationNeedsEmptyDirectory() throws IOException {
+        storage.put(toBytes("key"), toBytes("value"));
+        storage.forceFlush();
+        storage.close();
+
+        assertThrows(IllegalArgumentException.class, () -> LsmStorage.open(dir, separatedValues()));
+        storage = LsmStorage.open(dir, smallMemtables());
+        assertArrayEquals(toBytes("value"), storage.get(toBytes("key")));
+    }
+
+    @Test
+    @DisplayName("value log garbage collection should reclaim overwritten values and keep the live ones")
+    void testValueLogGarbageCollection() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, separatedValues());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 200; i++) {
+                storage.put(toBytes(key(i)), largeValue(i, round));
+            }
+        }
+        // Leaves a third of the last round alive, those values have to be relocated
+        for (int i = 0; i < 200; i++) {
+            if (i % 3 != 0) {
+                storage.put(toBytes(key(i)), largeValue(i, 3));
+            }
+        }
+        for (int i = 0; i < 200; i += 7) {
+            storage.delete(toBytes(key(i)));
+        }
+        storage.forceFlush();
+
+        storage.collectValueLogGarbage();
+
+        // Flushes collect in the background as well, in the end less than half of the values written are left
+        assertTrue(valueLogBytes() < 733 * 200 / 2);
+        assertGarbageCollected();
+        storage.close();
+        storage = LsmStorage.open(dir, separatedValues());
+        assertGarbageCollected();
+    }
+
+    private void assertGarbageCollected() {
+        for (int i = 0; i < 200; i++) {
+            byte[] expected = i % 7 == 0 ? null : largeValue(i, i % 3 == 0 ? 2 : 3);
+            assertArrayEquals(expected, storage.get(toBytes(key(i))));
+        }
+    }
+
+    @Test
+    @DisplayName("value log files should outlive the snapshots and scans that can still read them")
+    void testValueLogGarbageCollectionWithSnapshot() throws IOException {
+        storage.close();
+        storage = LsmStorage.open(dir, separatedValues());
+        for (int i = 0; i < 200; i++) {
+            storage.put(toBytes(key(i)), largeValue(i, 0));
+        }
+        Snapshot snapshot = storage.snapshot();
+        LsmCursor cursor = storage.cursor(null, null);
+        for (int i = 0; i < 200; i++) {
+            storage.put(toBytes(key(i)), largeValue(i, 1));
+        }
+        storage.forceFlush();
+        long before = valueLogBytes();
+
+        assertEquals(0, storage.collectValueLogGarbage());
+        assertArrayEquals(largeValue(5, 0), storage.get(toBytes(key(5)), snapshot));
+        snapshot.close();
+        storage.collectValueLogGarbage();
+
+        // The cursor pinned the retired files before they went
+        for (int i = 0; i < 200; i++) {
+            assertTrue(cursor.isValid());
+            assertArrayEquals(largeValue(i, 0), cursor.value().toArray());
+            cursor.next();
+        }
+        assertFalse(cursor.isValid());
+        assertTrue(valueLogBytes() < before);
+        assertArrayEquals(largeValue(5, 1), storage.get(toBytes(key(5))));
+    }
+
+    // ==================== Metrics Tests ====================
+
+    @Test
+    @DisplayName("metrics should record latencies and background work and tell the listeners")
+    void testMetrics() throws IOException {
+        storage.close();
+        ConcurrentLinkedQueue<FlushInfo> flushes = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<CompactionInfo> compactions = new ConcurrentLinkedQueue<>();
+        storage = LsmStorage.open(dir, smallMemtables()
+                .setLevel0CompactionTrigger(2)
+                .addListener(new StorageListener() {
+                    @Override
+                    public void onFlushCompleted(FlushInfo info) {
+                        flushes.add(info);
+                    }
+
+                    @Override
+                    public void onCompactionCompleted(CompactionInfo info) {
+                        compactions.add(info);
+                    }
+                })
+                .addListener(new StorageListener() {
+                    @Override
+                    public void onFlushCompleted(FlushInfo info) {
+                        throw new IllegalStateException("ignored");
+                    }
+                }));
+
+        writeOverlappingTables(4);
+        storage.awaitCompactions();
+        for (int i = 0; i < 100; i++) {
+            storage.get(toBytes(key(i)));
+        }
+        try (LsmIterator iterator = storage.scan(toBytes(key(0)), toBytes(key(49)))) {
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+
+        StorageMetrics metrics = storage.metrics();
+        assertEquals(800, metrics.putLatency().count());
+        assertEquals(100, metrics.getLatency().count());
+        assertEquals(1, metrics.scanLatency().count());
+        assertEquals(50, metrics.getScanEntries());
+        assertTrue(metrics.putLatency().percentile(50) > 0);
+        assertTrue(metrics.getLatency().percentile(99) <= metrics.getLatency().max());
+
+        assertEquals(flushes.size(), metrics.getFlushCount());
+        assertTrue(flushes.size() >= 4);
+        assertEquals(flushes.stream().mapToLong(FlushInfo::tableBytes).sum(), metrics.getFlushBytes());
+        assertEquals(compactions.size(), metrics.getCompactionCount());
+        assertEquals(storage.compactionCount(), compactions.size());
+        assertTrue(compactions.size() > 0);
+        assertEquals(compactions.stream().mapToLong(CompactionInfo::bytesWritten).sum(), metrics.getCompactionBytesWritten());
+        assertTrue(metrics.getCompactionBytesRead() > 0);
+        assertEquals(storage.tableCount(), metrics.getTableCount());
+    }
+
+    @Test
+    @DisplayName("scan latency should run until the scan is released")
+    void testScanLatencyCoversScan() throws Exception {
+        storage.put(toBytes("a"), toBytes("1"));
+        storage.put(toBytes("b"), toBytes("2"));
+
+        try (LsmCursor cursor = storage.cursor(null, null)) {
+            assertEquals(0, storage.metrics().scanLatency().count());
+            Thread.sleep(20);
+            cursor.next();
+        }
+
+        Histogram scans = storage.metrics().scanLatency();
+        assertEquals(1, scans.count());
+        assertTrue(scans.max() >= TimeUnit.MILLISECONDS.toNanos(20), "scan took " + scans.max());
+        assertEquals(1, storage.metrics().getScanEntries());
+    }
+
+    @Test
+    @DisplayName("metrics should be published over JMX while the storage is open")
+    void testJmx() throws Exception {
+        storage.close();
+        storage = LsmStorage.open(dir, smallMemtables().setJmxEnabled(true));
+        for (int i = 0; i < 200; i++) {
+            storage.put(toBytes(key(i)), toBytes("value" + i));
+        }
+        storage.forceFlush();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = "io.sigstkflt:type=LsmStorage,name=" + ObjectName.quote(dir.toAbsolutePath().toString());
+        ObjectName counters = new ObjectName(base);
+        ObjectName puts = new ObjectName(base + ",latency=put");
+
+        assertTrue((Long) server.getAttribute(counters, "FlushCount") > 0);
+        assertEquals(0.0, (Double) server.getAttribute(counters, "BloomFalsePositiveRate"));
+        assertEquals(200L, server.getAttribute(puts, "Count"));
+        assertTrue((Long) server.getAttribute(puts, "P99") > 0);
+
+        storage.close();
+        assertFalse(server.isRegistered(counters));
+        assertFalse(server.isRegistered(puts));
+    }
+
+    @Test
+    @DisplayName("writes should fail after close")
+    void testClosed() throws IOException {
+        storage.close();
+
+        assertThrows(IllegalStateException.class, () -> storage.put(toBytes("key"), toBytes("value")));
+    }
+}
@@ -0,0 +1,119 @@
+package io.sigstkflt.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    // ==================== Bucket Tests ====================
+
+    @Test
+    @DisplayName("every value should fall into a bucket no wider than 1/64 of it")
+    void testBuckets() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int index = Histogram.index(value);
+            long highest = Histogram.highestValue(index);
+
+            assertTrue(value <= highest, value + " above its bucket");
+            assertTrue(index == 0 || Histogram.highestValue(index - 1) < value, value + " below its bucket");
+            assertTrue(highest - value <= value / 64, value + " in a bucket ending at " + highest);
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+        assertEquals(127, Histogram.highestValue(127));
+    }
+
+    // ==================== Percentile Tests ====================
+
+    @Test
+    @DisplayName("percentiles should be within the bucket precision of the exact values")
+    void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(99));
+
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(5_000_500.0, histogram.mean(), 0.001);
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 / 64);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 / 64);
+        assertEquals(10_000_000, histogram.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+    }
+
+    @Test
+    @DisplayName("negative values should be counted as zero")
+    void testNegative() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    // ==================== Concurrency Tests ====================
+
+    @Test
+    @DisplayName("concurrent recording should not lose values")
+    void testConcurrentRecord() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        histogram.record(i % 1000);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(200_000, histogram.count());
+        assertEquals(4L * 50 * (999 * 1000 / 2), histogram.sum());
+        assertEquals(999, histogram.max());
+        assertTrue(histogram.stripeCount() >= 1);
+    }
+
+    @Test
+    @DisplayName("reads should fold the counters of every stripe")
+    void testStripedRecord() throws Exception {
+        Histogram histogram = new Histogram(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long base = t * 1000L;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    histogram.record(base + i);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8, histogram.stripeCount());
+        assertEquals(8000, histogram.count());
+        assertEquals(7999, histogram.max());
+        assertEquals(4000, histogram.percentile(50), 4000 / 64);
+        assertThrows(IllegalArgumentException.class, () -> new Histogram(3));
+    }
+}
@@ -0,0 +1,68 @@
+package io.sigstkflt.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    @Test
+    @DisplayName("acquire should not wait while the bucket has tokens")
+    void testBurst() {
+        RateLimiter limiter = new RateLimiter(1024 * 1024);
+
+        long start = System.nanoTime();
+        limiter.acquire(512 * 1024);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    @DisplayName("acquire should hold callers to the configured rate")
+    void testRate() {
+        RateLimiter limiter = new RateLimiter(100 * 1024);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 15; i++) {
+            limiter.acquire(10 * 1024);
+        }
+
+        // One second of burst, the remaining 50KB take about half a second
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    @Test
+    @DisplayName("a zero rate should never wait")
+    void testUnlimited() {
+        RateLimiter limiter = RateLimiter.unlimited();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(Long.MAX_VALUE / 2048);
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    @DisplayName("a long idle period should refill the bucket instead of overflowing the refill")
+    void testLongIdle() {
+        long rate = 50L * 1024 * 1024;
+        AtomicLong clock = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(rate, clock::get);
+        limiter.acquire(rate);
+
+        // Idle long enough for elapsed nanos times the rate to overflow a long
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(200));
+        long start = System.nanoTime();
+        limiter.acquire(rate);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.acquire(rate);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+}
@@ -0,0 +1,74 @@
+package io.sigstkflt.version;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestTest {
+
+    @TempDir
+    Path dir;
+
+    private final ManifestRecord.Snapshot snapshot =
+            new ManifestRecord.Snapshot(10, List.of(8, 9), List.of(7, 6), List.of(List.of(1, 2), List.of()));
+
+    @Test
+    @DisplayName("replay should return every appended record in order")
+    void testAppendAndReplay() throws IOException {
+        try (Manifest manifest = Manifest.create(dir, snapshot)) {
+            manifest.append(new ManifestRecord.NewMemtable(10));
+            manifest.append(new ManifestRecord.Flush(8, 8));
+            manifest.append(new ManifestRecord.Compaction(List.of(7, 6, 1), List.of(List.of(11, 2), List.of())));
+        }
+
+        List<ManifestRecord> records = Manifest.replay(dir);
+
+        assertEquals(List.of(snapshot,
+                new ManifestRecord.NewMemtable(10),
+                new ManifestRecord.Flush(8, 8),
+                new ManifestRecord.Compaction(List.of(7, 6, 1), List.of(List.of(11, 2), List.of()))), records);
+    }
+
+    @Test
+    @DisplayName("create should replace the previous manifest")
+    void testCreateReplaces() throws IOException {
+        try (Manifest manifest = Manifest.create(dir, snapshot)) {
+            manifest.append(new ManifestRecord.NewMemtable(10));
+        }
+        ManifestRecord.Snapshot next = new ManifestRecord.Snapshot(11, List.of(), List.of(), List.of());
+        Manifest.create(dir, next).close();
+
+        assertEquals(List.of(next), Manifest.replay(dir));
+        assertFalse(Files.exists(dir.resolve(Manifest.FILE_NAME + ".tmp")));
+    }
+
+    @Test
+    @DisplayName("replay should stop at a torn tail record")
+    void testTornTail() throws IOException {
+        try (Manifest manifest = Manifest.create(dir, snapshot)) {
+            manifest.append(new ManifestRecord.NewMemtable(10));
+            manifest.append(new ManifestRecord.Flush(8, 8));
+        }
+        Path file = Manifest.path(dir);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 2);
+        }
+
+        assertEquals(List.of(snapshot, new ManifestRecord.NewMemtable(10)), Manifest.replay(dir));
+    }
+
+    @Test
+    @DisplayName("replay of a missing manifest should be empty")
+    void testMissing() throws IOException {
+        assertTrue(Manifest.replay(dir).isEmpty());
+    }
+}
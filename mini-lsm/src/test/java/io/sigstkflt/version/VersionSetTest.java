@@ -0,0 +1,117 @@
+package io.sigstkflt.version;
+
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.sstable.SsTableBuilder;
+import io.sigstkflt.sstable.SsTableFormat;
+import io.sigstkflt.sstable.SsTableReader;
+import io.sigstkflt.wal.SyncMode;
+import io.sigstkflt.wal.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionSetTest {
+
+    @TempDir
+    Path dir;
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SsTableReader table(int id, String key) throws IOException {
+        SkipListMemtable memtable = new SkipListMemtable(id);
+        memtable.put(toBytes(key), toBytes("value" + id));
+        SsTableBuilder.write(SsTableFormat.path(dir, id), memtable.iterator());
+        return SsTableReader.open(SsTableFormat.path(dir, id), id);
+    }
+
+    @Test
+    @DisplayName("recover should rebuild levels, live memtables and the next id")
+    void testRecover() throws IOException {
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(2))) {
+            versions.logNewMemtable(0);
+            versions.logNewMemtable(1);
+            versions.logFlush(0, table(0, "a"));
+            versions.logNewMemtable(2);
+            versions.logFlush(1, table(1, "b"));
+            SsTableReader merged = table(3, "c");
+            versions.logCompaction(version -> new Version(List.of(), List.of(List.of(merged), List.of())));
+        }
+
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(2))) {
+            Version current = versions.current();
+            assertEquals(List.of(), current.l0Tables());
+            assertEquals(3, current.tables(1).getFirst().getId());
+            assertEquals(List.of(2), versions.liveMemtables());
+            assertEquals(4, versions.nextId());
+        }
+        assertFalse(Files.exists(SsTableFormat.path(dir, 0)));
+        assertFalse(Files.exists(SsTableFormat.path(dir, 1)));
+    }
+
+    @Test
+    @DisplayName("replaced tables should be deleted only after the last reader releases them")
+    void testPinnedVersionKeepsTables() throws IOException {
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(1))) {
+            SsTableReader flushed = table(0, "a");
+            versions.logFlush(0, flushed);
+            Version pinned = versions.acquire();
+
+            SsTableReader merged = table(1, "a");
+            versions.logCompaction(version -> new Version(List.of(), List.of(List.of(merged))));
+
+            assertTrue(Files.exists(flushed.getPath()));
+            assertArrayEquals(toBytes("value0"), pinned.lookup(toBytes("a")));
+
+            pinned.release();
+
+            assertFalse(Files.exists(flushed.getPath()));
+            Version current = versions.acquire();
+            assertArrayEquals(toBytes("value1"), current.lookup(toBytes("a")));
+            current.release();
+        }
+    }
+
+    @Test
+    @DisplayName("recover should delete tables and logs the manifest does not know")
+    void testRecoverDeletesOrphans() throws IOException {
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(1))) {
+            versions.logNewMemtable(0);
+        }
+        table(5, "orphan").close();
+        new WriteAheadLog(dir, 6, SyncMode.PER_WRITE).close();
+        new WriteAheadLog(dir, 0, SyncMode.PER_WRITE).close();
+
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(1))) {
+            assertEquals(List.of(0), versions.liveMemtables());
+        }
+        assertFalse(Files.exists(SsTableFormat.path(dir, 5)));
+        assertFalse(Files.exists(WriteAheadLog.path(dir, 6)));
+        assertTrue(Files.exists(WriteAheadLog.path(dir, 0)));
+    }
+
+    @Test
+    @DisplayName("a directory without manifest should open with every table in level 0")
+    void testRecoverWithoutManifest() throws IOException {
+        table(1, "a").close();
+        table(4, "b").close();
+
+        try (VersionSet versions = VersionSet.recover(dir, Version.empty(2))) {
+            List<SsTableReader> l0 = versions.current().l0Tables();
+            assertEquals(4, l0.get(0).getId());
+            assertEquals(1, l0.get(1).getId());
+            assertEquals(2, versions.current().levels().size());
+            assertEquals(5, versions.nextId());
+        }
+        assertTrue(Files.exists(Manifest.path(dir)));
+    }
+}
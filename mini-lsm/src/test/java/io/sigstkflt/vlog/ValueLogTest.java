@@ -0,0 +1,149 @@
+package io.sigstkflt.vlog;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueLogTest {
+
+    @TempDir
+    Path dir;
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ==================== Read Write Tests ====================
+
+    @Test
+    @DisplayName("appended values should read back through their pointers")
+    void testAppendAndRead() throws IOException {
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            ValuePointer first = log.append(toBytes("key1"), toBytes("value1"));
+            ValuePointer second = log.append(toBytes("key2"), new byte[0]);
+
+            assertArrayEquals(toBytes("value1"), log.read(first));
+            assertArrayEquals(new byte[0], log.read(second));
+            assertEquals(first, ValuePointer.decode(first.encode(), 0));
+            assertArrayEquals(toBytes("value1"), log.resolve(first.encode()));
+            assertArrayEquals(toBytes("inline"), log.resolve(ValueLog.inline(toBytes("inline"))));
+        }
+    }
+
+    @Test
+    @DisplayName("the log should start a new file once the active one is full")
+    void testRollover() throws IOException {
+        try (ValueLog log = ValueLog.open(dir, 256)) {
+            List<ValuePointer> pointers = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                pointers.add(log.append(toBytes("key" + i), new byte[100]));
+            }
+
+            assertTrue(log.sealedFiles().size() >= 9);
+            for (int id : log.sealedFiles()) {
+                assertTrue(log.fileSize(id) <= 256);
+            }
+            for (ValuePointer pointer : pointers) {
+                assertEquals(100, log.read(pointer).length);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("reopening should keep the old files readable and append to a new one")
+    void testReopen() throws IOException {
+        ValuePointer pointer;
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            pointer = log.append(toBytes("key"), toBytes("value"));
+        }
+
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            assertArrayEquals(toBytes("value"), log.read(pointer));
+            assertEquals(List.of(pointer.fileId()), log.sealedFiles());
+            assertNotEquals(pointer.fileId(), log.append(toBytes("key"), toBytes("newer")).fileId());
+        }
+    }
+
+    @Test
+    @DisplayName("a stored pointer should read back in place at any offset")
+    void testPointerInPlace() {
+        ValuePointer pointer = new ValuePointer(3, 1L << 40 | 17, 4096);
+        byte[] stored = new byte[ValuePointer.ENCODED_SIZE + 5];
+        System.arraycopy(pointer.encode(), 0, stored, 5, ValuePointer.ENCODED_SIZE);
+
+        assertEquals(3, ValuePointer.fileId(stored, 5));
+        assertEquals(1L << 40 | 17, ValuePointer.offset(stored, 5));
+        assertEquals(4096, ValuePointer.length(stored, 5));
+        assertEquals(pointer, ValuePointer.decode(stored, 5));
+        assertThrows(IllegalArgumentException.class, () -> ValuePointer.decode(ValueLog.inline(new byte[20]), 0));
+    }
+
+    // ==================== Garbage Collection Tests ====================
+
+    @Test
+    @DisplayName("scanning should visit every record and stop at a torn tail")
+    void testScan() throws IOException {
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(toBytes("key" + i), toBytes("value" + i));
+            }
+        }
+        Path path = ValueLog.path(dir, 0);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 3);
+        }
+
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            List<String> keys = new ArrayList<>();
+            log.scan(0, (key, pointer) -> {
+                keys.add(new String(key, StandardCharsets.UTF_8));
+                assertEquals(new String(key, StandardCharsets.UTF_8).replace("key", "value"),
+                        new String(log.read(pointer), StandardCharsets.UTF_8));
+            });
+
+            assertEquals(9, keys.size());
+            assertEquals("key8", keys.getLast());
+        }
+    }
+
+    @Test
+    @DisplayName("a retired file should stay readable through a pin and be deleted once it is released")
+    void testRetireWhilePinned() throws IOException {
+        try (ValueLog log = ValueLog.open(dir, 64)) {
+            ValuePointer old = log.append(toBytes("key"), new byte[40]);
+            log.append(toBytes("key"), new byte[40]);
+            ValueLog.Pin pin = log.pin();
+
+            log.retire(old.fileId());
+
+            assertNull(log.read(old));
+            assertFalse(log.sealedFiles().contains(old.fileId()));
+            byte[] buffer = new byte[old.length()];
+            pin.read(old, buffer);
+            assertTrue(Files.exists(ValueLog.path(dir, old.fileId())));
+
+            pin.close();
+            assertFalse(Files.exists(ValueLog.path(dir, old.fileId())));
+        }
+    }
+
+    @Test
+    @DisplayName("reading a file that was never retired should fail rather than look the key up again")
+    void testMissingFile() throws IOException {
+        try (ValueLog log = ValueLog.open(dir, ValueLog.DEFAULT_FILE_SIZE)) {
+            assertThrows(UncheckedIOException.class, () -> log.read(new ValuePointer(42, 0, 1)));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package io.sigstkflt.wal;
+
+import io.sigstkflt.memtable.KeyValuePair;
+import io.sigstkflt.memtable.SkipListMemtable;
+import io.sigstkflt.memtable.WriteBatch;
+import io.sigstkflt.mvcc.Snapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    private byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeAndReplay(SyncMode mode) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 7, mode)) {
+            SkipListMemtable memtable = new SkipListMemtable(7, wal);
+            memtable.put(toBytes("key1"), toBytes("value1"));
+            memtable.put(toBytes("key2"), toBytes("value2"));
+            memtable.put(toBytes("key1"), toBytes("value3"));
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 7);
+
+        assertEquals(7, recovered.getId());
+        assertArrayEquals(toBytes("value3"), recovered.get(toBytes("key1")));
+        assertArrayEquals(toBytes("value2"), recovered.get(toBytes("key2")));
+    }
+
+    // ==================== Sync Mode Tests ====================
+
+    @Test
+    @DisplayName("per-write mode should replay every put")
+    void testPerWriteReplay() throws IOException {
+        writeAndReplay(SyncMode.PER_WRITE);
+    }
+
+    @Test
+    @DisplayName("group mode should replay every put")
+    void testGroupReplay() throws IOException {
+        writeAndReplay(SyncMode.GROUP);
+    }
+
+    @Test
+    @DisplayName("periodic mode should replay every put after close")
+    void testPeriodicReplay() throws IOException {
+        writeAndReplay(SyncMode.PERIODIC);
+    }
+
+    @Test
+    @DisplayName("group commit should keep every record from concurrent writers")
+    void testConcurrentGroupCommit() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 1, SyncMode.GROUP)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        wal.append(toBytes("t" + thread + "-" + i), toBytes("v" + i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        SkipListMemtable recovered = new SkipListMemtable(1);
+        assertEquals(800, WriteAheadLog.replay(WriteAheadLog.path(dir, 1), recovered));
+        assertArrayEquals(toBytes("v99"), recovered.get(toBytes("t7-99")));
+    }
+
+    @Test
+    @DisplayName("asynchronous appends should complete once their group commit is durable")
+    void testAsyncGroupCommit() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 4, SyncMode.GROUP)) {
+            for (int i = 0; i < 500; i++) {
+                futures.add(wal.appendAsync(toBytes("key" + i), toBytes("value" + i), i + 1));
+            }
+            wal.append(toBytes("sync"), toBytes("value"), 501);
+            futures.add(wal.appendAsync(new WriteBatch().put(toBytes("batch"), toBytes("value")), 502));
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        }
+
+        SkipListMemtable recovered = new SkipListMemtable(4);
+        assertEquals(502, WriteAheadLog.replay(WriteAheadLog.path(dir, 4), recovered));
+        assertArrayEquals(toBytes("value499"), recovered.get(toBytes("key499")));
+    }
+
+    @Test
+    @DisplayName("asynchronous appends should fail once the log is closed")
+    void testAsyncAppendAfterClose() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog(dir, 6, SyncMode.GROUP);
+        wal.close();
+
+        CompletableFuture<Void> future = wal.appendAsync(toBytes("key"), toBytes("value"), 1);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    @DisplayName("a failed write should fail every later append in per-write and periodic mode")
+    void testWriteFailure() throws IOException {
+        for (SyncMode mode : new SyncMode[]{SyncMode.PER_WRITE, SyncMode.PERIODIC}) {
+            Path path = WriteAheadLog.path(dir, 8);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            // Writes to a closed channel throw, standing in for a failing disk
+            channel.close();
+            WriteAheadLog wal = new WriteAheadLog(dir, 8, mode, 60_000, null, channel);
+
+            IOException first = assertThrows(IOException.class, () -> wal.append(toBytes("key"), toBytes("value"), 1));
+            IOException later = assertThrows(IOException.class, () -> wal.append(toBytes("key"), toBytes("value"), 2));
+            assertSame(first, later.getCause());
+            wal.close();
+            assertEquals(0, Files.size(path));
+            Files.delete(path);
+        }
+    }
+
+    // ==================== Recovery Tests ====================
+
+    @Test
+    @DisplayName("replay should stop at a torn tail record")
+    void testTornTail() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 2, SyncMode.PER_WRITE)) {
+            wal.append(toBytes("key1"), toBytes("value1"));
+            wal.append(toBytes("key2"), toBytes("value2"));
+        }
+        Path file = WriteAheadLog.path(dir, 2);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 2);
+
+        assertArrayEquals(toBytes("value1"), recovered.get(toBytes("key1")));
+        assertNull(recovered.get(toBytes("key2")));
+    }
+
+    @Test
+    @DisplayName("replay should stop at a corrupt record")
+    void testCorruptRecord() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 3, SyncMode.PER_WRITE)) {
+            wal.append(toBytes("key1"), toBytes("value1"));
+            wal.append(toBytes("key2"), toBytes("value2"));
+        }
+        Path file = WriteAheadLog.path(dir, 3);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x7F;
+        Files.write(file, bytes);
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 3);
+
+        assertArrayEquals(toBytes("value1"), recovered.get(toBytes("key1")));
+        assertNull(recovered.get(toBytes("key2")));
+    }
+
+    @Test
+    @DisplayName("replay should restore deletes as tombstones")
+    void testReplayDelete() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 5, SyncMode.PER_WRITE)) {
+            SkipListMemtable memtable = new SkipListMemtable(5, wal);
+            memtable.put(toBytes("key1"), toBytes("value1"));
+            memtable.delete(toBytes("key1"));
+            memtable.put(toBytes("key2"), new byte[0]);
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 5);
+
+        assertSame(KeyValuePair.TOMBSTONE, recovered.lookup(toBytes("key1")));
+        assertArrayEquals(new byte[0], recovered.get(toBytes("key2")));
+    }
+
+    @Test
+    @DisplayName("replay should restore the sequence number of every write")
+    void testReplaySequences() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 6, SyncMode.PER_WRITE)) {
+            wal.append(toBytes("key1"), toBytes("value1"), 11);
+            wal.append(toBytes("key1"), toBytes("value2"), 12);
+            wal.append(toBytes("key2"), toBytes("value3"), 15);
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 6);
+
+        assertArrayEquals(toBytes("value1"), recovered.lookup(toBytes("key1"), 11));
+        assertArrayEquals(toBytes("value2"), recovered.get(toBytes("key1")));
+        assertNull(recovered.lookup(toBytes("key2"), 14));
+        try (Snapshot snapshot = recovered.snapshot()) {
+            assertEquals(15, snapshot.sequence());
+        }
+    }
+
+    @Test
+    @DisplayName("replay should apply a logged batch at its sequence numbers")
+    void testReplayBatch() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 8, SyncMode.GROUP)) {
+            SkipListMemtable memtable = new SkipListMemtable(8, wal);
+            memtable.put(toBytes("key1"), toBytes("value1"));
+            memtable.write(new WriteBatch()
+                    .put(toBytes("key2"), toBytes("value2"))
+                    .delete(toBytes("key1"))
+                    .put(toBytes("key3"), new byte[0]));
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 8);
+
+        assertArrayEquals(toBytes("value1"), recovered.lookup(toBytes("key1"), 1));
+        assertSame(KeyValuePair.TOMBSTONE, recovered.lookup(toBytes("key1")));
+        assertArrayEquals(toBytes("value2"), recovered.get(toBytes("key2")));
+        assertArrayEquals(new byte[0], recovered.get(toBytes("key3")));
+        try (Snapshot snapshot = recovered.snapshot()) {
+            assertEquals(4, snapshot.sequence());
+        }
+    }
+
+    @Test
+    @DisplayName("replay should drop a torn batch as a whole")
+    void testTornBatch() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 9, SyncMode.PER_WRITE)) {
+            wal.append(toBytes("key1"), toBytes("value1"), 1);
+            wal.append(new WriteBatch().put(toBytes("key2"), toBytes("value2")).put(toBytes("key3"), toBytes("value3")), 2);
+        }
+        Path file = WriteAheadLog.path(dir, 9);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        SkipListMemtable recovered = WriteAheadLog.replay(dir, 9);
+
+        assertArrayEquals(toBytes("value1"), recovered.get(toBytes("key1")));
+        assertNull(recovered.get(toBytes("key2")));
+        assertNull(recovered.get(toBytes("key3")));
+    }
+
+    @Test
+    @DisplayName("replay should stop at a garbage header instead of allocating the lengths it claims")
+    void testGarbageLengths() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, 10, SyncMode.PER_WRITE)) {
+            wal.append(toBytes("key1"), toBytes("value1"), 1);
+        }
+        Path file = WriteAheadLog.path(dir, 10);
+        ByteBuffer record = ByteBuffer.allocate(32).putInt(0).putInt(Integer.MAX_VALUE - 8).putInt(Integer.MAX_VALUE - 8)
+                .putLong(2).putLong(0);
+        ByteBuffer batch = ByteBuffer.allocate(32).putInt(0).putInt(-1).putInt(Integer.MAX_VALUE - 8)
+                .putLong(2).putLong(0);
+        for (ByteBuffer tail : List.of(record, batch)) {
+            Files.write(file, tail.array(), StandardOpenOption.APPEND);
+
+            SkipListMemtable recovered = WriteAheadLog.replay(dir, 10);
+
+            assertArrayEquals(toBytes("value1"), recovered.get(toBytes("key1")));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(file) - tail.capacity());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("delete should remove the log file")
+    void testDelete() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir, 4, SyncMode.GROUP);
+        wal.append(toBytes("key"), toBytes("value"));
+        wal.delete();
+
+        assertFalse(Files.exists(WriteAheadLog.path(dir, 4)));
+    }
+}